@@ -0,0 +1,81 @@
+package de.industrieschule.vp.benchmark;
+
+import de.industrieschule.vp.core.websocket.BroadcastConnection;
+import de.industrieschule.vp.core.websocket.BroadcastEngine;
+import de.industrieschule.vp.core.websocket.BroadcastMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures broadcasting one message to many sessions, without the sockets: every write completes immediately, so this
+ * is the cost of the fan-out itself (topic lookup, queueing, one shared payload).
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastEngineBenchmark {
+
+    /**
+     * Number of sessions subscribed to the topic
+     */
+    @Param({"100", "5000"})
+    public int sessions;
+
+    private BroadcastEngine engine;
+    private BroadcastMessage message;
+
+    private static final BroadcastConnection IMMEDIATE = new BroadcastConnection() {
+        @Override
+        public void sendText(ByteBuffer payload, Completion completion) {
+            completion.succeeded();
+        }
+
+        @Override
+        public void close(int statusCode, String reason) {
+        }
+
+        @Override
+        public void abort() {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        engine = new BroadcastEngine(BroadcastEngine.SLOW_CLIENT_POLICY.DISCONNECT, 256, 1 << 20);
+        for (int i = 0; i < sessions; i++) {
+            engine.register("session-" + i, IMMEDIATE);
+            engine.subscribe("session-" + i, "class:FS21");
+            // Half of them also see the teacher, broadcasting to both topics must not send twice
+            if (i % 2 == 0) {
+                engine.subscribe("session-" + i, "teacher:MUS");
+            }
+        }
+        message = BroadcastMessage.text("{\"type\":\"change\",\"v\":1,\"op\":\"update\",\"id\":\"s1\",\"topics\":[\"class:FS21\"],\"data\":{\"room\":\"101\"}}");
+    }
+
+    @Benchmark
+    public int broadcastTopic() {
+        return engine.broadcast("class:FS21", message);
+    }
+
+    @Benchmark
+    public int broadcastTopics() {
+        return engine.broadcast(List.of("class:FS21", "teacher:MUS"), message);
+    }
+
+    /**
+     * Including the serialization of the message, which happens once per broadcast
+     */
+    @Benchmark
+    public int serializeAndBroadcast() {
+        return engine.broadcast("class:FS21", BroadcastMessage.text("{\"type\":\"change\",\"v\":1,\"op\":\"remove\",\"id\":\"s2\"}"));
+    }
+}
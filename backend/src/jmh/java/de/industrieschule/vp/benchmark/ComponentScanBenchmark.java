@@ -0,0 +1,42 @@
+package de.industrieschule.vp.benchmark;
+
+import de.industrieschule.vp.core.autodiscovery.EndpointClassDiscovery;
+import de.industrieschule.vp.core.autodiscovery.annotations.MultiEndpoint;
+import de.industrieschule.vp.core.autodiscovery.annotations.RESTEndpoint;
+import de.industrieschule.vp.core.autodiscovery.index.ComponentScanner;
+import de.industrieschule.vp.core.autodiscovery.index.IndexedComponentScanner;
+import de.industrieschule.vp.core.autodiscovery.index.ReflectionsComponentScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the startup component lookup using the compile-time index with scanning the classpath via Reflections.
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComponentScanBenchmark {
+
+    @Param({"index", "reflections"})
+    public String scanner;
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        ComponentScanner componentScanner = switch (scanner) {
+            case "index" -> IndexedComponentScanner.load(EndpointClassDiscovery.packagePrefix);
+            case "reflections" -> new ReflectionsComponentScanner(EndpointClassDiscovery.packagePrefix);
+            default -> throw new IllegalArgumentException("Unknown scanner " + scanner);
+        };
+
+        blackhole.consume(componentScanner.getTypesAnnotatedWith(RESTEndpoint.class));
+        blackhole.consume(componentScanner.getTypesAnnotatedWith(MultiEndpoint.class));
+        blackhole.consume(componentScanner.getGraphQLSchemaResources());
+    }
+}
@@ -0,0 +1,52 @@
+package de.industrieschule.vp.benchmark;
+
+import de.industrieschule.vp.core.metrics.EndpointMetrics;
+import de.industrieschule.vp.core.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of recording a call in {@link EndpointMetrics}, with one and with many threads recording
+ * into the same endpoint. Run with {@code -prof gc} to check that recording doesn't allocate.
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndpointMetricsBenchmark {
+
+    private MetricsRegistry registry;
+    private EndpointMetrics metrics;
+
+    @Setup
+    public void setup() {
+        registry = new MetricsRegistry();
+        metrics = registry.endpoint(MetricsRegistry.TYPE_REST, EndpointMetricsBenchmark.class, "GET", "/api/benchmark");
+    }
+
+    @Benchmark
+    public void record() {
+        metrics.stop(metrics.start(), false);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void recordContended() {
+        metrics.stop(metrics.start(), false);
+    }
+
+    /**
+     * Rendering of all metrics, as done on every Prometheus scrape
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String scrape() {
+        return registry.scrape();
+    }
+}
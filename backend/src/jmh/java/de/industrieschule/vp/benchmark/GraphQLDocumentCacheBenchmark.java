@@ -0,0 +1,62 @@
+package de.industrieschule.vp.benchmark;
+
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLDocumentCache;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.DataFetcher;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares executing the same query with and without {@link GraphQLDocumentCache}. Resolvers are trivial, so the
+ * difference is the parsing and validation cost.
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphQLDocumentCacheBenchmark {
+
+    private static final String QUERY = "query Hello($name: String!) { a: hello(name: $name) b: hello(name: \"b\") c: hello(name: \"c\") }";
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private GraphQL graphQL;
+    private ExecutionInput executionInput;
+
+    @Setup
+    public void setup() throws Exception {
+        DataFetcher<String> hello = environment -> "Hello " + environment.getArgument("name") + "!";
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", typeWiring -> typeWiring.dataFetcher("hello", hello))
+                .build();
+
+        GraphQL.Builder builder = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(
+                GraphQLEndpointBenchmark.readSchema(), wiring));
+        if (cached) {
+            builder.preparsedDocumentProvider(new GraphQLDocumentCache(16));
+        }
+        graphQL = builder.build();
+
+        executionInput = ExecutionInput.newExecutionInput()
+                .query(QUERY)
+                .operationName("Hello")
+                .variables(Map.of("name", "Benchmark"))
+                .build();
+    }
+
+    @Benchmark
+    public ExecutionResult execute() {
+        return graphQL.execute(executionInput);
+    }
+}
@@ -0,0 +1,113 @@
+package de.industrieschule.vp.benchmark;
+
+import de.industrieschule.vp.benchmark.support.StubContext;
+import de.industrieschule.vp.core.autodiscovery.GraphQLEndpoint;
+import de.industrieschule.vp.core.autodiscovery.dispatcher.GraphQLDispatcher;
+import de.industrieschule.vp.core.autodiscovery.graphql.DataLoaderRegistryFactory;
+import de.industrieschule.vp.core.autodiscovery.graphql.PersistedQueryStore;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.metrics.MetricsRegistry;
+import de.industrieschule.vp.handler.hello.HelloMultiEndpoint;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import io.javalin.http.HandlerType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link GraphQLEndpoint#handle} for representative requests: body decoding, (cached) parsing and
+ * validation, execution on the resolver threads and streaming the result.
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphQLEndpointBenchmark {
+
+    private static final String ALIASES_QUERY = "{ a: hello(name: \\\"a\\\") b: hello(name: \\\"b\\\") c: hello(name: \\\"c\\\") d: hello(name: \\\"d\\\") }";
+    private static final String PERSISTED_QUERY = "query Hello($name: String!) { hello(name: $name) }";
+
+    /**
+     * <ul>
+     *     <li>simple: one field with an inline argument</li>
+     *     <li>variables: named operation with variables</li>
+     *     <li>aliases: four fields resolved concurrently</li>
+     *     <li>persisted: hash-only request of an already registered persisted query</li>
+     *     <li>traced: like aliases, but with {@code extensions.tracing} (requires DEBUG or the tracing token)</li>
+     * </ul>
+     */
+    @Param({"simple", "variables", "aliases", "persisted", "traced"})
+    public String request;
+
+    private GraphQLEndpoint endpoint;
+    private StubContext context;
+
+    @Setup
+    public void setup() throws Exception {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        TypeDefinitionRegistry schema = readSchema();
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", typeWiring -> typeWiring.dataFetcher("hello", new GraphQLDispatcher<>(new HelloMultiEndpoint())))
+                .build();
+        endpoint = new GraphQLEndpoint(schema, wiring, new DataLoaderRegistryFactory(), metricsRegistry, "/api/graphql");
+
+        String persistedQueryHash = PersistedQueryStore.sha256(PERSISTED_QUERY);
+        String persistedQueryExtension = "\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\"" + persistedQueryHash + "\"}}";
+
+        String body = switch (request) {
+            case "simple" -> "{\"query\":\"{ hello(name: \\\"Benchmark\\\") }\"}";
+            case "variables" -> "{\"query\":\"" + PERSISTED_QUERY + "\",\"operationName\":\"Hello\",\"variables\":{\"name\":\"Benchmark\"}}";
+            case "aliases" -> "{\"query\":\"" + ALIASES_QUERY + "\"}";
+            case "traced" -> "{\"query\":\"" + ALIASES_QUERY + "\",\"extensions\":{\"tracing\":true}}";
+            case "persisted" -> {
+                // Register the query once, like a client does on the first request
+                StubContext registration = new StubContext(HandlerType.POST, null, Map.of(),
+                        ("{\"query\":\"" + PERSISTED_QUERY + "\",\"variables\":{\"name\":\"Benchmark\"}," + persistedQueryExtension + "}").getBytes(StandardCharsets.UTF_8));
+                endpoint.handle(registration);
+                yield "{\"variables\":{\"name\":\"Benchmark\"}," + persistedQueryExtension + "}";
+            }
+            default -> throw new IllegalArgumentException("Unknown request " + request);
+        };
+        context = new StubContext(HandlerType.POST, null, Map.of(), body.getBytes(StandardCharsets.UTF_8))
+                .withRequestHeader(GraphQLEndpoint.TRACING_TOKEN_HEADER, Config.GRAPHQL_TRACING_TOKEN);
+
+        // Fail early instead of measuring error responses
+        endpoint.handle(context);
+        String response = context.responseBodyAsString();
+        if (response.contains("\"errors\"")) {
+            throw new IllegalStateException("Benchmark request \"" + request + "\" failed: " + response);
+        }
+    }
+
+    @Benchmark
+    public int handle() throws Exception {
+        context.reset();
+        endpoint.handle(context);
+        return context.responseSize();
+    }
+
+    /**
+     * Reads the schema files, like {@code EndpointClassDiscovery} does
+     */
+    static TypeDefinitionRegistry readSchema() throws IOException {
+        return new SchemaParser().parse(readResource("/graphql/schema.graphql"))
+                .merge(new SchemaParser().parse(readResource("/graphql/handler/plan.graphql")));
+    }
+
+    static String readResource(String name) throws IOException {
+        try (InputStream inputStream = Objects.requireNonNull(GraphQLEndpointBenchmark.class.getResourceAsStream(name), name)) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.industrieschule.vp.benchmark;
+
+import de.industrieschule.vp.core.utilities.ISO8601;
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversions of {@link ISO8601}.
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ISO8601Benchmark {
+
+    private Calendar calendar;
+    private LocalDate localDate;
+
+    @Setup
+    public void setup() {
+        calendar = new GregorianCalendar(TimeZone.getTimeZone("Europe/Berlin"));
+        calendar.set(2024, Calendar.MARCH, 1, 13, 0, 0);
+        localDate = LocalDate.of(2024, 3, 1);
+    }
+
+    @Benchmark
+    public String fromCalendar() {
+        return ISO8601.fromCalendar(calendar);
+    }
+
+    @Benchmark
+    public Calendar toCalendar() throws ParseException {
+        return ISO8601.toCalendar("2024-03-01T13:00:00+01:00");
+    }
+
+    @Benchmark
+    public Calendar toCalendarUtc() throws ParseException {
+        return ISO8601.toCalendar("2024-03-01T12:00:00Z");
+    }
+
+    @Benchmark
+    public String now() {
+        return ISO8601.now();
+    }
+
+    @Benchmark
+    public String fromLocalDate() {
+        return ISO8601.fromLocalDate(localDate);
+    }
+
+    @Benchmark
+    public LocalDate toLocalDate() {
+        return ISO8601.toLocalDate("2024-03-01");
+    }
+
+    @Benchmark
+    public ZonedDateTime toZonedDateTime() {
+        return ISO8601.toZonedDateTime("2024-03-01T13:00:00+01:00");
+    }
+}
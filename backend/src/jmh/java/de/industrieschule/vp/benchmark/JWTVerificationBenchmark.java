@@ -0,0 +1,50 @@
+package de.industrieschule.vp.benchmark;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.utilities.JWTTokenUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the verification of a JWT: the full ECDSA check, that ran on every request before, against
+ * {@link JWTTokenUtil#decodeJWT(String)} with a token it verified before. Uses the key pair of the data directory,
+ * one is generated if there's none.
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JWTVerificationBenchmark {
+
+    private String token;
+    private JWTVerifier verifier;
+
+    @Setup
+    public void setup() throws Exception {
+        JWTTokenUtil.initialize();
+        token = JWTTokenUtil.generateNewJWTForUser("benchmark-session", "benchmark-refresh-token").getJwtToken();
+        verifier = JWT.require(Algorithm.ECDSA256(JWTTokenUtil.jwtPublicKey, null))
+                .withIssuer(Config.JWT_ISSUER)
+                .build();
+        JWTTokenUtil.decodeJWT(token);
+    }
+
+    @Benchmark
+    public DecodedJWT verifySignature() {
+        return verifier.verify(token);
+    }
+
+    @Benchmark
+    public DecodedJWT decodeVerified() {
+        return JWTTokenUtil.decodeJWT(token);
+    }
+}
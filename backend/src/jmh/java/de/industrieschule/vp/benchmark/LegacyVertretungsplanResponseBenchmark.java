@@ -0,0 +1,82 @@
+package de.industrieschule.vp.benchmark;
+
+import com.google.gson.JsonObject;
+import de.industrieschule.vp.legacy.LegacyVertretungsplanResponse;
+import de.industrieschule.vp.legacy.LegacyVertretungsplanSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the legacy app response. {@code LegacyVertretungsplanEndpoint} renders it once per plan version
+ * into a {@link LegacyVertretungsplanSnapshot}.
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LegacyVertretungsplanResponseBenchmark {
+
+    /**
+     * Number of days in the plan
+     */
+    @Param({"1", "5"})
+    public int days;
+
+    /**
+     * Number of lessons per day
+     */
+    @Param({"1", "40"})
+    public int lessonsPerDay;
+
+    private LegacyVertretungsplanResponse response;
+
+    @Setup
+    public void setup() {
+        response = new LegacyVertretungsplanResponse();
+        for (int day = 0; day < days; day++) {
+            LegacyVertretungsplanResponse.VertretungsplanDay vertretungsplanDay = new LegacyVertretungsplanResponse.VertretungsplanDay(
+                    "Vertretungsplan für Tag " + (day + 1),
+                    "Änderungen vorbehalten",
+                    "A",
+                    String.format("%02d.03.", day + 1),
+                    new Date()
+            );
+            for (int lesson = 0; lesson < lessonsPerDay; lesson++) {
+                vertretungsplanDay.addLesson(new LegacyVertretungsplanResponse.VertretungsplanLesson(
+                        (lesson % 10 + 1) + ". Stunde",
+                        "Vertretung durch Hr. Mustermann, Raum " + (100 + lesson),
+                        "MUS",
+                        "FS" + (lesson % 5 + 1) + "1"
+                ));
+            }
+            response.addDay(vertretungsplanDay);
+        }
+    }
+
+    @Benchmark
+    public JsonObject generateVertretungsplan() {
+        return response.generateVertretungsplan();
+    }
+
+    /**
+     * Including the serialization, like the snapshot does for each variant
+     */
+    @Benchmark
+    public String generateVertretungsplanAsString() {
+        return response.generateVertretungsplan().toString();
+    }
+
+    /**
+     * Rendering all variants of a new plan version
+     */
+    @Benchmark
+    public LegacyVertretungsplanSnapshot renderSnapshot() {
+        return LegacyVertretungsplanSnapshot.render(1, response);
+    }
+}
@@ -0,0 +1,80 @@
+package de.industrieschule.vp.benchmark;
+
+import de.industrieschule.vp.benchmark.support.StubContext;
+import de.industrieschule.vp.core.autodiscovery.utility.Parameters;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import io.javalin.http.HandlerType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Parameters#getArgument} for REST (String values, converted) and GraphQL (already typed values).
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParametersBenchmark {
+
+    private Parameters restParameters;
+    private Parameters graphQLParameters;
+
+    @Setup
+    public void setup() {
+        StubContext context = new StubContext(HandlerType.GET, "lesson=4&factor=1.5&name=Benchmark&enabled=true",
+                Map.of("day", "12"), new byte[0]);
+        restParameters = new Parameters(context, null, Parameters.REQUEST_SOURCE.REST);
+
+        DataFetchingEnvironment environment = DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+                .arguments(Map.of("lesson", 4, "name", "Benchmark"))
+                .build();
+        graphQLParameters = new Parameters(null, environment, Parameters.REQUEST_SOURCE.GRAPH_QL);
+    }
+
+    @Benchmark
+    public Integer restQueryInteger() {
+        return restParameters.getArgument("lesson", Integer.class, Parameters.REST_ARGUMENT_TYPE.QUERY);
+    }
+
+    @Benchmark
+    public Double restQueryDouble() {
+        return restParameters.getArgument("factor", Double.class, Parameters.REST_ARGUMENT_TYPE.QUERY);
+    }
+
+    @Benchmark
+    public Boolean restQueryBoolean() {
+        return restParameters.getArgument("enabled", Boolean.class, Parameters.REST_ARGUMENT_TYPE.QUERY);
+    }
+
+    @Benchmark
+    public String restQueryString() {
+        return restParameters.getArgument("name", String.class, Parameters.REST_ARGUMENT_TYPE.QUERY);
+    }
+
+    @Benchmark
+    public String restQueryMissingWithDefault() {
+        return restParameters.getArgumentOrDefault("missing", "default", String.class, Parameters.REST_ARGUMENT_TYPE.QUERY);
+    }
+
+    @Benchmark
+    public Integer restPathInteger() {
+        return restParameters.getArgument("day", Integer.class, Parameters.REST_ARGUMENT_TYPE.PATH);
+    }
+
+    @Benchmark
+    public Integer graphQLInteger() {
+        return graphQLParameters.getArgument("lesson", Integer.class, null);
+    }
+
+    @Benchmark
+    public String graphQLString() {
+        return graphQLParameters.getArgument("name", String.class, null);
+    }
+}
@@ -0,0 +1,127 @@
+package de.industrieschule.vp.benchmark;
+
+import de.industrieschule.vp.benchmark.support.StubContext;
+import de.industrieschule.vp.core.autodiscovery.dispatcher.RESTDispatcher;
+import de.industrieschule.vp.core.autodiscovery.graphql.DataLoaderRegistryFactory;
+import de.industrieschule.vp.core.autodiscovery.templates.RESTEndpointTemplate;
+import de.industrieschule.vp.core.autodiscovery.utility.Parameters;
+import de.industrieschule.vp.core.cache.ResponseCache;
+import de.industrieschule.vp.core.metrics.MetricsRegistry;
+import de.industrieschule.vp.core.responseTempates.SimpleStatusResponse;
+import de.industrieschule.vp.handler.hello.HelloMultiEndpoint;
+import io.javalin.http.HandlerType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RESTDispatcher#handle} including argument lookup and JSON serialization of the response.
+ *
+ * @author Moritz Hofmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RESTDispatcherBenchmark {
+
+    private RESTDispatcher helloDispatcher;
+    private RESTDispatcher objectDispatcher;
+    private RESTDispatcher noContentDispatcher;
+    private RESTDispatcher cachedObjectDispatcher;
+
+    private StubContext helloContext;
+    private StubContext objectContext;
+    private StubContext noContentContext;
+    private StubContext notModifiedContext;
+
+    @Setup
+    public void setup() {
+        DataLoaderRegistryFactory dataLoaderRegistryFactory = new DataLoaderRegistryFactory();
+        // Metrics are recorded like in production, so their overhead is part of the results
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+        helloDispatcher = new RESTDispatcher(new HelloMultiEndpoint(), dataLoaderRegistryFactory,
+                metricsRegistry.endpoint(MetricsRegistry.TYPE_REST, HelloMultiEndpoint.class, "GET", "/api/hello"));
+        RESTEndpointTemplate<SimpleStatusResponse> lessonEndpoint = new RESTEndpointTemplate<>() {
+            @Override
+            public SimpleStatusResponse handleRequest(Parameters params) {
+                return new SimpleStatusResponse("Lesson " + params.getArgument("lesson", Integer.class, Parameters.REST_ARGUMENT_TYPE.PATH) + " cancelled");
+            }
+        };
+        objectDispatcher = new RESTDispatcher(lessonEndpoint, dataLoaderRegistryFactory,
+                metricsRegistry.endpoint(MetricsRegistry.TYPE_REST, RESTDispatcherBenchmark.class, "GET", "/api/lesson/{lesson}"));
+        cachedObjectDispatcher = new RESTDispatcher(lessonEndpoint, dataLoaderRegistryFactory,
+                metricsRegistry.endpoint(MetricsRegistry.TYPE_REST, RESTDispatcherBenchmark.class, "GET", "/api/cached/lesson/{lesson}"),
+                new ResponseCache(100, 100_000), new ResponseCache.Policy(RESTDispatcherBenchmark.class, TimeUnit.HOURS.toNanos(1), new String[]{"lesson"}));
+        noContentDispatcher = new RESTDispatcher(new RESTEndpointTemplate<Object>() {
+            @Override
+            public Object handleRequest(Parameters params) {
+                return null;
+            }
+        }, dataLoaderRegistryFactory, metricsRegistry.endpoint(MetricsRegistry.TYPE_REST, RESTDispatcherBenchmark.class, "GET", "/api/nothing"));
+
+        helloContext = new StubContext(HandlerType.GET, "name=Benchmark", Map.of(), new byte[0]);
+        objectContext = new StubContext(HandlerType.GET, null, Map.of("lesson", "3"), new byte[0]);
+        noContentContext = new StubContext(HandlerType.GET, null, Map.of(), new byte[0]);
+
+        // Poll of a client, that already has the current response
+        StubContext firstRequest = new StubContext(HandlerType.GET, null, Map.of("lesson", "3"), new byte[0]);
+        cachedObjectDispatcher.handle(firstRequest);
+        notModifiedContext = new StubContext(HandlerType.GET, null, Map.of("lesson", "3"), new byte[0])
+                .withRequestHeader("If-None-Match", firstRequest.res().getHeader("ETag"));
+    }
+
+    /**
+     * String result, argument from the query string
+     */
+    @Benchmark
+    public int helloString() throws Exception {
+        helloContext.reset();
+        helloDispatcher.handle(helloContext);
+        return helloContext.responseSize();
+    }
+
+    /**
+     * Object result serialized by a generated JSON adapter, argument from the path
+     */
+    @Benchmark
+    public int statusObject() throws Exception {
+        objectContext.reset();
+        objectDispatcher.handle(objectContext);
+        return objectContext.responseSize();
+    }
+
+    /**
+     * Same as {@link #statusObject()}, but answered from the response cache
+     */
+    @Benchmark
+    public int cachedStatusObject() throws Exception {
+        objectContext.reset();
+        cachedObjectDispatcher.handle(objectContext);
+        return objectContext.responseSize();
+    }
+
+    /**
+     * Cached response with a matching "If-None-Match" header, answered with 304 (Not Modified)
+     */
+    @Benchmark
+    public int cachedNotModified() throws Exception {
+        notModifiedContext.reset();
+        cachedObjectDispatcher.handle(notModifiedContext);
+        return notModifiedContext.statusCode();
+    }
+
+    /**
+     * Null result (204 No Content), measures the dispatch overhead only
+     */
+    @Benchmark
+    public int noContent() throws Exception {
+        noContentContext.reset();
+        noContentDispatcher.handle(noContentContext);
+        return noContentContext.responseSize();
+    }
+}
@@ -0,0 +1,44 @@
+package de.industrieschule.vp.benchmark.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Records latencies of one client, so recording doesn't need any synchronization.
+ * All samples are kept, which makes the percentiles exact (30 s at 50k requests/s are about 12 MB).
+ *
+ * @author Moritz Hofmann
+ */
+final class LatencyRecorder {
+
+    private long[] latenciesNanos = new long[1024];
+    private int count = 0;
+    private long errors = 0;
+
+    void record(long latencyNanos, boolean success) {
+        if (count == latenciesNanos.length) {
+            latenciesNanos = Arrays.copyOf(latenciesNanos, count * 2);
+        }
+        latenciesNanos[count++] = latencyNanos;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    long errors() {
+        return errors;
+    }
+
+    /**
+     * Copies the samples of this recorder into the given array
+     *
+     * @param target Target array
+     * @param offset Position of the first sample in the target array
+     */
+    void copyTo(long[] target, int offset) {
+        System.arraycopy(latenciesNanos, 0, target, offset, count);
+    }
+}
@@ -0,0 +1,19 @@
+package de.industrieschule.vp.benchmark.loadtest;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A single endpoint under load.
+ *
+ * @param name      Name used in the report, e.g. "GET /api/hello"
+ * @param scenario  Scenario this target belongs to
+ * @param request   Creates the request, called for every request (e.g. to include time-based hashes)
+ * @param isSuccess Checks the response, everything else than a 2xx status is always counted as error
+ * @author Moritz Hofmann
+ */
+record LoadTarget(String name, LoadTestOptions.Scenario scenario, Supplier<HttpRequest> request,
+                  Predicate<HttpResponse<String>> isSuccess) {
+}
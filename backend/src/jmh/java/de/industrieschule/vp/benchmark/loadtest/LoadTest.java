@@ -0,0 +1,193 @@
+package de.industrieschule.vp.benchmark.loadtest;
+
+import de.industrieschule.vp.core.Main;
+import de.industrieschule.vp.core.autodiscovery.dispatcher.RESTDispatcher;
+import de.industrieschule.vp.core.config.Config;
+import de.morihofi.iscvplan.vertretungsplan.utlity.HashGenerator;
+import io.javalin.Javalin;
+import io.javalin.http.HandlerType;
+import io.javalin.router.Endpoint;
+import io.javalin.router.ParsedEndpoint;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test, that starts the application in-process (see {@link Main#start()}) and sends requests over
+ * HTTP to the REST routes found by the autodiscovery, the GraphQL endpoint and the legacy app endpoint.
+ * <p>
+ * Every client sends its next request as soon as the previous one is answered (closed model), so the reported
+ * latencies don't include any queueing in front of the server. Run it with {@code mvn -P benchmark verify -Dloadtest},
+ * the pom sets up an in-memory H2 database. See {@link LoadTestOptions} for the options.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        Javalin app = Main.start();
+        try {
+            String baseUrl = "http://localhost:" + app.port();
+            List<LoadTarget> targets = discoverTargets(app, baseUrl, options);
+            if (targets.isEmpty()) {
+                throw new IllegalStateException("No endpoints to put under load, check the scenarios and the configuration");
+            }
+            for (LoadTarget target : targets) {
+                System.out.println("Target: " + target.name());
+            }
+
+            try (ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient httpClient = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .executor(clientExecutor)
+                        .build();
+
+                if (!options.warmup().isZero()) {
+                    System.out.println("Warmup for " + options.warmup().toSeconds() + " s ...");
+                    run(httpClient, targets, options.concurrency(), options.warmup());
+                }
+
+                System.out.println("Measuring for " + options.duration().toSeconds() + " s with " + options.concurrency() + " concurrent clients ...");
+                List<List<LatencyRecorder>> recorders = run(httpClient, targets, options.concurrency(), options.duration());
+
+                List<LoadTestReport.Result> results = new ArrayList<>();
+                List<LatencyRecorder> allRecorders = new ArrayList<>();
+                for (int i = 0; i < targets.size(); i++) {
+                    results.add(LoadTestReport.aggregate(targets.get(i).name(), recorders.get(i), options.duration()));
+                    allRecorders.addAll(recorders.get(i));
+                }
+                LoadTestReport report = new LoadTestReport(
+                        Config.SERVER_THREAD_MODE.name(),
+                        options.concurrency(),
+                        options.duration().toSeconds(),
+                        results,
+                        LoadTestReport.aggregate("Total", allRecorders, options.duration())
+                );
+
+                System.out.println();
+                System.out.print(report.toTable());
+                report.writeJson(options.output());
+                System.out.println();
+                System.out.println("JSON report written to " + options.output().toAbsolutePath());
+            }
+        } finally {
+            app.stop();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Sends requests with the given number of clients until the duration is over
+     *
+     * @return Recorders per target (outer list) and client (inner list)
+     */
+    private static List<List<LatencyRecorder>> run(HttpClient httpClient, List<LoadTarget> targets, int concurrency, Duration duration) throws InterruptedException {
+        List<List<LatencyRecorder>> recorders = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            List<LatencyRecorder> targetRecorders = new ArrayList<>();
+            for (int client = 0; client < concurrency; client++) {
+                targetRecorders.add(new LatencyRecorder());
+            }
+            recorders.add(targetRecorders);
+        }
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < concurrency; client++) {
+                int clientIndex = client;
+                clients.submit(() -> {
+                    // Clients start at different targets, so all targets get the same load from the beginning
+                    int targetIndex = clientIndex % targets.size();
+                    while (System.nanoTime() < deadline) {
+                        LoadTarget target = targets.get(targetIndex);
+                        long start = System.nanoTime();
+                        boolean success;
+                        try {
+                            HttpResponse<String> response = httpClient.send(target.request().get(), HttpResponse.BodyHandlers.ofString());
+                            success = response.statusCode() >= 200 && response.statusCode() < 300 && target.isSuccess().test(response);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        } catch (Exception e) {
+                            success = false;
+                        }
+                        recorders.get(targetIndex).get(clientIndex).record(System.nanoTime() - start, success);
+                        targetIndex = (targetIndex + 1) % targets.size();
+                    }
+                });
+            }
+            clients.shutdown();
+            if (!clients.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Clients didn't finish in time");
+            }
+        }
+        return recorders;
+    }
+
+    private static List<LoadTarget> discoverTargets(Javalin app, String baseUrl, LoadTestOptions options) {
+        List<LoadTarget> targets = new ArrayList<>();
+
+        if (options.scenarios().contains(LoadTestOptions.Scenario.REST)) {
+            // All GET routes registered by the autodiscovery, that don't need path parameters
+            for (ParsedEndpoint parsedEndpoint : app.unsafeConfig().pvt.internalRouter.allHttpHandlers()) {
+                Endpoint endpoint = parsedEndpoint.getEndpoint();
+                String path = endpoint.getPath();
+                if (endpoint.getMethod() != HandlerType.GET || !(endpoint.getHandler() instanceof RESTDispatcher)
+                        || path.contains("{") || path.contains("<")) {
+                    continue;
+                }
+                URI uri = URI.create(baseUrl + path + (options.restQuery().isEmpty() ? "" : "?" + options.restQuery()));
+                targets.add(new LoadTarget("GET " + path, LoadTestOptions.Scenario.REST,
+                        () -> HttpRequest.newBuilder(uri).GET().build(),
+                        response -> true));
+            }
+            if (targets.isEmpty()) {
+                System.out.println("No REST GET routes without path parameters found (routes with debugOnly=true need DEBUG=true)");
+            }
+        }
+
+        if (options.scenarios().contains(LoadTestOptions.Scenario.GRAPHQL)) {
+            String path = Config.API_PREFIX_DIR + "/graphql";
+            URI uri = URI.create(baseUrl + path);
+            targets.add(new LoadTarget("POST " + path, LoadTestOptions.Scenario.GRAPHQL,
+                    () -> HttpRequest.newBuilder(uri)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(options.graphQLBody()))
+                            .build(),
+                    response -> !response.body().contains("\"errors\"")));
+        }
+
+        if (options.scenarios().contains(LoadTestOptions.Scenario.LEGACY)) {
+            if (Config.API_LEGACYAPP_ENABLE) {
+                String path = "/App/json_transfer.php";
+                targets.add(new LoadTarget("GET " + path, LoadTestOptions.Scenario.LEGACY,
+                        // The secure hash depends on the current time, so it's computed for every request like the app does
+                        () -> HttpRequest.newBuilder(URI.create(baseUrl + path
+                                + "?ANZ=1"
+                                + "&SEC=" + URLEncoder.encode(HashGenerator.generateSecureHash(), StandardCharsets.UTF_8)
+                                + "&PW=" + URLEncoder.encode(HashGenerator.generatePasswordHash(Config.LEGACY_APP_PASSWORD), StandardCharsets.UTF_8)))
+                                .GET()
+                                .build(),
+                        response -> !response.body().contains("\"ERROR\"")));
+            } else {
+                System.out.println("Legacy endpoint is disabled (API_LEGACYAPP_ENABLE=false), skipping it");
+            }
+        }
+
+        return targets;
+    }
+}
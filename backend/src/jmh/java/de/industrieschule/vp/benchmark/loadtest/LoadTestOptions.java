@@ -0,0 +1,72 @@
+package de.industrieschule.vp.benchmark.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Command line options of the {@link LoadTest}, passed as {@code --name=value}.
+ *
+ * @param concurrency Number of concurrent clients, each sends its next request as soon as the previous one is answered
+ * @param warmup      Duration of the warmup, results are discarded
+ * @param duration    Duration of the measurement
+ * @param scenarios   Endpoints to put under load
+ * @param restQuery   Query string appended to every REST route
+ * @param graphQLBody Request body sent to the GraphQL endpoint
+ * @param output      File the JSON report is written to
+ * @author Moritz Hofmann
+ */
+public record LoadTestOptions(int concurrency, Duration warmup, Duration duration, Set<Scenario> scenarios,
+                              String restQuery, String graphQLBody, Path output) {
+
+    /**
+     * Endpoint groups, that can be put under load
+     */
+    public enum Scenario {
+        REST, GRAPHQL, LEGACY
+    }
+
+    public static LoadTestOptions parse(String[] args) {
+        int concurrency = 64;
+        Duration warmup = Duration.ofSeconds(10);
+        Duration duration = Duration.ofSeconds(30);
+        Set<Scenario> scenarios = EnumSet.allOf(Scenario.class);
+        String restQuery = "name=LoadTest";
+        String graphQLBody = "{\"query\":\"{ hello(name: \\\"LoadTest\\\") }\"}";
+        Path output = Path.of("target", "loadtest-result.json");
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Invalid argument \"" + arg + "\", expected --name=value");
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+
+            switch (name) {
+                case "concurrency" -> concurrency = Integer.parseInt(value);
+                case "warmup" -> warmup = Duration.ofSeconds(Long.parseLong(value));
+                case "duration" -> duration = Duration.ofSeconds(Long.parseLong(value));
+                case "scenarios" -> {
+                    scenarios = EnumSet.noneOf(Scenario.class);
+                    for (String scenario : value.split(",")) {
+                        scenarios.add(Scenario.valueOf(scenario.trim().toUpperCase(Locale.ROOT)));
+                    }
+                }
+                case "rest-query" -> restQuery = value;
+                case "graphql-body" -> graphQLBody = value;
+                case "output" -> output = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+        if (duration.isZero() || duration.isNegative()) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+        return new LoadTestOptions(concurrency, warmup, duration, scenarios, restQuery, graphQLBody, output);
+    }
+}
@@ -0,0 +1,126 @@
+package de.industrieschule.vp.benchmark.loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Aggregates the recorded latencies and prints them as table or writes them as JSON.
+ *
+ * @param threadMode Request execution mode of the server (see {@code SERVER_THREAD_MODE})
+ * @param concurrency Number of concurrent clients
+ * @param durationSeconds Duration of the measurement
+ * @param targets Results per endpoint
+ * @param total Results over all endpoints
+ * @author Moritz Hofmann
+ */
+record LoadTestReport(String threadMode, int concurrency, long durationSeconds, List<Result> targets, Result total) {
+
+    /**
+     * Results of one endpoint (or all endpoints), latencies in milliseconds
+     */
+    record Result(String name, long requests, long errors, double errorRate, double throughput,
+                  double p50, double p90, double p99, double p999, double max) {
+    }
+
+    /**
+     * Merges the recorders of all clients and computes the percentiles
+     *
+     * @param name      Name of the result
+     * @param recorders Recorders of all clients for this endpoint
+     * @param measured  Measured duration, used to compute the throughput
+     * @return Aggregated result
+     */
+    static Result aggregate(String name, List<LatencyRecorder> recorders, Duration measured) {
+        int count = recorders.stream().mapToInt(LatencyRecorder::count).sum();
+        long errors = recorders.stream().mapToLong(LatencyRecorder::errors).sum();
+
+        long[] latencies = new long[count];
+        int offset = 0;
+        for (LatencyRecorder recorder : recorders) {
+            recorder.copyTo(latencies, offset);
+            offset += recorder.count();
+        }
+        Arrays.sort(latencies);
+
+        double seconds = measured.toNanos() / 1_000_000_000d;
+        return new Result(
+                name,
+                count,
+                errors,
+                count == 0 ? 0 : (double) errors / count,
+                count / seconds,
+                percentile(latencies, 0.50),
+                percentile(latencies, 0.90),
+                percentile(latencies, 0.99),
+                percentile(latencies, 0.999),
+                count == 0 ? 0 : toMillis(latencies[count - 1])
+        );
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return toMillis(sortedLatencies[Math.max(index, 0)]);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+    /**
+     * @return The results formatted as text table
+     */
+    String toTable() {
+        String format = "%-45s %10s %8s %7s %10s %9s %9s %9s %9s %9s%n";
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.ROOT, "Thread mode: %s, concurrency: %d, duration: %d s%n%n", threadMode, concurrency, durationSeconds));
+        table.append(String.format(Locale.ROOT, format, "Endpoint", "Requests", "Errors", "Error%", "Req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Result result : targets) {
+            appendRow(table, format, result);
+        }
+        appendRow(table, format, total);
+        return table.toString();
+    }
+
+    private static void appendRow(StringBuilder table, String format, Result result) {
+        table.append(String.format(Locale.ROOT, format,
+                result.name(),
+                result.requests(),
+                result.errors(),
+                String.format(Locale.ROOT, "%.2f", result.errorRate() * 100),
+                String.format(Locale.ROOT, "%.1f", result.throughput()),
+                String.format(Locale.ROOT, "%.2f", result.p50()),
+                String.format(Locale.ROOT, "%.2f", result.p90()),
+                String.format(Locale.ROOT, "%.2f", result.p99()),
+                String.format(Locale.ROOT, "%.2f", result.p999()),
+                String.format(Locale.ROOT, "%.2f", result.max())));
+    }
+
+    /**
+     * Writes the report as JSON
+     *
+     * @param file Target file, parent directories are created
+     * @throws IOException If the file can't be written
+     */
+    void writeJson(Path file) throws IOException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            gson.toJson(this, writer);
+        }
+    }
+}
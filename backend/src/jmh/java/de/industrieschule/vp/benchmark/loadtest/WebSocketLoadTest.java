@@ -0,0 +1,352 @@
+package de.industrieschule.vp.benchmark.loadtest;
+
+import de.industrieschule.vp.core.Main;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.plan.PlanChange;
+import de.industrieschule.vp.core.plan.PlanChangeFeed;
+import io.javalin.Javalin;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Connection scaling test of the plan change WebSocket: starts the application in-process (see {@link Main#start()}),
+ * opens many connections that all subscribe to one topic, broadcasts a change and checks that every connection receives
+ * it. Reports the heap and threads per connection and the WebSocket metrics of the server.
+ * <p>
+ * The clients are plain non-blocking sockets on one selector thread, so they add little to the measured heap. They
+ * answer the pings of the heartbeat, so the connections survive {@code --hold}. Run it with
+ * {@code mvn -P benchmark verify -Dwsloadtest}; the process needs two file descriptors per connection (raise
+ * {@code ulimit -n} above 40000 for 20000 connections). See {@link WebSocketLoadTestOptions} for the options.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class WebSocketLoadTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    /**
+     * One client connection and what it has seen so far
+     */
+    private static final class Client {
+        private final SocketChannel channel;
+        private byte[] pending = new byte[0];
+        private boolean subscribed;
+        private boolean received;
+        private boolean closed;
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        WebSocketLoadTestOptions options = WebSocketLoadTestOptions.parse(args);
+
+        Javalin app = Main.start();
+        List<Client> clients = new ArrayList<>();
+        boolean success = false;
+        try (Selector selector = Selector.open()) {
+            InetSocketAddress address = new InetSocketAddress("localhost", app.port());
+            long heapBefore = usedHeapAfterGc();
+            int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            System.out.println("Opening " + options.connections() + " connections to " + options.path() + " ...");
+            long connectStart = System.nanoTime();
+            clients.addAll(connect(address, options));
+            long connectMs = (System.nanoTime() - connectStart) / 1_000_000;
+            for (Client client : clients) {
+                client.channel.configureBlocking(false);
+                client.channel.register(selector, SelectionKey.OP_READ, client);
+            }
+
+            // Messages sent with the handshake response are processed here as well
+            int subscribed = pump(selector, clients, "", client -> client.subscribed, TIMEOUT);
+            long heapConnected = usedHeapAfterGc();
+            int threadsConnected = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            String changeId = "loadtest-" + System.nanoTime();
+            long broadcastStart = System.nanoTime();
+            PlanChangeFeed.getInstance().publish(PlanChange.Operation.UPDATE, changeId, Set.of(options.topic()), Map.of("loadtest", true));
+            int received = pump(selector, clients, changeId, client -> client.received, TIMEOUT);
+            long broadcastMs = (System.nanoTime() - broadcastStart) / 1_000_000;
+
+            if (!options.hold().isZero()) {
+                System.out.println("Holding the connections for " + options.hold().toSeconds() + " s ...");
+                pump(selector, clients, changeId, client -> false, options.hold());
+            }
+            long open = clients.stream().filter(client -> !client.closed).count();
+
+            System.out.println();
+            System.out.printf("Connections opened:     %d / %d in %d ms%n", clients.size(), options.connections(), connectMs);
+            System.out.printf("Subscribed:             %d%n", subscribed);
+            System.out.printf("Broadcast received:     %d in %d ms%n", received, broadcastMs);
+            System.out.printf("Still open:             %d%n", open);
+            System.out.printf("Heap per connection:    %.1f KiB (server and client side)%n",
+                    (heapConnected - heapBefore) / 1024d / Math.max(1, clients.size()));
+            System.out.printf("Threads:                %d before, %d connected%n", threadsBefore, threadsConnected);
+            System.out.println();
+            printWebSocketMetrics(app);
+
+            success = clients.size() == options.connections() && subscribed == options.connections()
+                    && received == options.connections() && open == options.connections();
+            System.out.println(success ? "PASSED" : "FAILED");
+        } finally {
+            for (Client client : clients) {
+                try {
+                    client.channel.close();
+                } catch (IOException ignored) {
+                    // Closing anyway
+                }
+            }
+            app.stop();
+        }
+        System.exit(success ? 0 : 1);
+    }
+
+    /**
+     * Opens the connections with the given parallelism, each one subscribes to the topic right after the handshake
+     */
+    private static List<Client> connect(InetSocketAddress address, WebSocketLoadTestOptions options) throws InterruptedException {
+        byte[] subscribe = ("{\"type\":\"subscribe\",\"topics\":[\"" + options.topic() + "\"]}").getBytes(StandardCharsets.UTF_8);
+        AtomicInteger remaining = new AtomicInteger(options.connections());
+        List<Future<List<Client>>> futures = new ArrayList<>();
+        try (ExecutorService connectors = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < options.parallelism(); i++) {
+                futures.add(connectors.submit(() -> {
+                    List<Client> opened = new ArrayList<>();
+                    while (remaining.getAndDecrement() > 0) {
+                        opened.add(open(address, options.path(), subscribe));
+                    }
+                    return opened;
+                }));
+            }
+        }
+        List<Client> clients = new ArrayList<>();
+        for (Future<List<Client>> future : futures) {
+            try {
+                clients.addAll(future.get());
+            } catch (Exception e) {
+                System.out.println("Connecting failed: " + e.getCause() + " (too many open files? raise ulimit -n)");
+            }
+        }
+        return clients;
+    }
+
+    private static Client open(InetSocketAddress address, String path, byte[] subscribe) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        byte[] key = new byte[16];
+        ThreadLocalRandom.current().nextBytes(key);
+        channel.write(ByteBuffer.wrap(("GET " + path + " HTTP/1.1\r\n"
+                + "Host: " + address.getHostString() + ":" + address.getPort() + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.US_ASCII)));
+
+        // Read the response headers, frames sent right after them are kept for the selector
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        int headerEnd;
+        while ((headerEnd = indexOfHeaderEnd(buffer)) < 0) {
+            if (!buffer.hasRemaining() || channel.read(buffer) < 0) {
+                channel.close();
+                throw new IOException("Handshake failed");
+            }
+        }
+        String status = new String(buffer.array(), 0, Math.min(headerEnd, 12), StandardCharsets.US_ASCII);
+        if (!status.endsWith("101")) {
+            channel.close();
+            throw new IOException("Handshake rejected: " + status);
+        }
+
+        Client client = new Client(channel);
+        client.pending = Arrays.copyOfRange(buffer.array(), headerEnd + 4, buffer.position());
+        writeFrame(channel, OPCODE_TEXT, subscribe);
+        return client;
+    }
+
+    private static int indexOfHeaderEnd(ByteBuffer buffer) {
+        byte[] array = buffer.array();
+        for (int i = 0; i + 3 < buffer.position(); i++) {
+            if (array[i] == '\r' && array[i + 1] == '\n' && array[i + 2] == '\r' && array[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads from all connections until every open one matches the condition or the time is up
+     *
+     * @param marker Text, that marks the broadcast change
+     * @return Number of connections matching the condition
+     */
+    private static int pump(Selector selector, List<Client> clients, String marker, Predicate<Client> done, Duration timeout) throws IOException {
+        for (Client client : clients) {
+            process(client, new byte[0], marker);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline && clients.stream().anyMatch(client -> !client.closed && !done.test(client))) {
+            selector.select(100);
+            for (SelectionKey key : selector.selectedKeys()) {
+                Client client = (Client) key.attachment();
+                buffer.clear();
+                int read;
+                try {
+                    read = client.channel.read(buffer);
+                } catch (IOException e) {
+                    read = -1;
+                }
+                if (read < 0) {
+                    client.closed = true;
+                    key.cancel();
+                } else if (read > 0) {
+                    process(client, Arrays.copyOf(buffer.array(), read), marker);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        return (int) clients.stream().filter(done).count();
+    }
+
+    /**
+     * Parses the complete frames (the server doesn't mask them), an incomplete one is kept for the next read
+     */
+    private static void process(Client client, byte[] data, String marker) throws IOException {
+        byte[] bytes = client.pending.length == 0 ? data : concat(client.pending, data);
+        int offset = 0;
+        while (bytes.length - offset >= 2) {
+            int opcode = bytes[offset] & 0x0F;
+            int length = bytes[offset + 1] & 0x7F;
+            int header = 2;
+            if (length == 126) {
+                if (bytes.length - offset < 4) {
+                    break;
+                }
+                length = ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+                header = 4;
+            } else if (length == 127) {
+                throw new IOException("Unexpected large frame");
+            }
+            if (bytes.length - offset < header + length) {
+                break;
+            }
+            byte[] payload = Arrays.copyOfRange(bytes, offset + header, offset + header + length);
+            offset += header + length;
+
+            switch (opcode) {
+                case OPCODE_TEXT -> {
+                    String text = new String(payload, StandardCharsets.UTF_8);
+                    if (text.contains("\"type\":\"subscribed\"")) {
+                        client.subscribed = true;
+                    }
+                    if (!marker.isEmpty() && text.contains(marker)) {
+                        client.received = true;
+                    }
+                }
+                case OPCODE_PING -> writeFrame(client.channel, OPCODE_PONG, payload);
+                case OPCODE_CLOSE -> client.closed = true;
+                default -> {
+                    // Nothing else is expected
+                }
+            }
+        }
+        client.pending = Arrays.copyOfRange(bytes, offset, bytes.length);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /**
+     * Writes a small masked client frame, non-blocking writes of a few bytes always complete
+     */
+    private static void writeFrame(SocketChannel channel, int opcode, byte[] payload) throws IOException {
+        if (payload.length > 125) {
+            throw new IllegalArgumentException("Only small frames are supported");
+        }
+        byte[] mask = new byte[4];
+        ThreadLocalRandom.current().nextBytes(mask);
+        ByteBuffer frame = ByteBuffer.allocate(6 + payload.length);
+        frame.put((byte) (0x80 | opcode));
+        frame.put((byte) (0x80 | payload.length));
+        frame.put(mask);
+        for (int i = 0; i < payload.length; i++) {
+            frame.put((byte) (payload[i] ^ mask[i % 4]));
+        }
+        frame.flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Prints the vp_websocket_ metrics of the server, if the metrics are enabled
+     */
+    private static void printWebSocketMetrics(Javalin app) {
+        if (!Config.METRICS_ENABLE) {
+            System.out.println("Metrics are disabled (METRICS_ENABLE=false)");
+            return;
+        }
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + Config.METRICS_PATH)).GET();
+            if (!Config.METRICS_TOKEN.isEmpty()) {
+                request.header("Authorization", "Bearer " + Config.METRICS_TOKEN);
+            }
+            HttpResponse<String> response = HttpClient.newHttpClient().send(request.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                // Not registered without METRICS_TOKEN outside of debug mode
+                System.out.println("Metrics not available: HTTP " + response.statusCode());
+                return;
+            }
+            response.body().lines()
+                    .filter(line -> line.startsWith("vp_websocket_"))
+                    .forEach(System.out::println);
+            System.out.println();
+        } catch (IOException e) {
+            System.out.println("Metrics not available: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.industrieschule.vp.benchmark.loadtest;
+
+import de.industrieschule.vp.core.config.Config;
+
+import java.time.Duration;
+
+/**
+ * Command line options of the {@link WebSocketLoadTest}, passed as {@code --name=value}.
+ *
+ * @param connections Number of WebSocket connections held open at the same time
+ * @param parallelism Number of connections opened concurrently
+ * @param path        Path of the plan change WebSocket
+ * @param topic       Topic every connection subscribes to
+ * @param hold        How long the connections are held open after the broadcast, e.g. longer than the ping interval
+ *                    to see the heartbeat at work
+ * @author Moritz Hofmann
+ */
+public record WebSocketLoadTestOptions(int connections, int parallelism, String path, String topic, Duration hold) {
+
+    public static WebSocketLoadTestOptions parse(String[] args) {
+        int connections = 20_000;
+        int parallelism = 64;
+        String path = Config.API_PREFIX_DIR + "/v1/plan/changes";
+        String topic = "class:LoadTest";
+        Duration hold = Duration.ZERO;
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Invalid argument \"" + arg + "\", expected --name=value");
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+
+            switch (name) {
+                case "connections" -> connections = Integer.parseInt(value);
+                case "parallelism" -> parallelism = Integer.parseInt(value);
+                case "path" -> path = value;
+                case "topic" -> topic = value;
+                case "hold" -> hold = Duration.ofSeconds(Long.parseLong(value));
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+
+        if (connections < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Connections and parallelism must be at least 1");
+        }
+        return new WebSocketLoadTestOptions(connections, parallelism, path, topic, hold);
+    }
+}
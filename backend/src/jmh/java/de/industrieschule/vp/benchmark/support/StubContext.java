@@ -0,0 +1,346 @@
+package de.industrieschule.vp.benchmark.support;
+
+import de.industrieschule.vp.core.json.JsonEngine;
+import io.javalin.config.Key;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.http.HttpStatus;
+import io.javalin.json.JsonMapper;
+import io.javalin.plugin.ContextPlugin;
+import io.javalin.security.RouteRole;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Javalin {@link Context} without a webserver, so handlers can be benchmarked in isolation.
+ * <p>
+ * The servlet request and response are backed by simple maps and byte buffers. Async results passed to
+ * {@link #future(Supplier)} are awaited directly, so the whole response is written when the handler returns.
+ * One instance can be reused for many invocations by calling {@link #reset()} before each one.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class StubContext implements Context {
+
+    private static final JsonMapper JSON_MAPPER = JsonEngine.javalinMapper();
+
+    private final HandlerType handlerType;
+    private final String queryString;
+    private final Map<String, String> pathParams;
+    private final byte[] requestBody;
+    private final Map<String, String> requestHeaders = new HashMap<>();
+
+    private final Map<String, String> responseHeaders = new HashMap<>();
+    private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream(1024);
+    private int status;
+    private InputStream resultStream;
+
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+
+    /**
+     * @param handlerType HTTP method
+     * @param queryString Query string without "?", may be null
+     * @param pathParams  Path parameters of the matched route
+     * @param requestBody Request body, may be empty
+     */
+    public StubContext(HandlerType handlerType, String queryString, Map<String, String> pathParams, byte[] requestBody) {
+        this.handlerType = handlerType;
+        this.queryString = queryString;
+        this.pathParams = pathParams;
+        this.requestBody = requestBody;
+        this.request = createRequest();
+        this.response = createResponse();
+        reset();
+    }
+
+    /**
+     * Clears the response, so the instance can be used for the next invocation
+     */
+    public void reset() {
+        responseHeaders.clear();
+        responseBody.reset();
+        status = HttpStatus.OK.getCode();
+        resultStream = null;
+    }
+
+    /**
+     * Adds a request header
+     *
+     * @return this instance
+     */
+    public StubContext withRequestHeader(String name, String value) {
+        requestHeaders.put(name, value);
+        return this;
+    }
+
+    /**
+     * @return Number of bytes written to the response, either as result or directly to the output stream
+     */
+    public int responseSize() {
+        if (resultStream instanceof ByteArrayInputStream byteArrayInputStream) {
+            return byteArrayInputStream.available();
+        }
+        return responseBody.size();
+    }
+
+    /**
+     * @return Response body as String
+     */
+    public String responseBodyAsString() throws IOException {
+        if (resultStream != null) {
+            resultStream.mark(Integer.MAX_VALUE);
+            String result = new String(resultStream.readAllBytes(), StandardCharsets.UTF_8);
+            resultStream.reset();
+            return result;
+        }
+        return responseBody.toString(StandardCharsets.UTF_8);
+    }
+
+    private HttpServletRequest createRequest() {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getMethod" -> handlerType.name();
+                    case "getQueryString" -> queryString;
+                    case "getHeader" -> requestHeaders.get((String) args[0]);
+                    case "getContentType" -> requestHeaders.get("Content-Type");
+                    case "getCharacterEncoding" -> StandardCharsets.UTF_8.name();
+                    case "getContentLength" -> requestBody.length;
+                    case "getContentLengthLong" -> (long) requestBody.length;
+                    case "getInputStream" -> new ByteArrayServletInputStream(requestBody);
+                    case "toString" -> "StubRequest";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    private HttpServletResponse createResponse() {
+        ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                responseBody.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                responseBody.write(b, off, len);
+            }
+        };
+
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletResponse.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "setHeader", "addHeader" -> {
+                        responseHeaders.put((String) args[0], (String) args[1]);
+                        yield null;
+                    }
+                    case "getHeader" -> responseHeaders.get((String) args[0]);
+                    case "containsHeader" -> responseHeaders.containsKey((String) args[0]);
+                    case "setContentType" -> {
+                        responseHeaders.put("Content-Type", (String) args[0]);
+                        yield null;
+                    }
+                    case "getContentType" -> responseHeaders.get("Content-Type");
+                    case "setStatus" -> {
+                        status = (Integer) args[0];
+                        yield null;
+                    }
+                    case "getStatus" -> status;
+                    case "getCharacterEncoding" -> StandardCharsets.UTF_8.name();
+                    case "getOutputStream" -> outputStream;
+                    case "toString" -> "StubResponse";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    @NotNull
+    @Override
+    public HttpServletRequest req() {
+        return request;
+    }
+
+    @NotNull
+    @Override
+    public HttpServletResponse res() {
+        return response;
+    }
+
+    @NotNull
+    @Override
+    public HandlerType handlerType() {
+        return handlerType;
+    }
+
+    @NotNull
+    @Override
+    public String matchedPath() {
+        return "";
+    }
+
+    @NotNull
+    @Override
+    public String endpointHandlerPath() {
+        return "";
+    }
+
+    @Override
+    public <T> T appData(@NotNull Key<T> key) {
+        throw new UnsupportedOperationException("appData is not available in benchmarks");
+    }
+
+    @NotNull
+    @Override
+    public JsonMapper jsonMapper() {
+        return JSON_MAPPER;
+    }
+
+    @Override
+    public <T> T with(@NotNull Class<? extends ContextPlugin<?, T>> clazz) {
+        throw new UnsupportedOperationException("Context plugins are not available in benchmarks");
+    }
+
+    @Override
+    public boolean strictContentTypes() {
+        return false;
+    }
+
+    @NotNull
+    @Override
+    public String pathParam(@NotNull String key) {
+        return pathParams.get(key);
+    }
+
+    @NotNull
+    @Override
+    public Map<String, String> pathParamMap() {
+        return pathParams;
+    }
+
+    @NotNull
+    @Override
+    public ServletOutputStream outputStream() {
+        try {
+            return response.getOutputStream();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Context minSizeForCompression(int minSizeForCompression) {
+        return this;
+    }
+
+    @NotNull
+    @Override
+    public Context result(@NotNull InputStream resultStream) {
+        this.resultStream = resultStream;
+        return this;
+    }
+
+    @Override
+    public InputStream resultInputStream() {
+        return resultStream;
+    }
+
+    @Override
+    public void future(@NotNull Supplier<? extends CompletableFuture<?>> future) {
+        future.get().join();
+    }
+
+    @Override
+    public void redirect(@NotNull String location, @NotNull HttpStatus status) {
+        throw new UnsupportedOperationException("Redirects are not available in benchmarks");
+    }
+
+    @Override
+    public void writeJsonStream(@NotNull Stream<?> stream) {
+        throw new UnsupportedOperationException("JSON streams are not available in benchmarks");
+    }
+
+    @NotNull
+    @Override
+    public Context skipRemainingHandlers() {
+        return this;
+    }
+
+    @NotNull
+    @Override
+    public Set<RouteRole> routeRoles() {
+        return Set.of();
+    }
+
+    private static final class ByteArrayServletInputStream extends ServletInputStream {
+        private final ByteArrayInputStream inputStream;
+
+        private ByteArrayServletInputStream(byte[] data) {
+            this.inputStream = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return inputStream.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+
+        @Override
+        public int read() {
+            return inputStream.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return inputStream.read(b, off, len);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package de.industrieschule.vp.core;
 
+import de.industrieschule.vp.core.autodiscovery.index.ComponentScanner;
 import de.industrieschule.vp.core.config.Config;
 import jakarta.persistence.Entity;
 import org.apache.logging.log4j.LogManager;
@@ -7,7 +8,6 @@ import org.apache.logging.log4j.Logger;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.*;
-import org.reflections.Reflections;
 
 /**
  * Database access
@@ -34,10 +34,12 @@ public class HibernateUtil {
                 Configuration configuration = getConfiguration();
 
                 // Scan Entity classes
-                Reflections reflections = new Reflections("de.industrieschule.vp.database");
-                for (Class<?> clazz : reflections.getTypesAnnotatedWith(Entity.class)) {
+                long scanStart = System.nanoTime();
+                ComponentScanner scanner = ComponentScanner.create("de.industrieschule.vp.database");
+                for (Class<?> clazz : scanner.getTypesAnnotatedWith(Entity.class)) {
                     configuration.addAnnotatedClass(clazz);
                 }
+                log.info("Entity lookup using \"{}\" scanner took {} ms", scanner.getName(), (System.nanoTime() - scanStart) / 1_000_000);
 
                 StandardServiceRegistryBuilder registryBuilder = new StandardServiceRegistryBuilder()
                         .applySettings(configuration.getProperties());
@@ -109,6 +111,9 @@ public class HibernateUtil {
         configuration.setProperty(SchemaToolingSettings.HBM2DDL_AUTO, "update");
 
         configuration.setProperty(TransactionSettings.ENABLE_LAZY_LOAD_NO_TRANS, "true");
+
+        // Exposed on the metrics endpoint
+        configuration.setProperty(StatisticsSettings.GENERATE_STATISTICS, String.valueOf(Config.METRICS_ENABLE));
         return configuration;
     }
 
@@ -148,5 +153,6 @@ public class HibernateUtil {
         configuration.setProperty("hibernate.agroal.validationTimeout",
                 "PT5S"); // Set timeout for checking database connectivity to 5 seconds
         configuration.setProperty("hibernate.agroal.validationQuery", "SELECT 1"); // SQL query to check if database is available
+        configuration.setProperty("hibernate.agroal.metricsEnabled", String.valueOf(Config.METRICS_ENABLE)); // Pool metrics for the metrics endpoint
     }
 }
@@ -1,13 +1,26 @@
 package de.industrieschule.vp.core;
 
 import de.industrieschule.vp.core.autodiscovery.EndpointClassDiscovery;
+import de.industrieschule.vp.core.autodiscovery.index.ComponentScanner;
+import de.industrieschule.vp.core.bootstrap.BootstrapException;
+import de.industrieschule.vp.core.bootstrap.BootstrapOrchestrator;
+import de.industrieschule.vp.core.cache.ResponseCache;
 import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.json.JsonEngine;
+import de.industrieschule.vp.core.metrics.DatabaseMetricsCollector;
+import de.industrieschule.vp.core.metrics.InstrumentedHandler;
+import de.industrieschule.vp.core.metrics.JvmMetricsCollector;
+import de.industrieschule.vp.core.metrics.MetricsEndpoint;
+import de.industrieschule.vp.core.metrics.MetricsRegistry;
+import de.industrieschule.vp.core.metrics.ResponseCacheMetricsCollector;
+import de.industrieschule.vp.core.server.JettyThreadingConfigurer;
 import de.industrieschule.vp.core.utilities.JWTTokenUtil;
 import de.industrieschule.vp.core.utilities.helper.AppDirectoryHelper;
+import de.industrieschule.vp.core.websocket.WebSocketSettings;
 import de.industrieschule.vp.legacy.LegacyVertretungsplanEndpoint;
 import io.javalin.Javalin;
+import io.javalin.http.ServiceUnavailableResponse;
 import io.javalin.http.staticfiles.Location;
-import io.javalin.json.JavalinGson;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +32,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Security;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Main entrypoint
@@ -29,6 +43,15 @@ public class Main {
 
     private static Javalin app;
 
+    /*
+     * Names of the bootstrap phases
+     */
+    private static final String PHASE_SECURITY_PROVIDER = "security-provider";
+    private static final String PHASE_DATABASE = "database";
+    private static final String PHASE_JWT = "jwt";
+    private static final String PHASE_ENDPOINTS = "endpoints";
+    private static final String PHASE_AUTOLOAD = "autoload";
+
     /**
      * Logger
      */
@@ -50,6 +73,16 @@ public class Main {
 
 
     public static void main(String[] args) throws Exception {
+        start();
+    }
+
+    /**
+     * Initializes everything and starts the API. Returns as soon as the API is ready to answer requests.
+     *
+     * @return The started Javalin instance, e.g. to stop it again in the load test
+     * @throws Exception If the initialization fails, the API is stopped in this case
+     */
+    public static Javalin start() throws Exception {
         LOG.info("Starting Vertretungsplan Suite...");
         LOG.info("\n ___ ____   ____   __     ______  \n" +
                 "|_ _/ ___| / ___|  \\ \\   / /  _ \\ \n" +
@@ -58,19 +91,36 @@ public class Main {
                 "|___|____/ \\____|     \\_/  |_|    \n" +
                 "Vertretungsplan Suite - Alpha Version\n");
 
-        // Register Bouncy Castle Provider
-        LOG.info("Register Bouncy Castle Security Provider");
-        Security.addProvider(new BouncyCastleProvider());
-
-        LOG.info("Initializing Database ...");
-        HibernateUtil.initDatabase();
+        BootstrapOrchestrator bootstrap = new BootstrapOrchestrator();
+
+        JettyThreadingConfigurer threading = new JettyThreadingConfigurer(
+                Config.SERVER_THREAD_MODE,
+                Config.SERVER_MIN_THREADS,
+                Config.SERVER_MAX_THREADS,
+                Config.SERVER_THREAD_IDLE_TIMEOUT_MS,
+                Config.SERVER_ACCEPTORS,
+                Config.SERVER_SELECTORS,
+                Config.API_PORT);
+        LOG.info("\uD83E\uDDF5 Request execution mode: {}", threading.describe());
+
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        ResponseCache responseCache = Config.RESPONSE_CACHE_ENABLE
+                ? new ResponseCache(Config.RESPONSE_CACHE_MAX_ENTRIES, Config.RESPONSE_CACHE_MAX_WEIGHT)
+                : null;
+        if (responseCache != null) {
+            LOG.info("\uD83D\uDCBE Response cache enabled, up to {} entries with {} bytes", Config.RESPONSE_CACHE_MAX_ENTRIES, Config.RESPONSE_CACHE_MAX_WEIGHT);
+        }
 
         app = Javalin.create(javalinConfig -> {
                     javalinConfig.showJavalinBanner = false;
                     // Static Files
                     javalinConfig.staticFiles.add("/webstatic", Location.CLASSPATH);
                     // Object Mapper
-                    javalinConfig.jsonMapper(new JavalinGson());
+                    javalinConfig.jsonMapper(JsonEngine.javalinMapper());
+                    // Thread pool and connector
+                    threading.apply(javalinConfig);
+                    // WebSocket defaults, endpoints override them per session (see WebSocketEndpoint)
+                    javalinConfig.jetty.modifyWebSocketServletFactory(factory -> WebSocketSettings.defaults().applyTo(factory));
                 })
                 .before(context -> {
                     //Content-Type
@@ -80,6 +130,13 @@ public class Main {
                     context.header("Access-Control-Allow-Methods", "*");
                     context.header("Access-Control-Allow-Headers", "Accept, Accept-CH, Accept-Charset, Accept-Datetime, Accept-Encoding, Accept-Ext, Accept-Features, Accept-Language, Accept-Params, Accept-Ranges, Access-Control-Allow-Credentials, Access-Control-Allow-Headers, Access-Control-Allow-Methods, Access-Control-Allow-Origin, Access-Control-Expose-Headers, Access-Control-Max-Age, Access-Control-Request-Headers, Access-Control-Request-Method, Age, Allow, Alternates, Authentication-Info, Authorization, C-Ext, C-Man, C-Opt, C-PEP, C-PEP-Info, CONNECT, Cache-Control, Compliance, Connection, Content-Base, Content-Disposition, Content-Encoding, Content-ID, Content-Language, Content-Length, Content-Location, Content-MD5, Content-Range, Content-Script-Type, Content-Security-Policy, Content-Style-Type, Content-Transfer-Encoding, Content-Type, Content-Version, Cookie, Cost, DAV, DELETE, DNT, DPR, Date, Default-Style, Delta-Base, Depth, Derived-From, Destination, Differential-ID, Digest, ETag, Expect, Expires, Ext, From, GET, GetProfile, HEAD, HTTP-date, Host, IM, If, If-Match, If-Modified-Since, If-None-Match, If-Range, If-Unmodified-Since, Keep-Alive, Label, Last-Event-ID, Last-Modified, Link, Location, Lock-Token, MIME-Version, Man, Max-Forwards, Media-Range, Message-ID, Meter, Negotiate, Non-Compliance, OPTION, OPTIONS, OWS, Opt, Optional, Ordering-Type, Origin, Overwrite, P3P, PEP, PICS-Label, POST, PUT, Pep-Info, Permanent, Position, Pragma, ProfileObject, Protocol, Protocol-Query, Protocol-Request, Proxy-Authenticate, Proxy-Authentication-Info, Proxy-Authorization, Proxy-Features, Proxy-Instruction, Public, RWS, Range, Referer, Refresh, Resolution-Hint, Resolver-Location, Retry-After, Safe, Sec-Websocket-Extensions, Sec-Websocket-Key, Sec-Websocket-Origin, Sec-Websocket-Protocol, Sec-Websocket-Version, Security-Scheme, Server, Set-Cookie, Set-Cookie2, SetProfile, SoapAction, Status, Status-URI, Strict-Transport-Security, SubOK, Subst, Surrogate-Capability, Surrogate-Control, TCN, TE, TRACE, Timeout, Title, Trailer, Transfer-Encoding, UA-Color, UA-Media, UA-Pixels, UA-Resolution, UA-Windowpixels, URI, Upgrade, User-Agent, Variant-Vary, Vary, Version, Via, Viewport-Width, WWW-Authenticate, Want-Digest, Warning, Width, X-Content-Duration, X-Content-Security-Policy, X-Content-Type-Options, X-CustomHeader, X-DNSPrefetch-Control, X-Forwarded-For, X-Forwarded-Port, X-Forwarded-Proto, X-Frame-Options, X-Modified, X-OTHER, X-PING, X-PINGOTHER, X-Powered-By, X-Requested-With");
                     context.header("Access-Control-Max-Age", "3600");
+                    // Lets browser clients read the ETag for conditional requests
+                    context.header("Access-Control-Expose-Headers", "ETag");
+                    //Reject requests until background initialization (database, JWT) is done
+                    if (!bootstrap.isComplete()) {
+                        context.header("Retry-After", "1");
+                        throw new ServiceUnavailableResponse("API is starting, please try again shortly");
+                    }
                 })
                 //CORS
                 .options(Config.API_PREFIX_DIR + "/*", (context) -> {
@@ -94,23 +151,70 @@ public class Main {
                 .get("/" + Config.API_PREFIX_DIR, ctx -> ctx.result("API is ready"));
 
                 if(Config.API_LEGACYAPP_ENABLE){
-                    app.get("/App/json_transfer.php", new LegacyVertretungsplanEndpoint()); // Legacy App Endpoint
+                    app.get("/App/json_transfer.php", new InstrumentedHandler(new LegacyVertretungsplanEndpoint(),
+                            metricsRegistry.endpoint(MetricsRegistry.TYPE_LEGACY, LegacyVertretungsplanEndpoint.class, "GET", "/App/json_transfer.php"))); // Legacy App Endpoint
+                }
+
+                if(Config.METRICS_ENABLE && Config.METRICS_TOKEN.isEmpty() && !Config.DEBUG){
+                    // Would expose routes, class names and pool state to everyone
+                    LOG.warn("\u26A0\uFE0F Metrics endpoint not registered, METRICS_TOKEN is required outside of debug mode");
+                }else if(Config.METRICS_ENABLE){
+                    metricsRegistry.addCollector(new JvmMetricsCollector());
+                    metricsRegistry.addCollector(new DatabaseMetricsCollector());
+                    if (responseCache != null) {
+                        metricsRegistry.addCollector(new ResponseCacheMetricsCollector(responseCache));
+                    }
+                    app.get(Config.METRICS_PATH, new MetricsEndpoint(metricsRegistry, Config.METRICS_TOKEN));
+                    LOG.info("\uD83D\uDCCA Prometheus metrics available on {}{}", Config.METRICS_PATH, Config.METRICS_TOKEN.isEmpty() ? " (without token, debug mode)" : "");
                 }
 
 
 
 
-        LOG.info("Initializing JWT keys...");
-        JWTTokenUtil.initialize();
+        // Declare startup phases, independent phases run concurrently
+        AtomicReference<ComponentScanner> componentScanner = new AtomicReference<>();
+        bootstrap
+                .phase(PHASE_SECURITY_PROVIDER, () -> {
+                    // Register Bouncy Castle Provider
+                    LOG.info("Register Bouncy Castle Security Provider");
+                    Security.addProvider(new BouncyCastleProvider());
+                })
+                .phase(PHASE_DATABASE, () -> {
+                    LOG.info("Initializing Database ...");
+                    HibernateUtil.initDatabase();
+                })
+                .phase(PHASE_JWT, () -> {
+                    LOG.info("Initializing JWT keys...");
+                    JWTTokenUtil.initialize();
+                }, PHASE_SECURITY_PROVIDER)
+                .phase(PHASE_ENDPOINTS, () -> {
+                    LOG.info("Discovering API-Endpoint classes...");
+                    componentScanner.set(EndpointClassDiscovery.discoverAndLoadClasses(app, Config.API_PREFIX_DIR, metricsRegistry, responseCache));
+                })
+                // Autoload classes may use the database and JWTs, unlike the routes
+                .phase(PHASE_AUTOLOAD, () -> {
+                    EndpointClassDiscovery.invokeAutoloadClasses(componentScanner.get());
+                }, PHASE_ENDPOINTS, PHASE_DATABASE, PHASE_JWT);
+        bootstrap.start();
 
-        LOG.info("Discovering API-Endpoint classes...");
-        EndpointClassDiscovery.discoverAndLoadClasses(app, Config.API_PREFIX_DIR);
+        // Routing is all we need to start listening, requests are answered with 503 until everything else is ready
+        bootstrap.await(PHASE_ENDPOINTS);
 
-        LOG.info("\uD83D\uDE80 Initialization complete, starting API");
+        LOG.info("\uD83D\uDE80 Routing initialized, starting API");
         app.start(Config.API_PORT);
 
-        LOG.info("\u2705 API is ready");
+        try {
+            bootstrap.awaitAll();
+        } catch (BootstrapException e) {
+            LOG.error("Initialization failed, stopping API", e);
+            bootstrap.logTimings();
+            app.stop();
+            throw e;
+        }
 
+        bootstrap.logTimings();
+        LOG.info("\u2705 API is ready");
 
+        return app;
     }
 }
@@ -4,10 +4,20 @@ import de.industrieschule.vp.core.autodiscovery.annotations.*;
 import de.industrieschule.vp.core.autodiscovery.templates.MultiEndpointTemplate;
 import de.industrieschule.vp.core.autodiscovery.dispatcher.GraphQLDispatcher;
 import de.industrieschule.vp.core.autodiscovery.dispatcher.RESTDispatcher;
+import de.industrieschule.vp.core.autodiscovery.graphql.DataLoaderRegistryFactory;
+import de.industrieschule.vp.core.autodiscovery.index.ComponentScanner;
 import de.industrieschule.vp.core.autodiscovery.templates.AutoloadClassTemplate;
+import de.industrieschule.vp.core.autodiscovery.templates.BatchLoaderTemplate;
 import de.industrieschule.vp.core.autodiscovery.templates.RESTEndpointTemplate;
+import de.industrieschule.vp.core.autodiscovery.templates.SSEEndpointTemplate;
 import de.industrieschule.vp.core.autodiscovery.templates.WebSocketEndpointTemplate;
+import de.industrieschule.vp.core.cache.ResponseCache;
 import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.metrics.MetricsRegistry;
+import de.industrieschule.vp.core.metrics.WebSocketMetricsCollector;
+import de.industrieschule.vp.core.sse.SSEStream;
+import de.industrieschule.vp.core.websocket.BroadcastSession;
+import de.industrieschule.vp.core.websocket.WebSocketSettings;
 import graphql.schema.DataFetcher;
 import graphql.schema.idl.RuntimeWiring;
 import graphql.schema.idl.SchemaParser;
@@ -15,23 +25,22 @@ import graphql.schema.idl.TypeDefinitionRegistry;
 import io.javalin.Javalin;
 import io.javalin.http.Handler;
 import io.javalin.http.HandlerType;
+import io.javalin.http.sse.SseHandler;
 import io.javalin.router.Endpoint;
 import javassist.NotFoundException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.reflections.Reflections;
-import org.reflections.scanners.Scanners;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
  * A utility class for loading and registering plugins in the application.
- * This class provides methods to scan the classpath for plugin classes and register them as REST or WebSocket.
+ * This class provides methods to scan the classpath for plugin classes and register them as REST, WebSocket or
+ * Server-Sent Events.
  *
  */
 public class EndpointClassDiscovery {
@@ -46,11 +55,24 @@ public class EndpointClassDiscovery {
      */
     public static final String packagePrefix = "de.industrieschule.vp.handler";
 
+    /**
+     * Request header of reconnecting Server-Sent Events clients, with the id of the last event they received
+     */
+    private static final String HEADER_LAST_EVENT_ID = "Last-Event-ID";
+
     /**
      * Loads and registers REST, WebSocket, and GraphQL plugins based on annotations and configuration.
+     * <p>
+     * Classes annotated with {@link AutoloadClass} are not invoked here, the routes don't need the database, but
+     * these classes may. Call {@link #invokeAutoloadClasses(ComponentScanner)} with the returned scanner once the
+     * database and the JWT keys are initialized.
+     * </p>
      *
      * @param javalin     The Javalin instance to which plugins will be registered.
      * @param pathPrefix  The prefix for API paths where plugins will be registered.
+     * @param metricsRegistry Registry for the metrics of the registered endpoints.
+     * @param responseCache Cache for the responses of handlers with a cache TTL, null if disabled.
+     * @return The scanner used for the discovery.
      * @throws NoSuchMethodException     If a plugin class lacks a required constructor.
      * @throws InvocationTargetException If an error occurs while invoking a plugin's constructor.
      * @throws InstantiationException    If there is an issue with instantiating a plugin.
@@ -59,16 +81,56 @@ public class EndpointClassDiscovery {
      * @throws NotFoundException         If a requested resource is not found.
      * @throws ClassDiscoveryException     If there is an issue with loading a plugin.
      */
-    public static void discoverAndLoadClasses(Javalin javalin, String pathPrefix) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException, IOException, NotFoundException, ClassDiscoveryException {
+    public static ComponentScanner discoverAndLoadClasses(Javalin javalin, String pathPrefix, MetricsRegistry metricsRegistry, ResponseCache responseCache) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException, IOException, NotFoundException, ClassDiscoveryException {
 
         log.info("\uD83D\uDD0E Scanning in \"" + packagePrefix + ".*\" for component classes ...");
 
-        // Erstelle ein Reflections Objekt, um den root Classpath zu scannen
-        Reflections reflections = new Reflections(packagePrefix);
+        long scanStart = System.nanoTime();
+        ComponentScanner scanner = ComponentScanner.create(packagePrefix);
+        log.info("\u23F1\uFE0F Component scanner \"{}\" ready after {} ms", scanner.getName(), (System.nanoTime() - scanStart) / 1_000_000);
+
+        DataLoaderRegistryFactory dataLoaderRegistryFactory = loadBatchLoaders(scanner);
+        WebSocketMetricsCollector webSocketMetrics = new WebSocketMetricsCollector();
+        metricsRegistry.addCollector(webSocketMetrics);
+        loadAndRegisterRESTandWebSocketPlugins(pathPrefix, scanner, javalin, dataLoaderRegistryFactory, metricsRegistry, responseCache, webSocketMetrics);
+        loadAndRegisterGraphQLPlugins(pathPrefix, scanner, javalin, dataLoaderRegistryFactory, metricsRegistry, responseCache, webSocketMetrics);
+
+        log.info("\u23F1\uFE0F Discovery using \"{}\" scanner took {} ms in total", scanner.getName(), (System.nanoTime() - scanStart) / 1_000_000);
+
+        return scanner;
+    }
+
+    /**
+     * Invokes {@link AutoloadClassTemplate#onClassLoad()} of all classes annotated with {@link AutoloadClass}.
+     * Classes with {@code debugOnly} are skipped outside of debug mode.
+     *
+     * @param scanner Scanner returned by {@link #discoverAndLoadClasses(Javalin, String, MetricsRegistry, ResponseCache)}
+     * @throws NoSuchMethodException     If a class lacks a no-argument constructor.
+     * @throws InvocationTargetException If the constructor throws an exception.
+     * @throws InstantiationException    If the class can't be instantiated.
+     * @throws IllegalAccessException    If the constructor isn't accessible.
+     */
+    public static void invokeAutoloadClasses(ComponentScanner scanner) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
+        Set<Class<?>> AutoloadClasses = scanner.getTypesAnnotatedWith(AutoloadClass.class);
+
+        for (Class<?> clazz : AutoloadClasses) {
+
+            // Finde den passenden Konstruktor
+            java.lang.reflect.Constructor<?> constructor = clazz.getDeclaredConstructor();
+
+            boolean debugOnly = clazz.getAnnotation(AutoloadClass.class).debugOnly();
+
+            if (debugOnly && !Config.DEBUG) {
+                //Production mode, don't enable plugins that should only run in debug mode
+                continue;
+            }
 
-        loadAndRegisterRESTandWebSocketPlugins(pathPrefix, reflections, javalin);
-        loadAndRegisterGraphQLPlugins(pathPrefix, reflections, javalin);
+            // Erstelle eine neue Instanz der Klasse mit den gegebenen Parametern (Constructor wird auto. aufgerufen)
+            AutoloadClassTemplate instance = (AutoloadClassTemplate) constructor.newInstance();
 
+            log.info("\u26A1 Invoking onPluginLoad() method in class {}", clazz.getName());
+            instance.onClassLoad();
+        }
     }
 
     /**
@@ -99,13 +161,68 @@ public class EndpointClassDiscovery {
         return pathPrefix + versionPrefix + path;
     }
 
-    static void loadAndRegisterGraphQLPlugins(String pathPrefix, Reflections reflections, Javalin javalin) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
+    /**
+     * Returns the cache policy of a REST route, only GET requests are cached.
+     *
+     * @param clazz Handler class
+     * @param type  HTTP method of the route
+     * @return The policy, or null if the route isn't cached
+     */
+    private static ResponseCache.Policy cachePolicy(Class<?> clazz, HandlerType type) {
+        ResponseCache.Policy cachePolicy = ResponseCache.Policy.of(clazz);
+        if (type != HandlerType.GET) {
+            warnNotCached(clazz, cachePolicy, type + " route");
+            return null;
+        }
+        return cachePolicy;
+    }
+
+    private static void warnNotCached(Class<?> clazz, ResponseCache.Policy cachePolicy, String usage) {
+        if (cachePolicy != null) {
+            log.warn("Class {} declares a cache TTL, but is not cached as {}", clazz.getName(), usage);
+        }
+    }
+
+    /**
+     * Collects all classes annotated with {@link GraphQLBatchLoader}, their DataLoaders are created per request.
+     *
+     * @param scanner Scanner used to find the classes
+     * @return Factory containing all batch loaders
+     * @throws ClassDiscoveryException If an annotated class has the wrong type
+     */
+    static DataLoaderRegistryFactory loadBatchLoaders(ComponentScanner scanner) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException, ClassDiscoveryException {
+        DataLoaderRegistryFactory dataLoaderRegistryFactory = new DataLoaderRegistryFactory();
 
-        Set<Class<?>> apiPluginEndpointClasses = reflections.getTypesAnnotatedWith(GraphQLQuery.class);
-        Set<Class<?>> apiPluginMultiClasses = reflections.getTypesAnnotatedWith(MultiEndpoint.class);
+        for (Class<?> clazz : scanner.getTypesAnnotatedWith(GraphQLBatchLoader.class)) {
+            GraphQLBatchLoader annotation = clazz.getAnnotation(GraphQLBatchLoader.class);
+
+            if (annotation.debugOnly() && !Config.DEBUG) {
+                //Production mode, don't enable plugins that should only run in debug mode
+                continue;
+            }
+
+            Object objInstance = clazz.getDeclaredConstructor().newInstance();
+            if (!(objInstance instanceof BatchLoaderTemplate<?, ?> instance)) {
+                throw new ClassDiscoveryException("Annotation is annotated on class with wrong type. Must be " + BatchLoaderTemplate.class.getName() + ", instead of " + objInstance.getClass().getName());
+            }
+
+            dataLoaderRegistryFactory.register(annotation.name(), instance, annotation.maxBatchSize());
+            log.info("\uD83D\uDCE6 Batch loader class {} registered as DataLoader \"{}\"", clazz.getName(), annotation.name());
+        }
+
+        return dataLoaderRegistryFactory;
+    }
+
+    static void loadAndRegisterGraphQLPlugins(String pathPrefix, ComponentScanner scanner, Javalin javalin, DataLoaderRegistryFactory dataLoaderRegistryFactory, MetricsRegistry metricsRegistry, ResponseCache responseCache, WebSocketMetricsCollector webSocketMetrics) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException, IOException {
+
+        Set<Class<?>> apiPluginEndpointClasses = scanner.getTypesAnnotatedWith(GraphQLQuery.class);
+        Set<Class<?>> apiPluginMultiClasses = scanner.getTypesAnnotatedWith(MultiEndpoint.class);
 
         Map<String, DataFetcher> queryDataFetchers = new HashMap<>();
         Map<String, DataFetcher> mutationDataFetchers = new HashMap<>();
+        Map<String, DataFetcher> subscriptionDataFetchers = new HashMap<>();
+        // Fields of other object types (e.g. nested fields resolved with DataLoaders), mapped by type name
+        Map<String, Map<String, DataFetcher>> typeDataFetchers = new HashMap<>();
 
         for (Class<?> clazz : apiPluginEndpointClasses) {
             String fieldName = clazz.getAnnotation(GraphQLQuery.class).fieldName();
@@ -118,10 +235,19 @@ public class EndpointClassDiscovery {
             // Erstelle eine neue Instanz der Klasse mit den gegebenen Parametern (Constructor wird auto. aufgerufen)
             DataFetcher<?> instance = (DataFetcher<?>) constructor.newInstance();
 
+            String parentType = clazz.getAnnotation(GraphQLQuery.class).parentType();
+            if (!parentType.isEmpty()) {
+                typeDataFetchers.computeIfAbsent(parentType, type -> new HashMap<>()).put(fieldName, instance);
+                log.info("\uD83D\uDD0C GraphQL DataFetcher-Plugin class " + clazz.getName() + " registered on field \"" + parentType + "." + fieldName + "\"");
+                continue;
+            }
+
             if (fieldType == GraphQLEndpoint.GRAPHQL_FIELD_TYPE.QUERY) {
                 queryDataFetchers.put(fieldName, instance);
             } else if (fieldType == GraphQLEndpoint.GRAPHQL_FIELD_TYPE.MUTATION) {
                 mutationDataFetchers.put(fieldName, instance);
+            } else if (fieldType == GraphQLEndpoint.GRAPHQL_FIELD_TYPE.SUBSCRIPTION) {
+                subscriptionDataFetchers.put(fieldName, instance);
             }
 
             log.info("\uD83D\uDD0C GraphQL DataFetcher-Plugin (" + fieldType.name() + ") class " + clazz.getName() + " registered on field \"" + fieldName + "\"");
@@ -138,11 +264,25 @@ public class EndpointClassDiscovery {
             // Erstelle eine neue Instanz der Klasse mit den gegebenen Parametern (Constructor wird auto. aufgerufen)
             MultiEndpointTemplate<?> instance = (MultiEndpointTemplate<?>) constructor.newInstance();
 
+            ResponseCache.Policy cachePolicy = ResponseCache.Policy.of(clazz);
+
+            String parentType = clazz.getAnnotation(MultiEndpoint.class).graphQLParentType();
+            if (!parentType.isEmpty()) {
+                // Nested fields depend on their parent object, not only on their arguments
+                warnNotCached(clazz, cachePolicy, "nested GraphQL field");
+                typeDataFetchers.computeIfAbsent(parentType, type -> new HashMap<>()).put(fieldName, new GraphQLDispatcher(instance, responseCache, null));
+                log.info("\uD83D\uDD0C Multi-Plugin class " + clazz.getName() + " registered on GraphQL field \"" + parentType + "." + fieldName + "\"");
+                continue;
+            }
 
             if (fieldType == GraphQLEndpoint.GRAPHQL_FIELD_TYPE.QUERY) {
-                queryDataFetchers.put(fieldName, new GraphQLDispatcher(instance));
+                queryDataFetchers.put(fieldName, new GraphQLDispatcher(instance, responseCache, cachePolicy));
             } else if (fieldType == GraphQLEndpoint.GRAPHQL_FIELD_TYPE.MUTATION) {
-                mutationDataFetchers.put(fieldName, new GraphQLDispatcher(instance));
+                warnNotCached(clazz, cachePolicy, "GraphQL mutation");
+                mutationDataFetchers.put(fieldName, new GraphQLDispatcher(instance, responseCache, null));
+            } else if (fieldType == GraphQLEndpoint.GRAPHQL_FIELD_TYPE.SUBSCRIPTION) {
+                warnNotCached(clazz, cachePolicy, "GraphQL subscription");
+                subscriptionDataFetchers.put(fieldName, new GraphQLDispatcher(instance, responseCache, null));
             }
 
 
@@ -150,7 +290,7 @@ public class EndpointClassDiscovery {
         }
 
 
-        RuntimeWiring graphQLWiring = RuntimeWiring.newRuntimeWiring()
+        RuntimeWiring.Builder graphQLWiringBuilder = RuntimeWiring.newRuntimeWiring()
                 .type("Query", typeWiring -> {
                     for (Map.Entry<String, DataFetcher> entry : queryDataFetchers.entrySet()) {
                         typeWiring.dataFetcher(entry.getKey(), entry.getValue());
@@ -163,14 +303,26 @@ public class EndpointClassDiscovery {
                     }
                     return typeWiring;
                 })
-                .build();
+                .type("Subscription", typeWiring -> {
+                    for (Map.Entry<String, DataFetcher> entry : subscriptionDataFetchers.entrySet()) {
+                        typeWiring.dataFetcher(entry.getKey(), entry.getValue());
+                    }
+                    return typeWiring;
+                });
+        for (Map.Entry<String, Map<String, DataFetcher>> type : typeDataFetchers.entrySet()) {
+            graphQLWiringBuilder.type(type.getKey(), typeWiring -> {
+                for (Map.Entry<String, DataFetcher> entry : type.getValue().entrySet()) {
+                    typeWiring.dataFetcher(entry.getKey(), entry.getValue());
+                }
+                return typeWiring;
+            });
+        }
+        RuntimeWiring graphQLWiring = graphQLWiringBuilder.build();
 
-        log.info("\uD83D\uDD0E Scanning classpath for GraphQL (*.graphql) schemas...");
+        log.info("\uD83D\uDD0E Looking up GraphQL (*.graphql) schemas...");
 
-        // Erstellen Sie ein Reflections-Objekt mit einem ResourcesScanner
-        Reflections reflectionsScanner = new Reflections("graphql", Scanners.Resources);
-        // Suchen Sie nach allen Dateien, die mit .graphql enden
-        Set<String> graphQLFiles = reflectionsScanner.getResources(Pattern.compile(".*\\.graphql"));
+        // Alle Dateien, die mit .graphql enden (aus dem Index oder per Classpath-Scan)
+        Set<String> graphQLFiles = scanner.getGraphQLSchemaResources();
 
         TypeDefinitionRegistry mergedRegistry = new TypeDefinitionRegistry();
         for (String graphQLFile : graphQLFiles) {
@@ -183,37 +335,24 @@ public class EndpointClassDiscovery {
             log.info("\uD83D\uDCC3 GraphQL schema at /" + graphQLFile + " merged");
         }
         log.info("\u27A1\uFE0F Register GraphQL on " + pathPrefix + "/graphql");
-        javalin.addEndpoint(new Endpoint(HandlerType.POST, pathPrefix + "/graphql", new GraphQLEndpoint(mergedRegistry, graphQLWiring)));
+        GraphQLEndpoint graphQLEndpoint = new GraphQLEndpoint(mergedRegistry, graphQLWiring, dataLoaderRegistryFactory,
+                metricsRegistry, pathPrefix + "/graphql");
+        javalin.addEndpoint(new Endpoint(HandlerType.POST, pathPrefix + "/graphql", graphQLEndpoint));
+
+        // Subscriptions (and queries) over the graphql-transport-ws protocol, on the same path
+        GraphQLWebSocketEndpoint graphQLWebSocketEndpoint = new GraphQLWebSocketEndpoint(graphQLEndpoint);
+        registerWebSocket(javalin, pathPrefix + "/graphql", graphQLWebSocketEndpoint, webSocketMetrics);
+        log.info("\u2194\uFE0F GraphQL subscriptions ({}) listening at {}", GraphQLWebSocketEndpoint.SUBPROTOCOL, pathPrefix + "/graphql");
 
     }
 
 
-    static void loadAndRegisterRESTandWebSocketPlugins(String pathPrefix, Reflections reflections, Javalin javalin) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException, ClassDiscoveryException {
+    static void loadAndRegisterRESTandWebSocketPlugins(String pathPrefix, ComponentScanner scanner, Javalin javalin, DataLoaderRegistryFactory dataLoaderRegistryFactory, MetricsRegistry metricsRegistry, ResponseCache responseCache, WebSocketMetricsCollector webSocketMetrics) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException, ClassDiscoveryException {
         // Finde alle Klassen mit passenden Annotationen
-        Set<Class<?>> RESTEndpointClasses = reflections.getTypesAnnotatedWith(RESTEndpoint.class);
-        Set<Class<?>> WebSocketEndpointClasses = reflections.getTypesAnnotatedWith(WebSocketEndpoint.class);
-        Set<Class<?>> AutoloadClasses = reflections.getTypesAnnotatedWith(AutoloadClass.class);
-        Set<Class<?>> MultiEndpointClasses = reflections.getTypesAnnotatedWith(MultiEndpoint.class);
-
-
-        for (Class<?> clazz : AutoloadClasses) {
-
-            // Finde den passenden Konstruktor
-            java.lang.reflect.Constructor<?> constructor = clazz.getDeclaredConstructor();
-
-            boolean debugOnly = clazz.getAnnotation(AutoloadClass.class).debugOnly();
-
-            if (debugOnly && !Config.DEBUG) {
-                //Production mode, don't enable plugins that should only run in debug mode
-                continue;
-            }
-
-            // Erstelle eine neue Instanz der Klasse mit den gegebenen Parametern (Constructor wird auto. aufgerufen)
-            AutoloadClassTemplate instance = (AutoloadClassTemplate) constructor.newInstance();
-
-            log.info("\u26A1 Invoking onPluginLoad() method in class {}", clazz.getName());
-            instance.onClassLoad();
-        }
+        Set<Class<?>> RESTEndpointClasses = scanner.getTypesAnnotatedWith(RESTEndpoint.class);
+        Set<Class<?>> WebSocketEndpointClasses = scanner.getTypesAnnotatedWith(WebSocketEndpoint.class);
+        Set<Class<?>> SSEEndpointClasses = scanner.getTypesAnnotatedWith(SSEEndpoint.class);
+        Set<Class<?>> MultiEndpointClasses = scanner.getTypesAnnotatedWith(MultiEndpoint.class);
 
 
         // Durchlaufe alle gefundenen Klassen
@@ -249,7 +388,9 @@ public class EndpointClassDiscovery {
 
 
                 for (HandlerType type : types) {
-                    Handler handler = new RESTDispatcher(instance);
+                    Handler handler = new RESTDispatcher(instance, dataLoaderRegistryFactory,
+                            metricsRegistry.endpoint(MetricsRegistry.TYPE_REST, clazz, type.name(), path),
+                            responseCache, cachePolicy(clazz, type));
                     javalin.addEndpoint(new Endpoint(type, path, handler));
                     log.info("\uD83D\uDD0C REST-Plugin class " + clazz.getName() + " loaded, listening on " + type + " " + path);
                 }
@@ -277,6 +418,12 @@ public class EndpointClassDiscovery {
                 continue;
             }
 
+            if (clazz.getAnnotation(MultiEndpoint.class).graphQLFieldType() == GraphQLEndpoint.GRAPHQL_FIELD_TYPE.SUBSCRIPTION) {
+                // A stream of events has no REST representation
+                log.info("Multi-Plugin class {} is a GraphQL subscription, not registered as REST", clazz.getName());
+                continue;
+            }
+
             validatePath(path);
 
             for (String apiVersion : apiVersions) {
@@ -284,7 +431,9 @@ public class EndpointClassDiscovery {
                 path = constructPath(pathPrefix,apiVersion, path);
 
                 for (HandlerType type : types) {
-                    javalin.addEndpoint(new Endpoint(type, path, new RESTDispatcher(multiEndpointInstance)));
+                    javalin.addEndpoint(new Endpoint(type, path, new RESTDispatcher(multiEndpointInstance, dataLoaderRegistryFactory,
+                            metricsRegistry.endpoint(MetricsRegistry.TYPE_REST, clazz, type.name(), path),
+                            responseCache, cachePolicy(clazz, type))));
                     log.info("\uD83D\uDD0C Multi-Plugin class {} loaded as REST, listening on {} {}", clazz.getName(), type, path);
                 }
             }
@@ -314,22 +463,129 @@ public class EndpointClassDiscovery {
             for (String apiVersion : apiVersions) {
                 path = constructPath(pathPrefix,apiVersion, path);
 
-                javalin.ws(path, wsConfig -> {
-                    wsConfig.onConnect(wsConnectContext -> {
-                        instance.onConnect(wsConnectContext);
-                    });
-                    wsConfig.onClose(wsCloseContext -> instance.onClose(wsCloseContext));
-                    wsConfig.onError(wsErrorContext -> instance.onError(wsErrorContext));
-                    wsConfig.onMessage(wsMessageContext -> instance.onMessage(wsMessageContext));
-                    wsConfig.onBinaryMessage(wsBinaryMessageContext -> instance.onBinaryMessage(wsBinaryMessageContext));
-                });
+                registerWebSocket(javalin, path, instance, webSocketMetrics);
                 log.info("\u2194\uFE0F Websocket-Plugin class " + clazz.getName() + " loaded, listening at " + path);
 
             }
 
         }
 
+        // Durchlaufe alle gefundenen Klassen
+        for (Class<?> clazz : SSEEndpointClasses) {
+
+            // Finde den passenden Konstruktor
+            java.lang.reflect.Constructor<?> constructor = clazz.getDeclaredConstructor();
+
+            Object objInstance = constructor.newInstance();
+            if (!(objInstance instanceof SSEEndpointTemplate)) {
+                throw new ClassDiscoveryException("Annotation is annotated on class with wrong type. Must be " + SSEEndpointTemplate.class.getName() + ", instead of " + objInstance.getClass().getName());
+            }
+            SSEEndpointTemplate instance = (SSEEndpointTemplate) objInstance;
+
+            String path = clazz.getAnnotation(SSEEndpoint.class).path();
+            String[] apiVersions = clazz.getAnnotation(SSEEndpoint.class).apiVersion();
+            boolean debugOnly = clazz.getAnnotation(SSEEndpoint.class).debugOnly();
+
+            if (debugOnly && !Config.DEBUG) {
+                //Production mode, don't enable plugins that should only run in debug mode
+                continue;
+            }
+
+            validatePath(path);
+
+            for (String apiVersion : apiVersions) {
+                String versionedPath = constructPath(pathPrefix, apiVersion, path);
+
+                registerSSE(javalin, versionedPath, instance);
+                log.info("\uD83D\uDCE1 SSE-Plugin class " + clazz.getName() + " loaded, streaming at " + versionedPath);
+            }
+
+        }
+
     }
 
+    /**
+     * Wires the callbacks of the endpoint to the WebSocket at the path. Sessions are registered with the
+     * {@link de.industrieschule.vp.core.websocket.BroadcastEngine} of the endpoint before it sees them and removed after
+     * it is done with them. The connection settings of the endpoint are applied to every session, its subprotocol is
+     * accepted during the upgrade.
+     *
+     * @param javalin          Javalin instance
+     * @param path             Path of the WebSocket
+     * @param instance         Endpoint
+     * @param webSocketMetrics Collector the sessions of the endpoint are reported to
+     */
+    static void registerWebSocket(Javalin javalin, String path, WebSocketEndpointTemplate instance, WebSocketMetricsCollector webSocketMetrics) {
+        WebSocketSettings settings = instance.getSettings();
+        if (settings.pingIntervalMs() > 0 && settings.idleTimeoutMs() > 0 && settings.idleTimeoutMs() <= settings.pingIntervalMs()) {
+            log.warn("Idle timeout of {} ({} ms) is not longer than its ping interval ({} ms), idle clients are closed before they are pinged",
+                    path, settings.idleTimeoutMs(), settings.pingIntervalMs());
+        }
+        if (!settings.compression()) {
+            javalin.wsBeforeUpgrade(path, WebSocketSettings::declineCompression);
+        }
+        String subprotocol = instance.getSubprotocol();
+        if (subprotocol != null) {
+            javalin.wsBeforeUpgrade(path, context -> WebSocketSettings.selectSubprotocol(context, subprotocol));
+        }
+        javalin.ws(path, wsConfig -> {
+            wsConfig.onConnect(wsConnectContext -> {
+                settings.applyTo(wsConnectContext.session);
+                instance.getBroadcastEngine().register(wsConnectContext);
+                instance.onConnect(wsConnectContext);
+            });
+            wsConfig.onClose(wsCloseContext -> {
+                try {
+                    instance.onClose(wsCloseContext);
+                } finally {
+                    instance.getBroadcastEngine().unregister(wsCloseContext.sessionId());
+                }
+            });
+            wsConfig.onError(wsErrorContext -> {
+                try {
+                    instance.onError(wsErrorContext);
+                } finally {
+                    instance.getBroadcastEngine().unregister(wsErrorContext.sessionId());
+                }
+            });
+            wsConfig.onMessage(instance::onMessage);
+            wsConfig.onBinaryMessage(instance::onBinaryMessage);
+        });
+        webSocketMetrics.addEndpoint(path, instance.getBroadcastEngine());
+        log.debug("WebSocket {}: idle timeout {} ms, max. message size {} bytes, ping interval {} ms, compression {}",
+                path, settings.idleTimeoutMs(), settings.maxMessageSize(), settings.pingIntervalMs(), settings.compression());
+    }
 
+    /**
+     * Wires the callbacks of the endpoint to an event stream at the path. The topics are requested before the stream
+     * is started, so the endpoint can still reject the request. Clients are registered with the {@link SSEStream} of
+     * the endpoint, subscribed and resumed from their {@code Last-Event-ID} before the endpoint sees them, and removed
+     * after it is done with them.
+     *
+     * @param javalin  Javalin instance
+     * @param path     Path of the event stream
+     * @param instance Endpoint
+     */
+    static void registerSSE(Javalin javalin, String path, SSEEndpointTemplate instance) {
+        SSEStream stream = instance.getStream();
+        javalin.get(path, ctx -> {
+            Set<String> topics = instance.getTopics(ctx);
+            String lastEventId = ctx.header(HEADER_LAST_EVENT_ID);
+            new SseHandler(sseClient -> {
+                BroadcastSession session = stream.register(sseClient);
+                sseClient.onClose(() -> {
+                    try {
+                        instance.onClose(sseClient);
+                    } finally {
+                        stream.getBroadcastEngine().unregister(session.getId());
+                    }
+                });
+                // Keeps the response open after this handler returns, until the client is closed
+                sseClient.keepAlive();
+                stream.open(session.getId(), topics, lastEventId);
+                instance.onConnect(sseClient);
+            }).handle(ctx);
+        });
+        log.debug("SSE {}: keep-alive every {} ms, replay buffer of {} events", path, stream.getKeepAliveMs(), stream.getReplayBufferSize());
+    }
 }
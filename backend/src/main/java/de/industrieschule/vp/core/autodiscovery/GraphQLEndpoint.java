@@ -1,10 +1,26 @@
 package de.industrieschule.vp.core.autodiscovery;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import de.industrieschule.vp.core.Main;
+import de.industrieschule.vp.core.autodiscovery.graphql.DataLoaderRegistryFactory;
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLDocumentCache;
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLRequest;
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLQueryLimitInstrumentation;
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLRequestDecoder;
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLTrace;
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLTracingInstrumentation;
+import de.industrieschule.vp.core.autodiscovery.graphql.PersistedQueryStore;
+import de.industrieschule.vp.core.autodiscovery.graphql.RequestDataLoaderRegistry;
+import de.industrieschule.vp.core.autodiscovery.graphql.SubscriptionTransportInstrumentation;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.json.JsonEngine;
+import de.industrieschule.vp.core.metrics.EndpointMetrics;
+import de.industrieschule.vp.core.metrics.MetricsRegistry;
 import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
 import graphql.GraphQL;
+import graphql.execution.instrumentation.ChainedInstrumentation;
 import graphql.schema.GraphQLSchema;
 import graphql.schema.idl.RuntimeWiring;
 import graphql.schema.idl.SchemaGenerator;
@@ -16,8 +32,16 @@ import org.apache.logging.log4j.Logger;
 import org.h2.util.json.JSONObject;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collections;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * A Javalin handler class responsible for handling GraphQL queries and mutations.
@@ -30,10 +54,14 @@ public class GraphQLEndpoint implements Handler {
     private static final Logger log = LogManager.getLogger(GraphQLEndpoint.class);
 
     /**
-     * Enumeration representing different types of GraphQL fields (QUERY or MUTATION).
+     * Enumeration representing different types of GraphQL fields (QUERY, MUTATION or SUBSCRIPTION).
+     * Resolvers of SUBSCRIPTION fields return a {@link org.reactivestreams.Publisher} of events (e.g. a
+     * {@link de.industrieschule.vp.core.autodiscovery.graphql.SubscriptionPublisher}), subscriptions are only
+     * available over the WebSocket of {@link GraphQLWebSocketEndpoint}, this endpoint answers them with an error
+     * (see {@link SubscriptionTransportInstrumentation}).
      */
     public enum GRAPHQL_FIELD_TYPE {
-        QUERY, MUTATION
+        QUERY, MUTATION, SUBSCRIPTION
     }
 
     /**
@@ -41,25 +69,124 @@ public class GraphQLEndpoint implements Handler {
      */
     private final GraphQL graphQL;
 
+    /**
+     * Cache for parsed and validated query documents, null if disabled
+     */
+    private final GraphQLDocumentCache documentCache;
+
+    /**
+     * Store for automatic persisted queries (hash-only requests)
+     */
+    private final PersistedQueryStore persistedQueryStore;
+
+    /**
+     * Creates the DataLoader registry for each request
+     */
+    private final DataLoaderRegistryFactory dataLoaderRegistryFactory;
+
+    /**
+     * Decoder for request bodies
+     */
+    private final GraphQLRequestDecoder requestDecoder = new GraphQLRequestDecoder(Config.GRAPHQL_MAX_REQUEST_BYTES);
+
+    /**
+     * Metrics of the whole request, phases and fields are recorded by the {@link GraphQLTracingInstrumentation}
+     */
+    private final EndpointMetrics requestMetrics;
+
+    /**
+     * Header containing the token, that allows tracing outside of debug mode
+     */
+    public static final String TRACING_TOKEN_HEADER = "X-GraphQL-Tracing-Token";
+
+    /**
+     * Expected value of {@link #TRACING_TOKEN_HEADER}, null if tracing is only available in debug mode
+     */
+    private final byte[] tracingToken = Config.GRAPHQL_TRACING_TOKEN.isEmpty() ? null : Config.GRAPHQL_TRACING_TOKEN.getBytes(StandardCharsets.UTF_8);
+
     /**
      * Constructs a new GraphQLEndpoint with the provided schema and wiring.
      *
      * @param schema The TypeDefinitionRegistry containing the GraphQL schema.
      * @param wiring The RuntimeWiring defining how the schema should be wired.
+     * @param dataLoaderRegistryFactory Factory for the DataLoaders of each request.
+     * @param metricsRegistry Registry for the request, phase and field metrics. A request is counted as error if the result contains errors.
+     * @param route Path of this endpoint, used as label of the metrics.
+     * @throws IOException If the persisted query allow-list can't be read.
      */
-    public GraphQLEndpoint(TypeDefinitionRegistry schema, RuntimeWiring wiring) {
+    public GraphQLEndpoint(TypeDefinitionRegistry schema, RuntimeWiring wiring, DataLoaderRegistryFactory dataLoaderRegistryFactory, MetricsRegistry metricsRegistry, String route) throws IOException {
+        this.dataLoaderRegistryFactory = dataLoaderRegistryFactory;
+        this.requestMetrics = metricsRegistry.endpoint(MetricsRegistry.TYPE_GRAPHQL, GraphQLEndpoint.class, "POST", route);
+
         GraphQLSchema graphQLSchema = new SchemaGenerator().makeExecutableSchema(
                 schema,
                 wiring
         );
 
-        graphQL = GraphQL.newGraphQL(graphQLSchema).build();
+        GraphQL.Builder graphQLBuilder = GraphQL.newGraphQL(graphQLSchema)
+                .instrumentation(new ChainedInstrumentation(
+                        // Phase and resolver timings
+                        new GraphQLTracingInstrumentation(graphQLSchema, metricsRegistry, route),
+                        // Subscriptions are only executed over the WebSocket
+                        new SubscriptionTransportInstrumentation(),
+                        // Reject too expensive operations before execution
+                        new GraphQLQueryLimitInstrumentation(graphQLSchema,
+                                Config.GRAPHQL_MAX_DEPTH, Config.GRAPHQL_MAX_FIELDS, Config.GRAPHQL_MAX_ALIASES, Config.GRAPHQL_MAX_COST)));
+        log.info("GraphQL query limits: depth {}, fields {}, aliases {}, cost {} (0 = unlimited)",
+                Config.GRAPHQL_MAX_DEPTH, Config.GRAPHQL_MAX_FIELDS, Config.GRAPHQL_MAX_ALIASES, Config.GRAPHQL_MAX_COST);
+
+        if (Config.GRAPHQL_DOCUMENT_CACHE_SIZE > 0) {
+            log.info("GraphQL document cache enabled, caching up to {} documents", Config.GRAPHQL_DOCUMENT_CACHE_SIZE);
+            documentCache = new GraphQLDocumentCache(Config.GRAPHQL_DOCUMENT_CACHE_SIZE);
+            graphQLBuilder.preparsedDocumentProvider(documentCache);
+        } else {
+            log.info("GraphQL document cache disabled");
+            documentCache = null;
+        }
+
+        graphQL = graphQLBuilder.build();
+
+        persistedQueryStore = new PersistedQueryStore(Config.GRAPHQL_PERSISTED_QUERIES_CACHE_SIZE, Config.GRAPHQL_PERSISTED_QUERIES_ALLOWLIST_ONLY);
+        persistedQueryStore.loadAllowList(Main.resolveDataDir().resolve("persisted-queries"));
+        if (persistedQueryStore.isAllowListOnly()) {
+            log.info("\uD83D\uDD12 GraphQL allow-list mode enabled, only persisted queries can be executed");
+        }
+    }
+
+    /**
+     * Returns the cache for parsed and validated documents, e.g. to read its hit and miss counters.
+     *
+     * @return The document cache, or null if it is disabled
+     */
+    public GraphQLDocumentCache getDocumentCache() {
+        return documentCache;
+    }
+
+    /**
+     * @return The GraphQL instance, shared with {@link GraphQLWebSocketEndpoint}
+     */
+    GraphQL getGraphQL() {
+        return graphQL;
+    }
+
+    /**
+     * @return The persisted query store, shared with {@link GraphQLWebSocketEndpoint}
+     */
+    PersistedQueryStore getPersistedQueryStore() {
+        return persistedQueryStore;
+    }
+
+    /**
+     * @return The DataLoader registry factory, shared with {@link GraphQLWebSocketEndpoint}
+     */
+    DataLoaderRegistryFactory getDataLoaderRegistryFactory() {
+        return dataLoaderRegistryFactory;
     }
 
     /**
      * A Gson instance for serializing GraphQL execution results to JSON.
      */
-    public static final Gson gson = new Gson();
+    public static final Gson gson = JsonEngine.GSON;
 
     /**
      * Handles the incoming HTTP request as a GraphQL query and returns the JSON response.
@@ -69,6 +196,26 @@ public class GraphQLEndpoint implements Handler {
      */
     @Override
     public void handle(@NotNull Context ctx) throws Exception {
+        long start = requestMetrics.start();
+        boolean async = false;
+        try {
+            async = execute(ctx, start);
+        } finally {
+            // Async requests are recorded once the result is written
+            if (!async) {
+                requestMetrics.stop(start, true);
+            }
+        }
+    }
+
+    /**
+     * Decodes and executes the request
+     *
+     * @param ctx   The Javalin HTTP context
+     * @param start Start timestamp of the request metrics
+     * @return true, if the query is executed and the metrics are recorded asynchronously
+     */
+    private boolean execute(Context ctx, long start) throws Exception {
         // Set response content type
         ctx.header("Content-Type", "application/json");
         // Disable caching
@@ -76,35 +223,105 @@ public class GraphQLEndpoint implements Handler {
         ctx.header("Pragma", "no-cache");
         ctx.header("Expires", "0");
 
-        // Parse the request body as a JSON object using Gson
-        JsonObject requestBody = gson.fromJson(ctx.body(), JsonObject.class);
-        String query = requestBody.get("query").getAsString();
+        // Decode the request body in a single pass, rejects oversized and malformed bodies
+        GraphQLRequest request = requestDecoder.decode(ctx.bodyInputStream(), ctx.contentLength());
+        // Query may be missing, if the client only sends the hash of a persisted query
+        String query = request.query();
+
+        // Look up the query text for persisted queries (and check the allow-list)
+        PersistedQueryStore.Resolution resolution = persistedQueryStore.resolve(query, request.extensions());
+        if (resolution.error() != null) {
+            log.debug("Persisted query rejected: {}", resolution.error().getMessage());
+            writeResult(ctx, new ExecutionResultImpl(resolution.error()));
+            return false;
+        }
+        query = resolution.query();
 
-        JsonObject variables = requestBody.has("variables") ? requestBody.getAsJsonObject("variables") : null;
-        Map<String, Object> variablesMap = variables == null ? Collections.emptyMap() : gson.fromJson(variables, Map.class);
+        // DataLoaders cache their values, so every request gets its own registry
+        RequestDataLoaderRegistry dataLoaderRegistry = dataLoaderRegistryFactory.newRegistry();
 
         // Create a GraphQLLocalContext for handling the GraphQL request
-        GraphQLLocalContext graphQLLocalContext = new GraphQLLocalContext(ctx);
+        GraphQLLocalContext graphQLLocalContext = new GraphQLLocalContext(ctx, dataLoaderRegistry);
 
         log.debug("Query: {}", query);
-        if (variables != null) {
-            log.debug("Variables: {}", gson.toJson(variables));
+        if (!request.variables().isEmpty()) {
+            log.debug("Variables: {}", () -> gson.toJson(request.variables()));
         }
 
         // Build the ExecutionInput for GraphQL execution
-        ExecutionInput executionInput = ExecutionInput.newExecutionInput()
+        ExecutionInput.Builder executionInputBuilder = ExecutionInput.newExecutionInput()
                 .localContext(graphQLLocalContext)
                 .query(query)
-                .variables(variablesMap)
-                .build();
+                .operationName(request.operationName())
+                .variables(request.variables())
+                .dataLoaderRegistry(dataLoaderRegistry);
+        if (isTracingRequested(ctx, request)) {
+            executionInputBuilder.graphQLContext(contextBuilder -> contextBuilder.of(GraphQLTrace.CONTEXT_KEY, new GraphQLTrace()));
+        }
+        ExecutionInput executionInput = executionInputBuilder.build();
+
+        // Execute the GraphQL query asynchronously, the Jetty thread is released until the result is written
+        CompletableFuture<ExecutionResult> resultFuture = graphQL.executeAsync(executionInput);
+        ctx.future(() -> resultFuture.handle((result, throwable) -> {
+            if (throwable != null) {
+                requestMetrics.stop(start, true);
+                throw throwable instanceof CompletionException completionException ? completionException : new CompletionException(throwable);
+            }
+            boolean failed = true;
+            try {
+                // Return the result as JSON
+                writeResult(ctx, result);
+                failed = !result.getErrors().isEmpty();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                requestMetrics.stop(start, failed);
+            }
+            if (!dataLoaderRegistry.getKeys().isEmpty()) {
+                log.debug("DataLoader statistics: {}", () -> dataLoaderRegistry.getStatistics());
+            }
+            log.debug("------");
+            return null;
+        }));
+        return true;
+    }
 
-        JsonElement responseJSON = gson.toJsonTree(graphQL.execute(executionInput).toSpecification());
+    /**
+     * Checks if the client asked for {@code extensions.tracing} (by sending {@code "extensions": {"tracing": true}})
+     * and is allowed to get it: always in debug mode, otherwise only with the tracing token.
+     *
+     * @param ctx     The Javalin HTTP context
+     * @param request The decoded request
+     * @return true, if the request should be traced
+     */
+    private boolean isTracingRequested(Context ctx, GraphQLRequest request) {
+        if (request.extensions() == null || !Boolean.TRUE.equals(request.extensions().get("tracing"))) {
+            return false;
+        }
+        if (Config.DEBUG) {
+            return true;
+        }
+        String token = ctx.header(TRACING_TOKEN_HEADER);
+        // Constant-time comparison, so the token can't be guessed from response times
+        return tracingToken != null && token != null && MessageDigest.isEqual(tracingToken, token.getBytes(StandardCharsets.UTF_8));
+    }
 
-        log.debug("Response: {}", gson.toJson(responseJSON));
+    /**
+     * Serializes the result directly into the response output stream, without building a JSON tree or String first.
+     *
+     * @param ctx    The Javalin HTTP context
+     * @param result The result to send
+     * @throws IOException If writing to the client fails
+     */
+    private void writeResult(Context ctx, ExecutionResult result) throws IOException {
+        Map<String, Object> specification = result.toSpecification();
 
-        log.debug("------");
+        // Serialized a second time only if debug logging is enabled
+        log.debug("Response: {}", () -> gson.toJson(specification));
 
-        // Execute the GraphQL query and return the result as JSON
-        ctx.result(gson.toJson(responseJSON));
+        // Javalin closes the output stream after the request, so only flush the writer here
+        Writer writer = new BufferedWriter(new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8));
+        gson.toJson(specification, writer);
+        writer.flush();
     }
 }
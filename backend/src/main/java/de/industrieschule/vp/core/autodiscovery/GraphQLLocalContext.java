@@ -1,19 +1,23 @@
 package de.industrieschule.vp.core.autodiscovery;
 
+import de.industrieschule.vp.core.autodiscovery.graphql.RequestDataLoaderRegistry;
 import io.javalin.http.Context;
 
 /**
  * A class representing a local context for GraphQL execution, containing a Javalin HTTP context.
  * This class is used to provide additional context information, such as the Javalin context, to GraphQL execution.
+ * Operations received over the WebSocket of {@link GraphQLWebSocketEndpoint} have no Javalin HTTP context.
  *
- * @param javalinContext The Javalin HTTP context associated with the GraphQL execution.
+ * @param javalinContext     The Javalin HTTP context associated with the GraphQL execution, null for WebSocket operations.
+ * @param dataLoaderRegistry The DataLoader registry of this request.
  * @author Moritz Hofmann
  */
-public record GraphQLLocalContext(Context javalinContext) {
+public record GraphQLLocalContext(Context javalinContext, RequestDataLoaderRegistry dataLoaderRegistry) {
     /**
      * Constructs a new GraphQLLocalContext with the provided Javalin HTTP context.
      *
-     * @param javalinContext The Javalin HTTP context associated with the GraphQL execution.
+     * @param javalinContext     The Javalin HTTP context associated with the GraphQL execution.
+     * @param dataLoaderRegistry The DataLoader registry of this request.
      */
     public GraphQLLocalContext {
     }
@@ -0,0 +1,411 @@
+package de.industrieschule.vp.core.autodiscovery;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLRequest;
+import de.industrieschule.vp.core.autodiscovery.graphql.PersistedQueryStore;
+import de.industrieschule.vp.core.autodiscovery.graphql.RequestDataLoaderRegistry;
+import de.industrieschule.vp.core.autodiscovery.graphql.SubscriptionTransportInstrumentation;
+import de.industrieschule.vp.core.autodiscovery.graphql.GraphQLRequestDecoder;
+import de.industrieschule.vp.core.autodiscovery.templates.WebSocketEndpointTemplate;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.json.JsonEngine;
+import de.industrieschule.vp.core.websocket.WebSocketSettings;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import io.javalin.http.HttpResponseException;
+import io.javalin.websocket.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes GraphQL operations, including subscriptions, over a WebSocket using the graphql-transport-ws protocol
+ * (https://github.com/enisdenjo/graphql-ws/blob/master/PROTOCOL.md), as spoken by the graphql-ws and Apollo clients.
+ * <p>
+ * Operations are executed by the same GraphQL instance as the HTTP requests of {@link GraphQLEndpoint}, so query
+ * limits, the document cache and persisted queries apply as well. Events of a subscription are sent one after
+ * another: the next event is requested once the previous one is written to the socket, so a slow client is
+ * throttled by its {@link de.industrieschule.vp.core.autodiscovery.graphql.SubscriptionPublisher} instead of the
+ * server buffering its events.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class GraphQLWebSocketEndpoint extends WebSocketEndpointTemplate {
+
+    private static final Logger log = LogManager.getLogger(GraphQLWebSocketEndpoint.class);
+
+    public static final String SUBPROTOCOL = "graphql-transport-ws";
+
+    // Close codes of the protocol
+    private static final int CLOSE_INVALID_MESSAGE = 4400;
+    private static final int CLOSE_UNAUTHORIZED = 4401;
+    private static final int CLOSE_SUBPROTOCOL_NOT_ACCEPTABLE = 4406;
+    private static final int CLOSE_INIT_TIMEOUT = 4408;
+    private static final int CLOSE_SUBSCRIBER_EXISTS = 4409;
+    private static final int CLOSE_TOO_MANY_INIT_REQUESTS = 4429;
+
+    /**
+     * Closes connections, that weren't initialised in time
+     */
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("GraphQL-WebSocket-Timeout").daemon().factory()
+    );
+
+    private final GraphQLEndpoint endpoint;
+
+    private final GraphQLRequestDecoder requestDecoder = new GraphQLRequestDecoder(Config.GRAPHQL_MAX_REQUEST_BYTES);
+
+    /**
+     * Open connections by session id
+     */
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * @param endpoint HTTP endpoint, whose GraphQL instance executes the operations
+     */
+    public GraphQLWebSocketEndpoint(GraphQLEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    private static class Connection {
+        private final WsContext context;
+        private final AtomicBoolean initReceived = new AtomicBoolean();
+        private volatile boolean acknowledged;
+        private volatile ScheduledFuture<?> initTimeout;
+
+        /**
+         * Running operations by their id
+         */
+        private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+        private Connection(WsContext context) {
+            this.context = context;
+        }
+
+        private void send(Map<String, Object> message, WriteCallback callback) {
+            context.session.getRemote().sendString(JsonEngine.GSON.toJson(message), callback);
+        }
+
+        private void send(String type, String id, Object payload) {
+            send(message(type, id, payload), WriteCallback.NOOP);
+        }
+
+        private void close(int code, String reason) {
+            log.debug("Closing GraphQL WebSocket of {}: {} {}", context.host(), code, reason);
+            context.closeSession(code, reason);
+        }
+    }
+
+    private static Map<String, Object> message(String type, String id, Object payload) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        if (id != null) {
+            message.put("id", id);
+        }
+        message.put("type", type);
+        if (payload != null) {
+            message.put("payload", payload);
+        }
+        return message;
+    }
+
+    private static class Operation {
+        private volatile Subscription subscription;
+        private volatile boolean cancelled;
+
+        private void cancel() {
+            cancelled = true;
+            Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    /**
+     * @return Number of open connections
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Accepted during the upgrade, if the client offers it
+     */
+    @Override
+    public String getSubprotocol() {
+        return SUBPROTOCOL;
+    }
+
+    @Override
+    public void onConnect(WsConnectContext wsConnectContext) {
+        Connection connection = new Connection(wsConnectContext);
+        if (!WebSocketSettings.isOffered(wsConnectContext.session.getUpgradeRequest().getSubProtocols(), SUBPROTOCOL)) {
+            connection.close(CLOSE_SUBPROTOCOL_NOT_ACCEPTABLE, "Subprotocol not acceptable");
+            return;
+        }
+        connections.put(wsConnectContext.sessionId(), connection);
+        connection.initTimeout = TIMEOUT_SCHEDULER.schedule(() -> {
+            if (!connection.acknowledged) {
+                connection.close(CLOSE_INIT_TIMEOUT, "Connection initialisation timeout");
+            }
+        }, Config.GRAPHQL_WS_INIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onMessage(WsMessageContext wsMessageContext) {
+        Connection connection = connections.get(wsMessageContext.sessionId());
+        if (connection == null) {
+            return;
+        }
+
+        JsonObject message;
+        try {
+            message = JsonParser.parseString(wsMessageContext.message()).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            connection.close(CLOSE_INVALID_MESSAGE, "Invalid message received");
+            return;
+        }
+        JsonElement type = message.get("type");
+        if (type == null || !type.isJsonPrimitive()) {
+            connection.close(CLOSE_INVALID_MESSAGE, "Invalid message received");
+            return;
+        }
+
+        switch (type.getAsString()) {
+            case "connection_init" -> {
+                if (connection.initReceived.getAndSet(true)) {
+                    connection.close(CLOSE_TOO_MANY_INIT_REQUESTS, "Too many initialisation requests");
+                    return;
+                }
+                connection.initTimeout.cancel(false);
+                connection.acknowledged = true;
+                connection.send("connection_ack", null, null);
+            }
+            case "ping" -> connection.send("pong", null, null);
+            case "pong" -> {
+                // Answer to a ping, nothing to do
+            }
+            case "subscribe" -> subscribe(connection, message);
+            case "complete" -> {
+                String id = readId(message);
+                if (id == null) {
+                    connection.close(CLOSE_INVALID_MESSAGE, "Invalid message received");
+                    return;
+                }
+                Operation operation = connection.operations.remove(id);
+                if (operation != null) {
+                    operation.cancel();
+                }
+            }
+            default -> connection.close(CLOSE_INVALID_MESSAGE, "Invalid message received");
+        }
+    }
+
+    private static String readId(JsonObject message) {
+        JsonElement id = message.get("id");
+        if (id == null || !id.isJsonPrimitive() || !id.getAsJsonPrimitive().isString() || id.getAsString().isEmpty()) {
+            return null;
+        }
+        return id.getAsString();
+    }
+
+    private void subscribe(Connection connection, JsonObject message) {
+        if (!connection.acknowledged) {
+            connection.close(CLOSE_UNAUTHORIZED, "Unauthorized");
+            return;
+        }
+        String id = readId(message);
+        JsonElement payload = message.get("payload");
+        if (id == null || payload == null || !payload.isJsonObject()) {
+            connection.close(CLOSE_INVALID_MESSAGE, "Invalid message received");
+            return;
+        }
+
+        GraphQLRequest request;
+        try {
+            request = requestDecoder.decode(payload.toString());
+        } catch (HttpResponseException e) {
+            connection.close(CLOSE_INVALID_MESSAGE, e.getMessage());
+            return;
+        }
+
+        Operation operation = new Operation();
+        if (connection.operations.putIfAbsent(id, operation) != null) {
+            connection.close(CLOSE_SUBSCRIBER_EXISTS, "Subscriber for " + id + " already exists");
+            return;
+        }
+        if (connection.operations.size() > Config.GRAPHQL_WS_MAX_OPERATIONS) {
+            sendErrors(connection, id, operation, List.of(GraphqlErrorBuilder.newError()
+                    .message("Too many operations, at most " + Config.GRAPHQL_WS_MAX_OPERATIONS + " are allowed per connection")
+                    .build()));
+            return;
+        }
+
+        // Query may be missing, if the client only sends the hash of a persisted query
+        PersistedQueryStore.Resolution resolution = endpoint.getPersistedQueryStore().resolve(request.query(), request.extensions());
+        if (resolution.error() != null) {
+            sendErrors(connection, id, operation, List.of(resolution.error()));
+            return;
+        }
+
+        RequestDataLoaderRegistry dataLoaderRegistry = endpoint.getDataLoaderRegistryFactory().newRegistry();
+        ExecutionInput executionInput = ExecutionInput.newExecutionInput()
+                // No HTTP context, Parameters.getJavalinContext() fails with a GraphQL error instead of a NullPointerException
+                .localContext(new GraphQLLocalContext(null, dataLoaderRegistry))
+                .query(resolution.query())
+                .operationName(request.operationName())
+                .variables(request.variables())
+                .dataLoaderRegistry(dataLoaderRegistry)
+                .graphQLContext(Map.of(SubscriptionTransportInstrumentation.STREAMING_TRANSPORT, true))
+                .build();
+
+        log.debug("WebSocket operation {}: {}", id, resolution.query());
+        endpoint.getGraphQL().executeAsync(executionInput).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                log.error("Execution of WebSocket operation {} failed", id, throwable);
+                sendErrors(connection, id, operation, List.of(GraphqlErrorBuilder.newError().message("Internal server error").build()));
+            } else if (result.getData() instanceof Publisher<?> publisher) {
+                @SuppressWarnings("unchecked")
+                Publisher<ExecutionResult> events = (Publisher<ExecutionResult>) publisher;
+                events.subscribe(new EventSubscriber(connection, id, operation));
+            } else if (!result.isDataPresent()) {
+                // Rejected before execution, e.g. validation errors
+                sendErrors(connection, id, operation, result.getErrors());
+            } else if (connection.operations.remove(id, operation)) {
+                // Query or mutation, a single result. Not sent, if the client has completed the operation meanwhile.
+                connection.send("next", id, result.toSpecification());
+                connection.send("complete", id, null);
+            }
+        });
+    }
+
+    /**
+     * Ends the operation with errors, unless the client has already completed it
+     */
+    private static void sendErrors(Connection connection, String id, Operation operation, List<GraphQLError> errors) {
+        if (!connection.operations.remove(id, operation)) {
+            return;
+        }
+        List<Map<String, Object>> payload = new ArrayList<>(errors.size());
+        for (GraphQLError error : errors) {
+            payload.add(error.toSpecification());
+        }
+        connection.send("error", id, payload);
+    }
+
+    /**
+     * Sends the events of a subscription, requests the next event after the previous one is written
+     */
+    private static class EventSubscriber implements Subscriber<ExecutionResult> {
+
+        private final Connection connection;
+        private final String id;
+        private final Operation operation;
+
+        private EventSubscriber(Connection connection, String id, Operation operation) {
+            this.connection = connection;
+            this.id = id;
+            this.operation = operation;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            operation.subscription = subscription;
+            if (operation.cancelled) {
+                // Completed by the client or closed before the subscription started
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ExecutionResult event) {
+            if (operation.cancelled) {
+                // Completed by the client, the cancellation hasn't reached the publisher yet
+                return;
+            }
+            connection.send(message("next", id, event.toSpecification()), new WriteCallback() {
+                @Override
+                public void writeSuccess() {
+                    if (!operation.cancelled) {
+                        operation.subscription.request(1);
+                    }
+                }
+
+                @Override
+                public void writeFailed(Throwable throwable) {
+                    operation.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.debug("Subscription {} failed: {}", id, throwable.getMessage());
+            if (connection.operations.remove(id, operation)) {
+                connection.send("error", id, List.of(GraphqlErrorBuilder.newError().message(throwable.getMessage()).build().toSpecification()));
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (connection.operations.remove(id, operation)) {
+                connection.send("complete", id, null);
+            }
+        }
+    }
+
+    @Override
+    public void onClose(WsCloseContext wsCloseContext) {
+        closed(wsCloseContext.sessionId());
+    }
+
+    @Override
+    public void onError(WsErrorContext wsErrorContext) {
+        log.debug("GraphQL WebSocket of {} encountered an error", wsErrorContext.host(), wsErrorContext.error());
+        closed(wsErrorContext.sessionId());
+    }
+
+    private void closed(String sessionId) {
+        Connection connection = connections.remove(sessionId);
+        if (connection == null) {
+            return;
+        }
+        if (connection.initTimeout != null) {
+            connection.initTimeout.cancel(false);
+        }
+        for (Operation operation : connection.operations.values()) {
+            operation.cancel();
+        }
+        connection.operations.clear();
+    }
+
+    @Override
+    public void onBinaryMessage(WsBinaryMessageContext wsBinaryMessageContext) {
+        Connection connection = connections.get(wsBinaryMessageContext.sessionId());
+        if (connection != null) {
+            connection.close(CLOSE_INVALID_MESSAGE, "Invalid message received");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package de.industrieschule.vp.core.autodiscovery.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Registers a {@link de.industrieschule.vp.core.autodiscovery.templates.BatchLoaderTemplate} as DataLoader.
+ * Resolvers can load values with {@code params.getDataLoader(name).load(key)}, all keys requested while resolving
+ * one level of a query are fetched with a single call of the batch loader.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface GraphQLBatchLoader {
+
+    /**
+     * Name of the DataLoader, used to look it up in the resolvers
+     */
+    String name();
+
+    /**
+     * Maximum number of keys passed to one batch loader call, 0 means unlimited
+     */
+    int maxBatchSize() default 0;
+
+    boolean debugOnly() default false;
+
+}
@@ -12,4 +12,15 @@ import java.lang.annotation.Target;
 public @interface GraphQLQuery {
     String fieldName();
     GraphQLEndpoint.GRAPHQL_FIELD_TYPE graphQLFieldType();
+
+    /**
+     * Object type in the GraphQL schema, that contains the field (e.g. "Lesson" for a nested field "Lesson.teacher").
+     * If empty, the field is registered on the root type selected by {@link #graphQLFieldType()}.
+     */
+    String parentType() default "";
+
+    /**
+     * Weight of the field in the static query cost, raise it for expensive resolvers (e.g. database queries over many rows)
+     */
+    int cost() default 1;
 }
@@ -19,6 +19,17 @@ public @interface MultiEndpoint {
 
     GraphQLEndpoint.GRAPHQL_FIELD_TYPE graphQLFieldType();
 
+    /**
+     * Object type in GraphQL Schema, that contains the field (e.g. "Lesson" for a nested field "Lesson.teacher").
+     * If empty, the field is registered on the root type selected by {@link #graphQLFieldType()}.
+     */
+    String graphQLParentType() default "";
+
+    /**
+     * Weight of the GraphQL field in the static query cost, raise it for expensive handlers
+     */
+    int graphQLCost() default 1;
+
     /**
      * HTTP Types when using REST Interface
      */
@@ -33,6 +44,24 @@ public @interface MultiEndpoint {
      */
     String[] restVersionPrefix() default "";
 
+    /**
+     * Cache-Control header of successful GET responses when using REST Interface. The default lets clients store the
+     * response, but revalidate it with its ETag on every request.
+     */
+    String restCacheControl() default "no-cache";
+
     boolean debugOnly() default false;
 
+    /**
+     * Seconds the response is cached for the REST GET route and the GraphQL query field, 0 disables caching.
+     * See {@link de.industrieschule.vp.core.cache.ResponseCache}.
+     */
+    int cacheTtlSeconds() default 0;
+
+    /**
+     * Names of the arguments, that form the cache key (e.g. {"date", "className"}). Arguments not listed here must
+     * not change the response.
+     */
+    String[] cacheKey() default {};
+
 }
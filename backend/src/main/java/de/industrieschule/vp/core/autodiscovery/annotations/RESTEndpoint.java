@@ -15,4 +15,22 @@ public @interface RESTEndpoint {
     String path();
     String[] apiVersion() default "";
     boolean debugOnly() default false;
+
+    /**
+     * Cache-Control header of successful GET responses. The default lets clients store the response, but revalidate
+     * it with its ETag on every request.
+     */
+    String cacheControl() default "no-cache";
+
+    /**
+     * Seconds the response of GET requests is cached, 0 disables caching.
+     * See {@link de.industrieschule.vp.core.cache.ResponseCache}.
+     */
+    int cacheTtlSeconds() default 0;
+
+    /**
+     * Names of the path or query parameters, that form the cache key. Parameters not listed here must not change
+     * the response.
+     */
+    String[] cacheKey() default {};
 }
@@ -0,0 +1,35 @@
+package de.industrieschule.vp.core.autodiscovery.annotations;
+
+import de.industrieschule.vp.core.sse.SSEStream;
+import de.industrieschule.vp.core.websocket.BroadcastEngine;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface SSEEndpoint {
+    String path();
+    String[] apiVersion() default "";
+    boolean debugOnly() default false;
+
+    /**
+     * What happens to clients that can't keep up with the events. Disconnected clients reconnect on their own and
+     * resume with their {@code Last-Event-ID}.
+     */
+    BroadcastEngine.SLOW_CLIENT_POLICY slowClientPolicy() default BroadcastEngine.SLOW_CLIENT_POLICY.DISCONNECT;
+
+    /**
+     * Interval of the keep-alive comments, 0 disables them. -1 uses {@code SSE_KEEPALIVE_MS}. Keeps proxies from
+     * closing idle streams and detects clients that are gone.
+     */
+    long keepAliveMs() default SSEStream.DEFAULT;
+
+    /**
+     * Number of events kept for clients that reconnect with a {@code Last-Event-ID}. -1 uses
+     * {@code SSE_REPLAY_BUFFER_EVENTS}.
+     */
+    int replayBufferSize() default (int) SSEStream.DEFAULT;
+}
@@ -1,5 +1,8 @@
 package de.industrieschule.vp.core.autodiscovery.annotations;
 
+import de.industrieschule.vp.core.websocket.BroadcastEngine;
+import de.industrieschule.vp.core.websocket.WebSocketSettings;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -11,5 +14,31 @@ public  @interface WebSocketEndpoint {
     String path();
     String[] apiVersion() default "";
     boolean debugOnly() default false;
-}
 
+    /**
+     * What happens to clients that can't keep up with the messages broadcast to them
+     */
+    BroadcastEngine.SLOW_CLIENT_POLICY slowClientPolicy() default BroadcastEngine.SLOW_CLIENT_POLICY.DISCONNECT;
+
+    /**
+     * Milliseconds without any frame, until the connection is closed. -1 uses {@code WS_IDLE_TIMEOUT_MS}.
+     */
+    long idleTimeoutMs() default WebSocketSettings.DEFAULT;
+
+    /**
+     * Maximum size of a received message in bytes. -1 uses {@code WS_MAX_MESSAGE_SIZE}.
+     */
+    long maxMessageSize() default WebSocketSettings.DEFAULT;
+
+    /**
+     * Interval of the server driven heartbeat, 0 disables it. -1 uses {@code WS_PING_INTERVAL_MS}. Connections that
+     * didn't send anything for an interval are pinged, and closed if they still don't answer within the next one.
+     */
+    long pingIntervalMs() default WebSocketSettings.DEFAULT;
+
+    /**
+     * Negotiate permessage-deflate with clients offering it, only if {@code WS_PERMESSAGE_DEFLATE} is enabled. Every
+     * compressed connection holds about 300 KiB of zlib state, it pays off for large messages only.
+     */
+    boolean compression() default true;
+}
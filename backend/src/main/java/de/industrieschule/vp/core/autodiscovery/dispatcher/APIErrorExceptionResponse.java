@@ -1,5 +1,8 @@
 package de.industrieschule.vp.core.autodiscovery.dispatcher;
 
+import de.industrieschule.vp.core.json.annotations.GenerateJsonAdapter;
+
+@GenerateJsonAdapter
 public class APIErrorExceptionResponse {
     private String message;
     private String simpleClassName;
@@ -1,49 +1,155 @@
 package de.industrieschule.vp.core.autodiscovery.dispatcher;
 
 import de.industrieschule.vp.core.autodiscovery.GraphQLLocalContext;
+import de.industrieschule.vp.core.autodiscovery.graphql.RequestDataLoaderRegistry;
 import de.industrieschule.vp.core.autodiscovery.templates.MultiEndpointTemplate;
 import de.industrieschule.vp.core.autodiscovery.utility.Parameters;
+import de.industrieschule.vp.core.cache.ResponseCache;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * A data fetcher implementation for GraphQL that serves as a dispatcher to handle GraphQL queries.
  * It uses an instance of {@link MultiEndpointTemplate} to process GraphQL queries and return results.
+ * <p>
+ * The {@link MultiEndpointTemplate} is called on a virtual thread and the result is returned as future, so
+ * graphql-java resolves independent fields of a query concurrently instead of one after another.
+ * </p>
+ * <p>
+ * Handlers may return a {@link CompletionStage} (e.g. from a DataLoader), it is unwrapped before the value is
+ * passed to graphql-java.
+ * </p>
+ * <p>
+ * If a cache policy is given, the results are cached in the {@link ResponseCache}, concurrent requests for the
+ * same key share one handler call.
+ * </p>
  *
  * @param <T> The type of data to be fetched and returned by this dispatcher.
  * @author MHO
  */
-public class GraphQLDispatcher<T> implements DataFetcher<T> {
+public class GraphQLDispatcher<T> implements DataFetcher<CompletableFuture<T>> {
+
+    /**
+     * Executor running the resolvers, one virtual thread per field. Resolvers mostly block on the database, so
+     * virtual threads are cheap to park.
+     */
+    private static final ExecutorService RESOLVER_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("GraphQL-Resolver-", 0).factory()
+    );
+
     /**
      * The instance of {@link MultiEndpointTemplate} used to process GraphQL queries.
      */
     private final MultiEndpointTemplate multiEndpointInstance;
 
+    /**
+     * Response cache, available to the handler, null if disabled
+     */
+    private final ResponseCache responseCache;
+
+    /**
+     * Caching of this field, null if the results aren't cached
+     */
+    private final ResponseCache.Policy cachePolicy;
+
     /**
      * Constructs a new GraphQLDispatcher with the provided instance of {@link MultiEndpointTemplate}.
      *
      * @param multiEndpointInstance The instance of {@link MultiEndpointTemplate} to be used for processing queries.
      */
     public GraphQLDispatcher(MultiEndpointTemplate multiEndpointInstance) {
+        this(multiEndpointInstance, null, null);
+    }
+
+    /**
+     * Constructs a new GraphQLDispatcher, that caches the results.
+     *
+     * @param multiEndpointInstance The instance of {@link MultiEndpointTemplate} to be used for processing queries.
+     * @param responseCache         Response cache, null if disabled
+     * @param cachePolicy           Caching of this field, null to always call the handler (e.g. for mutations)
+     */
+    public GraphQLDispatcher(MultiEndpointTemplate multiEndpointInstance, ResponseCache responseCache, ResponseCache.Policy cachePolicy) {
         this.multiEndpointInstance = multiEndpointInstance;
+        this.responseCache = responseCache;
+        this.cachePolicy = responseCache == null ? null : cachePolicy;
+    }
+
+    /**
+     * @return Class of the handler, e.g. to name the field in metrics and traces
+     */
+    public Class<?> getHandlerClass() {
+        return multiEndpointInstance.getClass();
+    }
+
+    /**
+     * Returns the class implementing a field: the handler for dispatched fields, the DataFetcher itself otherwise.
+     *
+     * @param dataFetcher DataFetcher of the field
+     * @return Class of the handler or DataFetcher
+     */
+    public static Class<?> resolverClass(DataFetcher<?> dataFetcher) {
+        return dataFetcher instanceof GraphQLDispatcher<?> dispatcher ? dispatcher.getHandlerClass() : dataFetcher.getClass();
     }
 
     /**
      * Retrieves data based on the provided GraphQL query and environment.
      *
      * @param environment The GraphQL data fetching environment.
-     * @return The fetched data of type {@code T}.
-     * @throws Exception If an error occurs during data fetching.
+     * @return Future completed with the fetched data of type {@code T}, or exceptionally if the resolver failed.
      */
     @Override
-    public T get(DataFetchingEnvironment environment) throws Exception {
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<T> get(DataFetchingEnvironment environment) {
         // Retrieve the GraphQLLocalContext set in GraphQLEndpoint class
         GraphQLLocalContext graphQLLocalContext = environment.getLocalContext();
+        RequestDataLoaderRegistry dataLoaderRegistry = graphQLLocalContext.dataLoaderRegistry();
 
         // Create Parameters for processing the query
-        Parameters params = new Parameters(graphQLLocalContext.javalinContext(), environment, Parameters.REQUEST_SOURCE.GRAPH_QL);
+        Parameters params = new Parameters(graphQLLocalContext.javalinContext(), environment, dataLoaderRegistry, responseCache, Parameters.REQUEST_SOURCE.GRAPH_QL);
+
+        if (cachePolicy == null) {
+            return resolve(params, dataLoaderRegistry);
+        }
+        // Copy, so no request can complete the shared future
+        return ((CompletableFuture<T>) responseCache.get(cachePolicy.key(params), cachePolicy, () -> resolve(params, dataLoaderRegistry))
+                .value()
+                .copy())
+                // The REST request, that called the handler, got an error status, so resolve the field on its own
+                .exceptionallyCompose(throwable -> ResponseCache.notCacheable(throwable) != null
+                        ? resolve(params, dataLoaderRegistry)
+                        : CompletableFuture.failedFuture(throwable));
+    }
+
+    /**
+     * Calls the handler on a virtual thread
+     *
+     * @param params             Parameters of the field
+     * @param dataLoaderRegistry DataLoaders of the request
+     * @return Future completed with the result of the handler
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<T> resolve(Parameters params, RequestDataLoaderRegistry dataLoaderRegistry) {
+        // DataLoaders are not dispatched while this resolver is running, so all loads of this level end up in one batch
+        dataLoaderRegistry.resolverStarted();
 
         // Run the multiEndpointInstance to process the GraphQL query and return the result
-        return (T) multiEndpointInstance.handleRequest(params);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return multiEndpointInstance.handleRequest(params);
+            } catch (Exception e) {
+                // graphql-java unwraps the CompletionException and reports the cause as field error
+                throw new CompletionException(e);
+            } finally {
+                dataLoaderRegistry.resolverFinished();
+            }
+        }, RESOLVER_EXECUTOR).thenCompose(result -> result instanceof CompletionStage<?> stage
+                ? (CompletionStage<T>) stage
+                : CompletableFuture.completedFuture((T) result));
     }
 }
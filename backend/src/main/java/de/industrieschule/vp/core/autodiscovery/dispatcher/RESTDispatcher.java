@@ -1,18 +1,33 @@
 package de.industrieschule.vp.core.autodiscovery.dispatcher;
 
 
-import com.google.gson.Gson;
+import de.industrieschule.vp.core.autodiscovery.annotations.MultiEndpoint;
+import de.industrieschule.vp.core.autodiscovery.annotations.RESTEndpoint;
+import de.industrieschule.vp.core.autodiscovery.graphql.DataLoaderRegistryFactory;
+import de.industrieschule.vp.core.autodiscovery.graphql.RequestDataLoaderRegistry;
 import de.industrieschule.vp.core.autodiscovery.templates.RESTEndpointTemplate;
 import de.industrieschule.vp.core.autodiscovery.utility.Parameters;
+import de.industrieschule.vp.core.cache.ResponseCache;
 import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.json.JsonEngine;
+import de.industrieschule.vp.core.metrics.EndpointMetrics;
+import de.industrieschule.vp.core.utilities.ETagUtil;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
 import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 public class RESTDispatcher implements Handler {
 
@@ -24,62 +39,349 @@ public class RESTDispatcher implements Handler {
 
     private final Logger log = LogManager.getLogger(getClass());
 
+    /**
+     * Creates the DataLoader registry for each request
+     */
+    private final DataLoaderRegistryFactory dataLoaderRegistryFactory;
+
+    /**
+     * Latency and error metrics of this route
+     */
+    private final EndpointMetrics metrics;
+
+    /**
+     * Response cache, available to the handler, null if disabled
+     */
+    private final ResponseCache responseCache;
+
+    /**
+     * Caching of this route, null if the responses aren't cached
+     */
+    private final ResponseCache.Policy cachePolicy;
+
+    /**
+     * Cache-Control header of GET responses
+     */
+    private final String cacheControl;
+
     /**
      * Constructs a new RESTDispatcher with the provided instance of {@link RESTEndpointTemplate}.
      *
-     * @param restEndpointInstance The instance of {@link RESTEndpointTemplate} to be used for processing REST requests.
+     * @param restEndpointInstance      The instance of {@link RESTEndpointTemplate} to be used for processing REST requests.
+     * @param dataLoaderRegistryFactory Factory for the DataLoaders available through {@link Parameters#getDataLoader(String)}.
+     * @param metrics                   Metrics of the route, recorded for every request.
      */
-    public RESTDispatcher(RESTEndpointTemplate restEndpointInstance) {
+    public RESTDispatcher(RESTEndpointTemplate restEndpointInstance, DataLoaderRegistryFactory dataLoaderRegistryFactory, EndpointMetrics metrics) {
+        this(restEndpointInstance, dataLoaderRegistryFactory, metrics, null, null);
+    }
+
+    /**
+     * Constructs a new RESTDispatcher, that caches the responses.
+     *
+     * @param restEndpointInstance      The instance of {@link RESTEndpointTemplate} to be used for processing REST requests.
+     * @param dataLoaderRegistryFactory Factory for the DataLoaders available through {@link Parameters#getDataLoader(String)}.
+     * @param metrics                   Metrics of the route, recorded for every request.
+     * @param responseCache             Response cache, null if disabled
+     * @param cachePolicy               Caching of this route, null to always call the handler (e.g. for POST routes)
+     */
+    public RESTDispatcher(RESTEndpointTemplate restEndpointInstance, DataLoaderRegistryFactory dataLoaderRegistryFactory, EndpointMetrics metrics,
+                          ResponseCache responseCache, ResponseCache.Policy cachePolicy) {
         this.restEndpointInstance = restEndpointInstance;
+        this.dataLoaderRegistryFactory = dataLoaderRegistryFactory;
+        this.metrics = metrics;
+        this.responseCache = responseCache;
+        this.cachePolicy = responseCache == null ? null : cachePolicy;
+        this.cacheControl = cacheControlOf(restEndpointInstance.getClass());
+    }
+
+    /**
+     * Reads the Cache-Control policy from the {@link MultiEndpoint} or {@link RESTEndpoint} annotation
+     *
+     * @param handler Handler class
+     * @return Cache-Control header value, "no-cache" if the class isn't annotated
+     */
+    private static String cacheControlOf(Class<?> handler) {
+        MultiEndpoint multiEndpoint = handler.getAnnotation(MultiEndpoint.class);
+        if (multiEndpoint != null) {
+            return multiEndpoint.restCacheControl();
+        }
+        RESTEndpoint restEndpoint = handler.getAnnotation(RESTEndpoint.class);
+        if (restEndpoint != null) {
+            return restEndpoint.cacheControl();
+        }
+        return "no-cache";
     }
 
     /**
      * Handles the incoming REST request, processes it using the multiEndpointInstance, and returns the response in JSON format.
+     * <p>
+     * If the handler returns a {@link CompletionStage} (e.g. from a DataLoader), the DataLoaders are dispatched and
+     * the response is sent once the stage is completed.
+     * </p>
+     * <p>
+     * Cached responses are sent as the JSON serialized when they were cached. Only responses with a 2xx status are
+     * cached, others are sent as the handler left them.
+     * </p>
+     * <p>
+     * Successful GET responses get a strong ETag, either from {@link RESTEndpointTemplate#getResponseVersion(Parameters)}
+     * or from a hash of the JSON. If it matches "If-None-Match", 304 (Not Modified) is sent without a body. With a
+     * version, the handler isn't called at all in this case.
+     * </p>
      *
      * @param ctx The Javalin HTTP context for handling the request.
      * @throws Exception If an error occurs during request processing.
      */
     @Override
     public void handle(@NotNull Context ctx) {
+        long start = metrics.start();
+        boolean failed = true;
+        boolean async = false;
+
+        try {
+            RequestDataLoaderRegistry dataLoaderRegistry = dataLoaderRegistryFactory.newRegistry();
 
-        Gson gson = new Gson();
+            // Create Parameters for processing the REST request
+            Parameters params = new Parameters(ctx, null, dataLoaderRegistry, responseCache, Parameters.REQUEST_SOURCE.REST);
 
-        // Create Parameters for processing the REST request
-        Parameters params = new Parameters(ctx, null, Parameters.REQUEST_SOURCE.REST);
+            // Run the EndpointInstance to process the request and return the result as JSON
 
-        // Run the EndpointInstance to process the request and return the result as JSON
+            Object instanceResponse = null;
+            ResponseCache.Entry cacheEntry = null;
+
+            boolean conditional = ctx.method() == HandlerType.GET;
+            String versionETag = null;
+            if (conditional) {
+                try {
+                    String version = restEndpointInstance.getResponseVersion(params);
+                    versionETag = version == null ? null : ETagUtil.fromVersion(version);
+                } catch (Exception e) {
+                    sendResponse(ctx, handleException(ctx, e), false, null);
+                    return;
+                }
+                if (versionETag != null && ETagUtil.matches(ctx.header(Header.IF_NONE_MATCH), versionETag)) {
+                    // The client has the current version, neither call the handler nor serialize anything
+                    sendNotModified(ctx, versionETag);
+                    failed = false;
+                    return;
+                }
+            }
+
+            if (cachePolicy != null && conditional) {
+                boolean[] calledHandler = new boolean[1];
+                cacheEntry = responseCache.get(cachePolicy.key(params), cachePolicy, () -> {
+                    calledHandler[0] = true;
+                    return cacheableResponse(ctx, callHandler(params));
+                });
+                if (cacheEntry.isLoaded()) {
+                    sendCachedResponse(ctx, cacheEntry, versionETag);
+                    failed = ctx.statusCode() >= 500;
+                    return;
+                }
+                // Still loading (or failed, or not cacheable), answered below like an asynchronous response
+                instanceResponse = cacheEntry.value().copy()
+                        .exceptionallyCompose(throwable -> notCachedResponse(throwable, calledHandler[0], params, dataLoaderRegistry));
+            } else {
+                try {
+                    instanceResponse = callHandler(params);
+                } catch (Exception e) {
+                    instanceResponse = handleException(ctx, e);
+                }
+            }
+
+            if (instanceResponse instanceof CompletionStage<?> stage) {
+                // Load everything requested from DataLoaders by the handler
+                dataLoaderRegistry.dispatchAll();
+                async = true;
+                ResponseCache.Entry asyncCacheEntry = cacheEntry;
+                String asyncVersionETag = versionETag;
+                ctx.future(() -> stage.toCompletableFuture().handle((result, throwable) -> {
+                    boolean asyncFailed = true;
+                    try {
+                        if (throwable != null) {
+                            sendResponse(ctx, handleException(ctx, throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable), false, null);
+                        } else if (result instanceof NotCachedResponse notCached) {
+                            sendResponse(ctx, notCached.response(), conditional, asyncVersionETag);
+                        } else if (asyncCacheEntry != null) {
+                            sendCachedResponse(ctx, asyncCacheEntry, asyncVersionETag);
+                        } else {
+                            sendResponse(ctx, result, conditional, asyncVersionETag);
+                        }
+                        asyncFailed = ctx.statusCode() >= 500;
+                    } finally {
+                        metrics.stop(start, asyncFailed);
+                    }
+                    return null;
+                }));
+                return;
+            }
+
+            sendResponse(ctx, instanceResponse, conditional, versionETag);
+            failed = ctx.statusCode() >= 500;
+        } finally {
+            // Async responses are recorded once they are sent
+            if (!async) {
+                metrics.stop(start, failed);
+            }
+        }
+    }
+
+    private Object callHandler(Parameters params) throws Exception {
+        log.debug("Handler class {} called", restEndpointInstance.getClass().getName());
+        return restEndpointInstance.handleRequest(params);
+    }
+
+    /**
+     * Response of the handler, that is sent like without the cache
+     *
+     * @param response Response of the handler
+     */
+    private record NotCachedResponse(Object response) {
+    }
 
-        Object instanceResponse = null;
+    /**
+     * Lets the cache store the response only if the handler left a successful status, error responses (e.g. 404, or
+     * 401 with a body) are sent with their status and headers instead of being replayed as 200.
+     *
+     * @param ctx      The Javalin HTTP context
+     * @param response Response of the handler, may be a {@link CompletionStage}
+     * @return The response, or a stage failing with {@link ResponseCache.NotCacheableException}
+     * @throws ResponseCache.NotCacheableException If the status isn't 2xx
+     */
+    private static Object cacheableResponse(Context ctx, Object response) {
+        if (response instanceof CompletionStage<?> stage) {
+            // Handlers may set the status until the stage completes
+            return stage.thenApply(value -> requireSuccessStatus(ctx, value));
+        }
+        return requireSuccessStatus(ctx, response);
+    }
+
+    private static Object requireSuccessStatus(Context ctx, Object response) {
+        if (ctx.statusCode() < 200 || ctx.statusCode() >= 300) {
+            throw new ResponseCache.NotCacheableException(response);
+        }
+        return response;
+    }
+
+    /**
+     * Recovers from an entry, that wasn't cached because of the status of the response
+     *
+     * @param throwable          Failure of the entry
+     * @param calledHandler      true, if this request called the handler for the entry
+     * @param params             Parameters of this request
+     * @param dataLoaderRegistry DataLoaders of this request
+     * @return The response to send as {@link NotCachedResponse}, or the failure for other errors
+     */
+    private CompletionStage<Object> notCachedResponse(Throwable throwable, boolean calledHandler, Parameters params, RequestDataLoaderRegistry dataLoaderRegistry) {
+        ResponseCache.NotCacheableException notCacheable = ResponseCache.notCacheable(throwable);
+        if (notCacheable == null) {
+            return CompletableFuture.failedFuture(throwable);
+        }
+        if (calledHandler) {
+            // Status and headers are already set on this request
+            return CompletableFuture.completedFuture(new NotCachedResponse(notCacheable.response()));
+        }
+        // Waited for the handler call of another request, its response may not apply to this one
         try {
-            log.debug("Handler class {} called", restEndpointInstance.getClass().getName());
-            instanceResponse = restEndpointInstance.handleRequest(params);
-        } catch (Exception e) {
-            log.error("Exception was thrown during handling in RESTEndpointInstance", e);
-            APIErrorExceptionResponse response = new APIErrorExceptionResponse();
-
-            if(Config.DEBUG){
-                response.setMessage(e.getMessage());
-                response.setSimpleClassName(e.getClass().getSimpleName());
-
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw);
-                e.printStackTrace(pw);
-                pw.flush();
-                response.setStackTrace(sw.toString());
-            }else {
-                //Production mode
-                response.setMessage("Internal Server Error. Please try again later.");
-                response.setSimpleClassName(null);
-                response.setStackTrace(null);
+            Object response = callHandler(params);
+            if (response instanceof CompletionStage<?> stage) {
+                dataLoaderRegistry.dispatchAll();
+                return stage.thenApply(NotCachedResponse::new);
             }
+            return CompletableFuture.completedFuture(new NotCachedResponse(response));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
+    /**
+     * Sends a cached response, or 204 (No Content) if the handler returned null. A response, that couldn't be
+     * serialized, is answered with 500 like without the cache.
+     *
+     * @param ctx         The Javalin HTTP context
+     * @param entry       Loaded cache entry
+     * @param versionETag ETag from the version of the endpoint, null to use the hash of the cached body
+     */
+    private void sendCachedResponse(Context ctx, ResponseCache.Entry entry, String versionETag) {
+        if (entry.serializationError() != null) {
+            sendResponse(ctx, handleException(ctx, entry.serializationError()), false, null);
+        } else if (entry.body() != null) {
+            sendBody(ctx, entry.body(), versionETag != null ? versionETag : entry.etag());
+        } else {
+            ctx.status(204);
+        }
+    }
+
+    /**
+     * Sends the serialized response, or 304 (Not Modified) if the client already has it
+     *
+     * @param ctx  The Javalin HTTP context
+     * @param body Response as UTF-8 JSON
+     * @param etag Quoted ETag of the response
+     */
+    private void sendBody(Context ctx, byte[] body, String etag) {
+        if (ETagUtil.matches(ctx.header(Header.IF_NONE_MATCH), etag)) {
+            sendNotModified(ctx, etag);
+            return;
+        }
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, cacheControl);
+        ctx.contentType(ContentType.APPLICATION_JSON).result(body);
+    }
+
+    private void sendNotModified(Context ctx, String etag) {
+        log.debug("ETag {} matches, so set 304 (Not Modified) HTTP header", etag);
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, cacheControl);
+        ctx.status(HttpStatus.NOT_MODIFIED);
+    }
+
+    /**
+     * Logs the exception and builds the error response, which contains details only in debug mode
+     *
+     * @param ctx The Javalin HTTP context
+     * @param e   Exception thrown by the handler
+     * @return Error response to send
+     */
+    private APIErrorExceptionResponse handleException(Context ctx, Throwable e) {
+        log.error("Exception was thrown during handling in RESTEndpointInstance", e);
+        APIErrorExceptionResponse response = new APIErrorExceptionResponse();
+
+        if(Config.DEBUG){
+            response.setMessage(e.getMessage());
+            response.setSimpleClassName(e.getClass().getSimpleName());
 
-            ctx.header("Content-Type","application/json");
-            ctx.status(500);
-            instanceResponse = response;
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            e.printStackTrace(pw);
+            pw.flush();
+            response.setStackTrace(sw.toString());
+        }else {
+            //Production mode
+            response.setMessage("Internal Server Error. Please try again later.");
+            response.setSimpleClassName(null);
+            response.setStackTrace(null);
         }
 
-        if(instanceResponse != null){
+
+        ctx.header("Content-Type","application/json");
+        ctx.status(500);
+        return response;
+    }
+
+    /**
+     * Serializes the response as JSON, or sends 204 (No Content) if there is none
+     *
+     * @param ctx              The Javalin HTTP context
+     * @param instanceResponse Response of the handler
+     * @param conditional      true for GET requests, then successful responses get an ETag
+     * @param versionETag      ETag from the version of the endpoint, null to hash the response
+     */
+    private void sendResponse(Context ctx, Object instanceResponse, boolean conditional, String versionETag) {
+        if(instanceResponse != null && conditional && ctx.statusCode() == HttpStatus.OK.getCode()){
+            log.debug("Serializing response of type {}", instanceResponse.getClass().getName());
+            byte[] body = JsonEngine.GSON.toJson(instanceResponse).getBytes(StandardCharsets.UTF_8);
+            sendBody(ctx, body, versionETag != null ? versionETag : ETagUtil.fromContent(body));
+        }else if(instanceResponse != null){
             log.debug("Serializing response of type {}", instanceResponse.getClass().getName());
             ctx.json(instanceResponse);
         }else {
@@ -0,0 +1,89 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import de.industrieschule.vp.core.autodiscovery.templates.BatchLoaderTemplate;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.MappedBatchLoader;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds all batch loaders found by the autodiscovery and creates a {@link RequestDataLoaderRegistry} for every
+ * request. DataLoaders cache their values, so they must never be shared between requests (and users).
+ *
+ * @author Moritz Hofmann
+ */
+public class DataLoaderRegistryFactory {
+
+    /**
+     * Executor running the batch loaders, they usually block on the database
+     */
+    private static final ExecutorService BATCH_LOADER_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("GraphQL-BatchLoader-", 0).factory()
+    );
+
+    private record Registration(BatchLoaderTemplate<?, ?> template, int maxBatchSize) {
+    }
+
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a batch loader
+     *
+     * @param name         Name of the DataLoader
+     * @param template     Batch loader implementation
+     * @param maxBatchSize Maximum number of keys per batch, 0 for unlimited
+     * @throws IllegalArgumentException If the name is already in use
+     */
+    public void register(String name, BatchLoaderTemplate<?, ?> template, int maxBatchSize) {
+        if (registrations.putIfAbsent(name, new Registration(template, maxBatchSize)) != null) {
+            throw new IllegalArgumentException("A batch loader with the name \"" + name + "\" is already registered");
+        }
+    }
+
+    /**
+     * Creates an empty registry for a new request
+     *
+     * @return New registry
+     */
+    public RequestDataLoaderRegistry newRegistry() {
+        return new RequestDataLoaderRegistry(this);
+    }
+
+    /**
+     * @return Names of all registered batch loaders
+     */
+    public Set<String> getNames() {
+        return registrations.keySet();
+    }
+
+    @SuppressWarnings("unchecked")
+    DataLoader<?, ?> createDataLoader(String name) {
+        Registration registration = registrations.get(name);
+        if (registration == null) {
+            throw new IllegalArgumentException("No batch loader with the name \"" + name + "\" is registered");
+        }
+        BatchLoaderTemplate<Object, Object> template = (BatchLoaderTemplate<Object, Object>) registration.template();
+
+        MappedBatchLoader<Object, Object> batchLoader = keys -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return template.loadBatch(keys);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, BATCH_LOADER_EXECUTOR);
+
+        DataLoaderOptions options = DataLoaderOptions.newOptions();
+        if (registration.maxBatchSize() > 0) {
+            options.setMaxBatchSize(registration.maxBatchSize());
+        }
+        return DataLoaderFactory.newMappedDataLoader(batchLoader, options);
+    }
+}
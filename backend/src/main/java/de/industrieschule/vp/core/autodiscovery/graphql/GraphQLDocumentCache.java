@@ -0,0 +1,156 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A {@link PreparsedDocumentProvider}, that caches parsed and validated GraphQL documents.
+ * <p>
+ * Our clients send the same few queries over and over again, so parsing and validating the query text on every
+ * request is wasted CPU time. Documents are cached by query text and operation name.
+ * </p>
+ * <p>
+ * Lookups don't take a lock, they only mark the document as used. Once {@link #getMaxSize()} is exceeded, documents
+ * are evicted with the "second chance" (clock) algorithm: the hand moves on over the documents, those used since it
+ * last passed them are kept and unmarked, unused ones are removed. This approximates evicting the least recently
+ * used document. The size may exceed the maximum for a moment, while another thread is evicting.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class GraphQLDocumentCache implements PreparsedDocumentProvider {
+
+    private record CacheKey(String query, String operationName) {
+    }
+
+    /**
+     * Cached document with its "used" mark
+     */
+    private static final class Node {
+        private final PreparsedDocumentEntry entry;
+        // New documents start unmarked, so queries sent only once are evicted before the ones used again
+        private volatile boolean referenced;
+
+        private Node(PreparsedDocumentEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private final int maxSize;
+    private final ConcurrentHashMap<CacheKey, Node> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Only one thread evicts at a time, the others don't wait for it
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Position of the clock hand, continued by the next eviction. Guarded by {@link #evictionLock}.
+     */
+    private Iterator<Node> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a new document cache.
+     *
+     * @param maxSize Maximum number of cached documents, must be at least 1
+     */
+    public GraphQLDocumentCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1, got " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        CacheKey key = new CacheKey(executionInput.getQuery(), executionInput.getOperationName());
+
+        Node node = cache.get(key);
+        if (node != null) {
+            // Only written if not already marked, so frequently used documents are only read
+            if (!node.referenced) {
+                node.referenced = true;
+            }
+            hits.increment();
+            return CompletableFuture.completedFuture(node.entry);
+        }
+
+        misses.increment();
+        // Two threads may parse the same query at the same time, but that's cheaper than making the other one wait
+        PreparsedDocumentEntry entry = parseAndValidateFunction.apply(executionInput);
+        cache.put(key, new Node(entry));
+        evictIfNeeded();
+        return CompletableFuture.completedFuture(entry);
+    }
+
+    private void evictIfNeeded() {
+        if (cache.size() <= maxSize || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (cache.size() > maxSize) {
+                if (hand == null || !hand.hasNext()) {
+                    // Next pass, the documents passed before are unmarked by now
+                    hand = cache.values().iterator();
+                    if (!hand.hasNext()) {
+                        return;
+                    }
+                }
+                Node node = hand.next();
+                if (node.referenced) {
+                    node.referenced = false;
+                } else {
+                    hand.remove();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all cached documents, e.g. after the schema has changed.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return Number of requests served from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of requests, that had to be parsed and validated
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of currently cached documents
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return Maximum number of cached documents
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
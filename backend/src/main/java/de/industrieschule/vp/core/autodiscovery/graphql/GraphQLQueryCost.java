@@ -0,0 +1,63 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Result of the static analysis of a GraphQL operation, see {@link GraphQLQueryLimitInstrumentation}.
+ * All counts saturate at {@link Integer#MAX_VALUE}.
+ *
+ * @param depth   Deepest nesting of selections, a single root field has depth 1
+ * @param fields  Number of selected fields, fields in fragments are counted for every spread
+ * @param aliases Number of aliased fields
+ * @param cost    Sum of the weights of all selected fields
+ * @author Moritz Hofmann
+ */
+public record GraphQLQueryCost(int depth, int fields, int aliases, int cost) {
+
+    public static final GraphQLQueryCost EMPTY = new GraphQLQueryCost(0, 0, 0, 0);
+
+    /**
+     * Combines the costs of two selections on the same level
+     *
+     * @param other Cost of the other selection
+     * @return Combined cost
+     */
+    public GraphQLQueryCost plus(GraphQLQueryCost other) {
+        return new GraphQLQueryCost(Math.max(depth, other.depth), add(fields, other.fields), add(aliases, other.aliases), add(cost, other.cost));
+    }
+
+    /**
+     * Adds a field on top of the given selection
+     *
+     * @param selection Cost of the selection of the field, {@link #EMPTY} for leaf fields
+     * @param aliased   true, if the field has an alias
+     * @param weight    Weight of the field
+     * @return Cost of the field including its selection
+     */
+    static GraphQLQueryCost field(GraphQLQueryCost selection, boolean aliased, int weight) {
+        return new GraphQLQueryCost(add(selection.depth, 1), add(selection.fields, 1), add(selection.aliases, aliased ? 1 : 0), add(selection.cost, weight));
+    }
+
+    /**
+     * @param limits Maximum values, reported to the client
+     * @return Cost and limits as {@code extensions.cost} object of the response
+     */
+    public Map<String, Object> toSpecification(GraphQLQueryCost limits) {
+        Map<String, Object> specification = new LinkedHashMap<>();
+        specification.put("cost", cost);
+        specification.put("maxCost", limits.cost);
+        specification.put("depth", depth);
+        specification.put("maxDepth", limits.depth);
+        specification.put("fields", fields);
+        specification.put("maxFields", limits.fields);
+        specification.put("aliases", aliases);
+        specification.put("maxAliases", limits.aliases);
+        return specification;
+    }
+
+    private static int add(int a, int b) {
+        // Fragments can be spread repeatedly, so the values can grow exponentially with the document size
+        return (int) Math.min(Integer.MAX_VALUE, (long) a + b);
+    }
+}
@@ -0,0 +1,245 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import de.industrieschule.vp.core.autodiscovery.annotations.GraphQLQuery;
+import de.industrieschule.vp.core.autodiscovery.annotations.MultiEndpoint;
+import de.industrieschule.vp.core.autodiscovery.dispatcher.GraphQLDispatcher;
+import graphql.ErrorClassification;
+import graphql.ExecutionResult;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import graphql.TrivialDataFetcher;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.schema.DataFetcher;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLFieldsContainer;
+import graphql.schema.GraphQLInterfaceType;
+import graphql.schema.GraphQLNamedType;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
+import graphql.schema.GraphQLTypeUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Rejects operations that exceed the configured depth, field count, alias count or cost before they are executed.
+ * <p>
+ * The cost is the sum of the weights of all selected fields. Fields resolved by a handler weigh
+ * {@link GraphQLQuery#cost()} or {@link MultiEndpoint#graphQLCost()}, fields returning a property of their parent
+ * are free. The analysis is static: fragments are counted for every spread, {@code @skip} and {@code @include} are
+ * ignored and list sizes are unknown, so raise the weight of fields, whose resolvers are expensive per item.
+ * Introspection fields are not counted, they are limited by graphql-java's good faith introspection check.
+ * </p>
+ * <p>
+ * The cost of every executed operation is added to the result as {@code extensions.cost}, so clients can tune their
+ * queries. A limit of 0 disables the check.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class GraphQLQueryLimitInstrumentation extends SimplePerformantInstrumentation {
+
+    private static final Logger log = LogManager.getLogger(GraphQLQueryLimitInstrumentation.class);
+
+    public static final String ERROR_LIMIT_EXCEEDED = "QUERY_LIMIT_EXCEEDED";
+
+    /**
+     * Limits, one value per dimension
+     */
+    private final GraphQLQueryCost limits;
+
+    /**
+     * Weights of the fields resolved by a handler. Interface fields weigh as much as their most expensive
+     * implementation. Only read after construction.
+     */
+    private final Map<GraphQLFieldDefinition, Integer> weights = new IdentityHashMap<>();
+
+    /**
+     * Cost of the executed operation, set before the execution starts
+     */
+    private static class CostState implements InstrumentationState {
+        private volatile GraphQLQueryCost cost;
+    }
+
+    /**
+     * Looks up the weights of all fields of the schema
+     *
+     * @param schema     Executable schema
+     * @param maxDepth   Maximum nesting of selections
+     * @param maxFields  Maximum number of selected fields
+     * @param maxAliases Maximum number of aliased fields, limits batching of the same field with aliases
+     * @param maxCost    Maximum sum of the field weights
+     */
+    public GraphQLQueryLimitInstrumentation(GraphQLSchema schema, int maxDepth, int maxFields, int maxAliases, int maxCost) {
+        this.limits = new GraphQLQueryCost(maxDepth, maxFields, maxAliases, maxCost);
+
+        for (GraphQLNamedType type : schema.getAllTypesAsList()) {
+            if (!(type instanceof GraphQLObjectType objectType) || objectType.getName().startsWith("__")) {
+                continue;
+            }
+            for (GraphQLFieldDefinition field : objectType.getFieldDefinitions()) {
+                DataFetcher<?> dataFetcher = schema.getCodeRegistry().getDataFetcher(objectType, field);
+                if (!(dataFetcher instanceof TrivialDataFetcher<?>)) {
+                    weights.put(field, weight(GraphQLDispatcher.resolverClass(dataFetcher)));
+                }
+            }
+        }
+
+        for (GraphQLNamedType type : schema.getAllTypesAsList()) {
+            if (!(type instanceof GraphQLInterfaceType interfaceType) || interfaceType.getName().startsWith("__")) {
+                continue;
+            }
+            for (GraphQLFieldDefinition field : interfaceType.getFieldDefinitions()) {
+                int weight = 0;
+                for (GraphQLObjectType implementation : schema.getImplementations(interfaceType)) {
+                    weight = Math.max(weight, weights.getOrDefault(implementation.getFieldDefinition(field.getName()), 0));
+                }
+                if (weight > 0) {
+                    weights.put(field, weight);
+                }
+            }
+        }
+    }
+
+    private static int weight(Class<?> resolverClass) {
+        GraphQLQuery graphQLQuery = resolverClass.getAnnotation(GraphQLQuery.class);
+        if (graphQLQuery != null) {
+            return graphQLQuery.cost();
+        }
+        MultiEndpoint multiEndpoint = resolverClass.getAnnotation(MultiEndpoint.class);
+        if (multiEndpoint != null) {
+            return multiEndpoint.graphQLCost();
+        }
+        return 1;
+    }
+
+    @Override
+    public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+        return new CostState();
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters, InstrumentationState state) {
+        ExecutionContext executionContext = parameters.getExecutionContext();
+        GraphQLSchema schema = executionContext.getGraphQLSchema();
+
+        GraphQLObjectType rootType = switch (executionContext.getOperationDefinition().getOperation()) {
+            case QUERY -> schema.getQueryType();
+            case MUTATION -> schema.getMutationType();
+            case SUBSCRIPTION -> schema.getSubscriptionType();
+        };
+        GraphQLQueryCost cost = new Analysis(schema, executionContext.getFragmentsByName())
+                .selectionSet(executionContext.getOperationDefinition().getSelectionSet(), rootType);
+        ((CostState) state).cost = cost;
+
+        List<GraphQLError> errors = new ArrayList<>();
+        check(errors, "depth", cost.depth(), limits.depth());
+        check(errors, "fields", cost.fields(), limits.fields());
+        check(errors, "aliases", cost.aliases(), limits.aliases());
+        check(errors, "cost", cost.cost(), limits.cost());
+        if (!errors.isEmpty()) {
+            log.debug("GraphQL operation rejected: {}", cost);
+            throw new AbortExecutionException(errors);
+        }
+        return null;
+    }
+
+    private void check(List<GraphQLError> errors, String limit, int value, int max) {
+        if (max > 0 && value > max) {
+            errors.add(GraphqlErrorBuilder.newError()
+                    .message("Query " + limit + " of " + value + " exceeds the maximum of " + max)
+                    .errorType(ErrorClassification.errorClassification(ERROR_LIMIT_EXCEEDED))
+                    .extensions(Map.of("code", ERROR_LIMIT_EXCEEDED, "limit", limit, "value", value, "max", max))
+                    .build());
+        }
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters, InstrumentationState state) {
+        GraphQLQueryCost cost = ((CostState) state).cost;
+        if (cost == null) {
+            // Not executed, e.g. because of a syntax or validation error
+            return CompletableFuture.completedFuture(executionResult);
+        }
+        return CompletableFuture.completedFuture(executionResult.transform(builder -> builder.addExtension("cost", cost.toSpecification(limits))));
+    }
+
+    /**
+     * Walks the selections of one operation. The document is already validated, so all fields exist and fragments
+     * aren't cyclic.
+     */
+    private class Analysis {
+
+        private final GraphQLSchema schema;
+        private final Map<String, FragmentDefinition> fragments;
+
+        /**
+         * Cost of each fragment, so repeatedly spread fragments are analysed only once
+         */
+        private final Map<String, GraphQLQueryCost> fragmentCosts = new HashMap<>();
+
+        Analysis(GraphQLSchema schema, Map<String, FragmentDefinition> fragments) {
+            this.schema = schema;
+            this.fragments = fragments;
+        }
+
+        GraphQLQueryCost selectionSet(SelectionSet selectionSet, GraphQLType parentType) {
+            GraphQLQueryCost cost = GraphQLQueryCost.EMPTY;
+            for (Selection<?> selection : selectionSet.getSelections()) {
+                if (selection instanceof Field field) {
+                    cost = cost.plus(field(field, parentType));
+                } else if (selection instanceof InlineFragment inlineFragment) {
+                    GraphQLType fragmentType = inlineFragment.getTypeCondition() == null
+                            ? parentType
+                            : schema.getType(inlineFragment.getTypeCondition().getName());
+                    cost = cost.plus(selectionSet(inlineFragment.getSelectionSet(), fragmentType));
+                } else if (selection instanceof FragmentSpread fragmentSpread) {
+                    cost = cost.plus(fragment(fragmentSpread.getName()));
+                }
+            }
+            return cost;
+        }
+
+        private GraphQLQueryCost fragment(String name) {
+            GraphQLQueryCost cost = fragmentCosts.get(name);
+            if (cost == null) {
+                FragmentDefinition fragment = fragments.get(name);
+                cost = selectionSet(fragment.getSelectionSet(), schema.getType(fragment.getTypeCondition().getName()));
+                fragmentCosts.put(name, cost);
+            }
+            return cost;
+        }
+
+        private GraphQLQueryCost field(Field field, GraphQLType parentType) {
+            if (field.getName().startsWith("__") || !(parentType instanceof GraphQLFieldsContainer container)) {
+                // Introspection (only __typename is allowed on unions)
+                return GraphQLQueryCost.EMPTY;
+            }
+            GraphQLFieldDefinition definition = container.getFieldDefinition(field.getName());
+            GraphQLQueryCost selection = field.getSelectionSet() == null
+                    ? GraphQLQueryCost.EMPTY
+                    : selectionSet(field.getSelectionSet(), GraphQLTypeUtil.unwrapAll(definition.getType()));
+            return GraphQLQueryCost.field(selection, field.getAlias() != null, weights.getOrDefault(definition, 0));
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import java.util.Map;
+
+/**
+ * A decoded GraphQL request body, see {@link GraphQLRequestDecoder}.
+ *
+ * @param query         Query text, null if the client only sent the hash of a persisted query
+ * @param operationName Name of the operation to execute, may be null
+ * @param variables     Variables, never null
+ * @param extensions    Protocol extensions (e.g. "persistedQuery"), null if not sent
+ * @author Moritz Hofmann
+ */
+public record GraphQLRequest(String query, String operationName, Map<String, Object> variables,
+                             Map<String, Object> extensions) {
+}
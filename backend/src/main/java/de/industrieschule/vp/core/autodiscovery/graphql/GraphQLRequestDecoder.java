@@ -0,0 +1,254 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentTooLargeResponse;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Decodes GraphQL POST bodies in a single streaming pass.
+ * <p>
+ * The body is read directly from the request stream, without buffering it as a String or building a JSON tree first.
+ * Bodies larger than the configured limit are rejected while reading, so an oversized payload can't cause large
+ * allocations. Numbers in variables keep their type: integers become {@link Integer} (or {@link Long} /
+ * {@link BigInteger} if they don't fit), decimals become {@link Double}.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class GraphQLRequestDecoder {
+
+    /**
+     * Maximum nesting depth of variables and extensions, protects against stack overflows
+     */
+    private static final int MAX_NESTING_DEPTH = 32;
+
+    private final int maxBodyBytes;
+
+    /**
+     * Constructs a new decoder.
+     *
+     * @param maxBodyBytes Maximum size of a request body in bytes
+     */
+    public GraphQLRequestDecoder(int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * Decodes a request body.
+     *
+     * @param body          The request body stream
+     * @param contentLength Value of the Content-Length header, or a negative value if unknown (chunked transfer)
+     * @return The decoded request
+     * @throws ContentTooLargeResponse If the body is larger than allowed
+     * @throws BadRequestResponse      If the body is not a valid GraphQL request
+     * @throws IOException             If reading the body fails
+     */
+    public GraphQLRequest decode(InputStream body, long contentLength) throws IOException {
+        // Reject early if the client announces a body that is too large
+        if (contentLength > maxBodyBytes) {
+            throw tooLarge();
+        }
+
+        Reader reader = new InputStreamReader(new LimitedInputStream(body, maxBodyBytes), StandardCharsets.UTF_8);
+        try (JsonReader jsonReader = new JsonReader(new BufferedReader(reader))) {
+            return read(jsonReader);
+        } catch (BodyTooLargeException e) {
+            throw tooLarge();
+        }
+    }
+
+    /**
+     * Decodes a request, that is already in memory, e.g. the payload of a WebSocket message.
+     *
+     * @param json The request as JSON object
+     * @return The decoded request
+     * @throws ContentTooLargeResponse If the request is larger than allowed
+     * @throws BadRequestResponse      If the request is not a valid GraphQL request
+     */
+    public GraphQLRequest decode(String json) {
+        // Characters instead of bytes, good enough as a limit
+        if (json.length() > maxBodyBytes) {
+            throw tooLarge();
+        }
+        try (JsonReader jsonReader = new JsonReader(new StringReader(json))) {
+            return read(jsonReader);
+        } catch (IOException e) {
+            throw new BadRequestResponse("Malformed GraphQL request: " + e.getMessage());
+        }
+    }
+
+    private GraphQLRequest read(JsonReader jsonReader) throws IOException {
+        String query = null;
+        String operationName = null;
+        Map<String, Object> variables = Collections.emptyMap();
+        Map<String, Object> extensions = null;
+
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                switch (jsonReader.nextName()) {
+                    case "query" -> query = readNullableString(jsonReader);
+                    case "operationName" -> operationName = readNullableString(jsonReader);
+                    case "variables" -> {
+                        Map<String, Object> value = readNullableObject(jsonReader);
+                        variables = value == null ? Collections.emptyMap() : value;
+                    }
+                    case "extensions" -> extensions = readNullableObject(jsonReader);
+                    default -> jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | EOFException | NumberFormatException e) {
+            throw new BadRequestResponse("Malformed GraphQL request: " + e.getMessage());
+        }
+
+        return new GraphQLRequest(query, operationName, variables, extensions);
+    }
+
+    private ContentTooLargeResponse tooLarge() {
+        return new ContentTooLargeResponse("GraphQL request body exceeds the maximum size of " + maxBodyBytes + " bytes");
+    }
+
+    private static String readNullableString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (reader.peek() != JsonToken.STRING) {
+            throw new BadRequestResponse("Malformed GraphQL request: expected a string at " + reader.getPath());
+        }
+        return reader.nextString();
+    }
+
+    private static Map<String, Object> readNullableObject(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new BadRequestResponse("Malformed GraphQL request: expected an object at " + reader.getPath());
+        }
+        return readObject(reader, 1);
+    }
+
+    private static Map<String, Object> readObject(JsonReader reader, int depth) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            map.put(name, readValue(reader, depth));
+        }
+        reader.endObject();
+        return map;
+    }
+
+    private static Object readValue(JsonReader reader, int depth) throws IOException {
+        if (depth > MAX_NESTING_DEPTH) {
+            throw new BadRequestResponse("Malformed GraphQL request: nesting deeper than " + MAX_NESTING_DEPTH + " levels");
+        }
+
+        switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                return readObject(reader, depth + 1);
+            }
+            case BEGIN_ARRAY -> {
+                List<Object> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    list.add(readValue(reader, depth + 1));
+                }
+                reader.endArray();
+                return list;
+            }
+            case STRING -> {
+                return reader.nextString();
+            }
+            case NUMBER -> {
+                return parseNumber(reader.nextString());
+            }
+            case BOOLEAN -> {
+                return reader.nextBoolean();
+            }
+            case NULL -> {
+                reader.nextNull();
+                return null;
+            }
+            default -> throw new BadRequestResponse("Malformed GraphQL request: unexpected token at " + reader.getPath());
+        }
+    }
+
+    /**
+     * Parses a JSON number, keeping integers as integers.
+     *
+     * @param number The number as written in the JSON document
+     * @return Integer, Long or BigInteger for integral numbers, Double otherwise
+     */
+    static Object parseNumber(String number) {
+        boolean integral = number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0;
+        if (!integral) {
+            return Double.parseDouble(number);
+        }
+
+        // At most 18 digits always fit into a long
+        if (number.length() <= 18) {
+            long value = Long.parseLong(number);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        }
+
+        BigInteger value = new BigDecimal(number).toBigIntegerExact();
+        return value.bitLength() < 64 ? (Object) value.longValue() : value;
+    }
+
+    /**
+     * Thrown by {@link LimitedInputStream}, when more bytes than allowed are read
+     */
+    private static class BodyTooLargeException extends IOException {
+        BodyTooLargeException() {
+            super("Request body too large");
+        }
+    }
+
+    /**
+     * InputStream, that fails once more than the allowed number of bytes is read.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0 && --remaining < 0) {
+                throw new BodyTooLargeException();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                remaining -= count;
+                if (remaining < 0) {
+                    throw new BodyTooLargeException();
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import graphql.execution.instrumentation.InstrumentationState;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Timings of a single GraphQL request, returned to the client as {@code extensions.tracing}.
+ * <p>
+ * The format follows the Apollo tracing format (version 1), so existing tools can display it. Every resolver
+ * additionally contains the class handling it ({@code "resolverClass"}), if it isn't a plain property access.
+ * All offsets and durations are in nanoseconds, relative to the start of the request.
+ * </p>
+ * <p>
+ * Fields are resolved concurrently, so resolvers may be added from multiple threads.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class GraphQLTrace implements InstrumentationState {
+
+    /**
+     * Key of the trace in the {@code GraphQLContext} of the execution, only set if tracing is requested
+     */
+    public static final String CONTEXT_KEY = GraphQLTrace.class.getName();
+
+    private final Instant startTime = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    private volatile Phase parsing;
+    private volatile Phase validation;
+    private final Queue<Resolver> resolvers = new ConcurrentLinkedQueue<>();
+
+    private record Phase(long startOffset, long duration) {
+    }
+
+    private record Resolver(List<Object> path, String parentType, String returnType, String fieldName,
+                            String resolverClass, long startOffset, long duration) {
+    }
+
+    /**
+     * @return Current time as offset to the start of the request
+     */
+    public long offset() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public void parsed(long startOffset) {
+        parsing = new Phase(startOffset, offset() - startOffset);
+    }
+
+    public void validated(long startOffset) {
+        validation = new Phase(startOffset, offset() - startOffset);
+    }
+
+    /**
+     * Adds a finished resolver
+     *
+     * @param resolverClass Class handling the field, null for plain property access
+     * @param startOffset   Value of {@link #offset()} when the resolver was started
+     */
+    public void resolved(List<Object> path, String parentType, String returnType, String fieldName,
+                         String resolverClass, long startOffset) {
+        resolvers.add(new Resolver(path, parentType, returnType, fieldName, resolverClass, startOffset, offset() - startOffset));
+    }
+
+    /**
+     * @return The trace in the Apollo tracing format
+     */
+    public Map<String, Object> toSpecification() {
+        long duration = offset();
+
+        Map<String, Object> tracing = new LinkedHashMap<>();
+        tracing.put("version", 1);
+        tracing.put("startTime", DateTimeFormatter.ISO_INSTANT.format(startTime));
+        tracing.put("endTime", DateTimeFormatter.ISO_INSTANT.format(startTime.plusNanos(duration)));
+        tracing.put("duration", duration);
+        // Cached documents are neither parsed nor validated again
+        tracing.put("parsing", phaseToSpecification(parsing));
+        tracing.put("validation", phaseToSpecification(validation));
+
+        List<Resolver> sortedResolvers = new ArrayList<>(resolvers);
+        sortedResolvers.sort(Comparator.comparingLong(Resolver::startOffset));
+
+        List<Map<String, Object>> resolverList = new ArrayList<>(sortedResolvers.size());
+        for (Resolver resolver : sortedResolvers) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("path", resolver.path());
+            entry.put("parentType", resolver.parentType());
+            entry.put("returnType", resolver.returnType());
+            entry.put("fieldName", resolver.fieldName());
+            if (resolver.resolverClass() != null) {
+                entry.put("resolverClass", resolver.resolverClass());
+            }
+            entry.put("startOffset", resolver.startOffset());
+            entry.put("duration", resolver.duration());
+            resolverList.add(entry);
+        }
+        tracing.put("execution", Map.of("resolvers", resolverList));
+        return tracing;
+    }
+
+    private static Map<String, Object> phaseToSpecification(Phase phase) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("startOffset", phase == null ? 0 : phase.startOffset());
+        result.put("duration", phase == null ? 0 : phase.duration());
+        return result;
+    }
+}
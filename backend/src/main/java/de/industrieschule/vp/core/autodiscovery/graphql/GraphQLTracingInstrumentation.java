@@ -0,0 +1,171 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import de.industrieschule.vp.core.autodiscovery.dispatcher.GraphQLDispatcher;
+import de.industrieschule.vp.core.metrics.EndpointMetrics;
+import de.industrieschule.vp.core.metrics.MetricsRegistry;
+import graphql.ExecutionResult;
+import graphql.TrivialDataFetcher;
+import graphql.execution.ExecutionStepInfo;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationValidationParameters;
+import graphql.language.Document;
+import graphql.schema.DataFetcher;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLNamedType;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLTypeUtil;
+import graphql.validation.ValidationError;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures the parse, validate and execute phases and every field resolver of the GraphQL requests.
+ * <p>
+ * The timings are always recorded into the {@link MetricsRegistry}: one entry per phase and one per field, that is
+ * resolved by a handler (fields returning a property of their parent are not recorded). So the metrics show which
+ * resolver is slow inside a composite query.
+ * </p>
+ * <p>
+ * If a {@link GraphQLTrace} is put into the {@code GraphQLContext} of a request (see {@link GraphQLTrace#CONTEXT_KEY}),
+ * all fields of the request are traced and the trace is added to the result as {@code extensions.tracing}.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class GraphQLTracingInstrumentation extends SimplePerformantInstrumentation {
+
+    /**
+     * Metrics and handler class of a field
+     */
+    private record FieldInfo(EndpointMetrics metrics, String resolverClass) {
+    }
+
+    /**
+     * Field definitions are unique per object type, so their identity is used as key. Only read after construction.
+     */
+    private final Map<GraphQLFieldDefinition, FieldInfo> fields = new IdentityHashMap<>();
+
+    private final EndpointMetrics parseMetrics;
+    private final EndpointMetrics validationMetrics;
+    private final EndpointMetrics executionMetrics;
+
+    /**
+     * Registers the metrics of all phases and resolved fields of the schema
+     *
+     * @param schema          Executable schema
+     * @param metricsRegistry Registry for the metrics
+     * @param route           Path of the GraphQL endpoint, used as label of the phase metrics
+     */
+    public GraphQLTracingInstrumentation(GraphQLSchema schema, MetricsRegistry metricsRegistry, String route) {
+        parseMetrics = metricsRegistry.endpoint(MetricsRegistry.TYPE_GRAPHQL_PHASE, GraphQLTracingInstrumentation.class, "parse", route);
+        validationMetrics = metricsRegistry.endpoint(MetricsRegistry.TYPE_GRAPHQL_PHASE, GraphQLTracingInstrumentation.class, "validate", route);
+        executionMetrics = metricsRegistry.endpoint(MetricsRegistry.TYPE_GRAPHQL_PHASE, GraphQLTracingInstrumentation.class, "execute", route);
+
+        for (GraphQLNamedType type : schema.getAllTypesAsList()) {
+            if (!(type instanceof GraphQLObjectType objectType) || objectType.getName().startsWith("__")) {
+                continue;
+            }
+            String method = objectType == schema.getQueryType() ? "QUERY"
+                    : objectType == schema.getMutationType() ? "MUTATION"
+                    : objectType == schema.getSubscriptionType() ? "SUBSCRIPTION"
+                    : "FIELD";
+
+            for (GraphQLFieldDefinition field : objectType.getFieldDefinitions()) {
+                DataFetcher<?> dataFetcher = schema.getCodeRegistry().getDataFetcher(objectType, field);
+                if (dataFetcher instanceof TrivialDataFetcher<?>) {
+                    continue;
+                }
+                Class<?> resolverClass = GraphQLDispatcher.resolverClass(dataFetcher);
+                EndpointMetrics metrics = metricsRegistry.endpoint(MetricsRegistry.TYPE_GRAPHQL_FIELD, resolverClass, method,
+                        objectType.getName() + "." + field.getName());
+                fields.put(field, new FieldInfo(metrics, resolverClass.getName()));
+            }
+        }
+    }
+
+    @Override
+    public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+        // Null if the request isn't traced
+        return parameters.getExecutionInput().getGraphQLContext().get(GraphQLTrace.CONTEXT_KEY);
+    }
+
+    @Override
+    public InstrumentationContext<Document> beginParse(InstrumentationExecutionParameters parameters, InstrumentationState state) {
+        long start = parseMetrics.start();
+        long traceStart = state instanceof GraphQLTrace trace ? trace.offset() : 0;
+        return SimpleInstrumentationContext.whenCompleted((document, throwable) -> {
+            parseMetrics.stop(start, throwable != null);
+            if (state instanceof GraphQLTrace trace) {
+                trace.parsed(traceStart);
+            }
+        });
+    }
+
+    @Override
+    public InstrumentationContext<List<ValidationError>> beginValidation(InstrumentationValidationParameters parameters, InstrumentationState state) {
+        long start = validationMetrics.start();
+        long traceStart = state instanceof GraphQLTrace trace ? trace.offset() : 0;
+        return SimpleInstrumentationContext.whenCompleted((errors, throwable) -> {
+            validationMetrics.stop(start, throwable != null || (errors != null && !errors.isEmpty()));
+            if (state instanceof GraphQLTrace trace) {
+                trace.validated(traceStart);
+            }
+        });
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters, InstrumentationState state) {
+        long start = executionMetrics.start();
+        return SimpleInstrumentationContext.whenCompleted((result, throwable) ->
+                executionMetrics.stop(start, throwable != null || (result != null && !result.getErrors().isEmpty())));
+    }
+
+    @Override
+    public InstrumentationContext<Object> beginFieldFetch(InstrumentationFieldFetchParameters parameters, InstrumentationState state) {
+        FieldInfo field = fields.get(parameters.getField());
+
+        if (!(state instanceof GraphQLTrace trace)) {
+            if (field == null) {
+                // Plain property, nothing to record
+                return SimpleInstrumentationContext.noOp();
+            }
+            long start = field.metrics().start();
+            return SimpleInstrumentationContext.whenCompleted((value, throwable) -> field.metrics().stop(start, throwable != null));
+        }
+
+        long start = field != null ? field.metrics().start() : 0;
+        long traceStart = trace.offset();
+        return SimpleInstrumentationContext.whenCompleted((value, throwable) -> {
+            if (field != null) {
+                field.metrics().stop(start, throwable != null);
+            }
+            ExecutionStepInfo stepInfo = parameters.getExecutionStepInfo();
+            trace.resolved(
+                    stepInfo.getPath().toList(),
+                    stepInfo.getObjectType().getName(),
+                    GraphQLTypeUtil.simplePrint(stepInfo.getType()),
+                    stepInfo.getFieldDefinition().getName(),
+                    field != null ? field.resolverClass() : null,
+                    traceStart);
+        });
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters, InstrumentationState state) {
+        if (state instanceof GraphQLTrace trace) {
+            return CompletableFuture.completedFuture(executionResult.transform(builder -> builder.addExtension("tracing", trace.toSpecification())));
+        }
+        return CompletableFuture.completedFuture(executionResult);
+    }
+}
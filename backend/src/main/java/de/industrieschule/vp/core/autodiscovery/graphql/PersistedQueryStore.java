@@ -0,0 +1,206 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import graphql.ErrorClassification;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Implements the "automatic persisted queries" protocol for the GraphQL endpoint.
+ * <p>
+ * Instead of the full query text, a client sends only the SHA-256 hash of it in
+ * {@code extensions.persistedQuery.sha256Hash}. If the hash is unknown, the client gets a
+ * {@value #ERROR_NOT_FOUND} error and sends the query again, this time together with the hash, so the server can
+ * register it.
+ * </p>
+ * <p>
+ * In allow-list mode, only the queries loaded with {@link #loadAllowList(Path)} can be executed, clients can neither
+ * register new queries nor send ad-hoc queries.
+ * </p>
+ * <p>
+ * Hashes are computed by {@link #sha256(String)} from the query text without trailing whitespace, for allow-list
+ * files as well as for queries sent by clients. Editors usually end a file with a newline, clients hash the query
+ * without it.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class PersistedQueryStore {
+
+    private static final Logger log = LogManager.getLogger(PersistedQueryStore.class);
+
+    public static final String ERROR_NOT_FOUND = "PersistedQueryNotFound";
+    public static final String ERROR_HASH_MISMATCH = "PersistedQueryHashMismatch";
+    public static final String ERROR_NOT_ALLOWED = "PersistedQueryNotAllowed";
+    public static final String ERROR_UNSUPPORTED_VERSION = "PersistedQueryUnsupportedVersion";
+
+    /**
+     * Result of {@link #resolve(String, Map)}, either the query text to execute or an error to return to the client.
+     *
+     * @param query Query text, null if there was an error
+     * @param error Error, null if the query could be resolved
+     */
+    public record Resolution(String query, GraphQLError error) {
+    }
+
+    private final boolean allowListOnly;
+
+    /**
+     * Queries from the allow-list, never evicted
+     */
+    private final Map<String, String> allowList = new ConcurrentHashMap<>();
+
+    /**
+     * Queries registered by clients, the least recently used one is evicted
+     */
+    private final Map<String, String> registered;
+
+    /**
+     * Constructs a new persisted query store.
+     *
+     * @param maxRegisteredQueries Maximum number of queries registered by clients
+     * @param allowListOnly        If true, only allow-listed queries can be executed
+     */
+    public PersistedQueryStore(int maxRegisteredQueries, boolean allowListOnly) {
+        this.allowListOnly = allowListOnly;
+        this.registered = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxRegisteredQueries;
+            }
+        };
+    }
+
+    /**
+     * Adds every "*.graphql" file in the given directory to the allow-list. Each file contains exactly one query,
+     * its hash is computed like the clients do (see {@link #sha256(String)}).
+     *
+     * @param directory Directory containing the queries, nothing is loaded if it doesn't exist
+     * @throws IOException If a file can't be read
+     */
+    public void loadAllowList(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            log.info("No persisted query allow-list found at {}", directory);
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(".graphql")).toList()) {
+                String query = Files.readString(file, StandardCharsets.UTF_8);
+                allowList.put(sha256(query), query);
+                log.debug("Persisted query {} added to allow-list", file.getFileName());
+            }
+        }
+        log.info("\uD83D\uDCC3 {} persisted queries loaded from {}", allowList.size(), directory);
+    }
+
+    /**
+     * Resolves the query text to execute for a request.
+     *
+     * @param query      Query text sent by the client, may be null for hash-only requests
+     * @param extensions "extensions" object sent by the client, may be null
+     * @return The query text or an error
+     */
+    public Resolution resolve(String query, Map<String, Object> extensions) {
+        Object persistedQueryObj = extensions == null ? null : extensions.get("persistedQuery");
+
+        if (!(persistedQueryObj instanceof Map<?, ?> persistedQuery)) {
+            // Regular request, without persisted query extension
+            if (query == null) {
+                return error("No query provided", "BAD_REQUEST");
+            }
+            if (allowListOnly && !allowList.containsKey(sha256(query))) {
+                return error(ERROR_NOT_ALLOWED, "PERSISTED_QUERY_NOT_ALLOWED");
+            }
+            return new Resolution(query, null);
+        }
+
+        Object version = persistedQuery.get("version");
+        if (!(version instanceof Number number) || number.intValue() != 1) {
+            return error(ERROR_UNSUPPORTED_VERSION, "PERSISTED_QUERY_UNSUPPORTED_VERSION");
+        }
+        if (!(persistedQuery.get("sha256Hash") instanceof String requestedHash)) {
+            return error(ERROR_NOT_FOUND, "PERSISTED_QUERY_NOT_FOUND");
+        }
+        String hash = requestedHash.toLowerCase(Locale.ROOT);
+
+        if (query == null) {
+            // Hash-only request
+            String storedQuery = lookup(hash);
+            if (storedQuery == null) {
+                return error(ERROR_NOT_FOUND, "PERSISTED_QUERY_NOT_FOUND");
+            }
+            return new Resolution(storedQuery, null);
+        }
+
+        // Client sends query and hash, to register the query
+        if (!MessageDigest.isEqual(hash.getBytes(StandardCharsets.US_ASCII), sha256(query).getBytes(StandardCharsets.US_ASCII))) {
+            return error(ERROR_HASH_MISMATCH, "PERSISTED_QUERY_HASH_MISMATCH");
+        }
+        if (allowListOnly) {
+            if (!allowList.containsKey(hash)) {
+                return error(ERROR_NOT_ALLOWED, "PERSISTED_QUERY_NOT_ALLOWED");
+            }
+        } else {
+            synchronized (registered) {
+                registered.put(hash, query);
+            }
+        }
+        return new Resolution(query, null);
+    }
+
+    private String lookup(String hash) {
+        String query = allowList.get(hash);
+        if (query != null || allowListOnly) {
+            return query;
+        }
+        synchronized (registered) {
+            return registered.get(hash);
+        }
+    }
+
+    private static Resolution error(String message, String code) {
+        GraphQLError error = GraphqlErrorBuilder.newError()
+                .message(message)
+                .errorType(ErrorClassification.errorClassification(code))
+                .extensions(Map.of("code", code))
+                .build();
+        return new Resolution(null, error);
+    }
+
+    /**
+     * Calculates the hex encoded SHA-256 hash of a query, like the clients do. The input is the UTF-8 encoded query
+     * text with trailing whitespace removed ({@link String#stripTrailing()}), all other characters are hashed as they
+     * are.
+     *
+     * @param query Query text
+     * @return Lowercase hex encoded hash
+     */
+    public static String sha256(String query) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(query.stripTrailing().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if only allow-listed queries can be executed
+     */
+    public boolean isAllowListOnly() {
+        return allowListOnly;
+    }
+}
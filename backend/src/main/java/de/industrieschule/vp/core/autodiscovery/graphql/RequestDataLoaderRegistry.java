@@ -0,0 +1,84 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+
+/**
+ * DataLoader registry for a single request, created by {@link DataLoaderRegistryFactory}.
+ * <p>
+ * DataLoaders are created on first use, so requests that don't need them only pay for this (empty) object.
+ * </p>
+ * <p>
+ * Our resolvers run on virtual threads (see {@code GraphQLDispatcher}), so graphql-java may ask to dispatch before
+ * all resolvers of a level have called {@code load()}. Dispatching is therefore delayed until no resolver is
+ * running anymore, which puts all keys of one level into the same batch. Because of that, a resolver must return
+ * the future of {@code load()} instead of waiting for it, otherwise the request never completes.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class RequestDataLoaderRegistry extends DataLoaderRegistry {
+
+    private final DataLoaderRegistryFactory factory;
+
+    /*
+     * Guarded by "this"
+     */
+    private int resolversInFlight = 0;
+    private boolean dispatchRequested = false;
+
+    RequestDataLoaderRegistry(DataLoaderRegistryFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the DataLoader with the given name, it is created on first use.
+     *
+     * @param key Name of the DataLoader, as declared in {@code @GraphQLBatchLoader}
+     * @return The DataLoader of this request
+     * @throws IllegalArgumentException If no batch loader with this name is registered
+     */
+    @Override
+    public <K, V> DataLoader<K, V> getDataLoader(String key) {
+        return computeIfAbsent(key, factory::createDataLoader);
+    }
+
+    /**
+     * Dispatches all DataLoaders, or remembers the dispatch request until the last running resolver is finished.
+     */
+    @Override
+    public void dispatchAll() {
+        synchronized (this) {
+            if (resolversInFlight > 0) {
+                dispatchRequested = true;
+                return;
+            }
+            dispatchRequested = false;
+        }
+        super.dispatchAll();
+    }
+
+    /**
+     * Must be called before a resolver is started
+     */
+    public synchronized void resolverStarted() {
+        resolversInFlight++;
+    }
+
+    /**
+     * Must be called after a resolver returned, dispatches if it was the last one and a dispatch is pending
+     */
+    public void resolverFinished() {
+        boolean dispatch;
+        synchronized (this) {
+            resolversInFlight--;
+            dispatch = resolversInFlight == 0 && dispatchRequested;
+            if (dispatch) {
+                dispatchRequested = false;
+            }
+        }
+        if (dispatch) {
+            super.dispatchAll();
+        }
+    }
+}
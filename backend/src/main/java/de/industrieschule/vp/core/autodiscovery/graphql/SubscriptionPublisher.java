@@ -0,0 +1,208 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+
+/**
+ * Publisher for the events of one GraphQL subscription, return it from the resolver of a subscription field.
+ * <p>
+ * Events are offered by the source (e.g. a listener) and buffered until the client requests them, the client requests
+ * the next event once the previous one is written to the socket. If the client is too slow and the buffer is full,
+ * the subscription ends with an error instead of growing without bounds, the client has to subscribe again.
+ * </p>
+ * <p>
+ * Only one subscriber is supported, graphql-java subscribes once per operation. The source is attached in
+ * {@code onSubscribe} when the subscriber arrives, not when the resolver returns the publisher, so a publisher that is
+ * never subscribed (e.g. because the operation was rejected) holds no listener.
+ * </p>
+ *
+ * @param <T> Type of the events, resolved with the selection set of the subscription
+ * @author Moritz Hofmann
+ */
+public class SubscriptionPublisher<T> implements Publisher<T> {
+
+    private final int bufferSize;
+    private final Runnable onSubscribe;
+    private final Runnable onCancel;
+
+    // Guarded by this
+    private final ArrayDeque<T> buffer = new ArrayDeque<>();
+    private Subscriber<? super T> subscriber;
+    private boolean subscribed;
+    private long demand;
+    private boolean emitting;
+    private boolean terminated;
+    private boolean terminalSignalled;
+    private boolean cancelled;
+    private Throwable error;
+
+    /**
+     * @param bufferSize  Maximum number of events, that aren't requested yet
+     * @param onSubscribe Called once when the subscriber arrives, e.g. to add the listener to the source
+     * @param onCancel    Called once when the subscription ends in any way, e.g. to remove the listener of the source
+     */
+    public SubscriptionPublisher(int bufferSize, Runnable onSubscribe, Runnable onCancel) {
+        this.bufferSize = bufferSize;
+        this.onSubscribe = onSubscribe;
+        this.onCancel = onCancel;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        boolean first;
+        synchronized (this) {
+            first = this.subscriber == null;
+            if (first) {
+                this.subscriber = subscriber;
+            }
+        }
+        if (first) {
+            // Attached before the subscriber can cancel, so onCancel always finds the listener
+            onSubscribe.run();
+            subscriber.onSubscribe(new BufferSubscription());
+            synchronized (this) {
+                // Events buffered or terminated before are emitted from now on
+                subscribed = true;
+            }
+            drain();
+            return;
+        }
+        subscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+    }
+
+    /**
+     * Offers an event, never blocks
+     *
+     * @param event Event
+     * @return false, if the subscription has already ended
+     */
+    public boolean offer(T event) {
+        synchronized (this) {
+            if (terminated || cancelled) {
+                return false;
+            }
+            if (buffer.size() >= bufferSize) {
+                terminated = true;
+                error = new IllegalStateException("Subscription cancelled, the client doesn't keep up with the events");
+                buffer.clear();
+            } else {
+                buffer.add(event);
+            }
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Ends the subscription after the buffered events
+     */
+    public void complete() {
+        terminate(null);
+    }
+
+    /**
+     * Ends the subscription with an error after the buffered events
+     *
+     * @param throwable Error reported to the client
+     */
+    public void fail(Throwable throwable) {
+        terminate(throwable);
+    }
+
+    private void terminate(Throwable throwable) {
+        synchronized (this) {
+            if (terminated || cancelled) {
+                return;
+            }
+            terminated = true;
+            error = throwable;
+        }
+        drain();
+    }
+
+    /**
+     * Emits buffered events while there is demand. Only one thread emits at a time, so signals are never concurrent.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (emitting || !subscribed) {
+                return;
+            }
+            emitting = true;
+        }
+        while (true) {
+            T event = null;
+            boolean signalTerminal = false;
+            synchronized (this) {
+                if (cancelled) {
+                    emitting = false;
+                    return;
+                }
+                if (demand > 0 && !buffer.isEmpty()) {
+                    event = buffer.poll();
+                    demand--;
+                } else if (terminated && buffer.isEmpty() && !terminalSignalled) {
+                    terminalSignalled = true;
+                    signalTerminal = true;
+                } else {
+                    emitting = false;
+                    return;
+                }
+            }
+            if (event != null) {
+                subscriber.onNext(event);
+            } else if (signalTerminal) {
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+                onCancel.run();
+            }
+        }
+    }
+
+    private class BufferSubscription implements Subscription {
+
+        @Override
+        public void request(long n) {
+            synchronized (SubscriptionPublisher.this) {
+                if (n <= 0) {
+                    // Reactive Streams rule 3.9
+                    if (!terminated) {
+                        terminated = true;
+                        error = new IllegalArgumentException("Requested " + n + " events, must be positive");
+                        buffer.clear();
+                    }
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (SubscriptionPublisher.this) {
+                if (cancelled || terminalSignalled) {
+                    return;
+                }
+                cancelled = true;
+                buffer.clear();
+            }
+            onCancel.run();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package de.industrieschule.vp.core.autodiscovery.graphql;
+
+import graphql.ErrorClassification;
+import graphql.ExecutionResult;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.language.OperationDefinition;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rejects subscription operations before they are executed, unless the transport can stream their events and marks
+ * the execution with {@link #STREAMING_TRANSPORT} in the GraphQL context. A single HTTP response can't carry the
+ * {@link org.reactivestreams.Publisher} returned for a subscription, so without this check the resolver would run for
+ * nothing and its publisher would be serialized as result.
+ *
+ * @author Moritz Hofmann
+ */
+public class SubscriptionTransportInstrumentation extends SimplePerformantInstrumentation {
+
+    /**
+     * Key in the GraphQL context, set to {@code true} by transports that support subscriptions
+     */
+    public static final String STREAMING_TRANSPORT = SubscriptionTransportInstrumentation.class.getName() + ".streaming";
+
+    public static final String ERROR_SUBSCRIPTION_NOT_SUPPORTED = "SUBSCRIPTION_NOT_SUPPORTED";
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters, InstrumentationState state) {
+        ExecutionContext executionContext = parameters.getExecutionContext();
+        if (executionContext.getOperationDefinition().getOperation() == OperationDefinition.Operation.SUBSCRIPTION
+                && !Boolean.TRUE.equals(executionContext.getGraphQLContext().get(STREAMING_TRANSPORT))) {
+            throw new AbortExecutionException(List.of(GraphqlErrorBuilder.newError()
+                    .message("Subscriptions are only supported over the GraphQL WebSocket")
+                    .errorType(ErrorClassification.errorClassification(ERROR_SUBSCRIPTION_NOT_SUPPORTED))
+                    .extensions(Map.of("code", ERROR_SUBSCRIPTION_NOT_SUPPORTED))
+                    .build()));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,79 @@
+package de.industrieschule.vp.core.autodiscovery.index;
+
+import de.industrieschule.vp.core.autodiscovery.index.processor.ComponentIndexProcessor;
+import de.industrieschule.vp.core.config.Config;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.annotation.Annotation;
+import java.util.Set;
+
+/**
+ * Looks up component classes and GraphQL schema resources for a package.
+ * <p>
+ * There are two implementations: {@link IndexedComponentScanner} reads the index written by
+ * {@link ComponentIndexProcessor} at compile time, {@link ReflectionsComponentScanner} scans the classpath at
+ * runtime. Use {@link #create(String)} to get the one configured with {@link Config#COMPONENT_DISCOVERY_MODE}.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public interface ComponentScanner {
+
+    /**
+     * Available discovery modes
+     */
+    enum MODE {
+        /**
+         * Use the compile time index, fall back to Reflections if it is missing
+         */
+        INDEX,
+        /**
+         * Always scan the classpath using Reflections
+         */
+        REFLECTIONS
+    }
+
+    /**
+     * Returns all classes within the scanned package annotated with the given annotation.
+     *
+     * @param annotation The annotation to look for.
+     * @return Set of annotated classes, never null.
+     */
+    Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation);
+
+    /**
+     * Returns the classpath locations (without leading "/") of all GraphQL schema files.
+     *
+     * @return Set of resource paths, never null.
+     */
+    Set<String> getGraphQLSchemaResources();
+
+    /**
+     * Name of the scanner, used for logging.
+     *
+     * @return Scanner name
+     */
+    String getName();
+
+    /**
+     * Creates a scanner for the given package, based on the configured discovery mode.
+     * If the mode is {@link MODE#INDEX}, but no index is on the classpath, this falls back to Reflections.
+     *
+     * @param packagePrefix Package to scan in, e.g. "de.industrieschule.vp.handler"
+     * @return A new component scanner
+     */
+    static ComponentScanner create(String packagePrefix) {
+        Logger log = LogManager.getLogger(ComponentScanner.class);
+
+        if (Config.COMPONENT_DISCOVERY_MODE == MODE.INDEX) {
+            IndexedComponentScanner indexedScanner = IndexedComponentScanner.load(packagePrefix);
+            if (indexedScanner != null) {
+                return indexedScanner;
+            }
+            log.warn("No component index found at {}, falling back to classpath scanning", ComponentIndexProcessor.INDEX_RESOURCE);
+        }
+
+        return new ReflectionsComponentScanner(packagePrefix);
+    }
+}
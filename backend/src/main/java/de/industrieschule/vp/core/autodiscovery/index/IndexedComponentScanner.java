@@ -0,0 +1,127 @@
+package de.industrieschule.vp.core.autodiscovery.index;
+
+import de.industrieschule.vp.core.autodiscovery.index.processor.ComponentIndexProcessor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * {@link ComponentScanner} that reads the index generated by {@link ComponentIndexProcessor} at compile time.
+ * No classpath scanning is done, only the listed classes are loaded.
+ *
+ * @author Moritz Hofmann
+ */
+public class IndexedComponentScanner implements ComponentScanner {
+
+    private static final Logger log = LogManager.getLogger(IndexedComponentScanner.class);
+
+    /**
+     * Annotation class name -> class names annotated with it
+     */
+    private final Map<String, List<String>> annotatedClasses;
+    private final Set<String> schemaResources;
+    private final String packagePrefix;
+    private final ClassLoader classLoader;
+
+    private IndexedComponentScanner(Map<String, List<String>> annotatedClasses, Set<String> schemaResources,
+                                    String packagePrefix, ClassLoader classLoader) {
+        this.annotatedClasses = annotatedClasses;
+        this.schemaResources = schemaResources;
+        this.packagePrefix = packagePrefix;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Loads all component indexes on the classpath.
+     *
+     * @param packagePrefix Only classes in this package are returned, like Reflections would do
+     * @return The scanner, or null if there is no index on the classpath
+     */
+    public static IndexedComponentScanner load(String packagePrefix) {
+        ClassLoader classLoader = IndexedComponentScanner.class.getClassLoader();
+        Map<String, List<String>> annotatedClasses = new HashMap<>();
+        Set<String> schemaResources = new LinkedHashSet<>();
+
+        Enumeration<URL> indexFiles;
+        try {
+            indexFiles = classLoader.getResources(ComponentIndexProcessor.INDEX_RESOURCE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to look up component index", e);
+        }
+
+        if (!indexFiles.hasMoreElements()) {
+            return null;
+        }
+
+        while (indexFiles.hasMoreElements()) {
+            URL indexFile = indexFiles.nextElement();
+            log.debug("Reading component index {}", indexFile);
+
+            try (InputStream is = indexFile.openStream();
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank() || line.startsWith("#")) {
+                        continue;
+                    }
+                    int separator = line.indexOf('\t');
+                    if (separator < 0) {
+                        log.warn("Ignoring malformed line in component index {}: {}", indexFile, line);
+                        continue;
+                    }
+                    String key = line.substring(0, separator);
+                    String value = line.substring(separator + 1);
+
+                    if (ComponentIndexProcessor.RESOURCE_KEY.equals(key)) {
+                        schemaResources.add(value);
+                    } else {
+                        annotatedClasses.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read component index " + indexFile, e);
+            }
+        }
+
+        return new IndexedComponentScanner(annotatedClasses, schemaResources, packagePrefix, classLoader);
+    }
+
+    @Override
+    public Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation) {
+        List<String> classNames = annotatedClasses.getOrDefault(annotation.getName(), Collections.emptyList());
+        Set<Class<?>> classes = new LinkedHashSet<>();
+
+        for (String className : classNames) {
+            if (!className.startsWith(packagePrefix + ".")) {
+                continue;
+            }
+            try {
+                classes.add(Class.forName(className, true, classLoader));
+            } catch (ClassNotFoundException e) {
+                // Index is stale (e.g. class was deleted without clean build), ignore that entry
+                log.warn("Class {} listed in component index, but not found on classpath", className);
+            }
+        }
+
+        return classes;
+    }
+
+    @Override
+    public Set<String> getGraphQLSchemaResources() {
+        return Collections.unmodifiableSet(schemaResources);
+    }
+
+    @Override
+    public String getName() {
+        return "index";
+    }
+}
@@ -0,0 +1,45 @@
+package de.industrieschule.vp.core.autodiscovery.index;
+
+import de.industrieschule.vp.core.autodiscovery.index.processor.ComponentIndexProcessor;
+import org.reflections.Reflections;
+import org.reflections.scanners.Scanners;
+
+import java.lang.annotation.Annotation;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * {@link ComponentScanner} that scans the classpath at runtime using Reflections.
+ * This is slow, but doesn't need the compile time index, so it is used as fallback.
+ *
+ * @author Moritz Hofmann
+ */
+public class ReflectionsComponentScanner implements ComponentScanner {
+
+    private final Reflections reflections;
+
+    /**
+     * Scans the given package. Scanning of GraphQL schemas is deferred until they are requested.
+     *
+     * @param packagePrefix Package to scan in
+     */
+    public ReflectionsComponentScanner(String packagePrefix) {
+        this.reflections = new Reflections(packagePrefix);
+    }
+
+    @Override
+    public Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation) {
+        return reflections.getTypesAnnotatedWith(annotation);
+    }
+
+    @Override
+    public Set<String> getGraphQLSchemaResources() {
+        Reflections reflectionsScanner = new Reflections(ComponentIndexProcessor.GRAPHQL_RESOURCE_DIR, Scanners.Resources);
+        return reflectionsScanner.getResources(Pattern.compile(".*\\.graphql"));
+    }
+
+    @Override
+    public String getName() {
+        return "reflections";
+    }
+}
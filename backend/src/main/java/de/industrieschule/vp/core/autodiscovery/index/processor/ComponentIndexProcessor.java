@@ -0,0 +1,243 @@
+package de.industrieschule.vp.core.autodiscovery.index.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Annotation processor, that writes an index of all component classes at compile time.
+ * <p>
+ * The index is read by {@code IndexedComponentScanner} at startup, so the application doesn't have to scan the
+ * classpath with Reflections on every boot. It contains every class annotated with one of the autodiscovery
+ * annotations or with {@code @Entity}, plus all GraphQL schema files found in the resource directory passed with
+ * the {@value #OPTION_RESOURCE_DIR} option.
+ * </p>
+ * <p>
+ * Incremental builds (IDE or Maven) only compile the changed classes, so the index of the previous build is merged:
+ * its entries are kept for classes, that weren't compiled this time and still exist. Entries of recompiled classes
+ * are replaced by what this run finds, entries of deleted classes are dropped.
+ * </p>
+ * <p>
+ * <b>This class must only depend on the JDK</b>, because it is compiled in a separate step before the rest of the
+ * module (see the maven-compiler-plugin executions in the pom.xml).
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+// All annotations, so the processor also runs for compilations without components and updates their entries
+@SupportedAnnotationTypes("*")
+@SupportedOptions(ComponentIndexProcessor.OPTION_RESOURCE_DIR)
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    /**
+     * Location of the generated index within the class output (and therefore within the classpath)
+     */
+    public static final String INDEX_RESOURCE = "META-INF/vertretungsplan/component.index";
+
+    /**
+     * Key used in the index for GraphQL schema resources
+     */
+    public static final String RESOURCE_KEY = "resource";
+
+    /**
+     * Processor option, that points to the resource directory (usually src/main/resources)
+     */
+    public static final String OPTION_RESOURCE_DIR = "vp.index.resourceDir";
+
+    /**
+     * Directory (relative to the resource directory) that contains the GraphQL schema files
+     */
+    public static final String GRAPHQL_RESOURCE_DIR = "graphql";
+
+    static final String ANNOTATION_REST_ENDPOINT = "de.industrieschule.vp.core.autodiscovery.annotations.RESTEndpoint";
+    static final String ANNOTATION_MULTI_ENDPOINT = "de.industrieschule.vp.core.autodiscovery.annotations.MultiEndpoint";
+    static final String ANNOTATION_GRAPHQL_QUERY = "de.industrieschule.vp.core.autodiscovery.annotations.GraphQLQuery";
+    static final String ANNOTATION_WEBSOCKET_ENDPOINT = "de.industrieschule.vp.core.autodiscovery.annotations.WebSocketEndpoint";
+    static final String ANNOTATION_SSE_ENDPOINT = "de.industrieschule.vp.core.autodiscovery.annotations.SSEEndpoint";
+    static final String ANNOTATION_AUTOLOAD_CLASS = "de.industrieschule.vp.core.autodiscovery.annotations.AutoloadClass";
+    static final String ANNOTATION_GRAPHQL_BATCH_LOADER = "de.industrieschule.vp.core.autodiscovery.annotations.GraphQLBatchLoader";
+    static final String ANNOTATION_ENTITY = "jakarta.persistence.Entity";
+
+    /**
+     * Annotations, whose classes are indexed
+     */
+    static final Set<String> INDEXED_ANNOTATIONS = Set.of(
+            ANNOTATION_REST_ENDPOINT,
+            ANNOTATION_MULTI_ENDPOINT,
+            ANNOTATION_GRAPHQL_QUERY,
+            ANNOTATION_WEBSOCKET_ENDPOINT,
+            ANNOTATION_SSE_ENDPOINT,
+            ANNOTATION_AUTOLOAD_CLASS,
+            ANNOTATION_GRAPHQL_BATCH_LOADER,
+            ANNOTATION_ENTITY
+    );
+
+    /**
+     * Collected index lines in the format "key\tvalue". A sorted set keeps the output stable between builds.
+     */
+    private final Set<String> entries = new TreeSet<>();
+
+    /**
+     * Binary names of all classes compiled in this run, annotated or not
+     */
+    private final Set<String> compiledTypes = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            collectCompiledTypes(element);
+        }
+
+        for (TypeElement annotation : annotations) {
+            String annotationName = annotation.getQualifiedName().toString();
+            if (!INDEXED_ANNOTATIONS.contains(annotationName)) {
+                continue;
+            }
+
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "@" + annotation.getSimpleName() + " can only be used on classes", element);
+                    continue;
+                }
+                // Use the binary name, so nested classes can be loaded with Class.forName()
+                String className = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+                entries.add(annotationName + "\t" + className);
+            }
+        }
+
+        if (roundEnv.processingOver()) {
+            boolean schemasCollected = collectSchemaResources();
+            mergeExistingIndex(schemasCollected);
+            writeIndex();
+        }
+
+        // Don't claim the annotations, other processors may want to see them too
+        return false;
+    }
+
+    private void collectCompiledTypes(Element element) {
+        if (element instanceof TypeElement typeElement) {
+            compiledTypes.add(processingEnv.getElementUtils().getBinaryName(typeElement).toString());
+            for (Element enclosed : typeElement.getEnclosedElements()) {
+                collectCompiledTypes(enclosed);
+            }
+        }
+    }
+
+    /**
+     * Adds all "*.graphql" files below the configured resource directory to the index.
+     *
+     * @return false, if the resource directory isn't configured
+     */
+    private boolean collectSchemaResources() {
+        String resourceDir = processingEnv.getOptions().get(OPTION_RESOURCE_DIR);
+        if (resourceDir == null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Option " + OPTION_RESOURCE_DIR + " not set, GraphQL schemas will not be indexed");
+            return false;
+        }
+
+        Path resourceRoot = Paths.get(resourceDir);
+        Path schemaRoot = resourceRoot.resolve(GRAPHQL_RESOURCE_DIR);
+        if (!Files.isDirectory(schemaRoot)) {
+            return true;
+        }
+
+        try (Stream<Path> files = Files.walk(schemaRoot)) {
+            files.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(".graphql"))
+                    .map(path -> resourceRoot.relativize(path).toString().replace('\\', '/'))
+                    .forEach(resource -> entries.add(RESOURCE_KEY + "\t" + resource));
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to scan " + schemaRoot + " for GraphQL schemas: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the entries of the index from the previous build, whose classes weren't compiled in this run and still
+     * exist. Its schema resources are only kept, if they couldn't be collected in this run.
+     *
+     * @param schemasCollected Whether the schema resources were collected in this run
+     */
+    private void mergeExistingIndex(boolean schemasCollected) {
+        List<String> existingEntries;
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8))) {
+                existingEntries = reader.lines().toList();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // No previous build
+            return;
+        }
+
+        for (String entry : existingEntries) {
+            int separator = entry.indexOf('\t');
+            if (entry.startsWith("#") || separator < 0) {
+                continue;
+            }
+            String key = entry.substring(0, separator);
+            String value = entry.substring(separator + 1);
+            if (key.equals(RESOURCE_KEY)) {
+                if (!schemasCollected) {
+                    entries.add(entry);
+                }
+            } else if (!compiledTypes.contains(value)
+                    // Binary names of nested classes use '$', the canonical name '.'
+                    && processingEnv.getElementUtils().getTypeElement(value.replace('$', '.')) != null) {
+                entries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Writes the collected entries into {@link #INDEX_RESOURCE}.
+     */
+    private void writeIndex() {
+        Filer filer = processingEnv.getFiler();
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("# Generated by " + getClass().getName() + " - do not edit\n");
+                for (String entry : entries) {
+                    writer.write(entry);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write component index: " + e.getMessage());
+        }
+    }
+}
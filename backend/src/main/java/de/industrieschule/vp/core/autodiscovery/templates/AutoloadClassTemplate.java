@@ -12,6 +12,7 @@ public abstract class AutoloadClassTemplate {
 
     /**
      * This method is called after the discovery of all classes with the {@link de.industrieschule.vp.autodiscovery.annotations.AutoloadClass} annotation.
+     * The database and the JWT keys are already initialized at this point.
      * Subclasses should implement this method to define the specific behavior of the plugin.
      */
     public abstract void onClassLoad();
@@ -0,0 +1,25 @@
+package de.industrieschule.vp.core.autodiscovery.templates;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Template for a batch loader, that loads many entities of one type at once (e.g. with a single
+ * {@code WHERE id IN (...)} query) instead of one query per entity.
+ *
+ * @param <K> Key type, e.g. the ID of the entity
+ * @param <V> Value type, e.g. the entity
+ * @author Moritz Hofmann
+ */
+public abstract class BatchLoaderTemplate<K, V> {
+
+    /**
+     * Loads the values for all given keys. Keys without a value can be left out of the result map, they resolve
+     * to {@code null}.
+     *
+     * @param keys Distinct keys requested within the current batch
+     * @return Values mapped by their key
+     * @throws Exception If loading fails, all loads of this batch fail with this exception
+     */
+    public abstract Map<K, V> loadBatch(Set<K> keys) throws Exception;
+}
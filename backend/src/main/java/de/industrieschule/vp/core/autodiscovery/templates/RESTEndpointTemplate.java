@@ -7,4 +7,21 @@ This class is used to implement your own REST API Endpoint.
  */
 public abstract class RESTEndpointTemplate<T> {
     public abstract T handleRequest(Parameters params) throws Exception;
+
+    /**
+     * Returns the version of the response to a GET request, e.g. the revision of the plan it is built from. It is sent
+     * as ETag, and if the client already has this version, 304 (Not Modified) is sent without calling
+     * {@link #handleRequest(Parameters)}.
+     * <p>
+     * The version must change whenever the response changes, so it has to include everything the response depends on
+     * (e.g. the requested day). By default, the ETag is a hash of the serialized response.
+     * </p>
+     *
+     * @param params Parameters of the request
+     * @return Version of the response, or null to hash the response
+     * @throws Exception If the version can't be determined, handled like an exception of the handler
+     */
+    public String getResponseVersion(Parameters params) throws Exception {
+        return null;
+    }
 }
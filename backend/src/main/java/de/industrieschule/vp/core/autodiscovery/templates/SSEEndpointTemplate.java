@@ -0,0 +1,53 @@
+package de.industrieschule.vp.core.autodiscovery.templates;
+
+import de.industrieschule.vp.core.autodiscovery.annotations.SSEEndpoint;
+import de.industrieschule.vp.core.sse.SSEStream;
+import io.javalin.http.Context;
+import io.javalin.http.sse.SseClient;
+
+import java.util.Set;
+
+/**
+ This class is used to implement your own Server-Sent Events Endpoint.
+ Events are published with {@link #getStream()}, every client receives the events of the topics it asked for.
+ */
+public abstract class SSEEndpointTemplate {
+
+    private volatile SSEStream stream;
+
+    /**
+     * Called before the event stream is opened, so the request can still be rejected with an
+     * {@link io.javalin.http.HttpResponseException} (e.g. a {@link io.javalin.http.BadRequestResponse})
+     *
+     * @param context Context of the request
+     * @return Topics the client listens to
+     */
+    public abstract Set<String> getTopics(Context context);
+
+    /**
+     * Called after the client is subscribed and the events it missed are queued
+     */
+    public abstract void onConnect(SseClient sseClient);
+
+    /**
+     * Called once the client disconnected or was closed, its subscriptions are removed afterwards
+     */
+    public abstract void onClose(SseClient sseClient);
+
+    /**
+     * @return Events and clients of this endpoint, with the settings of its {@link SSEEndpoint} annotation
+     */
+    public SSEStream getStream() {
+        SSEStream current = stream;
+        if (current == null) {
+            synchronized (this) {
+                current = stream;
+                if (current == null) {
+                    current = SSEStream.of(getClass());
+                    stream = current;
+                }
+            }
+        }
+        return current;
+    }
+}
@@ -1,11 +1,18 @@
 package de.industrieschule.vp.core.autodiscovery.templates;
 
+import de.industrieschule.vp.core.autodiscovery.annotations.WebSocketEndpoint;
+import de.industrieschule.vp.core.websocket.BroadcastEngine;
+import de.industrieschule.vp.core.websocket.WebSocketSettings;
 import io.javalin.websocket.*;
 
 /**
  This class is used to implement your own WebSocket API Endpoint.
  */
 public abstract class WebSocketEndpointTemplate {
+
+    private volatile WebSocketSettings settings;
+    private volatile BroadcastEngine broadcastEngine;
+
     public abstract void onConnect(WsConnectContext wsConnectContext);
 
     public abstract void onMessage(WsMessageContext wsMessageContext);
@@ -15,4 +22,44 @@ public abstract class WebSocketEndpointTemplate {
     public abstract void onError(WsErrorContext wsErrorContext);
 
     public abstract void onBinaryMessage(WsBinaryMessageContext wsBinaryMessageContext);
+
+    /**
+     * Sessions of this endpoint, to send messages to many of them. Sessions are registered before
+     * {@link #onConnect(WsConnectContext)} and removed after {@link #onClose(WsCloseContext)} or
+     * {@link #onError(WsErrorContext)}.
+     *
+     * @return Broadcast engine of this endpoint, with the slow client policy and heartbeat of its settings
+     */
+    public BroadcastEngine getBroadcastEngine() {
+        BroadcastEngine engine = broadcastEngine;
+        if (engine == null) {
+            synchronized (this) {
+                engine = broadcastEngine;
+                if (engine == null) {
+                    engine = new BroadcastEngine(getSettings());
+                    broadcastEngine = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * @return Subprotocol this endpoint speaks, accepted during the upgrade if the client offers it; null for none
+     */
+    public String getSubprotocol() {
+        return null;
+    }
+
+    /**
+     * @return Connection settings from the {@link WebSocketEndpoint} annotation, or the defaults from the config
+     */
+    public WebSocketSettings getSettings() {
+        WebSocketSettings current = settings;
+        if (current == null) {
+            current = WebSocketSettings.of(getClass());
+            settings = current;
+        }
+        return current;
+    }
 }
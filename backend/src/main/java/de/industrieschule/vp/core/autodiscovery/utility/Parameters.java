@@ -1,7 +1,10 @@
 package de.industrieschule.vp.core.autodiscovery.utility;
 
+import de.industrieschule.vp.core.cache.ResponseCache;
 import graphql.schema.DataFetchingEnvironment;
 import io.javalin.http.Context;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
 
 import java.sql.SQLException;
 
@@ -9,6 +12,8 @@ public class Parameters {
 
     private final Context javalinContext;
     private final DataFetchingEnvironment graphQLDatafetchingEnvironment;
+    private final DataLoaderRegistry dataLoaderRegistry;
+    private final ResponseCache responseCache;
 
   /*  public UserSessionEntity getSession() throws SQLException {
         return ValidateSessionToken.getSessionFromRequestAndValidate(javalinContext);
@@ -26,8 +31,18 @@ public class Parameters {
     public final REQUEST_SOURCE source;
 
     public Parameters(Context javalinContext, DataFetchingEnvironment graphQLDatafetchingEnvironment, REQUEST_SOURCE source) {
+        this(javalinContext, graphQLDatafetchingEnvironment, null, source);
+    }
+
+    public Parameters(Context javalinContext, DataFetchingEnvironment graphQLDatafetchingEnvironment, DataLoaderRegistry dataLoaderRegistry, REQUEST_SOURCE source) {
+        this(javalinContext, graphQLDatafetchingEnvironment, dataLoaderRegistry, null, source);
+    }
+
+    public Parameters(Context javalinContext, DataFetchingEnvironment graphQLDatafetchingEnvironment, DataLoaderRegistry dataLoaderRegistry, ResponseCache responseCache, REQUEST_SOURCE source) {
         this.javalinContext = javalinContext;
         this.graphQLDatafetchingEnvironment = graphQLDatafetchingEnvironment;
+        this.dataLoaderRegistry = dataLoaderRegistry;
+        this.responseCache = responseCache;
         this.source = source;
     }
 
@@ -109,8 +124,13 @@ public class Parameters {
      * Returns the Javalin Context
      *
      * @return Javalin Context
+     * @throws IllegalStateException If the request has no HTTP context, i.e. a GraphQL operation received over the
+     *                               WebSocket. Resolvers see the message as GraphQL error.
      */
     public Context getJavalinContext() {
+        if (javalinContext == null) {
+            throw new IllegalStateException("The HTTP context is not available for GraphQL operations received over the WebSocket");
+        }
         return javalinContext;
     }
 
@@ -126,6 +146,38 @@ public class Parameters {
         return graphQLDatafetchingEnvironment;
     }
 
+    /**
+     * Returns the DataLoader with the given name, registered with {@code @GraphQLBatchLoader}.
+     * <p>
+     * DataLoaders live as long as the current request, keys requested by sibling fields are loaded in one batch.
+     * <b>Return the future of {@code load()} from the handler, don't wait for it</b>, the batch is only dispatched
+     * after the handler has returned.
+     * </p>
+     *
+     * @param <K>  Key type of the DataLoader
+     * @param <V>  Value type of the DataLoader
+     * @param name Name of the DataLoader
+     * @return DataLoader of the current request
+     * @throws IllegalStateException    If this request has no DataLoader registry
+     * @throws IllegalArgumentException If no batch loader with this name is registered
+     */
+    public <K, V> DataLoader<K, V> getDataLoader(String name) {
+        if (dataLoaderRegistry == null) {
+            throw new IllegalStateException("DataLoaders are not available for this request");
+        }
+        return dataLoaderRegistry.getDataLoader(name);
+    }
+
+    /**
+     * Returns the response cache, e.g. so a mutation can invalidate the cached responses of the queries it changes:
+     * {@code params.getResponseCache().invalidate(PlanMultiEndpoint.class)}.
+     *
+     * @return Response cache, {@link ResponseCache#disabled()} if response caching is disabled
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache != null ? responseCache : ResponseCache.disabled();
+    }
+
     /**
      * Gets the source of this request, so from which interface the request comes.
      *
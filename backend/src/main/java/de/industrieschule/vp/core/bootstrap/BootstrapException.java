@@ -0,0 +1,19 @@
+package de.industrieschule.vp.core.bootstrap;
+
+/**
+ * An exception class representing an error that occurred in one of the phases of the application bootstrap.
+ *
+ * @author Moritz Hofmann
+ */
+public class BootstrapException extends Exception {
+
+    /**
+     * Constructs a new BootstrapException for a failed phase.
+     *
+     * @param phaseName Name of the phase that failed
+     * @param cause     The exception thrown by the phase
+     */
+    public BootstrapException(String phaseName, Throwable cause) {
+        super("Bootstrap phase \"" + phaseName + "\" failed: " + cause.getMessage(), cause);
+    }
+}
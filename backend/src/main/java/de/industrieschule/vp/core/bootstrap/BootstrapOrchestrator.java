@@ -0,0 +1,196 @@
+package de.industrieschule.vp.core.bootstrap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the startup steps of the application as phases with declared dependencies.
+ * <p>
+ * Every phase starts as soon as all phases it depends on are completed, so independent phases (e.g. database
+ * initialization and JWT key loading) run concurrently. The caller can wait for single phases using
+ * {@link #await(String)}, e.g. to start the webserver as soon as the routing is ready, while the other phases are
+ * still running in the background.
+ * </p>
+ * <p>
+ * Dependencies must be declared before the phase depending on them, this makes dependency cycles impossible.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class BootstrapOrchestrator {
+
+    private static final Logger log = LogManager.getLogger(BootstrapOrchestrator.class);
+
+    /**
+     * The work done in a phase
+     */
+    @FunctionalInterface
+    public interface PhaseTask {
+        void run() throws Exception;
+    }
+
+    private record Phase(String name, List<String> dependencies, PhaseTask task) {
+    }
+
+    private record PhaseTiming(long startNanos, long endNanos, String threadName) {
+    }
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<Void>> futures = new ConcurrentHashMap<>();
+    private final Map<String, PhaseTiming> timings = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+    private CompletableFuture<Void> allPhases;
+    private long bootstrapStartNanos;
+
+    /**
+     * Declares a new phase.
+     *
+     * @param name      Unique name of the phase
+     * @param task      Work to do in this phase
+     * @param dependsOn Names of already declared phases, that must be completed before this phase can start
+     * @return this instance, for chaining
+     * @throws IllegalArgumentException if the name is already used or a dependency is unknown
+     * @throws IllegalStateException    if the bootstrap was already started
+     */
+    public BootstrapOrchestrator phase(String name, PhaseTask task, String... dependsOn) {
+        if (executor != null) {
+            throw new IllegalStateException("Cannot add phase \"" + name + "\", bootstrap already started");
+        }
+        if (phases.containsKey(name)) {
+            throw new IllegalArgumentException("Bootstrap phase \"" + name + "\" is declared twice");
+        }
+        for (String dependency : dependsOn) {
+            if (!phases.containsKey(dependency)) {
+                throw new IllegalArgumentException("Bootstrap phase \"" + name + "\" depends on unknown phase \"" + dependency + "\". Dependencies must be declared first.");
+            }
+        }
+
+        phases.put(name, new Phase(name, List.of(dependsOn), task));
+        return this;
+    }
+
+    /**
+     * Starts all declared phases. This method returns immediately.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            throw new IllegalStateException("Bootstrap already started");
+        }
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(2, Math.min(phases.size(), Runtime.getRuntime().availableProcessors())), runnable -> {
+            Thread thread = new Thread(runnable, "Bootstrap-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        bootstrapStartNanos = System.nanoTime();
+
+        for (Phase phase : phases.values()) {
+            CompletableFuture<?>[] dependencies = phase.dependencies().stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+
+            CompletableFuture<Void> future = CompletableFuture.allOf(dependencies)
+                    .thenRunAsync(() -> runPhase(phase), executor);
+            futures.put(phase.name(), future);
+        }
+
+        allPhases = CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new));
+        // Threads are not needed anymore, once every phase has finished (successfully or not)
+        allPhases.whenComplete((unused, throwable) -> executor.shutdown());
+    }
+
+    private void runPhase(Phase phase) {
+        long start = System.nanoTime();
+        log.info("\u25B6\uFE0F Bootstrap phase \"{}\" started", phase.name());
+        try {
+            phase.task().run();
+        } catch (Exception e) {
+            throw new CompletionException(new BootstrapException(phase.name(), e));
+        } finally {
+            timings.put(phase.name(), new PhaseTiming(start, System.nanoTime(), Thread.currentThread().getName()));
+        }
+        log.info("\u2714\uFE0F Bootstrap phase \"{}\" completed", phase.name());
+    }
+
+    /**
+     * Waits until the given phase (and therefore all of its dependencies) is completed.
+     *
+     * @param name Name of the phase
+     * @throws BootstrapException   if the phase or one of its dependencies failed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public void await(String name) throws BootstrapException, InterruptedException {
+        CompletableFuture<Void> future = futures.get(name);
+        if (future == null) {
+            throw new IllegalArgumentException("Unknown bootstrap phase \"" + name + "\"");
+        }
+        awaitFuture(future, name);
+    }
+
+    /**
+     * Waits until all phases are completed.
+     *
+     * @throws BootstrapException   if any phase failed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public void awaitAll() throws BootstrapException, InterruptedException {
+        awaitFuture(allPhases, "all");
+    }
+
+    private void awaitFuture(CompletableFuture<Void> future, String name) throws BootstrapException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BootstrapException bootstrapException) {
+                throw bootstrapException;
+            }
+            throw new BootstrapException(name, e.getCause());
+        }
+    }
+
+    /**
+     * Checks if all phases completed successfully.
+     *
+     * @return true if the bootstrap is done
+     */
+    public boolean isComplete() {
+        return allPhases != null && allPhases.isDone() && !allPhases.isCompletedExceptionally();
+    }
+
+    /**
+     * Logs the start offset and duration of every finished phase, relative to the start of the bootstrap.
+     */
+    public void logTimings() {
+        StringBuilder sb = new StringBuilder("\u23F1\uFE0F Bootstrap timing breakdown:");
+        long totalEnd = bootstrapStartNanos;
+
+        for (Phase phase : phases.values()) {
+            PhaseTiming timing = timings.get(phase.name());
+            if (timing == null) {
+                sb.append(String.format("%n  %-20s not finished", phase.name()));
+                continue;
+            }
+            totalEnd = Math.max(totalEnd, timing.endNanos());
+            sb.append(String.format("%n  %-20s +%6d ms  took %6d ms  on %-12s after %s",
+                    phase.name(),
+                    toMillis(timing.startNanos() - bootstrapStartNanos),
+                    toMillis(timing.endNanos() - timing.startNanos()),
+                    timing.threadName(),
+                    phase.dependencies().isEmpty() ? "-" : String.join(", ", phase.dependencies())));
+        }
+        sb.append(String.format("%n  %-20s %7d ms", "total (wall clock)", toMillis(totalEnd - bootstrapStartNanos)));
+
+        log.info(sb.toString());
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
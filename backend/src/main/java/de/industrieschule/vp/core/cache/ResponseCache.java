@@ -0,0 +1,511 @@
+package de.industrieschule.vp.core.cache;
+
+import de.industrieschule.vp.core.autodiscovery.annotations.MultiEndpoint;
+import de.industrieschule.vp.core.autodiscovery.annotations.RESTEndpoint;
+import de.industrieschule.vp.core.autodiscovery.utility.Parameters;
+import de.industrieschule.vp.core.json.JsonEngine;
+import de.industrieschule.vp.core.utilities.ETagUtil;
+import io.javalin.http.Context;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory cache for handler responses, shared by the REST and GraphQL dispatchers.
+ * <p>
+ * Handlers opt in with {@code cacheTtlSeconds} on {@link MultiEndpoint} or {@link RESTEndpoint}. The response is
+ * cached per handler class and the values of the {@code cacheKey} arguments, so the REST route and the GraphQL field
+ * of a MultiEndpoint share their entries. Only reads are cached (REST GET routes and root query fields).
+ * </p>
+ * <p>
+ * Concurrent requests for a missing key wait for the first one, so the handler runs only once (no cache stampede).
+ * Failed calls aren't cached, neither are responses the loader rejects with {@link NotCacheableException}. Once {@code maxEntries} or {@code maxWeight} (bytes of the JSON responses) is exceeded,
+ * expired and then least recently used entries are evicted, until the cache is below 90 % of both limits.
+ * </p>
+ * <p>
+ * Cached responses are handed to every caller, so handlers must not modify them afterwards. Mutations call
+ * {@link #invalidate(Class)} or {@link #invalidate(Class, Object...)} (see {@link Parameters#getResponseCache()}).
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class ResponseCache {
+
+    private static final Logger log = LogManager.getLogger(ResponseCache.class);
+
+    /**
+     * Caching settings of a handler
+     *
+     * @param handler      Handler class
+     * @param ttlNanos     Time to live of the entries, counted from the start of the handler call
+     * @param keyArguments Names of the arguments forming the key
+     */
+    public record Policy(Class<?> handler, long ttlNanos, String[] keyArguments) {
+
+        /**
+         * Reads the policy from the {@link MultiEndpoint} or {@link RESTEndpoint} annotation of the handler
+         *
+         * @param handler Handler class
+         * @return The policy, or null if the handler isn't cached
+         */
+        public static Policy of(Class<?> handler) {
+            MultiEndpoint multiEndpoint = handler.getAnnotation(MultiEndpoint.class);
+            if (multiEndpoint != null && multiEndpoint.cacheTtlSeconds() > 0) {
+                return new Policy(handler, TimeUnit.SECONDS.toNanos(multiEndpoint.cacheTtlSeconds()), multiEndpoint.cacheKey());
+            }
+            RESTEndpoint restEndpoint = handler.getAnnotation(RESTEndpoint.class);
+            if (restEndpoint != null && restEndpoint.cacheTtlSeconds() > 0) {
+                return new Policy(handler, TimeUnit.SECONDS.toNanos(restEndpoint.cacheTtlSeconds()), restEndpoint.cacheKey());
+            }
+            return null;
+        }
+
+        /**
+         * Builds the key of a request. Arguments are compared as strings, so REST query parameters and GraphQL
+         * arguments with the same value hit the same entry.
+         *
+         * @param params Parameters of the request
+         * @return Cache key
+         */
+        public Key key(Parameters params) {
+            String[] values = new String[keyArguments.length];
+            for (int i = 0; i < keyArguments.length; i++) {
+                Object value;
+                if (params.getSource() == Parameters.REQUEST_SOURCE.GRAPH_QL) {
+                    value = params.getGraphQLDatafetchingEnvironment().getArgument(keyArguments[i]);
+                } else {
+                    Context ctx = params.getJavalinContext();
+                    value = ctx.pathParamMap().containsKey(keyArguments[i]) ? ctx.pathParam(keyArguments[i]) : ctx.queryParam(keyArguments[i]);
+                }
+                values[i] = value == null ? null : value.toString();
+            }
+            return new Key(handler, Arrays.asList(values));
+        }
+    }
+
+    /**
+     * Key of an entry
+     *
+     * @param handler   Handler class
+     * @param arguments Values of the key arguments, in the order of the policy
+     */
+    public record Key(Class<?> handler, List<String> arguments) {
+    }
+
+    /**
+     * Hit and miss counters of a handler
+     *
+     * @param hits      Requests answered from the cache (including those waiting for a running call)
+     * @param misses    Requests, that called the handler
+     * @param evictions Entries removed because the cache was full
+     */
+    public record Statistics(long hits, long misses, long evictions) {
+    }
+
+    /**
+     * Thrown by a loader to hand its response to the caller without caching it, e.g. because the handler answered
+     * with an error status. The entry is dropped and requests waiting for it fail with this exception, they have to
+     * call the handler themselves, because such a response may depend on the request (e.g. 401).
+     */
+    public static final class NotCacheableException extends RuntimeException {
+
+        private final transient Object response;
+
+        /**
+         * @param response Response of the handler, sent only to the request that called it
+         */
+        public NotCacheableException(Object response) {
+            super("Response is not cacheable", null, false, false);
+            this.response = response;
+        }
+
+        /**
+         * @return Response of the handler
+         */
+        public Object response() {
+            return response;
+        }
+    }
+
+    /**
+     * Finds the {@link NotCacheableException} a future of an entry failed with
+     *
+     * @param throwable Failure of the future, possibly wrapped in a {@link CompletionException}
+     * @return The exception, or null if the entry failed for another reason
+     */
+    public static NotCacheableException notCacheable(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable instanceof NotCacheableException notCacheable ? notCacheable : null;
+    }
+
+    /**
+     * A cached (or loading) response
+     */
+    public static final class Entry {
+        private final CompletableFuture<Object> value = new CompletableFuture<>();
+        private final long expiresAt;
+        private volatile long lastAccess;
+        private volatile byte[] body;
+        private volatile String etag;
+        private volatile Throwable serializationError;
+        private int weight;
+        private boolean accounted;
+        private boolean removed;
+
+        private Entry(long now, long ttlNanos) {
+            this.expiresAt = now + ttlNanos;
+            this.lastAccess = now;
+        }
+
+        /**
+         * @return Response of the handler, completed once the handler has finished
+         */
+        public CompletableFuture<Object> value() {
+            return value;
+        }
+
+        /**
+         * @return true, if the handler has returned successfully
+         */
+        public boolean isLoaded() {
+            return value.isDone() && !value.isCompletedExceptionally();
+        }
+
+        /**
+         * @return Response serialized as UTF-8 JSON, null if the handler returned null. Only available once loaded.
+         */
+        public byte[] body() {
+            return body;
+        }
+
+        /**
+         * @return Entity tag of {@link #body()}, null if there is no body. Only available once loaded.
+         */
+        public String etag() {
+            return etag;
+        }
+
+        /**
+         * The value is still passed to GraphQL, which serializes it on its own; a REST response fails with this error,
+         * like it does without the cache.
+         *
+         * @return Error thrown while serializing the response as JSON, null if it was serialized. Only available once
+         * loaded.
+         */
+        public Throwable serializationError() {
+            return serializationError;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+    }
+
+    /**
+     * Shared instance of {@link #disabled()}
+     */
+    private static final ResponseCache DISABLED = new ResponseCache();
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, Counters> counters = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+
+    /**
+     * Only one thread evicts at a time, the others don't wait for it
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Constructs a new response cache.
+     *
+     * @param maxEntries Maximum number of entries, must be at least 1
+     * @param maxWeight  Maximum sum of the JSON bytes of all entries, must be at least 1
+     */
+    public ResponseCache(int maxEntries, long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("Cache limits must be at least 1, got " + maxEntries + " entries and " + maxWeight + " weight");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.enabled = true;
+    }
+
+    private ResponseCache() {
+        this.maxEntries = 0;
+        this.maxWeight = 0;
+        this.enabled = false;
+    }
+
+    /**
+     * Returns a cache, that stores nothing, used when response caching is disabled. Invalidating is a no-op and
+     * {@link #get(Key, Policy, Callable)} calls the loader every time, so handlers don't have to check whether
+     * caching is enabled.
+     *
+     * @return The shared disabled cache
+     */
+    public static ResponseCache disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return false for the cache returned by {@link #disabled()}
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached entry of the key, or calls the loader if there is none.
+     * <p>
+     * The loader runs on the calling thread and may return a {@link CompletionStage}, the entry is completed with
+     * its result.
+     * </p>
+     *
+     * @param key    Key of the request
+     * @param policy Policy of the handler
+     * @param loader Calls the handler
+     * @return Entry, that is loaded or still loading
+     */
+    public Entry get(Key key, Policy policy, Callable<?> loader) {
+        Counters handlerCounters = counters(key.handler());
+        long now = System.nanoTime();
+
+        Entry entry = new Entry(now, policy.ttlNanos());
+        if (!enabled) {
+            // Never stored, so it isn't accounted either
+            entry.removed = true;
+        }
+        while (enabled) {
+            Entry existing = entries.get(key);
+            if (existing != null && !existing.isExpired(now)) {
+                existing.lastAccess = now;
+                handlerCounters.hits.increment();
+                return existing;
+            }
+            if (existing == null ? entries.putIfAbsent(key, entry) == null : entries.replace(key, existing, entry)) {
+                if (existing != null) {
+                    removed(existing);
+                }
+                break;
+            }
+            // Another thread has started loading in the meantime
+        }
+
+        handlerCounters.misses.increment();
+        Object result;
+        try {
+            result = loader.call();
+        } catch (Throwable e) {
+            // Errors too (e.g. StackOverflowError), otherwise the requests waiting for the entry would hang
+            complete(key, entry, null, e);
+            return entry;
+        }
+        if (result instanceof CompletionStage<?> stage) {
+            stage.whenComplete((value, throwable) -> complete(key, entry, value, throwable));
+        } else {
+            complete(key, entry, result, null);
+        }
+        return entry;
+    }
+
+    private void complete(Key key, Entry entry, Object value, Throwable throwable) {
+        try {
+            if (throwable != null) {
+                remove(key, entry);
+                entry.value.completeExceptionally(throwable);
+                return;
+            }
+
+            byte[] body = null;
+            if (value != null) {
+                try {
+                    body = JsonEngine.GSON.toJson(value).getBytes(StandardCharsets.UTF_8);
+                    entry.etag = ETagUtil.fromContent(body);
+                } catch (Throwable e) {
+                    // E.g. a StackOverflowError on a cyclic entity
+                    log.warn("Response of {} can't be serialized, so it isn't cached", key.handler().getName(), e);
+                    body = null;
+                    entry.serializationError = e;
+                    remove(key, entry);
+                }
+            }
+            entry.body = body;
+            synchronized (entry) {
+                if (!entry.removed) {
+                    entry.weight = body == null ? 1 : body.length;
+                    entry.accounted = true;
+                    weight.addAndGet(entry.weight);
+                }
+            }
+            // Complete after the body is set, so waiting REST requests can send it
+            entry.value.complete(value);
+
+            evictIfNeeded();
+        } finally {
+            if (!entry.value.isDone()) {
+                // Only if caching itself failed (e.g. OutOfMemoryError), requests waiting for the entry must not hang
+                remove(key, entry);
+                entry.value.completeExceptionally(new IllegalStateException("Response of " + key.handler().getName() + " couldn't be cached"));
+            }
+        }
+    }
+
+    private void removed(Entry entry) {
+        synchronized (entry) {
+            entry.removed = true;
+            if (entry.accounted) {
+                weight.addAndGet(-entry.weight);
+            }
+        }
+    }
+
+    private void evictIfNeeded() {
+        if ((entries.size() <= maxEntries && weight.get() <= maxWeight) || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            List<Map.Entry<Key, Entry>> candidates = new ArrayList<>(entries.size());
+            for (Map.Entry<Key, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                if (!entry.value.isDone()) {
+                    continue;
+                }
+                if (entry.isExpired(now)) {
+                    remove(mapEntry.getKey(), entry);
+                } else {
+                    candidates.add(mapEntry);
+                }
+            }
+
+            int targetEntries = maxEntries - maxEntries / 10;
+            long targetWeight = maxWeight - maxWeight / 10;
+            if (entries.size() <= targetEntries && weight.get() <= targetWeight) {
+                return;
+            }
+
+            candidates.sort(Comparator.comparingLong(mapEntry -> mapEntry.getValue().lastAccess));
+            for (Map.Entry<Key, Entry> mapEntry : candidates) {
+                if (entries.size() <= targetEntries && weight.get() <= targetWeight) {
+                    break;
+                }
+                if (remove(mapEntry.getKey(), mapEntry.getValue())) {
+                    counters(mapEntry.getKey().handler()).evictions.increment();
+                }
+            }
+            log.debug("Response cache evicted down to {} entries with weight {}", entries.size(), weight.get());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean remove(Key key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            removed(entry);
+            return true;
+        }
+        return false;
+    }
+
+    private Counters counters(Class<?> handler) {
+        Counters handlerCounters = counters.get(handler);
+        return handlerCounters != null ? handlerCounters : counters.computeIfAbsent(handler, ignored -> new Counters());
+    }
+
+    /**
+     * Removes all entries of a handler, e.g. after a mutation changed its data
+     *
+     * @param handler Handler class
+     */
+    public void invalidate(Class<?> handler) {
+        entries.forEach((key, entry) -> {
+            if (key.handler() == handler) {
+                remove(key, entry);
+            }
+        });
+    }
+
+    /**
+     * Removes the entry of a handler with the given key values
+     *
+     * @param handler      Handler class
+     * @param keyArguments Values of the key arguments, in the order of {@code cacheKey}
+     */
+    public void invalidate(Class<?> handler, Object... keyArguments) {
+        String[] values = new String[keyArguments.length];
+        for (int i = 0; i < keyArguments.length; i++) {
+            values[i] = keyArguments[i] == null ? null : keyArguments[i].toString();
+        }
+        Key key = new Key(handler, Arrays.asList(values));
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            remove(key, entry);
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void invalidateAll() {
+        entries.forEach(this::remove);
+    }
+
+    /**
+     * @return Hit and miss counters by handler class
+     */
+    public Map<Class<?>, Statistics> getStatistics() {
+        Map<Class<?>, Statistics> statistics = new ConcurrentHashMap<>();
+        counters.forEach((handler, handlerCounters) -> statistics.put(handler,
+                new Statistics(handlerCounters.hits.sum(), handlerCounters.misses.sum(), handlerCounters.evictions.sum())));
+        return statistics;
+    }
+
+    /**
+     * @return Number of entries, including loading ones
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Sum of the JSON bytes of all loaded entries
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+}
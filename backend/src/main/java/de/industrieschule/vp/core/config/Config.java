@@ -1,6 +1,8 @@
 package de.industrieschule.vp.core.config;
 
 import de.industrieschule.vp.core.Main;
+import de.industrieschule.vp.core.autodiscovery.index.ComponentScanner;
+import de.industrieschule.vp.core.server.JettyThreadingConfigurer;
 import io.github.cdimascio.dotenv.Dotenv;
 
 import java.io.IOException;
@@ -26,6 +28,44 @@ public class Config {
     public static final String DB_PASSWORD = dotenv.get("DB_PASSWORD");
     public static final Integer API_PORT = Integer.valueOf(dotenv.get("API_PORT"));
     public static final boolean API_LEGACYAPP_ENABLE = Boolean.parseBoolean(dotenv.get("API_LEGACYAPP_ENABLE"));
+    public static final String LEGACY_APP_PASSWORD = dotenv.get("LEGACY_APP_PASSWORD", "legacy");
+    public static final int LEGACY_HASH_WINDOW_SECONDS = Integer.parseInt(dotenv.get("LEGACY_HASH_WINDOW_SECONDS", "60"));
     public static final boolean DEBUG = Boolean.parseBoolean(dotenv.get("DEBUG"));
     public static final String JWT_ISSUER = dotenv.get("JWT_ISSUER");
+    public static final int JWT_VERIFIED_CACHE_SIZE = Integer.parseInt(dotenv.get("JWT_VERIFIED_CACHE_SIZE", "10000"));
+    public static final ComponentScanner.MODE COMPONENT_DISCOVERY_MODE = ComponentScanner.MODE.valueOf(dotenv.get("COMPONENT_DISCOVERY_MODE", "INDEX").toUpperCase());
+    public static final int GRAPHQL_DOCUMENT_CACHE_SIZE = Integer.parseInt(dotenv.get("GRAPHQL_DOCUMENT_CACHE_SIZE", "256"));
+    public static final int GRAPHQL_PERSISTED_QUERIES_CACHE_SIZE = Integer.parseInt(dotenv.get("GRAPHQL_PERSISTED_QUERIES_CACHE_SIZE", "1000"));
+    public static final boolean GRAPHQL_PERSISTED_QUERIES_ALLOWLIST_ONLY = Boolean.parseBoolean(dotenv.get("GRAPHQL_PERSISTED_QUERIES_ALLOWLIST_ONLY", "false"));
+    public static final int GRAPHQL_MAX_REQUEST_BYTES = Integer.parseInt(dotenv.get("GRAPHQL_MAX_REQUEST_BYTES", "102400"));
+    public static final String GRAPHQL_TRACING_TOKEN = dotenv.get("GRAPHQL_TRACING_TOKEN", "");
+    public static final int GRAPHQL_MAX_DEPTH = Integer.parseInt(dotenv.get("GRAPHQL_MAX_DEPTH", "10"));
+    public static final int GRAPHQL_MAX_FIELDS = Integer.parseInt(dotenv.get("GRAPHQL_MAX_FIELDS", "200"));
+    public static final int GRAPHQL_MAX_ALIASES = Integer.parseInt(dotenv.get("GRAPHQL_MAX_ALIASES", "20"));
+    public static final int GRAPHQL_MAX_COST = Integer.parseInt(dotenv.get("GRAPHQL_MAX_COST", "200"));
+    public static final int GRAPHQL_WS_INIT_TIMEOUT_MS = Integer.parseInt(dotenv.get("GRAPHQL_WS_INIT_TIMEOUT_MS", "10000"));
+    public static final int GRAPHQL_WS_MAX_OPERATIONS = Integer.parseInt(dotenv.get("GRAPHQL_WS_MAX_OPERATIONS", "25"));
+    public static final int GRAPHQL_SUBSCRIPTION_BUFFER_SIZE = Integer.parseInt(dotenv.get("GRAPHQL_SUBSCRIPTION_BUFFER_SIZE", "256"));
+    public static final boolean RESPONSE_CACHE_ENABLE = Boolean.parseBoolean(dotenv.get("RESPONSE_CACHE_ENABLE", "true"));
+    public static final int RESPONSE_CACHE_MAX_ENTRIES = Integer.parseInt(dotenv.get("RESPONSE_CACHE_MAX_ENTRIES", "10000"));
+    public static final long RESPONSE_CACHE_MAX_WEIGHT = Long.parseLong(dotenv.get("RESPONSE_CACHE_MAX_WEIGHT", "33554432"));
+    public static final JettyThreadingConfigurer.MODE SERVER_THREAD_MODE = JettyThreadingConfigurer.MODE.valueOf(dotenv.get("SERVER_THREAD_MODE", "POOLED").toUpperCase());
+    public static final int SERVER_MIN_THREADS = Integer.parseInt(dotenv.get("SERVER_MIN_THREADS", "8"));
+    public static final int SERVER_MAX_THREADS = Integer.parseInt(dotenv.get("SERVER_MAX_THREADS", "250"));
+    public static final int SERVER_THREAD_IDLE_TIMEOUT_MS = Integer.parseInt(dotenv.get("SERVER_THREAD_IDLE_TIMEOUT_MS", "60000"));
+    public static final int SERVER_ACCEPTORS = Integer.parseInt(dotenv.get("SERVER_ACCEPTORS", "-1"));
+    public static final int SERVER_SELECTORS = Integer.parseInt(dotenv.get("SERVER_SELECTORS", "-1"));
+    public static final int PLAN_CHANGE_HISTORY_SIZE = Integer.parseInt(dotenv.get("PLAN_CHANGE_HISTORY_SIZE", "1000"));
+    public static final int PLAN_PUSH_MAX_TOPICS = Integer.parseInt(dotenv.get("PLAN_PUSH_MAX_TOPICS", "50"));
+    public static final int WS_OUTBOUND_QUEUE_MESSAGES = Integer.parseInt(dotenv.get("WS_OUTBOUND_QUEUE_MESSAGES", "256"));
+    public static final long WS_OUTBOUND_QUEUE_BYTES = Long.parseLong(dotenv.get("WS_OUTBOUND_QUEUE_BYTES", "1048576"));
+    public static final long WS_IDLE_TIMEOUT_MS = Long.parseLong(dotenv.get("WS_IDLE_TIMEOUT_MS", "120000"));
+    public static final long WS_MAX_MESSAGE_SIZE = Long.parseLong(dotenv.get("WS_MAX_MESSAGE_SIZE", "65536"));
+    public static final long WS_PING_INTERVAL_MS = Long.parseLong(dotenv.get("WS_PING_INTERVAL_MS", "25000"));
+    public static final boolean WS_PERMESSAGE_DEFLATE = Boolean.parseBoolean(dotenv.get("WS_PERMESSAGE_DEFLATE", "true"));
+    public static final long SSE_KEEPALIVE_MS = Long.parseLong(dotenv.get("SSE_KEEPALIVE_MS", "15000"));
+    public static final int SSE_REPLAY_BUFFER_EVENTS = Integer.parseInt(dotenv.get("SSE_REPLAY_BUFFER_EVENTS", "1000"));
+    public static final boolean METRICS_ENABLE = Boolean.parseBoolean(dotenv.get("METRICS_ENABLE", "false"));
+    public static final String METRICS_PATH = dotenv.get("METRICS_PATH", "/admin/metrics");
+    public static final String METRICS_TOKEN = dotenv.get("METRICS_TOKEN", "");
 }
@@ -0,0 +1,26 @@
+package de.industrieschule.vp.core.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Serializes {@link Instant} as ISO 8601 string (e.g. "2024-05-01T07:30:00Z"). Gson can't serialize java.time
+ * classes using reflection on current JDKs.
+ *
+ * @author Moritz Hofmann
+ */
+public class InstantTypeAdapter extends TypeAdapter<Instant> {
+    @Override
+    public void write(JsonWriter out, Instant value) throws IOException {
+        out.value(value.toString());
+    }
+
+    @Override
+    public Instant read(JsonReader in) throws IOException {
+        return Instant.parse(in.nextString());
+    }
+}
@@ -0,0 +1,75 @@
+package de.industrieschule.vp.core.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapterFactory;
+import de.industrieschule.vp.core.json.processor.JsonAdapterProcessor;
+import io.javalin.json.JavalinGson;
+import io.javalin.json.JsonMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Instant;
+
+/**
+ * The shared JSON engine of the API.
+ * <p>
+ * Use {@link #GSON} instead of creating new Gson instances, Gson caches its type adapters per instance.
+ * Classes annotated with {@link de.industrieschule.vp.core.json.annotations.GenerateJsonAdapter} are serialized
+ * with adapters generated at compile time by {@link JsonAdapterProcessor}, all other classes fall back to Gson's
+ * reflection based serialization.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public final class JsonEngine {
+
+    private static final Logger log = LogManager.getLogger(JsonEngine.class);
+
+    /**
+     * The shared, thread-safe Gson instance
+     */
+    public static final Gson GSON = createGson();
+
+    private JsonEngine() {
+    }
+
+    private static Gson createGson() {
+        GsonBuilder builder = new GsonBuilder()
+                .registerTypeAdapter(Instant.class, new InstantTypeAdapter().nullSafe());
+
+        TypeAdapterFactory generatedAdapters = loadGeneratedAdapters();
+        if (generatedAdapters != null) {
+            builder.registerTypeAdapterFactory(generatedAdapters);
+        }
+
+        return builder.create();
+    }
+
+    /**
+     * Loads the factory generated by {@link JsonAdapterProcessor}. It's loaded by name, so the code still compiles and
+     * runs (with reflection based serialization) if annotation processing is disabled, e.g. in some IDE setups.
+     *
+     * @return The generated factory, or null if it doesn't exist
+     */
+    private static TypeAdapterFactory loadGeneratedAdapters() {
+        try {
+            Class<?> factoryClass = Class.forName(JsonAdapterProcessor.FACTORY_CLASS);
+            return (TypeAdapterFactory) factoryClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            log.warn("Generated JSON adapters not found, falling back to reflection based serialization");
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to instantiate " + JsonAdapterProcessor.FACTORY_CLASS, e);
+        }
+    }
+
+    /**
+     * Creates a Javalin JSON mapper, that uses the shared Gson instance.
+     *
+     * @return JSON mapper for {@code javalinConfig.jsonMapper(...)}
+     */
+    public static JsonMapper javalinMapper() {
+        return new JavalinGson(GSON, false);
+    }
+}
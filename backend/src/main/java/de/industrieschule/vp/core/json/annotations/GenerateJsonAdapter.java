@@ -0,0 +1,25 @@
+package de.industrieschule.vp.core.json.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a Gson TypeAdapter for the annotated class at compile time, so it is serialized without reflection.
+ * <p>
+ * The generated adapter writes all non-static, non-transient fields (including inherited ones) by their name or
+ * their {@code @SerializedName}, like Gson's reflection based serialization. Fields are read and written directly,
+ * like Gson does. Only fields the adapter can't access (private fields, and package-private or protected fields
+ * declared in another package) are read using their getter and written using their setter, so the JSON is only
+ * the same as Gson's if these return and assign the field unchanged.
+ * </p>
+ * <p>
+ * Reading is generated, if the class has a no-arg constructor and every field can be written; other classes are
+ * read by Gson's reflection based adapter.
+ * </p>
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.TYPE})
+public @interface GenerateJsonAdapter {
+}
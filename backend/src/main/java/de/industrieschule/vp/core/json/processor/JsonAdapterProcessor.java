@@ -0,0 +1,460 @@
+package de.industrieschule.vp.core.json.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor, that generates a Gson TypeAdapter for every class annotated with
+ * {@code @GenerateJsonAdapter}, plus a TypeAdapterFactory ({@value #FACTORY_CLASS}) that returns them.
+ * <p>
+ * The factory is registered in {@code JsonEngine}, so REST responses are serialized by plain generated code instead
+ * of Gson's reflection based adapter.
+ * </p>
+ * <p>
+ * <b>This class must only depend on the JDK</b>, because it is compiled in a separate step before the rest of the
+ * module (see the maven-compiler-plugin executions in the pom.xml).
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+@SupportedAnnotationTypes(JsonAdapterProcessor.ANNOTATION)
+public class JsonAdapterProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "de.industrieschule.vp.core.json.annotations.GenerateJsonAdapter";
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+
+    /**
+     * Fully qualified name of the generated factory
+     */
+    public static final String FACTORY_CLASS = "de.industrieschule.vp.core.json.GeneratedJsonAdapterFactory";
+
+    /**
+     * Adapter class name -> annotated class name, for the factory
+     */
+    private final Map<String, String> generatedAdapters = new TreeMap<>();
+
+    /**
+     * Adapters, that only write and pass reading to Gson's reflection based adapter
+     */
+    private final Set<String> writeOnlyAdapters = new HashSet<>();
+    private boolean factoryWritten = false;
+    private int factoryAdapterCount = 0;
+
+    /**
+     * A serialized property of a class
+     *
+     * @param jsonName   Name in the JSON document
+     * @param type       Java type of the property
+     * @param getterExpr Expression to read the value, "value" is the instance
+     * @param setterStmt Statement with "%s" as placeholder for the value to assign, null if not writable
+     */
+    private record Property(String jsonName, TypeMirror type, String getterExpr, String setterStmt) {
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@GenerateJsonAdapter can only be used on classes");
+                    continue;
+                }
+                generateAdapter((TypeElement) element);
+            }
+        }
+
+        // Write the factory in the first round, that has adapters, so it is compiled together with them
+        if (!generatedAdapters.isEmpty() && !factoryWritten) {
+            writeFactory();
+            factoryWritten = true;
+            factoryAdapterCount = generatedAdapters.size();
+        } else if (factoryWritten && generatedAdapters.size() != factoryAdapterCount) {
+            error(null, "@GenerateJsonAdapter on generated sources is not supported");
+        }
+
+        return false;
+    }
+
+    private void generateAdapter(TypeElement type) {
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "@GenerateJsonAdapter can't be used on inner classes, make the class static");
+            return;
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        // Nested classes: JWTTokenUtil.Token -> JWTTokenUtil_Token_JsonAdapter
+        String adapterSimpleName = typeName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('.', '_') + "_JsonAdapter";
+        String adapterName = packageName.isEmpty() ? adapterSimpleName : packageName + "." + adapterSimpleName;
+
+        List<Property> properties = collectProperties(type);
+        if (properties == null) {
+            return;
+        }
+        boolean readable = hasNoArgConstructor(type) && properties.stream().allMatch(p -> p.setterStmt() != null);
+
+        StringBuilder src = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            src.append("package ").append(packageName).append(";\n\n");
+        }
+        src.append("/**\n * Generated by ").append(getClass().getName()).append(" - do not edit\n */\n");
+        src.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        src.append("public final class ").append(adapterSimpleName).append(" extends com.google.gson.TypeAdapter<").append(typeName).append("> {\n\n");
+
+        // Delegate adapters for all non-trivial types
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            if (needsDelegate(property.type())) {
+                src.append("    private final com.google.gson.TypeAdapter<").append(boxed(property.type())).append("> adapter").append(i).append(";\n");
+            }
+        }
+        if (!readable) {
+            src.append("    private final com.google.gson.Gson gson;\n");
+            src.append("    private final com.google.gson.TypeAdapterFactory factory;\n");
+            src.append("    private volatile com.google.gson.TypeAdapter<").append(typeName).append("> reflectiveAdapter;\n");
+            src.append("\n    public ").append(adapterSimpleName).append("(com.google.gson.Gson gson, com.google.gson.TypeAdapterFactory factory) {\n");
+            src.append("        this.gson = gson;\n");
+            src.append("        this.factory = factory;\n");
+        } else {
+            src.append("\n    public ").append(adapterSimpleName).append("(com.google.gson.Gson gson) {\n");
+        }
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            if (needsDelegate(property.type())) {
+                src.append("        this.adapter").append(i).append(" = gson.getAdapter(new com.google.gson.reflect.TypeToken<")
+                        .append(boxed(property.type())).append(">() {});\n");
+            }
+        }
+        src.append("    }\n\n");
+
+        // write()
+        src.append("    @Override\n");
+        src.append("    public void write(com.google.gson.stream.JsonWriter out, ").append(typeName).append(" value) throws java.io.IOException {\n");
+        src.append("        if (value == null) {\n            out.nullValue();\n            return;\n        }\n");
+        src.append("        out.beginObject();\n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            src.append("        out.name(\"").append(escape(property.jsonName())).append("\");\n");
+            src.append(writeStatement(property, i));
+        }
+        src.append("        out.endObject();\n");
+        src.append("    }\n\n");
+
+        // read()
+        src.append("    @Override\n");
+        src.append("    public ").append(typeName).append(" read(com.google.gson.stream.JsonReader in) throws java.io.IOException {\n");
+        if (readable) {
+            src.append("        if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n            in.nextNull();\n            return null;\n        }\n");
+            src.append("        ").append(typeName).append(" value = new ").append(typeName).append("();\n");
+            src.append("        in.beginObject();\n");
+            src.append("        while (in.hasNext()) {\n");
+            src.append("            switch (in.nextName()) {\n");
+            for (int i = 0; i < properties.size(); i++) {
+                Property property = properties.get(i);
+                src.append("                case \"").append(escape(property.jsonName())).append("\" -> ").append(readStatement(property, i));
+            }
+            src.append("                default -> in.skipValue();\n");
+            src.append("            }\n");
+            src.append("        }\n");
+            src.append("        in.endObject();\n");
+            src.append("        return value;\n");
+        } else {
+            // Not every field can be written, Gson's reflection based adapter (behind the generated factory) reads it
+            src.append("        com.google.gson.TypeAdapter<").append(typeName).append("> delegate = reflectiveAdapter;\n");
+            src.append("        if (delegate == null) {\n");
+            src.append("            delegate = gson.getDelegateAdapter(factory, com.google.gson.reflect.TypeToken.get(").append(typeName).append(".class));\n");
+            src.append("            reflectiveAdapter = delegate;\n");
+            src.append("        }\n");
+            src.append("        return delegate.read(in);\n");
+        }
+        src.append("    }\n");
+        src.append("}\n");
+
+        writeSource(adapterName, src.toString(), type);
+        generatedAdapters.put(adapterName, typeName);
+        if (!readable) {
+            writeOnlyAdapters.add(adapterName);
+        }
+    }
+
+    private String writeStatement(Property property, int index) {
+        TypeMirror type = property.type();
+        String getter = property.getterExpr();
+
+        if (type.getKind().isPrimitive()) {
+            if (type.getKind() == TypeKind.CHAR) {
+                return "        out.value(String.valueOf(" + getter + "));\n";
+            }
+            return "        out.value(" + getter + ");\n";
+        }
+        if (isType(type, "java.lang.String")) {
+            return "        out.value(" + getter + ");\n";
+        }
+        if (isType(type, "java.lang.Boolean")) {
+            return "        out.value(" + getter + ");\n";
+        }
+        if (isBoxedNumber(type)) {
+            return "        out.value((java.lang.Number) " + getter + ");\n";
+        }
+        return "        {\n" +
+                "            " + boxed(type) + " v = " + getter + ";\n" +
+                "            if (v == null) {\n" +
+                "                out.nullValue();\n" +
+                "            } else {\n" +
+                "                adapter" + index + ".write(out, v);\n" +
+                "            }\n" +
+                "        }\n";
+    }
+
+    private String readStatement(Property property, int index) {
+        TypeMirror type = property.type();
+
+        if (needsDelegate(type)) {
+            return String.format(property.setterStmt(), "adapter" + index + ".read(in)") + ";\n";
+        }
+
+        String read = switch (type.getKind() == TypeKind.DECLARED ? type.toString() : type.getKind().name()) {
+            case "java.lang.String" -> "in.nextString()";
+            case "BOOLEAN", "java.lang.Boolean" -> "in.nextBoolean()";
+            case "INT", "java.lang.Integer" -> "in.nextInt()";
+            case "LONG", "java.lang.Long" -> "in.nextLong()";
+            case "DOUBLE" -> "in.nextDouble()";
+            case "FLOAT" -> "(float) in.nextDouble()";
+            case "SHORT", "java.lang.Short" -> "(short) in.nextInt()";
+            case "BYTE", "java.lang.Byte" -> "(byte) in.nextInt()";
+            case "CHAR" -> "in.nextString().charAt(0)";
+            default -> throw new IllegalStateException("Unexpected type " + type);
+        };
+
+        // null leaves primitives at their default value, like Gson does
+        String onNull = type.getKind().isPrimitive() ? "" : "\n                        " + String.format(property.setterStmt(), "null") + ";";
+        return "{\n" +
+                "                    if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n" +
+                "                        in.nextNull();" + onNull + "\n" +
+                "                    } else {\n" +
+                "                        " + String.format(property.setterStmt(), read) + ";\n" +
+                "                    }\n" +
+                "                }\n";
+    }
+
+    private boolean needsDelegate(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return false;
+        }
+        // Float and Double need Gson's checks for NaN and Infinity, so they use a delegate as well
+        return !(isType(type, "java.lang.String") || isType(type, "java.lang.Boolean") || isType(type, "java.lang.Integer")
+                || isType(type, "java.lang.Long") || isType(type, "java.lang.Short") || isType(type, "java.lang.Byte"));
+    }
+
+    private boolean isBoxedNumber(TypeMirror type) {
+        return isType(type, "java.lang.Integer") || isType(type, "java.lang.Long")
+                || isType(type, "java.lang.Short") || isType(type, "java.lang.Byte");
+    }
+
+    private static boolean isType(TypeMirror type, String name) {
+        return type.getKind() == TypeKind.DECLARED && type.toString().equals(name);
+    }
+
+    private String boxed(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    /**
+     * Collects all serialized fields of the type and its superclasses, in the same order Gson uses.
+     *
+     * @return the properties, or null if an error was reported
+     */
+    private List<Property> collectProperties(TypeElement type) {
+        // The adapter is generated in the package of the type
+        PackageElement adapterPackage = processingEnv.getElementUtils().getPackageOf(type);
+        List<Property> properties = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        boolean failed = false;
+
+        TypeElement current = type;
+        while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+
+                String fieldName = field.getSimpleName().toString();
+                String jsonName = serializedName(field);
+                if (!names.add(jsonName)) {
+                    error(field, "Duplicate JSON property \"" + jsonName + "\" in " + type.getQualifiedName());
+                    failed = true;
+                    continue;
+                }
+
+                boolean accessible = isAccessible(current, field, adapterPackage);
+                String getterExpr = getterExpression(current, field, accessible);
+                if (getterExpr == null) {
+                    error(field, "Field \"" + fieldName + "\" isn't accessible from the adapter and has no getter, can't generate a JSON adapter");
+                    failed = true;
+                    continue;
+                }
+                properties.add(new Property(jsonName, field.asType(), getterExpr, setterStatement(current, field, accessible)));
+            }
+
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+
+        return failed ? null : properties;
+    }
+
+    private String serializedName(VariableElement field) {
+        for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().toString().equals(SERIALIZED_NAME)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return entry.getValue().getValue().toString();
+                    }
+                }
+            }
+        }
+        return field.getSimpleName().toString();
+    }
+
+    /**
+     * Checks if the generated adapter can access the field directly
+     *
+     * @param owner          Class declaring the field
+     * @param field          Field
+     * @param adapterPackage Package of the generated adapter
+     * @return true for public fields and for package-private and protected fields of a class in the same package
+     */
+    private boolean isAccessible(TypeElement owner, VariableElement field, PackageElement adapterPackage) {
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        return modifiers.contains(Modifier.PUBLIC) || processingEnv.getElementUtils().getPackageOf(owner).equals(adapterPackage);
+    }
+
+    /**
+     * Reads the field directly like Gson does, a getter is only used if the field isn't accessible
+     *
+     * @return Expression reading the value, or null if the field can't be read
+     */
+    private String getterExpression(TypeElement owner, VariableElement field, boolean accessible) {
+        String fieldName = field.getSimpleName().toString();
+        if (accessible) {
+            return "value." + fieldName;
+        }
+        String capitalized = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+        boolean isBoolean = field.asType().getKind() == TypeKind.BOOLEAN;
+
+        for (ExecutableElement method : ElementFilter.methodsIn(owner.getEnclosedElements())) {
+            String methodName = method.getSimpleName().toString();
+            boolean nameMatches = methodName.equals("get" + capitalized) || (isBoolean && methodName.equals("is" + capitalized));
+            if (nameMatches && method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+                return "value." + methodName + "()";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Assigns the field directly like Gson does, a setter is only used if the field isn't accessible
+     *
+     * @return Statement assigning the value, or null if the field can't be written
+     */
+    private String setterStatement(TypeElement owner, VariableElement field, boolean accessible) {
+        String fieldName = field.getSimpleName().toString();
+        if (accessible) {
+            return field.getModifiers().contains(Modifier.FINAL) ? null : "value." + fieldName + " = %s";
+        }
+        String setterName = "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+
+        for (ExecutableElement method : ElementFilter.methodsIn(owner.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(setterName) && method.getParameters().size() == 1
+                    && !method.getModifiers().contains(Modifier.PRIVATE) && !method.getModifiers().contains(Modifier.STATIC)
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), field.asType())) {
+                return "value." + setterName + "(%s)";
+            }
+        }
+        return null;
+    }
+
+    private boolean hasNoArgConstructor(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeFactory() {
+        int lastDot = FACTORY_CLASS.lastIndexOf('.');
+        String packageName = FACTORY_CLASS.substring(0, lastDot);
+        String simpleName = FACTORY_CLASS.substring(lastDot + 1);
+
+        StringBuilder src = new StringBuilder();
+        src.append("package ").append(packageName).append(";\n\n");
+        src.append("/**\n * Generated by ").append(getClass().getName()).append(" - do not edit\n */\n");
+        src.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        src.append("public final class ").append(simpleName).append(" implements com.google.gson.TypeAdapterFactory {\n\n");
+        src.append("    @Override\n");
+        src.append("    @SuppressWarnings(\"unchecked\")\n");
+        src.append("    public <T> com.google.gson.TypeAdapter<T> create(com.google.gson.Gson gson, com.google.gson.reflect.TypeToken<T> type) {\n");
+        src.append("        Class<? super T> rawType = type.getRawType();\n");
+        for (Map.Entry<String, String> entry : generatedAdapters.entrySet()) {
+            src.append("        if (rawType == ").append(entry.getValue()).append(".class) {\n");
+            src.append("            return (com.google.gson.TypeAdapter<T>) new ").append(entry.getKey())
+                    .append(writeOnlyAdapters.contains(entry.getKey()) ? "(gson, this);\n" : "(gson);\n");
+            src.append("        }\n");
+        }
+        src.append("        return null;\n");
+        src.append("    }\n");
+        src.append("}\n");
+
+        writeSource(FACTORY_CLASS, src.toString());
+    }
+
+    private void writeSource(String className, String source, Element... originatingElements) {
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(className, originatingElements);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source);
+            }
+        } catch (IOException e) {
+            error(null, "Unable to write " + className + ": " + e.getMessage());
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
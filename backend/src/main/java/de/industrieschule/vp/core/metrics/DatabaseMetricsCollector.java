@@ -0,0 +1,115 @@
+package de.industrieschule.vp.core.metrics;
+
+import de.industrieschule.vp.core.HibernateUtil;
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.AgroalDataSourceMetrics;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Metrics of the Agroal connection pool and the Hibernate statistics.
+ * <p>
+ * Nothing is written until the database is initialized. The pool metrics are only available if the Agroal pool is
+ * used (not in debug mode), the Hibernate statistics only if they are enabled (see {@code METRICS_ENABLE}).
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class DatabaseMetricsCollector implements MetricsCollector {
+
+    @Override
+    public void collect(PrometheusWriter writer) {
+        SessionFactory sessionFactory = HibernateUtil.getSessionFactory();
+        if (sessionFactory == null) {
+            return;
+        }
+
+        collectPool(writer, sessionFactory);
+
+        Statistics statistics = sessionFactory.getStatistics();
+        if (statistics.isStatisticsEnabled()) {
+            collectHibernate(writer, statistics);
+        }
+    }
+
+    private void collectPool(PrometheusWriter writer, SessionFactory sessionFactory) {
+        ConnectionProvider connectionProvider = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (connectionProvider == null || !connectionProvider.isUnwrappableAs(AgroalDataSource.class)) {
+            return;
+        }
+        AgroalDataSourceMetrics metrics = connectionProvider.unwrap(AgroalDataSource.class).getMetrics();
+
+        writer.family("agroal_connections", PrometheusWriter.TYPE_GAUGE, "Connections of the pool by state");
+        writer.sample("agroal_connections", metrics.activeCount(), "state", "active");
+        writer.sample("agroal_connections", metrics.availableCount(), "state", "available");
+        writer.sample("agroal_connections", metrics.maxUsedCount(), "state", "max_used");
+
+        writer.family("agroal_awaiting_threads", PrometheusWriter.TYPE_GAUGE, "Threads waiting for a connection");
+        writer.sample("agroal_awaiting_threads", metrics.awaitingCount());
+
+        writer.family("agroal_events_total", PrometheusWriter.TYPE_COUNTER, "Connection lifecycle events");
+        writer.sample("agroal_events_total", metrics.acquireCount(), "event", "acquire");
+        writer.sample("agroal_events_total", metrics.creationCount(), "event", "creation");
+        writer.sample("agroal_events_total", metrics.destroyCount(), "event", "destroy");
+        writer.sample("agroal_events_total", metrics.invalidCount(), "event", "invalid");
+        writer.sample("agroal_events_total", metrics.leakDetectionCount(), "event", "leak_detection");
+        writer.sample("agroal_events_total", metrics.reapCount(), "event", "reap");
+        writer.sample("agroal_events_total", metrics.flushCount(), "event", "flush");
+
+        writer.family("agroal_blocking_seconds_total", PrometheusWriter.TYPE_COUNTER, "Time spent waiting for a connection");
+        writer.sample("agroal_blocking_seconds_total", metrics.blockingTimeTotal().toNanos() / 1e9);
+        writer.family("agroal_blocking_max_seconds", PrometheusWriter.TYPE_GAUGE, "Longest wait for a connection");
+        writer.sample("agroal_blocking_max_seconds", metrics.blockingTimeMax().toNanos() / 1e9);
+        writer.family("agroal_creation_seconds_total", PrometheusWriter.TYPE_COUNTER, "Time spent creating connections");
+        writer.sample("agroal_creation_seconds_total", metrics.creationTimeTotal().toNanos() / 1e9);
+    }
+
+    private void collectHibernate(PrometheusWriter writer, Statistics statistics) {
+        writer.family("hibernate_sessions_total", PrometheusWriter.TYPE_COUNTER, "Opened and closed sessions");
+        writer.sample("hibernate_sessions_total", statistics.getSessionOpenCount(), "event", "open");
+        writer.sample("hibernate_sessions_total", statistics.getSessionCloseCount(), "event", "close");
+
+        writer.family("hibernate_transactions_total", PrometheusWriter.TYPE_COUNTER, "Transactions by result");
+        writer.sample("hibernate_transactions_total", statistics.getSuccessfulTransactionCount(), "result", "success");
+        writer.sample("hibernate_transactions_total", statistics.getTransactionCount() - statistics.getSuccessfulTransactionCount(), "result", "failure");
+
+        writer.family("hibernate_entities_total", PrometheusWriter.TYPE_COUNTER, "Entity operations");
+        writer.sample("hibernate_entities_total", statistics.getEntityLoadCount(), "operation", "load");
+        writer.sample("hibernate_entities_total", statistics.getEntityFetchCount(), "operation", "fetch");
+        writer.sample("hibernate_entities_total", statistics.getEntityInsertCount(), "operation", "insert");
+        writer.sample("hibernate_entities_total", statistics.getEntityUpdateCount(), "operation", "update");
+        writer.sample("hibernate_entities_total", statistics.getEntityDeleteCount(), "operation", "delete");
+
+        writer.family("hibernate_collections_total", PrometheusWriter.TYPE_COUNTER, "Collection operations");
+        writer.sample("hibernate_collections_total", statistics.getCollectionLoadCount(), "operation", "load");
+        writer.sample("hibernate_collections_total", statistics.getCollectionFetchCount(), "operation", "fetch");
+
+        writer.family("hibernate_queries_total", PrometheusWriter.TYPE_COUNTER, "Executed queries");
+        writer.sample("hibernate_queries_total", statistics.getQueryExecutionCount());
+        writer.family("hibernate_query_max_seconds", PrometheusWriter.TYPE_GAUGE, "Slowest query execution");
+        writer.sample("hibernate_query_max_seconds", statistics.getQueryExecutionMaxTime() / 1000d);
+
+        writer.family("hibernate_query_plan_cache_total", PrometheusWriter.TYPE_COUNTER, "Query plan cache lookups");
+        writer.sample("hibernate_query_plan_cache_total", statistics.getQueryPlanCacheHitCount(), "result", "hit");
+        writer.sample("hibernate_query_plan_cache_total", statistics.getQueryPlanCacheMissCount(), "result", "miss");
+
+        writer.family("hibernate_second_level_cache_total", PrometheusWriter.TYPE_COUNTER, "Second level cache lookups");
+        writer.sample("hibernate_second_level_cache_total", statistics.getSecondLevelCacheHitCount(), "result", "hit");
+        writer.sample("hibernate_second_level_cache_total", statistics.getSecondLevelCacheMissCount(), "result", "miss");
+
+        writer.family("hibernate_statements_total", PrometheusWriter.TYPE_COUNTER, "Prepared and closed JDBC statements");
+        writer.sample("hibernate_statements_total", statistics.getPrepareStatementCount(), "event", "prepare");
+        writer.sample("hibernate_statements_total", statistics.getCloseStatementCount(), "event", "close");
+
+        writer.family("hibernate_flushes_total", PrometheusWriter.TYPE_COUNTER, "Session flushes");
+        writer.sample("hibernate_flushes_total", statistics.getFlushCount());
+        writer.family("hibernate_connects_total", PrometheusWriter.TYPE_COUNTER, "Connections obtained by sessions");
+        writer.sample("hibernate_connects_total", statistics.getConnectCount());
+        writer.family("hibernate_optimistic_failures_total", PrometheusWriter.TYPE_COUNTER, "Optimistic lock failures");
+        writer.sample("hibernate_optimistic_failures_total", statistics.getOptimisticFailureCount());
+    }
+}
@@ -0,0 +1,90 @@
+package de.industrieschule.vp.core.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, error and in-flight metrics of one endpoint (REST route, GraphQL field, ...).
+ * <p>
+ * Instances are created once at startup through {@link MetricsRegistry#endpoint}. The hot path only calls
+ * {@link #start()} and {@link #stop(long, boolean)}, which don't allocate:
+ * </p>
+ * <pre>{@code
+ * long start = metrics.start();
+ * ...
+ * metrics.stop(start, failed);
+ * }</pre>
+ *
+ * @author Moritz Hofmann
+ */
+public class EndpointMetrics {
+
+    private final String type;
+    private final String endpoint;
+    private final String method;
+    private final String route;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    EndpointMetrics(String type, String endpoint, String method, String route) {
+        this.type = type;
+        this.endpoint = endpoint;
+        this.method = method;
+        this.route = route;
+    }
+
+    /**
+     * Marks the start of a call
+     *
+     * @return Start timestamp, to be passed to {@link #stop(long, boolean)}
+     */
+    public long start() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a call, must be called exactly once for every {@link #start()}
+     *
+     * @param startNanos Value returned by {@link #start()}
+     * @param error      Whether the call failed
+     */
+    public void stop(long startNanos, boolean error) {
+        // First, so the gauge stays correct even if recording fails
+        inFlight.decrementAndGet();
+        latency.record(System.nanoTime() - startNanos);
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
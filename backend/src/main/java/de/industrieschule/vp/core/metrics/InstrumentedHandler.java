@@ -0,0 +1,34 @@
+package de.industrieschule.vp.core.metrics;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records the metrics of a synchronous handler, that isn't dispatched by the autodiscovery (e.g. the legacy app
+ * endpoint). Calls are counted as error if the handler throws or answers with a 5xx status.
+ *
+ * @author Moritz Hofmann
+ */
+public class InstrumentedHandler implements Handler {
+
+    private final Handler handler;
+    private final EndpointMetrics metrics;
+
+    public InstrumentedHandler(Handler handler, EndpointMetrics metrics) {
+        this.handler = handler;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(@NotNull Context ctx) throws Exception {
+        long start = metrics.start();
+        boolean failed = true;
+        try {
+            handler.handle(ctx);
+            failed = ctx.statusCode() >= 500;
+        } finally {
+            metrics.stop(start, failed);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.industrieschule.vp.core.metrics;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Memory, garbage collection, thread and process metrics of the JVM, read from the platform MXBeans
+ *
+ * @author Moritz Hofmann
+ */
+public class JvmMetricsCollector implements MetricsCollector {
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final List<MemoryPoolMXBean> memoryPoolBeans = ManagementFactory.getMemoryPoolMXBeans();
+    private final List<GarbageCollectorMXBean> garbageCollectorBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final ClassLoadingMXBean classLoadingBean = ManagementFactory.getClassLoadingMXBean();
+    private final OperatingSystemMXBean operatingSystemBean = ManagementFactory.getOperatingSystemMXBean();
+
+    @Override
+    public void collect(PrometheusWriter writer) {
+        MemoryUsage heap = memoryBean.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memoryBean.getNonHeapMemoryUsage();
+
+        writer.family("jvm_memory_used_bytes", PrometheusWriter.TYPE_GAUGE, "Used memory");
+        writer.sample("jvm_memory_used_bytes", heap.getUsed(), "area", "heap");
+        writer.sample("jvm_memory_used_bytes", nonHeap.getUsed(), "area", "nonheap");
+        writer.family("jvm_memory_committed_bytes", PrometheusWriter.TYPE_GAUGE, "Memory committed by the operating system");
+        writer.sample("jvm_memory_committed_bytes", heap.getCommitted(), "area", "heap");
+        writer.sample("jvm_memory_committed_bytes", nonHeap.getCommitted(), "area", "nonheap");
+        writer.family("jvm_memory_max_bytes", PrometheusWriter.TYPE_GAUGE, "Maximum usable memory, -1 if undefined");
+        writer.sample("jvm_memory_max_bytes", heap.getMax(), "area", "heap");
+        writer.sample("jvm_memory_max_bytes", nonHeap.getMax(), "area", "nonheap");
+
+        writer.family("jvm_memory_pool_used_bytes", PrometheusWriter.TYPE_GAUGE, "Used memory per memory pool");
+        for (MemoryPoolMXBean pool : memoryPoolBeans) {
+            writer.sample("jvm_memory_pool_used_bytes", pool.getUsage().getUsed(), "pool", pool.getName());
+        }
+
+        writer.family("jvm_gc_collection_count_total", PrometheusWriter.TYPE_COUNTER, "Number of garbage collections");
+        for (GarbageCollectorMXBean gc : garbageCollectorBeans) {
+            writer.sample("jvm_gc_collection_count_total", Math.max(gc.getCollectionCount(), 0), "gc", gc.getName());
+        }
+        writer.family("jvm_gc_collection_seconds_total", PrometheusWriter.TYPE_COUNTER, "Time spent in garbage collections");
+        for (GarbageCollectorMXBean gc : garbageCollectorBeans) {
+            writer.sample("jvm_gc_collection_seconds_total", Math.max(gc.getCollectionTime(), 0) / 1000d, "gc", gc.getName());
+        }
+
+        writer.family("jvm_threads", PrometheusWriter.TYPE_GAUGE, "Number of platform threads (virtual threads are not included)");
+        writer.sample("jvm_threads", threadBean.getThreadCount(), "state", "live");
+        writer.sample("jvm_threads", threadBean.getDaemonThreadCount(), "state", "daemon");
+        writer.sample("jvm_threads", threadBean.getPeakThreadCount(), "state", "peak");
+
+        writer.family("jvm_classes_loaded", PrometheusWriter.TYPE_GAUGE, "Number of currently loaded classes");
+        writer.sample("jvm_classes_loaded", classLoadingBean.getLoadedClassCount());
+
+        writer.family("process_uptime_seconds", PrometheusWriter.TYPE_GAUGE, "Uptime of the JVM");
+        writer.sample("process_uptime_seconds", ManagementFactory.getRuntimeMXBean().getUptime() / 1000d);
+
+        writer.family("process_available_processors", PrometheusWriter.TYPE_GAUGE, "Number of processors available to the JVM");
+        writer.sample("process_available_processors", operatingSystemBean.getAvailableProcessors());
+
+        if (operatingSystemBean instanceof com.sun.management.OperatingSystemMXBean extendedBean) {
+            writer.family("process_cpu_seconds_total", PrometheusWriter.TYPE_COUNTER, "CPU time used by the process");
+            writer.sample("process_cpu_seconds_total", extendedBean.getProcessCpuTime() / 1e9);
+        }
+        if (operatingSystemBean instanceof com.sun.management.UnixOperatingSystemMXBean unixBean) {
+            writer.family("process_open_fds", PrometheusWriter.TYPE_GAUGE, "Number of open file descriptors");
+            writer.sample("process_open_fds", unixBean.getOpenFileDescriptorCount());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package de.industrieschule.vp.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets, similar to an HdrHistogram.
+ * <p>
+ * Every power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so a recorded value is off by at most
+ * 1/{@value #SUB_BUCKETS} (6.25%) from the reported value, independent of its magnitude. Values from 1 ns up to
+ * about 275 seconds (2^38 ns) are tracked, larger values end up in the last bucket.
+ * </p>
+ * <p>
+ * {@link #record(long)} only updates atomics and never allocates, so it can be called on every request. Reading is
+ * done with {@link #snapshot()}, which is not atomic across buckets, values recorded while a snapshot is taken may
+ * or may not be part of it.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Highest tracked power of two, its sub-buckets reach up to 2^38 ns (about 275 seconds)
+     */
+    private static final int MAX_EXPONENT = 37;
+
+    /**
+     * Values below {@value #SUB_BUCKETS} have a bucket each, then {@value #SUB_BUCKETS} buckets for every exponent from
+     * {@value #SUB_BUCKET_BITS} up to and including {@value #MAX_EXPONENT}
+     */
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value
+     *
+     * @param nanos Latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketIndex(value));
+        sum.add(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return Copy of the current values
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, sum.sum(), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The highest value, that is recorded into the bucket with the given index
+     */
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucketWidth = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowest = (SUB_BUCKETS + index % SUB_BUCKETS) * subBucketWidth;
+        return lowest + subBucketWidth - 1;
+    }
+
+    /**
+     * Values of a histogram at a point in time
+     *
+     * @param counts   Number of values per bucket
+     * @param count    Number of recorded values
+     * @param sumNanos Sum of all recorded values
+     * @param maxNanos Highest recorded value
+     */
+    public record Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+
+        /**
+         * @param quantile Quantile between 0 and 1, e.g. 0.99
+         * @return Latency in nanoseconds, that the given share of values doesn't exceed, 0 if nothing was recorded
+         */
+        public long valueAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // The last bucket also contains all values above the tracked range
+                    return i == counts.length - 1 ? maxNanos : Math.min(highestValueInBucket(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * @param upperBoundNanos Upper bound (inclusive)
+         * @return Number of values, that are lower or equal to the given bound (within the histogram precision)
+         */
+        public long countAtOrBelow(long upperBoundNanos) {
+            long result = 0;
+            for (int i = 0; i < counts.length && highestValueInBucket(i) <= upperBoundNanos; i++) {
+                result += counts[i];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package de.industrieschule.vp.core.metrics;
+
+/**
+ * Source of metrics, that are read when the metrics are scraped (e.g. JVM or database pool statistics)
+ *
+ * @author Moritz Hofmann
+ */
+public interface MetricsCollector {
+
+    /**
+     * Writes the current values
+     *
+     * @param writer Target of the metrics
+     */
+    void collect(PrometheusWriter writer);
+}
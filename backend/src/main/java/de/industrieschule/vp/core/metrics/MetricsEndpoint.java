@@ -0,0 +1,50 @@
+package de.industrieschule.vp.core.metrics;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.UnauthorizedResponse;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Scrape endpoint for Prometheus.
+ * <p>
+ * If a token is configured, it has to be sent as bearer token ({@code Authorization: Bearer <token>}), which is
+ * supported by the {@code authorization} setting of the Prometheus scrape config.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class MetricsEndpoint implements Handler {
+
+    private final MetricsRegistry registry;
+    private final byte[] expectedAuthorization;
+
+    /**
+     * @param registry Registry to render
+     * @param token    Required bearer token, null or empty to allow access without a token
+     */
+    public MetricsEndpoint(MetricsRegistry registry, String token) {
+        this.registry = registry;
+        this.expectedAuthorization = token == null || token.isEmpty()
+                ? null
+                : ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void handle(@NotNull Context ctx) {
+        if (expectedAuthorization != null) {
+            String authorization = ctx.header("Authorization");
+            // Constant-time comparison, so the token can't be guessed from response times
+            if (authorization == null || !MessageDigest.isEqual(expectedAuthorization, authorization.getBytes(StandardCharsets.UTF_8))) {
+                throw new UnauthorizedResponse();
+            }
+        }
+
+        ctx.header("Cache-Control", "no-cache, no-store, must-revalidate");
+        ctx.contentType(PrometheusWriter.CONTENT_TYPE);
+        ctx.result(registry.scrape());
+    }
+}
@@ -0,0 +1,140 @@
+package de.industrieschule.vp.core.metrics;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the metrics of all registered endpoints and the additional collectors, and renders them for Prometheus.
+ * <p>
+ * Endpoints are registered once at startup, the dispatchers keep a reference to their {@link EndpointMetrics}, so
+ * nothing is looked up per request.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class MetricsRegistry {
+
+    public static final String TYPE_REST = "rest";
+    public static final String TYPE_GRAPHQL = "graphql";
+    public static final String TYPE_GRAPHQL_FIELD = "graphql_field";
+    public static final String TYPE_GRAPHQL_PHASE = "graphql_phase";
+    public static final String TYPE_LEGACY = "legacy";
+
+    /**
+     * Upper bounds of the exported histogram buckets in seconds
+     */
+    private static final double[] BUCKET_BOUNDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    /**
+     * Exported quantiles, computed from the histogram
+     */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final String PREFIX = "vp_endpoint_";
+
+    /**
+     * Sorted by key, so the output order stays the same between scrapes
+     */
+    private final ConcurrentSkipListMap<String, EndpointMetrics> endpoints = new ConcurrentSkipListMap<>();
+    private final List<MetricsCollector> collectors = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns the metrics of an endpoint, registering it on first use. Endpoints with the same labels share their
+     * metrics.
+     *
+     * @param type          One of the TYPE_ constants
+     * @param endpointClass Class handling the calls
+     * @param method        HTTP method, or the GraphQL operation type
+     * @param route         Path of the route, or the GraphQL field coordinate (e.g. "Query.hello")
+     * @return Metrics of the endpoint
+     */
+    public EndpointMetrics endpoint(String type, Class<?> endpointClass, String method, String route) {
+        String key = type + ' ' + method + ' ' + route + ' ' + endpointClass.getName();
+        return endpoints.computeIfAbsent(key, k -> new EndpointMetrics(type, endpointClass.getName(), method, route));
+    }
+
+    /**
+     * Adds a collector, that is called on every scrape
+     */
+    public void addCollector(MetricsCollector collector) {
+        collectors.add(collector);
+    }
+
+    public Collection<EndpointMetrics> getEndpoints() {
+        return endpoints.values();
+    }
+
+    /**
+     * @return All metrics in the Prometheus text format
+     */
+    public String scrape() {
+        PrometheusWriter writer = new PrometheusWriter();
+        writeEndpoints(writer);
+        for (MetricsCollector collector : collectors) {
+            collector.collect(writer);
+        }
+        return writer.toString();
+    }
+
+    private void writeEndpoints(PrometheusWriter writer) {
+        // Read every histogram once, so all families show the same values
+        List<EndpointMetrics> metrics = List.copyOf(endpoints.values());
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[metrics.size()];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = metrics.get(i).getLatency().snapshot();
+        }
+
+        writer.family(PREFIX + "latency_seconds", PrometheusWriter.TYPE_HISTOGRAM, "Latency of the endpoint calls");
+        for (int i = 0; i < snapshots.length; i++) {
+            EndpointMetrics endpoint = metrics.get(i);
+            LatencyHistogram.Snapshot snapshot = snapshots[i];
+            for (double bound : BUCKET_BOUNDS) {
+                writer.sample(PREFIX + "latency_seconds_bucket", snapshot.countAtOrBelow((long) (bound * 1_000_000_000L)),
+                        labels(endpoint, "le", BigDecimal.valueOf(bound).stripTrailingZeros().toPlainString()));
+            }
+            writer.sample(PREFIX + "latency_seconds_bucket", snapshot.count(), labels(endpoint, "le", "+Inf"));
+            writer.sample(PREFIX + "latency_seconds_sum", snapshot.sumNanos() / 1e9, labels(endpoint));
+            writer.sample(PREFIX + "latency_seconds_count", snapshot.count(), labels(endpoint));
+        }
+
+        writer.family(PREFIX + "latency_quantile_seconds", PrometheusWriter.TYPE_GAUGE, "Latency quantiles since startup, precise to 6.25%");
+        for (int i = 0; i < snapshots.length; i++) {
+            for (double quantile : QUANTILES) {
+                writer.sample(PREFIX + "latency_quantile_seconds", snapshots[i].valueAtQuantile(quantile) / 1e9,
+                        labels(metrics.get(i), "quantile", Double.toString(quantile)));
+            }
+        }
+
+        writer.family(PREFIX + "latency_max_seconds", PrometheusWriter.TYPE_GAUGE, "Highest latency since startup");
+        for (int i = 0; i < snapshots.length; i++) {
+            writer.sample(PREFIX + "latency_max_seconds", snapshots[i].maxNanos() / 1e9, labels(metrics.get(i)));
+        }
+
+        writer.family(PREFIX + "errors_total", PrometheusWriter.TYPE_COUNTER, "Number of failed calls");
+        for (EndpointMetrics endpoint : metrics) {
+            writer.sample(PREFIX + "errors_total", endpoint.getErrorCount(), labels(endpoint));
+        }
+
+        writer.family(PREFIX + "in_flight", PrometheusWriter.TYPE_GAUGE, "Number of calls currently being processed");
+        for (EndpointMetrics endpoint : metrics) {
+            writer.sample(PREFIX + "in_flight", endpoint.getInFlight(), labels(endpoint));
+        }
+    }
+
+    private static String[] labels(EndpointMetrics endpoint, String... additionalLabels) {
+        String[] labels = new String[8 + additionalLabels.length];
+        labels[0] = "type";
+        labels[1] = endpoint.getType();
+        labels[2] = "endpoint";
+        labels[3] = endpoint.getEndpoint();
+        labels[4] = "method";
+        labels[5] = endpoint.getMethod();
+        labels[6] = "route";
+        labels[7] = endpoint.getRoute();
+        System.arraycopy(additionalLabels, 0, labels, 8, additionalLabels.length);
+        return labels;
+    }
+}
@@ -0,0 +1,102 @@
+package de.industrieschule.vp.core.metrics;
+
+/**
+ * Builds a response in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * Every metric family is started with {@link #family(String, String, String)}, followed by its samples. Labels are
+ * passed as alternating name/value pairs.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class PrometheusWriter {
+
+    /**
+     * Content type of the text exposition format
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    public static final String TYPE_COUNTER = "counter";
+    public static final String TYPE_GAUGE = "gauge";
+    public static final String TYPE_HISTOGRAM = "histogram";
+
+    private final StringBuilder output = new StringBuilder(16 * 1024);
+
+    /**
+     * Starts a new metric family
+     *
+     * @param name Name of the metric, without suffixes like "_bucket"
+     * @param type One of the TYPE_ constants
+     * @param help Description of the metric
+     * @return this instance
+     */
+    public PrometheusWriter family(String name, String type, String help) {
+        output.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Writes a sample
+     *
+     * @param name   Name of the sample, including suffixes like "_bucket"
+     * @param value  Value of the sample
+     * @param labels Label names and values, alternating
+     * @return this instance
+     */
+    public PrometheusWriter sample(String name, double value, String... labels) {
+        appendNameAndLabels(name, labels);
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            // Counters and counts without ".0"
+            output.append((long) value);
+        } else {
+            output.append(value);
+        }
+        output.append('\n');
+        return this;
+    }
+
+    private void appendNameAndLabels(String name, String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be passed as name/value pairs");
+        }
+        output.append(name);
+        if (labels.length > 0) {
+            output.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    output.append(',');
+                }
+                output.append(labels[i]).append("=\"");
+                appendEscaped(labels[i + 1]);
+                output.append('"');
+            }
+            output.append('}');
+        }
+        output.append(' ');
+    }
+
+    private void appendEscaped(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> output.append("\\\\");
+                case '"' -> output.append("\\\"");
+                case '\n' -> output.append("\\n");
+                default -> output.append(c);
+            }
+        }
+    }
+
+    /**
+     * Converts a name (e.g. of a memory pool) into a valid metric name part
+     */
+    public static String sanitize(String name) {
+        return name.toLowerCase().replaceAll("[^a-z0-9_]+", "_");
+    }
+
+    @Override
+    public String toString() {
+        return output.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package de.industrieschule.vp.core.metrics;
+
+import de.industrieschule.vp.core.cache.ResponseCache;
+
+import java.util.Map;
+
+/**
+ * Size and hit rate of the {@link ResponseCache}, the hit and miss counters are written per handler class
+ *
+ * @author Moritz Hofmann
+ */
+public class ResponseCacheMetricsCollector implements MetricsCollector {
+
+    private final ResponseCache responseCache;
+
+    public ResponseCacheMetricsCollector(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public void collect(PrometheusWriter writer) {
+        writer.family("vp_response_cache_entries", PrometheusWriter.TYPE_GAUGE, "Cached responses, including loading ones");
+        writer.sample("vp_response_cache_entries", responseCache.size());
+        writer.family("vp_response_cache_max_entries", PrometheusWriter.TYPE_GAUGE, "Maximum number of cached responses");
+        writer.sample("vp_response_cache_max_entries", responseCache.getMaxEntries());
+        writer.family("vp_response_cache_weight", PrometheusWriter.TYPE_GAUGE, "Summed JSON bytes of the cached responses");
+        writer.sample("vp_response_cache_weight", responseCache.weight());
+        writer.family("vp_response_cache_max_weight", PrometheusWriter.TYPE_GAUGE, "Maximum summed JSON bytes");
+        writer.sample("vp_response_cache_max_weight", responseCache.getMaxWeight());
+
+        Map<Class<?>, ResponseCache.Statistics> statistics = responseCache.getStatistics();
+        writer.family("vp_response_cache_requests_total", PrometheusWriter.TYPE_COUNTER, "Requests to cached handlers by result");
+        statistics.forEach((handler, handlerStatistics) -> {
+            writer.sample("vp_response_cache_requests_total", handlerStatistics.hits(), "endpoint", handler.getName(), "result", "hit");
+            writer.sample("vp_response_cache_requests_total", handlerStatistics.misses(), "endpoint", handler.getName(), "result", "miss");
+        });
+        writer.family("vp_response_cache_evictions_total", PrometheusWriter.TYPE_COUNTER, "Responses evicted because the cache was full");
+        statistics.forEach((handler, handlerStatistics) ->
+                writer.sample("vp_response_cache_evictions_total", handlerStatistics.evictions(), "endpoint", handler.getName()));
+    }
+}
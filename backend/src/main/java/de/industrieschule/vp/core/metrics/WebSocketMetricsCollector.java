@@ -0,0 +1,88 @@
+package de.industrieschule.vp.core.metrics;
+
+import de.industrieschule.vp.core.websocket.BroadcastEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Connections, outbound queues and the estimated memory per connection of the WebSocket endpoints
+ *
+ * @author Moritz Hofmann
+ */
+public class WebSocketMetricsCollector implements MetricsCollector {
+
+    /**
+     * Sorted by path, so the output order stays the same between scrapes
+     */
+    private final Map<String, BroadcastEngine> endpoints = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param path   Path of the WebSocket
+     * @param engine Sessions of the endpoint
+     */
+    public void addEndpoint(String path, BroadcastEngine engine) {
+        endpoints.put(path, engine);
+    }
+
+    @Override
+    public void collect(PrometheusWriter writer) {
+        // Iterating the sessions is the expensive part, so every engine is read once
+        List<String> paths = new ArrayList<>(endpoints.keySet());
+        List<BroadcastEngine.Statistics> statistics = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            statistics.add(endpoints.get(path).getStatistics());
+        }
+
+        writer.family("vp_websocket_connections", PrometheusWriter.TYPE_GAUGE, "Open WebSocket connections");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_connections", statistics.get(i).sessions(), "path", paths.get(i));
+        }
+        writer.family("vp_websocket_compressed_connections", PrometheusWriter.TYPE_GAUGE, "Connections with permessage-deflate");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_compressed_connections", statistics.get(i).compressedSessions(), "path", paths.get(i));
+        }
+        writer.family("vp_websocket_topics", PrometheusWriter.TYPE_GAUGE, "Topics with at least one subscribed connection");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_topics", statistics.get(i).topics(), "path", paths.get(i));
+        }
+
+        writer.family("vp_websocket_queued_messages", PrometheusWriter.TYPE_GAUGE, "Messages waiting in the outbound queues");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_queued_messages", statistics.get(i).queuedMessages(), "path", paths.get(i));
+        }
+        writer.family("vp_websocket_queued_bytes", PrometheusWriter.TYPE_GAUGE, "Bytes waiting in the outbound queues");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_queued_bytes", statistics.get(i).queuedBytes(), "path", paths.get(i));
+        }
+
+        writer.family("vp_websocket_memory_bytes", PrometheusWriter.TYPE_GAUGE, "Estimated memory of all connections (queues, buffers, compression state)");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_memory_bytes", statistics.get(i).estimatedMemory(), "path", paths.get(i));
+        }
+        writer.family("vp_websocket_connection_memory_bytes", PrometheusWriter.TYPE_GAUGE, "Estimated memory per connection");
+        for (int i = 0; i < paths.size(); i++) {
+            BroadcastEngine.Statistics endpoint = statistics.get(i);
+            writer.sample("vp_websocket_connection_memory_bytes",
+                    endpoint.sessions() == 0 ? 0 : (double) endpoint.estimatedMemory() / endpoint.sessions(),
+                    "path", paths.get(i), "stat", "avg");
+            writer.sample("vp_websocket_connection_memory_bytes", endpoint.maxSessionMemory(), "path", paths.get(i), "stat", "max");
+        }
+
+        writer.family("vp_websocket_pings_total", PrometheusWriter.TYPE_COUNTER, "Heartbeat pings sent to connections without incoming frames");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_pings_total", statistics.get(i).pings(), "path", paths.get(i));
+        }
+        writer.family("vp_websocket_closed_total", PrometheusWriter.TYPE_COUNTER, "Connections closed by the server by reason");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_closed_total", statistics.get(i).slowClientsClosed(), "path", paths.get(i), "reason", "slow");
+            writer.sample("vp_websocket_closed_total", statistics.get(i).deadClientsClosed(), "path", paths.get(i), "reason", "heartbeat");
+        }
+        writer.family("vp_websocket_coalesced_total", PrometheusWriter.TYPE_COUNTER, "Queued messages replaced by newer ones");
+        for (int i = 0; i < paths.size(); i++) {
+            writer.sample("vp_websocket_coalesced_total", statistics.get(i).coalesced(), "path", paths.get(i));
+        }
+    }
+}
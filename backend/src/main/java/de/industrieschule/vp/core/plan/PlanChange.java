@@ -0,0 +1,166 @@
+package de.industrieschule.vp.core.plan;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import de.industrieschule.vp.core.websocket.BroadcastMessage;
+
+import java.util.Set;
+
+/**
+ * One change of the plan, as pushed to the clients. Changes are immutable and serialized only once, no matter how
+ * many clients receive them.
+ *
+ * @author Moritz Hofmann
+ */
+public final class PlanChange {
+
+    public enum Operation {
+        ADD("add"),
+        UPDATE("update"),
+        REMOVE("remove");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Kinds of topics, a client can subscribe to. A topic is written as {@code <type>:<value>}, e.g.
+     * {@code class:FS21} or {@code day:2024-03-18}.
+     */
+    public enum TopicType {
+        CLASS("class"),
+        TEACHER("teacher"),
+        ROOM("room"),
+        DAY("day");
+
+        private static final int MAX_VALUE_LENGTH = 64;
+
+        private final String key;
+
+        TopicType(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @param value e.g. the name of the class
+         * @return Topic, e.g. {@code class:FS21}
+         */
+        public String topic(String value) {
+            return key + ":" + value;
+        }
+
+        /**
+         * @param topic Topic sent by a client
+         * @return true, if the topic has a known type and a value of reasonable length
+         */
+        public static boolean isValid(String topic) {
+            int separator = topic.indexOf(':');
+            if (separator < 1 || separator == topic.length() - 1 || topic.length() - separator - 1 > MAX_VALUE_LENGTH) {
+                return false;
+            }
+            for (TopicType type : values()) {
+                if (topic.regionMatches(0, type.key, 0, separator) && type.key.length() == separator) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final long version;
+    private final Operation operation;
+    private final String id;
+    private final Set<String> topics;
+    private final String data;
+    private final String json;
+    private final BroadcastMessage message;
+
+    PlanChange(long version, Operation operation, String id, Set<String> topics, JsonElement data) {
+        this.version = version;
+        this.operation = operation;
+        this.id = id;
+        this.topics = Set.copyOf(topics);
+        this.data = data == null || data.isJsonNull() ? null : data.toString();
+        this.json = serialize(data);
+        this.message = BroadcastMessage.text(json);
+    }
+
+    private String serialize(JsonElement data) {
+        JsonObject message = new JsonObject();
+        message.addProperty("type", "change");
+        message.addProperty("v", version);
+        message.addProperty("op", operation.getKey());
+        message.addProperty("id", id);
+        JsonArray topicArray = new JsonArray(topics.size());
+        topics.forEach(topicArray::add);
+        message.add("topics", topicArray);
+        if (data != null && !data.isJsonNull()) {
+            message.add("data", data);
+        }
+        return message.toString();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return Id of the changed entry, e.g. of a substitution
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return Topics affected by the change, e.g. the class and the teacher of a substitution
+     */
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * @return Changed fields as JSON, null for removals
+     */
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * @return The message sent to the clients
+     */
+    public String toJson() {
+        return json;
+    }
+
+    /**
+     * @return The message sent to the clients, encoded for the WebSocket
+     */
+    public BroadcastMessage toMessage() {
+        return message;
+    }
+
+    /**
+     * @param subscribed Topics subscribed by a client
+     * @return true, if the change affects one of the topics
+     */
+    public boolean affectsAny(Set<String> subscribed) {
+        for (String topic : topics) {
+            if (subscribed.contains(topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+package de.industrieschule.vp.core.plan;
+
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.json.JsonEngine;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Ordered feed of plan changes. Whoever changes the plan (e.g. the plan import) publishes the change here, push
+ * endpoints listen to it.
+ * <p>
+ * Every change gets the next version. The last changes are kept, so a client, that reconnects, can receive the
+ * changes it missed instead of loading the whole plan again. Versions start at 0 on every start of the server, the
+ * {@link #getEpoch() epoch} tells clients, whether their version still refers to this feed.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class PlanChangeFeed {
+
+    private static final PlanChangeFeed instance = new PlanChangeFeed(Config.PLAN_CHANGE_HISTORY_SIZE);
+
+    /**
+     * Last changes, ring buffer
+     */
+    private final PlanChange[] history;
+    private int historyStart;
+    private int historySize;
+
+    private long version;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final List<Consumer<PlanChange>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param historySize Number of changes kept for clients, that resume
+     */
+    public PlanChangeFeed(int historySize) {
+        this.history = new PlanChange[Math.max(historySize, 1)];
+    }
+
+    /**
+     * @return The feed of the application
+     */
+    public static PlanChangeFeed getInstance() {
+        return instance;
+    }
+
+    /**
+     * Publishes a change. Listeners are called in the order of the versions, before this method returns.
+     *
+     * @param operation Kind of the change
+     * @param id        Id of the changed entry
+     * @param topics    Topics affected by the change, see {@link PlanChange.TopicType}
+     * @param data      Changed fields, serialized with the shared JSON engine; null for removals
+     * @return The published change
+     */
+    public synchronized PlanChange publish(PlanChange.Operation operation, String id, Set<String> topics, Object data) {
+        for (String topic : topics) {
+            if (!PlanChange.TopicType.isValid(topic)) {
+                throw new IllegalArgumentException("Invalid topic \"" + topic + "\"");
+            }
+        }
+        PlanChange change = new PlanChange(version + 1, operation, id, topics, data == null ? null : JsonEngine.GSON.toJsonTree(data));
+        version = change.getVersion();
+
+        history[(historyStart + historySize) % history.length] = change;
+        if (historySize < history.length) {
+            historySize++;
+        } else {
+            historyStart = (historyStart + 1) % history.length;
+        }
+
+        for (Consumer<PlanChange> listener : listeners) {
+            listener.accept(change);
+        }
+        return change;
+    }
+
+    /**
+     * Registers a listener. It's called while publishing, so it must not block.
+     *
+     * @param listener Listener
+     */
+    public void addListener(Consumer<PlanChange> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<PlanChange> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Replays the changes after a version. No change is published while this method runs, so a client, that is
+     * subscribed in {@code beforeReplay}, receives every change exactly once: either replayed or from the listeners.
+     *
+     * @param since        Last version known to the client
+     * @param beforeReplay Called first, e.g. to subscribe the client
+     * @param replay       Called for every change after the version, in order
+     * @return false, if the changes after the version are no longer (or never were) in the history, the client has to
+     * load the whole plan in this case
+     */
+    public synchronized boolean replay(long since, Runnable beforeReplay, Consumer<PlanChange> replay) {
+        beforeReplay.run();
+        if (since > version || since < version - historySize) {
+            return false;
+        }
+        for (int i = historySize - (int) (version - since); i < historySize; i++) {
+            replay.accept(history[(historyStart + i) % history.length]);
+        }
+        return true;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Id of this feed, changes on every start of the server
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+}
@@ -1,5 +1,8 @@
 package de.industrieschule.vp.core.responseTempates;
 
+import de.industrieschule.vp.core.json.annotations.GenerateJsonAdapter;
+
+@GenerateJsonAdapter
 public class SimpleStatusResponse {
     private String message;
 
@@ -0,0 +1,96 @@
+package de.industrieschule.vp.core.server;
+
+import io.javalin.config.JavalinConfig;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Configures how Jetty executes the incoming requests.
+ * <p>
+ * Most of our handlers block on Hibernate/JDBC, so the execution mode can be chosen:
+ * <ul>
+ *     <li>{@link MODE#VIRTUAL}: Every request runs on its own virtual thread. The platform thread pool is only used
+ *     by Jetty internally (acceptors, selectors), a blocking JDBC call doesn't occupy a pool thread anymore.</li>
+ *     <li>{@link MODE#POOLED}: Classic {@link QueuedThreadPool} with a fixed upper limit of platform threads.</li>
+ * </ul>
+ * In both modes the pool sizes, the thread idle timeout and the acceptor/selector count of the connector are
+ * applied, a value of {@code -1} for acceptors/selectors lets Jetty choose based on the available CPU cores.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class JettyThreadingConfigurer {
+
+    /**
+     * Request execution mode
+     */
+    public enum MODE {
+        VIRTUAL, POOLED
+    }
+
+    private final MODE mode;
+    private final int minThreads;
+    private final int maxThreads;
+    private final int idleTimeoutMillis;
+    private final int acceptors;
+    private final int selectors;
+    private final int port;
+
+    public JettyThreadingConfigurer(MODE mode, int minThreads, int maxThreads, int idleTimeoutMillis,
+                                    int acceptors, int selectors, int port) {
+        if (minThreads < 1 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("Invalid thread pool size: min=" + minThreads + ", max=" + maxThreads);
+        }
+        this.mode = mode;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acceptors = acceptors;
+        this.selectors = selectors;
+        this.port = port;
+    }
+
+    /**
+     * Applies thread pool and connector settings to the given Javalin configuration
+     *
+     * @param javalinConfig Configuration passed to {@code Javalin.create()}
+     */
+    public void apply(JavalinConfig javalinConfig) {
+        QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads, minThreads, idleTimeoutMillis);
+        threadPool.setName("JettyServerThreadPool");
+
+        if (mode == MODE.VIRTUAL) {
+            // Jetty dispatches the request handling to this executor, the pool above only runs Jetty internals
+            threadPool.setVirtualThreadsExecutor(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("JettyVirtual-", 0).factory()));
+            // Javalin's own executors (e.g. for async results) should use virtual threads too
+            javalinConfig.useVirtualThreads = true;
+        }
+        javalinConfig.jetty.threadPool = threadPool;
+
+        // Javalin only creates its default connector if no other connector is registered
+        javalinConfig.jetty.addConnector((server, httpConfiguration) -> {
+            ServerConnector connector = new ServerConnector(server, acceptors, selectors,
+                    new HttpConnectionFactory(httpConfiguration));
+            connector.setPort(port);
+            return connector;
+        });
+    }
+
+    /**
+     * @return Human-readable summary of the active settings, used for the startup log
+     */
+    public String describe() {
+        return mode + " (minThreads=" + minThreads + ", maxThreads=" + maxThreads
+                + ", idleTimeout=" + idleTimeoutMillis + "ms"
+                + ", acceptors=" + (acceptors < 0 ? "auto" : acceptors)
+                + ", selectors=" + (selectors < 0 ? "auto" : selectors) + ")";
+    }
+
+    public MODE getMode() {
+        return mode;
+    }
+}
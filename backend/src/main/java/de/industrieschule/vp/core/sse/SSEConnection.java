@@ -0,0 +1,78 @@
+package de.industrieschule.vp.core.sse;
+
+import de.industrieschule.vp.core.websocket.BroadcastConnection;
+import io.javalin.http.sse.SseClient;
+import jakarta.servlet.ServletOutputStream;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The response of a Server-Sent Events client. The servlet output only blocks, so every write runs on a virtual thread
+ * of its own; the {@link de.industrieschule.vp.core.websocket.BroadcastSession} has at most one write in flight, a
+ * client that doesn't read only parks that thread.
+ *
+ * @author Moritz Hofmann
+ */
+final class SSEConnection implements BroadcastConnection {
+
+    private static final ExecutorService WRITER_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("SSE-Writer-", 0).factory()
+    );
+
+    private final SseClient client;
+
+    SSEConnection(SseClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void sendText(ByteBuffer payload, Completion completion) {
+        WRITER_EXECUTOR.execute(() -> {
+            try {
+                ServletOutputStream output = client.ctx().res().getOutputStream();
+                if (output instanceof HttpOutput httpOutput) {
+                    // Writes the shared read-only buffer without copying it
+                    httpOutput.write(payload);
+                } else {
+                    byte[] bytes = new byte[payload.remaining()];
+                    payload.get(bytes);
+                    output.write(bytes);
+                }
+                output.flush();
+            } catch (IOException | RuntimeException e) {
+                client.close();
+                completion.failed(e);
+                return;
+            }
+            completion.succeeded();
+        });
+    }
+
+    /**
+     * Ends the response, there's no status code in an event stream
+     */
+    @Override
+    public void close(int statusCode, String reason) {
+        client.close();
+    }
+
+    @Override
+    public void abort() {
+        Request request = Request.getBaseRequest(client.ctx().req());
+        if (request != null) {
+            // Fails a write blocked by the client
+            request.getHttpChannel().getEndPoint().close();
+        }
+        client.close();
+    }
+
+    @Override
+    public long bufferBytes() {
+        return client.ctx().res().getBufferSize();
+    }
+}
@@ -0,0 +1,92 @@
+package de.industrieschule.vp.core.sse;
+
+import de.industrieschule.vp.core.websocket.BroadcastMessage;
+
+import java.util.Set;
+
+/**
+ * An event of a {@link SSEStream}, encoded once in the {@code text/event-stream} format and shared by all clients it's
+ * sent to, live or replayed.
+ *
+ * @author Moritz Hofmann
+ */
+public final class SSEEvent {
+
+    private final long sequence;
+    private final String id;
+    private final Set<String> topics;
+    private final BroadcastMessage message;
+
+    SSEEvent(long sequence, String id, String name, String data, Set<String> topics) {
+        this.sequence = sequence;
+        this.id = id;
+        this.topics = Set.copyOf(topics);
+        this.message = BroadcastMessage.text(encode(id, name, data));
+    }
+
+    /**
+     * Encodes an event, every line of the data becomes a {@code data:} field
+     *
+     * @param id   Id of the event, null for none
+     * @param name Name of the event, null for the default {@code message}
+     * @param data Data of the event, null for none; browsers only dispatch events with data
+     * @return Event terminated by an empty line
+     */
+    static String encode(String id, String name, String data) {
+        StringBuilder event = new StringBuilder(64 + (data == null ? 0 : data.length()));
+        if (id != null) {
+            event.append("id: ").append(requireSingleLine(id)).append('\n');
+        }
+        if (name != null) {
+            event.append("event: ").append(requireSingleLine(name)).append('\n');
+        }
+        if (data != null) {
+            for (String line : data.split("\r\n|\r|\n", -1)) {
+                event.append("data: ").append(line).append('\n');
+            }
+        }
+        return event.append('\n').toString();
+    }
+
+    private static String requireSingleLine(String value) {
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Event id and name must not contain line breaks");
+        }
+        return value;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Id of the event, sent back by reconnecting clients as {@code Last-Event-ID}
+     */
+    public String getId() {
+        return id;
+    }
+
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * @return The encoded event
+     */
+    public BroadcastMessage toMessage() {
+        return message;
+    }
+
+    /**
+     * @param subscribed Topics of a client
+     * @return true, if the event belongs to one of the topics
+     */
+    public boolean affectsAny(Set<String> subscribed) {
+        for (String topic : topics) {
+            if (subscribed.contains(topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,232 @@
+package de.industrieschule.vp.core.sse;
+
+import de.industrieschule.vp.core.autodiscovery.annotations.SSEEndpoint;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.websocket.BroadcastEngine;
+import de.industrieschule.vp.core.websocket.BroadcastMessage;
+import de.industrieschule.vp.core.websocket.BroadcastSession;
+import io.javalin.http.sse.SseClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The events of a Server-Sent Events endpoint and the clients listening to them. Every event is encoded once
+ * ({@link SSEEvent}) and queued for all clients subscribed to one of its topics by the {@link BroadcastEngine}, the
+ * same way as WebSocket messages; clients that can't keep up are handled by its slow client policy.
+ * <p>
+ * The last events are kept in a bounded buffer. A browser that reconnects sends the id of the last event it received
+ * as {@code Last-Event-ID} and gets the events it missed. If they aren't in the buffer anymore (or the server was
+ * restarted in between), it gets a {@code resync} event instead and has to load the data again. Event ids consist of
+ * the epoch of the stream and a sequence number.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+public class SSEStream {
+
+    private static final Logger log = LogManager.getLogger(SSEStream.class);
+
+    /**
+     * Value of the annotation attributes, that uses the default from the {@link Config}
+     */
+    public static final long DEFAULT = -1;
+
+    /**
+     * Name of the event telling a client, that the events it missed are gone
+     */
+    public static final String RESYNC_EVENT = "resync";
+
+    /**
+     * Comment line, ignored by browsers. With a coalesce key, so at most one is queued for a slow client.
+     */
+    private static final BroadcastMessage KEEP_ALIVE = BroadcastMessage.text(": keep-alive\n\n", "keep-alive");
+
+    /**
+     * Keep-alives of all streams, they only queue a shared message
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sse-keepalive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BroadcastEngine engine;
+    private final long keepAliveMs;
+
+    /**
+     * Last events, ring buffer
+     */
+    private final SSEEvent[] history;
+    private int historyStart;
+    private int historySize;
+
+    private long sequence;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    /**
+     * @param engine           Clients of the endpoint
+     * @param replayBufferSize Number of events kept for clients, that resume
+     * @param keepAliveMs      Interval of the keep-alive comments, 0 disables them
+     */
+    public SSEStream(BroadcastEngine engine, int replayBufferSize, long keepAliveMs) {
+        this.engine = engine;
+        this.keepAliveMs = keepAliveMs;
+        this.history = new SSEEvent[Math.max(replayBufferSize, 1)];
+        if (keepAliveMs > 0) {
+            SCHEDULER.scheduleAtFixedRate(this::keepAlive, keepAliveMs, keepAliveMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param endpointClass Class of the endpoint, may be annotated with {@link SSEEndpoint}
+     * @return Stream with the settings of the annotation, the defaults from the {@link Config} otherwise
+     */
+    public static SSEStream of(Class<?> endpointClass) {
+        SSEEndpoint annotation = endpointClass.getAnnotation(SSEEndpoint.class);
+        BroadcastEngine.SLOW_CLIENT_POLICY slowClientPolicy = annotation == null ? BroadcastEngine.SLOW_CLIENT_POLICY.DISCONNECT : annotation.slowClientPolicy();
+        long keepAliveMs = annotation == null || annotation.keepAliveMs() == DEFAULT ? Config.SSE_KEEPALIVE_MS : annotation.keepAliveMs();
+        int replayBufferSize = annotation == null || annotation.replayBufferSize() == DEFAULT ? Config.SSE_REPLAY_BUFFER_EVENTS : annotation.replayBufferSize();
+
+        // Without heartbeat, clients don't send anything; the keep-alives detect the ones that are gone
+        BroadcastEngine engine = new BroadcastEngine(slowClientPolicy, Config.WS_OUTBOUND_QUEUE_MESSAGES, Config.WS_OUTBOUND_QUEUE_BYTES);
+        return new SSEStream(engine, replayBufferSize, keepAliveMs);
+    }
+
+    /**
+     * Registers a client with a new id, it gets events once it's {@link #open(String, Set, String) opened}
+     *
+     * @param client Client, kept open until it disconnects or is closed by the engine
+     * @return Session of the client
+     */
+    public BroadcastSession register(SseClient client) {
+        return engine.register(UUID.randomUUID().toString(), new SSEConnection(client));
+    }
+
+    /**
+     * Publishes an event to every client subscribed to one of the topics, without waiting for the clients
+     *
+     * @param topics Topics of the event
+     * @param name   Name of the event, null for the default {@code message}
+     * @param data   Data of the event, e.g. JSON
+     * @return The published event
+     */
+    public synchronized SSEEvent publish(Collection<String> topics, String name, String data) {
+        sequence++;
+        SSEEvent event = new SSEEvent(sequence, idOf(sequence), name, data, Set.copyOf(topics));
+
+        history[(historyStart + historySize) % history.length] = event;
+        if (historySize < history.length) {
+            historySize++;
+        } else {
+            historyStart = (historyStart + 1) % history.length;
+        }
+
+        engine.broadcast(event.getTopics(), event.toMessage());
+        return event;
+    }
+
+    /**
+     * @see #publish(Collection, String, String)
+     */
+    public SSEEvent publish(String topic, String name, String data) {
+        return publish(Set.of(topic), name, data);
+    }
+
+    /**
+     * Subscribes a registered client to its topics and queues the events it missed. No event is published while this
+     * method runs, so the client receives every event exactly once: either replayed or live.
+     * <p>
+     * Afterwards the client gets the id of the latest event (an {@code id} field without data, which browsers store
+     * without dispatching an event), so it resumes from here even if none of its topics gets an event before it
+     * reconnects.
+     * </p>
+     *
+     * @param sessionId   Id of the client in the {@link #getBroadcastEngine() engine}
+     * @param topics      Topics of the client
+     * @param lastEventId {@code Last-Event-ID} sent by the client, null for new clients
+     * @return false, if the events after the id aren't in the buffer anymore and the client got a {@value #RESYNC_EVENT}
+     * event
+     */
+    public synchronized boolean open(String sessionId, Set<String> topics, String lastEventId) {
+        for (String topic : topics) {
+            engine.subscribe(sessionId, topic);
+        }
+
+        boolean complete = true;
+        if (lastEventId != null) {
+            long since = sequenceOf(lastEventId);
+            if (since < 0 || since > sequence || since < sequence - historySize) {
+                complete = false;
+            } else {
+                for (int i = historySize - (int) (sequence - since); i < historySize; i++) {
+                    SSEEvent event = history[(historyStart + i) % history.length];
+                    if (event.affectsAny(topics)) {
+                        engine.send(sessionId, event.toMessage());
+                    }
+                }
+            }
+        }
+
+        String latestId = idOf(sequence);
+        engine.send(sessionId, BroadcastMessage.text(complete
+                ? SSEEvent.encode(latestId, null, null)
+                : SSEEvent.encode(latestId, RESYNC_EVENT, "{\"lastEventId\":\"" + latestId + "\"}")));
+        return complete;
+    }
+
+    private String idOf(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    /**
+     * @return Sequence number of an event id of this stream, -1 for ids of another epoch or invalid ones
+     */
+    private long sequenceOf(String eventId) {
+        if (!eventId.startsWith(epoch + "-")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(epoch.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void keepAlive() {
+        try {
+            engine.broadcastAll(KEEP_ALIVE);
+        } catch (RuntimeException e) {
+            // Must not end the schedule
+            log.warn("Sending the SSE keep-alive failed", e);
+        }
+    }
+
+    /**
+     * @return Clients of the stream
+     */
+    public BroadcastEngine getBroadcastEngine() {
+        return engine;
+    }
+
+    public long getKeepAliveMs() {
+        return keepAliveMs;
+    }
+
+    public int getReplayBufferSize() {
+        return history.length;
+    }
+
+    /**
+     * @return Id of the latest event
+     */
+    public synchronized String getLastEventId() {
+        return idOf(sequence);
+    }
+}
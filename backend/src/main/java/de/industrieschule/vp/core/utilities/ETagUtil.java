@@ -0,0 +1,81 @@
+package de.industrieschule.vp.core.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Creates and compares strong entity tags (RFC 9110, section 8.8.3) for conditional GET requests.
+ *
+ * @author Moritz Hofmann
+ */
+public final class ETagUtil {
+
+    private ETagUtil() {
+    }
+
+    /**
+     * Hashes the response body, the first 128 bits of SHA-256 are enough to tell two versions apart.
+     *
+     * @param body Serialized response
+     * @return Quoted entity tag
+     */
+    public static String fromContent(byte[] body) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        byte[] hash = Arrays.copyOf(digest.digest(body), 16);
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + '"';
+    }
+
+    /**
+     * Creates the entity tag of a version provided by the endpoint. Versions with characters, that aren't allowed in
+     * an entity tag, are hashed.
+     *
+     * @param version Version of the response, e.g. a revision number or a timestamp
+     * @return Quoted entity tag
+     */
+    public static String fromVersion(String version) {
+        for (int i = 0; i < version.length(); i++) {
+            char c = version.charAt(i);
+            if (c <= 0x20 || c == '"' || c >= 0x7F) {
+                return fromContent(version.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return '"' + version + '"';
+    }
+
+    /**
+     * Checks the "If-None-Match" header of a request. Uses the weak comparison, as required for this header.
+     *
+     * @param ifNoneMatch Header value, may be null
+     * @param etag        Quoted entity tag of the current response
+     * @return true, if the client already has the current response (so 304 Not Modified can be sent)
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        int start = 0;
+        while (start < ifNoneMatch.length()) {
+            int end = ifNoneMatch.indexOf(',', start);
+            if (end < 0) {
+                end = ifNoneMatch.length();
+            }
+            String candidate = ifNoneMatch.substring(start, end).trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+}
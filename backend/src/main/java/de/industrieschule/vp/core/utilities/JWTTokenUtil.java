@@ -6,6 +6,7 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import de.industrieschule.vp.core.Main;
+import de.industrieschule.vp.core.json.annotations.GenerateJsonAdapter;
 import de.industrieschule.vp.core.utilities.helper.KeyStorage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,6 +34,17 @@ public class JWTTokenUtil {
     public static ECPublicKey jwtPublicKey = null;
     private static Algorithm jwtAlgorithm;
 
+    /**
+     * Immutable and thread-safe, shared by all requests
+     */
+    private static volatile JWTVerifier jwtVerifier;
+
+    /**
+     * Digests of the tokens verified recently, null if disabled
+     */
+    private static final VerifiedTokenCache verifiedTokens = Config.JWT_VERIFIED_CACHE_SIZE > 0
+            ? new VerifiedTokenCache(Config.JWT_VERIFIED_CACHE_SIZE) : null;
+
     public static void initialize() throws IOException, NoSuchAlgorithmException, InvalidKeySpecException, InvalidAlgorithmParameterException, NoSuchProviderException {
         log.info("Register BouncyCastle Cryptographic Provider");
         Security.addProvider(new BouncyCastleProvider());
@@ -79,6 +91,13 @@ public class JWTTokenUtil {
         }
         log.info("Set JWT Algorithm");
         jwtAlgorithm = Algorithm.ECDSA256(jwtPublicKey, jwtPrivateKey);
+        jwtVerifier = JWT.require(jwtAlgorithm)
+                .withIssuer(Config.JWT_ISSUER)
+                .build();
+        if (verifiedTokens != null) {
+            // Tokens were verified with the previous key
+            verifiedTokens.clear();
+        }
 
         log.info("JWT initialization complete");
     }
@@ -105,22 +124,52 @@ public class JWTTokenUtil {
 
     }
 
+    /**
+     * Verifies the signature, issuer and validity period of a token. A token verified before (and still valid) is only
+     * decoded, without checking its signature again.
+     *
+     * @param jwtToken Token sent by the client
+     * @return The decoded token
+     * @throws JWTVerificationException If the token is invalid
+     */
     public static DecodedJWT decodeJWT(String jwtToken) throws JWTVerificationException {
-        log.info("Decoding JWT " + jwtToken);
+        JWTVerifier verifier = jwtVerifier;
+        if (verifier == null) {
+            throw new IllegalStateException("JWT is not initialized");
+        }
 
-        JWTVerifier verifier = JWT.require(jwtAlgorithm)
-                // specify an specific claim validations
-                .withIssuer(Config.JWT_ISSUER)
-                // reusable verifier instance
-                .build();
+        // The token is never logged, only the start of its digest
+        String digest = VerifiedTokenCache.digest(jwtToken);
+        long now = System.currentTimeMillis();
+        if (verifiedTokens != null && verifiedTokens.isVerified(digest, now)) {
+            log.debug("JWT sha256:{} verified before", redact(digest));
+            // Same bytes as the verified token, so only the claims are decoded again
+            return JWT.decode(jwtToken);
+        }
 
-        DecodedJWT decodedJWT = verifier.verify(jwtToken);
-        log.info("Decoding JWT successful");
+        DecodedJWT decodedJWT;
+        try {
+            decodedJWT = verifier.verify(jwtToken);
+        } catch (JWTVerificationException e) {
+            log.debug("JWT sha256:{} rejected: {}", redact(digest), e.getMessage());
+            throw e;
+        }
 
+        Date expiresAt = decodedJWT.getExpiresAt();
+        if (verifiedTokens != null && expiresAt != null) {
+            // Tokens without expiry are verified every time
+            Date notBefore = decodedJWT.getNotBefore();
+            verifiedTokens.put(digest, notBefore == null ? 0 : notBefore.getTime(), expiresAt.getTime(), now);
+        }
+        log.debug("JWT sha256:{} verified", redact(digest));
         return decodedJWT;
+    }
 
+    private static String redact(String digest) {
+        return digest.substring(0, 12);
     }
 
+    @GenerateJsonAdapter
     public static class Token {
         private String jwtToken;
         private String refreshToken;
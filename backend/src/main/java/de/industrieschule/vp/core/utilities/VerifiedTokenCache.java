@@ -0,0 +1,138 @@
+package de.industrieschule.vp.core.utilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tokens, whose signature was verified recently. Clients send the same token with every request, so the ECDSA check
+ * only runs for the first one.
+ * <p>
+ * Only the SHA-256 digest of a token is kept, never the token itself. An entry is valid exactly in the period the token
+ * is valid in ({@code nbf} until {@code exp}); outside of it, the token is verified again and rejected by the verifier.
+ * Once {@code maxEntries} is exceeded, expired and then least recently used entries are evicted, until the cache is
+ * below 90 % of the limit.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+final class VerifiedTokenCache {
+
+    private static final Logger log = LogManager.getLogger(VerifiedTokenCache.class);
+
+    private static final class Entry {
+        private final long notBeforeMillis;
+        private final long expiresAtMillis;
+        private volatile long lastUsedMillis;
+
+        private Entry(long notBeforeMillis, long expiresAtMillis, long now) {
+            this.notBeforeMillis = notBeforeMillis;
+            this.expiresAtMillis = expiresAtMillis;
+            this.lastUsedMillis = now;
+        }
+
+        private boolean isValidAt(long now) {
+            return now >= notBeforeMillis && now < expiresAtMillis;
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Only one thread evicts at a time, the others don't wait for it
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * @param maxEntries Maximum number of tokens, must be at least 1
+     */
+    VerifiedTokenCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache limit must be at least 1, got " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param digest Digest of the token, see {@link #digest(String)}
+     * @param now    Current time in milliseconds
+     * @return true, if the token was verified and is valid now
+     */
+    boolean isVerified(String digest, long now) {
+        Entry entry = entries.get(digest);
+        if (entry == null) {
+            return false;
+        }
+        if (!entry.isValidAt(now)) {
+            entries.remove(digest, entry);
+            return false;
+        }
+        entry.lastUsedMillis = now;
+        return true;
+    }
+
+    /**
+     * @param digest          Digest of the verified token
+     * @param notBeforeMillis {@code nbf} of the token, 0 if it has none
+     * @param expiresAtMillis {@code exp} of the token
+     * @param now             Current time in milliseconds
+     */
+    void put(String digest, long notBeforeMillis, long expiresAtMillis, long now) {
+        entries.put(digest, new Entry(notBeforeMillis, expiresAtMillis, now));
+        evictIfNeeded(now);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evictIfNeeded(long now) {
+        if (entries.size() <= maxEntries || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            entries.values().removeIf(entry -> !entry.isValidAt(now));
+
+            int targetEntries = maxEntries - maxEntries / 10;
+            if (entries.size() > targetEntries) {
+                List<Map.Entry<String, Entry>> byLastUse = new ArrayList<>(entries.entrySet());
+                byLastUse.sort(Comparator.comparingLong(mapEntry -> mapEntry.getValue().lastUsedMillis));
+                for (int i = 0; i < byLastUse.size() && entries.size() > targetEntries; i++) {
+                    entries.remove(byLastUse.get(i).getKey(), byLastUse.get(i).getValue());
+                }
+            }
+            log.debug("Verified token cache evicted down to {} entries", entries.size());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @param token Token, as sent by the client
+     * @return Hex encoded SHA-256 digest of the token, also safe to log
+     */
+    static String digest(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package de.industrieschule.vp.core.websocket;
+
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The socket of a {@link BroadcastSession}, writes never block.
+ *
+ * @author Moritz Hofmann
+ */
+public interface BroadcastConnection {
+
+    ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    /**
+     * Memory of the zlib state of a compressed connection: deflate with a 32 KiB window and the default memory level
+     * (about 256 KiB) plus inflate (about 40 KiB)
+     */
+    long DEFLATE_STATE_BYTES = 300 * 1024;
+
+    /**
+     * Completion of a write, may be called on the calling thread if the write completes immediately
+     */
+    interface Completion {
+        void succeeded();
+
+        void failed(Throwable throwable);
+    }
+
+    /**
+     * Writes a text frame asynchronously
+     *
+     * @param payload    UTF-8 encoded text, owned by the connection until the write is completed
+     * @param completion Called once the frame is written or the write failed
+     */
+    void sendText(ByteBuffer payload, Completion completion);
+
+    /**
+     * Closes the connection after the frames already written
+     */
+    void close(int statusCode, String reason);
+
+    /**
+     * Closes the connection at once, without the close handshake
+     */
+    void abort();
+
+    /**
+     * Sends a ping frame asynchronously
+     */
+    default void sendPing() {
+    }
+
+    /**
+     * @return Number of bytes received on the connection, including control frames, or -1 if unknown
+     */
+    default long bytesReceived() {
+        return -1;
+    }
+
+    /**
+     * @return true, if permessage-deflate was negotiated
+     */
+    default boolean isCompressed() {
+        return false;
+    }
+
+    /**
+     * @return Estimated memory held by the connection itself (buffers, compression state) in bytes
+     */
+    default long bufferBytes() {
+        return 0;
+    }
+
+    /**
+     * Creates the connection of a Javalin WebSocket. Frames are passed to Jetty's core session, so the shared payload
+     * isn't decoded to a String and encoded again for every session.
+     *
+     * @param context Context of the WebSocket
+     * @return Connection
+     */
+    static BroadcastConnection of(WsContext context) {
+        return new BroadcastConnection() {
+            @Override
+            public void sendText(ByteBuffer payload, Completion completion) {
+                if (context.session instanceof WebSocketSession webSocketSession) {
+                    webSocketSession.getCoreSession().sendFrame(new Frame(OpCode.TEXT, payload), new Callback() {
+                        @Override
+                        public void succeeded() {
+                            completion.succeeded();
+                        }
+
+                        @Override
+                        public void failed(Throwable throwable) {
+                            completion.failed(throwable);
+                        }
+                    }, false);
+                } else {
+                    context.session.getRemote().sendString(StandardCharsets.UTF_8.decode(payload).toString(), new WriteCallback() {
+                        @Override
+                        public void writeSuccess() {
+                            completion.succeeded();
+                        }
+
+                        @Override
+                        public void writeFailed(Throwable throwable) {
+                            completion.failed(throwable);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void close(int statusCode, String reason) {
+                context.closeSession(statusCode, reason);
+            }
+
+            @Override
+            public void abort() {
+                context.session.disconnect();
+            }
+
+            @Override
+            public void sendPing() {
+                context.session.getRemote().sendPing(EMPTY, WriteCallback.NOOP);
+            }
+
+            @Override
+            public long bytesReceived() {
+                if (context.session instanceof WebSocketSession webSocketSession) {
+                    return JettyConnectionStatistics.bytesIn(webSocketSession.getCoreSession());
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean isCompressed() {
+                if (context.session instanceof WebSocketSession webSocketSession) {
+                    for (ExtensionConfig extension : webSocketSession.getCoreSession().getNegotiatedExtensions()) {
+                        if (PERMESSAGE_DEFLATE.equals(extension.getName())) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public long bufferBytes() {
+                return context.session.getInputBufferSize() + context.session.getOutputBufferSize()
+                        + (isCompressed() ? DEFLATE_STATE_BYTES : 0);
+            }
+        };
+    }
+}
@@ -0,0 +1,370 @@
+package de.industrieschule.vp.core.websocket;
+
+import de.industrieschule.vp.core.config.Config;
+import io.javalin.websocket.WsContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the sessions of a WebSocket endpoint (or of a {@link de.industrieschule.vp.core.sse.SSEStream}) and the
+ * topics they are subscribed to. A message is serialized once ({@link BroadcastMessage}) and appended to the bounded
+ * outbound queue of every receiving session, so broadcasting to thousands of sessions never blocks the sender; clients
+ * that can't keep up are handled by the {@link SLOW_CLIENT_POLICY}.
+ *
+ * @author Moritz Hofmann
+ */
+public class BroadcastEngine {
+
+    private static final Logger log = LogManager.getLogger(BroadcastEngine.class);
+
+    /**
+     * Status code "Try Again Later", sent to clients closed by {@link SLOW_CLIENT_POLICY#DISCONNECT}
+     */
+    public static final int CLOSE_TOO_SLOW = 1013;
+
+    /**
+     * The close frame of a slow client waits behind the frame it doesn't read; if the client doesn't take it in time,
+     * the connection is aborted
+     */
+    private static final long SLOW_CLIENT_ABORT_DELAY_MS = 5000;
+
+    /**
+     * Heartbeats of all engines and the aborts of slow clients, both only start asynchronous writes
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "websocket-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * What happens, when the outbound queue of a session is full
+     */
+    public enum SLOW_CLIENT_POLICY {
+        /**
+         * The session is closed, the client reconnects and resumes (e.g. with the version of the last message)
+         */
+        DISCONNECT,
+        /**
+         * Queued messages with the same coalesce key as a new one are replaced by it; if the queue is still full, the
+         * session is closed like with {@link #DISCONNECT}
+         */
+        COALESCE
+    }
+
+    /**
+     * Snapshot of the sessions, for metrics
+     *
+     * @param estimatedMemory       Summed {@link BroadcastSession#getEstimatedMemory()} of all sessions
+     * @param maxSessionMemory      Highest {@link BroadcastSession#getEstimatedMemory()} of a single session
+     * @param compressedSessions    Sessions with permessage-deflate
+     */
+    public record Statistics(int sessions, int topics, long queuedMessages, long queuedBytes, long estimatedMemory,
+                             long maxSessionMemory, int compressedSessions, long coalesced, long slowClientsClosed,
+                             long pings, long deadClientsClosed) {
+    }
+
+    private final SLOW_CLIENT_POLICY slowClientPolicy;
+    private final int maxQueuedMessages;
+    private final long maxQueuedBytes;
+    private final WebSocketHeartbeat heartbeat;
+
+    private final Map<String, BroadcastSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<BroadcastSession>> topics = new ConcurrentHashMap<>();
+
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder slowClientsClosed = new LongAdder();
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder deadClientsClosed = new LongAdder();
+
+    /**
+     * @param settings Settings of the endpoint, the queue sizes come from the {@link Config}
+     */
+    public BroadcastEngine(WebSocketSettings settings) {
+        this(settings.slowClientPolicy(), Config.WS_OUTBOUND_QUEUE_MESSAGES, Config.WS_OUTBOUND_QUEUE_BYTES, settings.pingIntervalMs());
+    }
+
+    /**
+     * Engine without heartbeat
+     */
+    public BroadcastEngine(SLOW_CLIENT_POLICY slowClientPolicy, int maxQueuedMessages, long maxQueuedBytes) {
+        this(slowClientPolicy, maxQueuedMessages, maxQueuedBytes, 0);
+    }
+
+    /**
+     * @param slowClientPolicy  What happens, when the outbound queue of a session is full
+     * @param maxQueuedMessages Maximum number of messages queued per session
+     * @param maxQueuedBytes    Maximum size of the messages queued per session, a single larger message is still accepted
+     *                          into an empty queue
+     * @param pingIntervalMs    Interval of the heartbeat, 0 disables it
+     */
+    public BroadcastEngine(SLOW_CLIENT_POLICY slowClientPolicy, int maxQueuedMessages, long maxQueuedBytes, long pingIntervalMs) {
+        if (maxQueuedMessages < 1 || maxQueuedBytes < 1) {
+            throw new IllegalArgumentException("The outbound queue has to hold at least one message");
+        }
+        this.slowClientPolicy = slowClientPolicy;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.heartbeat = pingIntervalMs > 0 ? new WebSocketHeartbeat(this, pingIntervalMs, SCHEDULER) : null;
+    }
+
+    /**
+     * Registers the session of a Javalin WebSocket
+     *
+     * @param context Context of the WebSocket
+     * @return Registered session
+     */
+    public BroadcastSession register(WsContext context) {
+        return register(context.sessionId(), BroadcastConnection.of(context));
+    }
+
+    /**
+     * @param sessionId  Id of the session
+     * @param connection Socket of the session
+     * @return Registered session, replaces an earlier one with the same id
+     */
+    public BroadcastSession register(String sessionId, BroadcastConnection connection) {
+        BroadcastSession session = new BroadcastSession(sessionId, connection, this);
+        BroadcastSession previous = sessions.put(sessionId, session);
+        if (previous != null) {
+            remove(previous);
+        }
+        if (heartbeat != null) {
+            heartbeat.add(session);
+        }
+        return session;
+    }
+
+    /**
+     * Removes the session and its subscriptions, queued messages are dropped
+     *
+     * @param sessionId Id of the session
+     */
+    public void unregister(String sessionId) {
+        BroadcastSession session = sessions.remove(sessionId);
+        if (session != null) {
+            remove(session);
+        }
+    }
+
+    private void remove(BroadcastSession session) {
+        session.close();
+        if (heartbeat != null) {
+            heartbeat.remove(session);
+        }
+        for (String topic : session.topics()) {
+            removeFromTopic(topic, session);
+        }
+        session.topics().clear();
+    }
+
+    /**
+     * @param sessionId Id of the session
+     * @return Session or null, if it isn't registered
+     */
+    public BroadcastSession getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * @param sessionId Id of the session
+     * @param topic     Topic
+     * @return false, if the session isn't registered
+     */
+    public boolean subscribe(String sessionId, String topic) {
+        BroadcastSession session = sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        session.topics().add(topic);
+        topics.compute(topic, (key, members) -> {
+            if (members == null) {
+                members = ConcurrentHashMap.newKeySet();
+            }
+            members.add(session);
+            return members;
+        });
+        // Closed concurrently, its topics may already be removed
+        if (session.isClosed()) {
+            removeFromTopic(topic, session);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param sessionId Id of the session
+     * @param topic     Topic
+     */
+    public void unsubscribe(String sessionId, String topic) {
+        BroadcastSession session = sessions.get(sessionId);
+        if (session != null && session.topics().remove(topic)) {
+            removeFromTopic(topic, session);
+        }
+    }
+
+    private void removeFromTopic(String topic, BroadcastSession session) {
+        topics.computeIfPresent(topic, (key, members) -> {
+            members.remove(session);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    /**
+     * Queues the message for one session
+     *
+     * @param sessionId Id of the session
+     * @param message   Message
+     * @return false, if the session isn't registered or closed
+     */
+    public boolean send(String sessionId, BroadcastMessage message) {
+        BroadcastSession session = sessions.get(sessionId);
+        return session != null && session.enqueue(message);
+    }
+
+    /**
+     * Queues the message for every session subscribed to the topic
+     *
+     * @param topic   Topic
+     * @param message Message
+     * @return Number of sessions the message was queued for
+     */
+    public int broadcast(String topic, BroadcastMessage message) {
+        Set<BroadcastSession> members = topics.get(topic);
+        if (members == null) {
+            return 0;
+        }
+        int receivers = 0;
+        for (BroadcastSession session : members) {
+            if (session.enqueue(message)) {
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * Queues the message for every session subscribed to at least one of the topics, once per session
+     *
+     * @param topics  Topics
+     * @param message Message
+     * @return Number of sessions the message was queued for
+     */
+    public int broadcast(Collection<String> topics, BroadcastMessage message) {
+        if (topics.size() == 1) {
+            return broadcast(topics.iterator().next(), message);
+        }
+        Set<BroadcastSession> receivers = new HashSet<>();
+        for (String topic : topics) {
+            Set<BroadcastSession> members = this.topics.get(topic);
+            if (members != null) {
+                receivers.addAll(members);
+            }
+        }
+        int count = 0;
+        for (BroadcastSession session : receivers) {
+            if (session.enqueue(message)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Queues the message for every registered session
+     *
+     * @param message Message
+     * @return Number of sessions the message was queued for
+     */
+    public int broadcastAll(BroadcastMessage message) {
+        int receivers = 0;
+        for (BroadcastSession session : sessions.values()) {
+            if (session.enqueue(message)) {
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    void slowClient(BroadcastSession session) {
+        slowClientsClosed.increment();
+        log.debug("Session {} can't keep up, closing it", session.getId());
+        sessions.remove(session.getId(), session);
+        remove(session);
+        session.closeConnection(CLOSE_TOO_SLOW, "Client too slow");
+        SCHEDULER.schedule(session::abortConnection, SLOW_CLIENT_ABORT_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void pinged() {
+        pings.increment();
+    }
+
+    void deadClient(BroadcastSession session) {
+        deadClientsClosed.increment();
+        log.debug("WebSocket session {} didn't answer the heartbeat, closing it", session.getId());
+        sessions.remove(session.getId(), session);
+        remove(session);
+        session.abortConnection();
+    }
+
+    void writeFailed(BroadcastSession session, Throwable throwable) {
+        log.debug("Write to session {} failed", session.getId(), throwable);
+        sessions.remove(session.getId(), session);
+        remove(session);
+    }
+
+    public SLOW_CLIENT_POLICY getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+
+    public int getMaxQueuedMessages() {
+        return maxQueuedMessages;
+    }
+
+    public long getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return Current state of the sessions, iterates all of them
+     */
+    public Statistics getStatistics() {
+        int sessionCount = 0;
+        long queuedMessages = 0;
+        long queuedBytes = 0;
+        long estimatedMemory = 0;
+        long maxSessionMemory = 0;
+        int compressedSessions = 0;
+        for (BroadcastSession session : sessions.values()) {
+            sessionCount++;
+            queuedMessages += session.getQueuedMessages();
+            queuedBytes += session.getQueuedBytes();
+            long sessionMemory = session.getEstimatedMemory();
+            estimatedMemory += sessionMemory;
+            maxSessionMemory = Math.max(maxSessionMemory, sessionMemory);
+            if (session.isCompressed()) {
+                compressedSessions++;
+            }
+        }
+        return new Statistics(sessionCount, topics.size(), queuedMessages, queuedBytes, estimatedMemory, maxSessionMemory,
+                compressedSessions, coalesced.sum(), slowClientsClosed.sum(), pings.sum(), deadClientsClosed.sum());
+    }
+}
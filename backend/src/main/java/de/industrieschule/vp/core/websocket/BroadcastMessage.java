@@ -0,0 +1,58 @@
+package de.industrieschule.vp.core.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A text message, encoded once and shared by all sessions it's sent to. Each session writes its own view of the
+ * read-only payload, so the bytes are never copied per session.
+ *
+ * @author Moritz Hofmann
+ */
+public final class BroadcastMessage {
+
+    private final ByteBuffer payload;
+    private final String coalesceKey;
+
+    private BroadcastMessage(ByteBuffer payload, String coalesceKey) {
+        this.payload = payload;
+        this.coalesceKey = coalesceKey;
+    }
+
+    /**
+     * @param text Message, e.g. JSON
+     * @return Message, that is never coalesced
+     */
+    public static BroadcastMessage text(String text) {
+        return text(text, null);
+    }
+
+    /**
+     * @param text        Message, e.g. JSON
+     * @param coalesceKey Messages with the same key replace each other while they are queued for a slow client (with
+     *                    {@link BroadcastEngine.SLOW_CLIENT_POLICY#COALESCE}), so only the latest one is sent. Only use it
+     *                    for messages containing a complete state, not for deltas. Null to never coalesce.
+     * @return Message
+     */
+    public static BroadcastMessage text(String text, String coalesceKey) {
+        return new BroadcastMessage(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer(), coalesceKey);
+    }
+
+    /**
+     * @return New view of the UTF-8 encoded payload, positioned at its start
+     */
+    public ByteBuffer payload() {
+        return payload.duplicate();
+    }
+
+    /**
+     * @return Size of the payload in bytes
+     */
+    public int size() {
+        return payload.remaining();
+    }
+
+    public String getCoalesceKey() {
+        return coalesceKey;
+    }
+}
@@ -0,0 +1,279 @@
+package de.industrieschule.vp.core.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A session of a {@link BroadcastEngine} with its bounded outbound queue. At most one write is in flight, the next one
+ * is started when it completes, so senders only ever append to the queue and never wait for the socket.
+ *
+ * @author Moritz Hofmann
+ */
+public final class BroadcastSession {
+
+    private final String id;
+    private final BroadcastConnection connection;
+    private final BroadcastEngine engine;
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final boolean compressed;
+    private final long connectionBytes;
+
+    // Guarded by this
+    private final ArrayDeque<BroadcastMessage> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private long inFlightBytes;
+    private boolean writing;
+    private boolean closed;
+
+    private volatile int heartbeatBucket = -1;
+
+    // Only used by the heartbeat thread
+    private long lastBytesReceived;
+    private boolean pingPending;
+
+    BroadcastSession(String id, BroadcastConnection connection, BroadcastEngine engine) {
+        this.id = id;
+        this.connection = connection;
+        this.engine = engine;
+        // Negotiated during the upgrade, they don't change anymore
+        this.compressed = connection.isCompressed();
+        this.connectionBytes = connection.bufferBytes();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return Topics the session is subscribed to (read-only view)
+     */
+    public Set<String> getTopics() {
+        return Collections.unmodifiableSet(topics);
+    }
+
+    Set<String> topics() {
+        return topics;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return Number of messages waiting for the socket, without the one being written
+     */
+    public synchronized int getQueuedMessages() {
+        return queue.size();
+    }
+
+    /**
+     * @return Size of the messages waiting for the socket in bytes
+     */
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * @return Estimated memory of the session: queued messages, the message being written, the buffers and the
+     * compression state of the connection
+     */
+    public synchronized long getEstimatedMemory() {
+        return queuedBytes + inFlightBytes + connectionBytes;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Appends the message to the outbound queue and starts writing, if the socket is idle. If the queue is full, the
+     * slow client policy of the engine applies.
+     *
+     * @param message Message
+     * @return false, if the session is closed or was closed because it is too slow
+     */
+    boolean enqueue(BroadcastMessage message) {
+        boolean overflow = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (engine.getSlowClientPolicy() == BroadcastEngine.SLOW_CLIENT_POLICY.COALESCE && message.getCoalesceKey() != null && removeQueued(message.getCoalesceKey())) {
+                // The newer state replaces the queued one and moves to the end, the queue doesn't grow
+                queue.add(message);
+                queuedBytes += message.size();
+                engine.coalesced();
+                return true;
+            }
+            if (queue.size() >= engine.getMaxQueuedMessages() || (!queue.isEmpty() && queuedBytes + message.size() > engine.getMaxQueuedBytes())) {
+                discard();
+                overflow = true;
+            } else {
+                queue.add(message);
+                queuedBytes += message.size();
+                if (writing) {
+                    return true;
+                }
+                writing = true;
+            }
+        }
+        if (overflow) {
+            engine.slowClient(this);
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    private boolean removeQueued(String coalesceKey) {
+        Iterator<BroadcastMessage> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            BroadcastMessage queued = iterator.next();
+            if (coalesceKey.equals(queued.getCoalesceKey())) {
+                iterator.remove();
+                queuedBytes -= queued.size();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the queued messages until the queue is empty or a write doesn't complete immediately; its completion
+     * continues then. Only one thread drains at a time ({@link #writing}).
+     */
+    private void drain() {
+        while (true) {
+            BroadcastMessage message;
+            synchronized (this) {
+                message = closed ? null : queue.poll();
+                if (message == null) {
+                    writing = false;
+                    inFlightBytes = 0;
+                    return;
+                }
+                queuedBytes -= message.size();
+                inFlightBytes = message.size();
+            }
+
+            Write write = new Write();
+            connection.sendText(message.payload(), write);
+            if (write.isPending()) {
+                return;
+            }
+            if (write.failure != null) {
+                writeFailed(write.failure);
+                return;
+            }
+        }
+    }
+
+    private void writeFailed(Throwable throwable) {
+        synchronized (this) {
+            writing = false;
+            discard();
+        }
+        engine.writeFailed(this, throwable);
+    }
+
+    /**
+     * Closes the session for further messages, the caller holds the lock
+     */
+    private void discard() {
+        closed = true;
+        queue.clear();
+        queuedBytes = 0;
+        inFlightBytes = 0;
+    }
+
+    void close() {
+        synchronized (this) {
+            discard();
+        }
+    }
+
+    void closeConnection(int statusCode, String reason) {
+        connection.close(statusCode, reason);
+    }
+
+    void abortConnection() {
+        connection.abort();
+    }
+
+    int getHeartbeatBucket() {
+        return heartbeatBucket;
+    }
+
+    void setHeartbeatBucket(int heartbeatBucket) {
+        this.heartbeatBucket = heartbeatBucket;
+    }
+
+    /**
+     * Checks the session once per heartbeat interval, see {@link WebSocketHeartbeat}
+     *
+     * @return false, if the client didn't send anything since the last ping
+     */
+    boolean heartbeat() {
+        long received = connection.bytesReceived();
+        if (received < 0) {
+            // Activity is unknown, keep the connection busy at least
+            connection.sendPing();
+            engine.pinged();
+            return true;
+        }
+        if (received != lastBytesReceived) {
+            lastBytesReceived = received;
+            pingPending = false;
+            return true;
+        }
+        if (pingPending) {
+            return false;
+        }
+        pingPending = true;
+        connection.sendPing();
+        engine.pinged();
+        return true;
+    }
+
+    /**
+     * Completion of one write. Whoever comes second, the draining thread or the completion, continues draining, so
+     * writes completing immediately don't recurse.
+     */
+    private final class Write implements BroadcastConnection.Completion {
+
+        private final AtomicBoolean handedOver = new AtomicBoolean();
+        private volatile Throwable failure;
+
+        @Override
+        public void succeeded() {
+            complete(null);
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            complete(throwable);
+        }
+
+        private void complete(Throwable throwable) {
+            failure = throwable;
+            if (!handedOver.compareAndSet(false, true)) {
+                if (throwable == null) {
+                    drain();
+                } else {
+                    writeFailed(throwable);
+                }
+            }
+        }
+
+        /**
+         * @return true, if the write is still in flight and its completion continues draining
+         */
+        private boolean isPending() {
+            return handedOver.compareAndSet(false, true);
+        }
+    }
+}
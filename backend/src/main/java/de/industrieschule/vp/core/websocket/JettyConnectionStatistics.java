@@ -0,0 +1,70 @@
+package de.industrieschule.vp.core.websocket;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.websocket.core.CoreSession;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Reads the received bytes of a connection from Jetty's core session. Jetty has no public API for it, its internal
+ * classes are looked up once by name, so another Jetty version only disables the statistic (see
+ * {@link BroadcastConnection#bytesReceived()}) instead of failing to load.
+ *
+ * @author Moritz Hofmann
+ */
+final class JettyConnectionStatistics {
+
+    private static final Logger log = LogManager.getLogger(JettyConnectionStatistics.class);
+
+    private static final String CORE_SESSION_CLASS = "org.eclipse.jetty.websocket.core.internal.WebSocketCoreSession";
+    private static final String CONNECTION_CLASS = "org.eclipse.jetty.websocket.core.internal.WebSocketConnection";
+
+    private static final Class<?> CORE_SESSION_TYPE;
+
+    /**
+     * (WebSocketCoreSession) -> long, null if the internal classes aren't available
+     */
+    private static final MethodHandle BYTES_IN;
+
+    static {
+        Class<?> coreSessionType = null;
+        MethodHandle bytesIn = null;
+        try {
+            coreSessionType = Class.forName(CORE_SESSION_CLASS, false, CoreSession.class.getClassLoader());
+            Class<?> connectionType = Class.forName(CONNECTION_CLASS, false, CoreSession.class.getClassLoader());
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle getConnection = lookup.findVirtual(coreSessionType, "getConnection", MethodType.methodType(connectionType));
+            MethodHandle getBytesIn = lookup.findVirtual(connectionType, "getBytesIn", MethodType.methodType(long.class));
+            bytesIn = MethodHandles.filterReturnValue(getConnection, getBytesIn)
+                    .asType(MethodType.methodType(long.class, Object.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Received bytes of WebSocket connections are not available, heartbeats ping every connection", e);
+            coreSessionType = null;
+            bytesIn = null;
+        }
+        CORE_SESSION_TYPE = coreSessionType;
+        BYTES_IN = bytesIn;
+    }
+
+    private JettyConnectionStatistics() {
+    }
+
+    /**
+     * @param coreSession Core session of a connection
+     * @return Number of bytes received on the connection, including control frames, or -1 if unknown
+     */
+    static long bytesIn(CoreSession coreSession) {
+        if (BYTES_IN == null || !CORE_SESSION_TYPE.isInstance(coreSession)) {
+            return -1;
+        }
+        try {
+            return (long) BYTES_IN.invokeExact((Object) coreSession);
+        } catch (Throwable e) {
+            // Connection not yet or no longer attached
+            return -1;
+        }
+    }
+}
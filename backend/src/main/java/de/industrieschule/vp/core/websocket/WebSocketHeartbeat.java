@@ -0,0 +1,71 @@
+package de.industrieschule.vp.core.websocket;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server driven heartbeat of the sessions of a {@link BroadcastEngine}. Instead of a timer per connection, the sessions
+ * are spread over one bucket per tick of the interval; every tick checks one bucket, so each session is checked once
+ * per interval and the pings are spread evenly.
+ * <p>
+ * Sessions that received something in the last interval are alive and aren't pinged. The others are pinged, and if
+ * they still haven't sent anything (not even the pong) at their next check, they are considered dead and closed. Jetty's
+ * idle timeout can't detect this on its own, because the pings keep the connection busy.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+final class WebSocketHeartbeat {
+
+    private static final long TICK_MS = 1000;
+
+    private final BroadcastEngine engine;
+    private final Set<BroadcastSession>[] buckets;
+    private final AtomicInteger nextBucket = new AtomicInteger();
+    private int tick;
+
+    @SuppressWarnings("unchecked")
+    WebSocketHeartbeat(BroadcastEngine engine, long intervalMs, ScheduledExecutorService scheduler) {
+        this.engine = engine;
+        this.buckets = new Set[(int) Math.max(1, intervalMs / TICK_MS)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+        long tickMs = Math.min(TICK_MS, intervalMs);
+        scheduler.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    void add(BroadcastSession session) {
+        int bucket = Math.floorMod(nextBucket.getAndIncrement(), buckets.length);
+        session.setHeartbeatBucket(bucket);
+        buckets[bucket].add(session);
+    }
+
+    void remove(BroadcastSession session) {
+        int bucket = session.getHeartbeatBucket();
+        if (bucket >= 0) {
+            buckets[bucket].remove(session);
+        }
+    }
+
+    /**
+     * Runs on the scheduler thread only
+     */
+    private void tick() {
+        Set<BroadcastSession> bucket = buckets[tick];
+        tick = (tick + 1) % buckets.length;
+        for (BroadcastSession session : bucket) {
+            try {
+                if (!session.heartbeat()) {
+                    engine.deadClient(session);
+                }
+            } catch (RuntimeException e) {
+                // A broken session must not stop the heartbeat of the others
+                engine.deadClient(session);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package de.industrieschule.vp.core.websocket;
+
+import de.industrieschule.vp.core.autodiscovery.annotations.WebSocketEndpoint;
+import de.industrieschule.vp.core.config.Config;
+import io.javalin.http.Context;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Connection settings of a WebSocket endpoint, from its {@link WebSocketEndpoint} annotation with the values of the
+ * {@link Config} as defaults.
+ *
+ * @param idleTimeoutMs    Milliseconds without any frame, until Jetty closes the connection
+ * @param maxMessageSize   Maximum size of a received text or binary message in bytes
+ * @param pingIntervalMs   Interval of the server driven heartbeat, 0 disables it (see {@link WebSocketHeartbeat})
+ * @param compression      Whether permessage-deflate is negotiated with clients offering it
+ * @param slowClientPolicy What happens to clients that can't keep up with the broadcast messages
+ * @author Moritz Hofmann
+ */
+public record WebSocketSettings(long idleTimeoutMs, long maxMessageSize, long pingIntervalMs, boolean compression,
+                                BroadcastEngine.SLOW_CLIENT_POLICY slowClientPolicy) {
+
+    /**
+     * Value of the annotation attributes, that uses the default from the {@link Config}
+     */
+    public static final long DEFAULT = -1;
+
+    /**
+     * @return Settings of endpoints without annotation, from the {@link Config}
+     */
+    public static WebSocketSettings defaults() {
+        return new WebSocketSettings(Config.WS_IDLE_TIMEOUT_MS, Config.WS_MAX_MESSAGE_SIZE, Config.WS_PING_INTERVAL_MS,
+                Config.WS_PERMESSAGE_DEFLATE, BroadcastEngine.SLOW_CLIENT_POLICY.DISCONNECT);
+    }
+
+    /**
+     * @param endpointClass Class of the endpoint, may be annotated with {@link WebSocketEndpoint}
+     * @return Settings of the endpoint
+     */
+    public static WebSocketSettings of(Class<?> endpointClass) {
+        WebSocketSettings defaults = defaults();
+        WebSocketEndpoint annotation = endpointClass.getAnnotation(WebSocketEndpoint.class);
+        if (annotation == null) {
+            return defaults;
+        }
+        return new WebSocketSettings(
+                annotation.idleTimeoutMs() == DEFAULT ? defaults.idleTimeoutMs() : annotation.idleTimeoutMs(),
+                annotation.maxMessageSize() == DEFAULT ? defaults.maxMessageSize() : annotation.maxMessageSize(),
+                annotation.pingIntervalMs() == DEFAULT ? defaults.pingIntervalMs() : annotation.pingIntervalMs(),
+                // Disabled in the config, it can't be enabled per endpoint
+                defaults.compression() && annotation.compression(),
+                annotation.slowClientPolicy()
+        );
+    }
+
+    /**
+     * Applies the idle timeout and the message size limit, to the Jetty factory (defaults of all connections) or to
+     * a single session
+     *
+     * @param policy Jetty WebSocket factory or session
+     */
+    public void applyTo(WebSocketPolicy policy) {
+        policy.setIdleTimeout(Duration.ofMillis(idleTimeoutMs));
+        policy.setMaxTextMessageSize(maxMessageSize);
+        policy.setMaxBinaryMessageSize(maxMessageSize);
+    }
+
+    /**
+     * Removes the extension offer from an upgrade request (use it as {@code wsBeforeUpgrade} handler), so
+     * permessage-deflate isn't negotiated for this connection. Jetty negotiates for all paths alike, otherwise.
+     *
+     * @param context Context of the upgrade request
+     */
+    public static void declineCompression(Context context) {
+        Request request = Request.getBaseRequest(context.req());
+        if (request != null && request.getHttpFields().contains(HttpHeader.SEC_WEBSOCKET_EXTENSIONS)) {
+            request.setHttpFields(HttpFields.build(request.getHttpFields()).remove(HttpHeader.SEC_WEBSOCKET_EXTENSIONS));
+        }
+    }
+
+    /**
+     * Accepts the subprotocol, if the client offers it among others (use it as {@code wsBeforeUpgrade} handler).
+     * Javalin echoes the first offered subprotocol, which isn't necessarily the one the endpoint speaks; if the client
+     * doesn't offer it, no subprotocol is accepted.
+     *
+     * @param context     Context of the upgrade request
+     * @param subprotocol Subprotocol of the endpoint
+     */
+    public static void selectSubprotocol(Context context, String subprotocol) {
+        String header = HttpHeader.SEC_WEBSOCKET_SUBPROTOCOL.asString();
+        context.res().setHeader(header, isOffered(Collections.list(context.req().getHeaders(header)), subprotocol) ? subprotocol : null);
+    }
+
+    /**
+     * @param headerValues Values of the {@code Sec-WebSocket-Protocol} headers, comma separated lists each
+     * @param subprotocol  Subprotocol
+     * @return Whether the subprotocol is one of the offered ones
+     */
+    public static boolean isOffered(List<String> headerValues, String subprotocol) {
+        for (String headerValue : headerValues) {
+            for (String offered : headerValue.split(",")) {
+                if (offered.trim().equals(subprotocol)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
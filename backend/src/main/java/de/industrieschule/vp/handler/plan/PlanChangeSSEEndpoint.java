@@ -0,0 +1,75 @@
+package de.industrieschule.vp.handler.plan;
+
+import de.industrieschule.vp.core.autodiscovery.annotations.SSEEndpoint;
+import de.industrieschule.vp.core.autodiscovery.templates.SSEEndpointTemplate;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.plan.PlanChange;
+import de.industrieschule.vp.core.plan.PlanChangeFeed;
+import de.industrieschule.vp.core.sse.SSEStream;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.sse.SseClient;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Streams the changes of the plan as Server-Sent Events, the counterpart of {@link PlanChangeWebSocketEndpoint} for
+ * displays that only listen.
+ * <p>
+ * {@code GET .../v1/plan/events?topics=class:FS21,teacher:MUS} with {@code Accept: text/event-stream}, topics see
+ * {@link PlanChange.TopicType}. Every change affecting one of the topics is sent as a {@code change} event, with the
+ * same JSON as on the WebSocket. Browsers reconnect on their own and get the changes they missed; a
+ * {@value SSEStream#RESYNC_EVENT} event tells them to load the plan again.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+@SSEEndpoint(path = "/plan/events", apiVersion = "v1")
+public class PlanChangeSSEEndpoint extends SSEEndpointTemplate {
+
+    public static final String CHANGE_EVENT = "change";
+
+    public PlanChangeSSEEndpoint() {
+        this(PlanChangeFeed.getInstance());
+    }
+
+    public PlanChangeSSEEndpoint(PlanChangeFeed feed) {
+        feed.addListener(this::deliver);
+    }
+
+    private void deliver(PlanChange change) {
+        // Encoded once by the stream, queued for every client without waiting for the responses
+        getStream().publish(change.getTopics(), CHANGE_EVENT, change.toJson());
+    }
+
+    @Override
+    public Set<String> getTopics(Context context) {
+        String topicParameter = context.queryParam("topics");
+        if (topicParameter == null || topicParameter.isBlank()) {
+            throw new BadRequestResponse("Query parameter \"topics\" is missing");
+        }
+        Set<String> topics = new LinkedHashSet<>();
+        for (String topic : topicParameter.split(",")) {
+            String trimmed = topic.trim();
+            if (!PlanChange.TopicType.isValid(trimmed)) {
+                throw new BadRequestResponse("Invalid topic \"" + trimmed + "\"");
+            }
+            topics.add(trimmed);
+        }
+        if (topics.size() > Config.PLAN_PUSH_MAX_TOPICS) {
+            throw new BadRequestResponse("Too many topics, at most " + Config.PLAN_PUSH_MAX_TOPICS + " are allowed");
+        }
+        return topics;
+    }
+
+    @Override
+    public void onConnect(SseClient sseClient) {
+        // Subscribed and resumed by the stream
+    }
+
+    @Override
+    public void onClose(SseClient sseClient) {
+        // The client and its topics are removed by the stream
+    }
+}
@@ -0,0 +1,218 @@
+package de.industrieschule.vp.handler.plan;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import de.industrieschule.vp.core.autodiscovery.annotations.WebSocketEndpoint;
+import de.industrieschule.vp.core.autodiscovery.templates.WebSocketEndpointTemplate;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.plan.PlanChange;
+import de.industrieschule.vp.core.plan.PlanChangeFeed;
+import de.industrieschule.vp.core.websocket.BroadcastEngine;
+import de.industrieschule.vp.core.websocket.BroadcastMessage;
+import de.industrieschule.vp.core.websocket.BroadcastSession;
+import io.javalin.websocket.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Pushes changes of the plan to the clients, so they don't have to poll.
+ * <p>
+ * Protocol (JSON text messages):
+ * </p>
+ * <ul>
+ *     <li>Server: {@code {"type":"hello","version":12,"epoch":"..."}} after connecting</li>
+ *     <li>Client: {@code {"type":"subscribe","topics":["class:FS21","teacher:MUS"],"since":12,"epoch":"..."}},
+ *     topics see {@link PlanChange.TopicType}. {@code since} and {@code epoch} are optional and resume after the last
+ *     version the client received.</li>
+ *     <li>Server: {@code {"type":"subscribed","topics":[...],"version":15}} after the missed changes, or
+ *     {@code {"type":"resync","version":15,"epoch":"..."}} if they aren't available anymore; the client has to load
+ *     the plan again in this case, the topics are subscribed anyway</li>
+ *     <li>Client: {@code {"type":"unsubscribe","topics":[...]}}</li>
+ *     <li>Server: {@code {"type":"change","v":13,"op":"update","id":"...","topics":[...],"data":{...}}} for every
+ *     change affecting a subscribed topic, in the order of the versions</li>
+ *     <li>Server: {@code {"type":"error","message":"..."}} for invalid messages</li>
+ * </ul>
+ * <p>
+ * Clients that can't keep up are closed with {@link BroadcastEngine#CLOSE_TOO_SLOW}; they reconnect and resume with
+ * {@code since}.
+ * </p>
+ *
+ * @author Moritz Hofmann
+ */
+// Changes are small JSON deltas, compressing them isn't worth the zlib state of every connection
+@WebSocketEndpoint(path = "/plan/changes", apiVersion = "v1", compression = false)
+public class PlanChangeWebSocketEndpoint extends WebSocketEndpointTemplate {
+
+    private static final Logger log = LogManager.getLogger(PlanChangeWebSocketEndpoint.class);
+
+    private final PlanChangeFeed feed;
+
+    public PlanChangeWebSocketEndpoint() {
+        this(PlanChangeFeed.getInstance());
+    }
+
+    public PlanChangeWebSocketEndpoint(PlanChangeFeed feed) {
+        this.feed = feed;
+        feed.addListener(this::deliver);
+    }
+
+    private void deliver(PlanChange change) {
+        // Serialized once by the change, queued for every session without waiting for the sockets
+        getBroadcastEngine().broadcast(change.getTopics(), change.toMessage());
+    }
+
+    /**
+     * @return Number of connected clients
+     */
+    public int getSubscriberCount() {
+        return getBroadcastEngine().getSessionCount();
+    }
+
+    @Override
+    public void onConnect(WsConnectContext wsConnectContext) {
+        JsonObject hello = new JsonObject();
+        hello.addProperty("type", "hello");
+        hello.addProperty("version", feed.getVersion());
+        hello.addProperty("epoch", feed.getEpoch());
+        send(wsConnectContext.sessionId(), hello.toString());
+    }
+
+    @Override
+    public void onMessage(WsMessageContext wsMessageContext) {
+        BroadcastSession session = getBroadcastEngine().getSession(wsMessageContext.sessionId());
+        if (session == null) {
+            return;
+        }
+
+        JsonObject message;
+        Set<String> topics;
+        String epoch;
+        try {
+            message = JsonParser.parseString(wsMessageContext.message()).getAsJsonObject();
+            topics = readTopics(message);
+            epoch = readEpoch(message);
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            sendError(session, "Invalid message");
+            return;
+        } catch (IllegalArgumentException e) {
+            sendError(session, e.getMessage());
+            return;
+        }
+
+        JsonElement type = message.get("type");
+        switch (type == null || !type.isJsonPrimitive() ? "" : type.getAsString()) {
+            case "subscribe" -> subscribe(session, message, topics, epoch);
+            case "unsubscribe" -> topics.forEach(topic -> getBroadcastEngine().unsubscribe(session.getId(), topic));
+            default -> sendError(session, "Unknown message type");
+        }
+    }
+
+    private static Set<String> readTopics(JsonObject message) {
+        Set<String> topics = new LinkedHashSet<>();
+        JsonElement topicArray = message.get("topics");
+        if (topicArray == null) {
+            return topics;
+        }
+        for (JsonElement topic : topicArray.getAsJsonArray()) {
+            String value = topic.getAsString();
+            if (!PlanChange.TopicType.isValid(value)) {
+                throw new IllegalArgumentException("Invalid topic \"" + value + "\"");
+            }
+            topics.add(value);
+        }
+        return topics;
+    }
+
+    /**
+     * @return The epoch the client resumes from, null if it sent none
+     * @throws IllegalStateException If the epoch isn't a primitive, answered as invalid message
+     */
+    private static String readEpoch(JsonObject message) {
+        JsonElement epoch = message.get("epoch");
+        if (epoch == null || epoch.isJsonNull()) {
+            return null;
+        }
+        if (!epoch.isJsonPrimitive()) {
+            throw new IllegalStateException("Epoch must be a string");
+        }
+        return epoch.getAsString();
+    }
+
+    private void subscribe(BroadcastSession session, JsonObject message, Set<String> topics, String epoch) {
+        Set<String> merged = new LinkedHashSet<>(session.getTopics());
+        merged.addAll(topics);
+        if (merged.size() > Config.PLAN_PUSH_MAX_TOPICS) {
+            sendError(session, "Too many topics, at most " + Config.PLAN_PUSH_MAX_TOPICS + " are allowed");
+            return;
+        }
+
+        JsonElement since = message.get("since");
+        boolean resumable = since != null && since.isJsonPrimitive() && since.getAsJsonPrimitive().isNumber()
+                && (epoch == null || feed.getEpoch().equals(epoch));
+
+        BroadcastEngine engine = getBroadcastEngine();
+        Runnable addTopics = () -> topics.forEach(topic -> engine.subscribe(session.getId(), topic));
+        boolean complete;
+        if (since == null) {
+            addTopics.run();
+            complete = true;
+        } else if (resumable) {
+            // Missed changes are queued before the live ones, both go through the same queue of the session
+            complete = feed.replay(since.getAsLong(), addTopics, change -> {
+                if (change.affectsAny(topics)) {
+                    engine.send(session.getId(), change.toMessage());
+                }
+            });
+        } else {
+            addTopics.run();
+            complete = false;
+        }
+
+        JsonObject response = new JsonObject();
+        response.addProperty("type", complete ? "subscribed" : "resync");
+        if (complete) {
+            JsonArray topicArray = new JsonArray();
+            session.getTopics().forEach(topicArray::add);
+            response.add("topics", topicArray);
+        } else {
+            response.addProperty("epoch", feed.getEpoch());
+        }
+        response.addProperty("version", feed.getVersion());
+        send(session.getId(), response.toString());
+    }
+
+    private void sendError(BroadcastSession session, String errorMessage) {
+        JsonObject error = new JsonObject();
+        error.addProperty("type", "error");
+        error.addProperty("message", errorMessage);
+        send(session.getId(), error.toString());
+    }
+
+    private void send(String sessionId, String message) {
+        getBroadcastEngine().send(sessionId, BroadcastMessage.text(message));
+    }
+
+    @Override
+    public void onClose(WsCloseContext wsCloseContext) {
+        // The session and its topics are removed by the broadcast engine
+    }
+
+    @Override
+    public void onError(WsErrorContext wsErrorContext) {
+        log.debug("Plan change connection from {} encountered an error", wsErrorContext.host(), wsErrorContext.error());
+    }
+
+    @Override
+    public void onBinaryMessage(WsBinaryMessageContext wsBinaryMessageContext) {
+        BroadcastSession session = getBroadcastEngine().getSession(wsBinaryMessageContext.sessionId());
+        if (session != null) {
+            sendError(session, "Binary messages are not supported");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package de.industrieschule.vp.handler.plan;
+
+import de.industrieschule.vp.core.autodiscovery.GraphQLEndpoint;
+import de.industrieschule.vp.core.autodiscovery.annotations.GraphQLQuery;
+import de.industrieschule.vp.core.autodiscovery.graphql.SubscriptionPublisher;
+import de.industrieschule.vp.core.autodiscovery.templates.GraphQLTemplate;
+import de.industrieschule.vp.core.config.Config;
+import de.industrieschule.vp.core.plan.PlanChange;
+import de.industrieschule.vp.core.plan.PlanChangeFeed;
+import graphql.schema.DataFetchingEnvironment;
+import org.reactivestreams.Publisher;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * GraphQL subscription of the plan changes affecting the given topics, the GraphQL counterpart of
+ * {@link PlanChangeWebSocketEndpoint}.
+ *
+ * @author Moritz Hofmann
+ */
+@GraphQLQuery(
+        fieldName = "planChanges",
+        graphQLFieldType = GraphQLEndpoint.GRAPHQL_FIELD_TYPE.SUBSCRIPTION
+)
+public class PlanChangesSubscription extends GraphQLTemplate<Publisher<PlanChange>> {
+
+    private final PlanChangeFeed feed = PlanChangeFeed.getInstance();
+
+    @Override
+    public Publisher<PlanChange> get(DataFetchingEnvironment dataFetchingEnvironment) {
+        List<String> topicList = dataFetchingEnvironment.getArgument("topics");
+        Set<String> topics = new HashSet<>(topicList);
+        if (topics.size() > Config.PLAN_PUSH_MAX_TOPICS) {
+            throw new IllegalArgumentException("Too many topics, at most " + Config.PLAN_PUSH_MAX_TOPICS + " are allowed");
+        }
+        for (String topic : topics) {
+            if (!PlanChange.TopicType.isValid(topic)) {
+                throw new IllegalArgumentException("Invalid topic \"" + topic + "\"");
+            }
+        }
+
+        // The listener is added once the subscription starts, see SubscriptionPublisher
+        return new TopicListener(topics).publisher;
+    }
+
+    /**
+     * Forwards the changes of the topics to the publisher of one subscription, until it ends
+     */
+    private class TopicListener implements Consumer<PlanChange> {
+
+        private final Set<String> topics;
+        private final SubscriptionPublisher<PlanChange> publisher;
+
+        private TopicListener(Set<String> topics) {
+            this.topics = topics;
+            this.publisher = new SubscriptionPublisher<>(Config.GRAPHQL_SUBSCRIPTION_BUFFER_SIZE,
+                    () -> feed.addListener(this), () -> feed.removeListener(this));
+        }
+
+        @Override
+        public void accept(PlanChange change) {
+            if (change.affectsAny(topics)) {
+                publisher.offer(change);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package de.industrieschule.vp.legacy;
+
+import de.morihofi.iscvplan.vertretungsplan.utlity.HashGenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Checks the secure hash ({@code SEC}) and the password hash ({@code PW}) sent by the legacy app.
+ * <p>
+ * The secure hash depends on the current time, so the expected hashes are computed once per window (aligned to the
+ * epoch) instead of on every request. The window must not be longer than the period, in which the library changes
+ * the secure hash. The library's period isn't necessarily aligned with the window, so a hash that doesn't match the
+ * cached ones is checked once more against freshly computed hashes before it is rejected. Invalid hashes therefore
+ * cost as much as without the cache, valid ones are only computed once per change.
+ * </p>
+ * <p>
+ * The hash of the previous window stays valid, so apps whose clock is slightly behind aren't rejected at the boundary.
+ * This has two limits:
+ * </p>
+ * <ul>
+ *     <li>The library only computes the hash of the current time, so the previous hash is only known if a request
+ *     was validated in the previous window. On a quiet server, the first request after a boundary only accepts the
+ *     current hash, like without this tolerance.</li>
+ *     <li>A secure hash is accepted for up to two windows (the one it was computed in and the following one), the
+ *     exact comparison on every request accepted it only as long as the library returned it.</li>
+ * </ul>
+ *
+ * @author Moritz Hofmann
+ */
+public class LegacyHashValidator {
+
+    private final String password;
+    private final long windowMillis;
+
+    /**
+     * Expected hashes of the current window, replaced as a whole
+     */
+    private volatile Window window;
+
+    private record Window(long index, byte[] secureHash, byte[] previousSecureHash, byte[] passwordHash) {
+    }
+
+    /**
+     * @param password      Password of the legacy app
+     * @param windowSeconds Length of the window, in which the computed hashes are reused
+     */
+    public LegacyHashValidator(String password, int windowSeconds) {
+        if (windowSeconds < 1) {
+            throw new IllegalArgumentException("The window has to be at least one second long");
+        }
+        this.password = password;
+        this.windowMillis = windowSeconds * 1000L;
+    }
+
+    public boolean isValidSecureHash(String sec) {
+        if (sec == null) {
+            return false;
+        }
+        byte[] actual = sec.getBytes(StandardCharsets.UTF_8);
+        Window current = currentWindow();
+        // The library may have changed the hash within the window
+        return matchesSecureHash(actual, current) || matchesSecureHash(actual, recompute(current));
+    }
+
+    private static boolean matchesSecureHash(byte[] actual, Window window) {
+        // Don't short-circuit, so the time doesn't tell which hash matched
+        boolean matchesCurrent = MessageDigest.isEqual(actual, window.secureHash());
+        boolean matchesPrevious = window.previousSecureHash() != null && MessageDigest.isEqual(actual, window.previousSecureHash());
+        return matchesCurrent | matchesPrevious;
+    }
+
+    public boolean isValidPasswordHash(String pw) {
+        if (pw == null) {
+            return false;
+        }
+        byte[] actual = pw.getBytes(StandardCharsets.UTF_8);
+        Window current = currentWindow();
+        return MessageDigest.isEqual(actual, current.passwordHash()) || MessageDigest.isEqual(actual, recompute(current).passwordHash());
+    }
+
+    private Window currentWindow() {
+        long index = System.currentTimeMillis() / windowMillis;
+        Window current = window;
+        if (current != null && current.index() == index) {
+            return current;
+        }
+        synchronized (this) {
+            current = window;
+            if (current == null || current.index() != index) {
+                // Only the directly preceding window is kept, after a longer pause its hash is outdated
+                byte[] previousSecureHash = current != null && current.index() == index - 1 ? current.secureHash() : null;
+                current = new Window(index,
+                        HashGenerator.generateSecureHash().getBytes(StandardCharsets.UTF_8),
+                        previousSecureHash,
+                        HashGenerator.generatePasswordHash(password).getBytes(StandardCharsets.UTF_8));
+                window = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Computes the hashes again after a mismatch and replaces the window, if the library has changed them since
+     *
+     * @param seen Window the hash was compared with
+     * @return Window with the current hashes
+     */
+    private synchronized Window recompute(Window seen) {
+        Window current = window;
+        if (current != seen) {
+            // Replaced by another request in the meantime
+            return current;
+        }
+        byte[] secureHash = HashGenerator.generateSecureHash().getBytes(StandardCharsets.UTF_8);
+        byte[] passwordHash = HashGenerator.generatePasswordHash(password).getBytes(StandardCharsets.UTF_8);
+        boolean secureHashChanged = !MessageDigest.isEqual(secureHash, current.secureHash());
+        if (!secureHashChanged && MessageDigest.isEqual(passwordHash, current.passwordHash())) {
+            return current;
+        }
+        // The replaced secure hash stays valid like the one of the previous window
+        current = new Window(current.index(), secureHash,
+                secureHashChanged ? current.secureHash() : current.previousSecureHash(),
+                passwordHash);
+        window = current;
+        return current;
+    }
+}
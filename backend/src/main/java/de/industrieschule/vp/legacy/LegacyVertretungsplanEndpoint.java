@@ -1,42 +1,99 @@
 package de.industrieschule.vp.legacy;
 
 import com.google.gson.JsonObject;
-import de.morihofi.iscvplan.vertretungsplan.utlity.HashGenerator;
+import de.industrieschule.vp.core.config.Config;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
 import io.javalin.http.Handler;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
-
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Endpoint of the legacy app ({@code /App/json_transfer.php}). The old apps poll it frequently, so the response is
+ * rendered once per plan version (see {@link #publish}) and requests only check the hashes (see
+ * {@link LegacyHashValidator}) and write the pre-rendered bytes.
+ *
+ * @author Moritz Hofmann
+ */
 public class LegacyVertretungsplanEndpoint implements Handler {
+
+    private static final byte[] ERROR_NO_ANZ = errorResponse("NO_ANS (inofficial error code)");
+    private static final byte[] ERROR_WRONG_SECUREHASH = errorResponse("WRONG_SECUREHASH");
+    private static final byte[] ERROR_WRONG_PASSWORD = errorResponse("WRONG_PASSWORD");
+
+    /**
+     * Current plan, replaced as a whole when the plan changes
+     */
+    private final AtomicReference<LegacyVertretungsplanSnapshot> snapshot = new AtomicReference<>();
+
+    private final LegacyHashValidator hashValidator = new LegacyHashValidator(Config.LEGACY_APP_PASSWORD, Config.LEGACY_HASH_WINDOW_SECONDS);
+
+    public LegacyVertretungsplanEndpoint() {
+        // Rendered once, so the apps see the start of the server as update time of the placeholder, not the request time
+        publish(0, createPlaceholderPlan(new Date()));
+    }
+
+    /**
+     * Renders a new version of the plan and replaces the current one. Requests running concurrently get either the old
+     * or the new plan, never a mix. Versions older than the current one are ignored, so concurrent publishers can't
+     * bring back an outdated plan.
+     *
+     * @param version Version of the plan, increasing with every change
+     * @param plan    Plan, must not be modified while rendering
+     * @return true, if the plan was replaced
+     */
+    public boolean publish(long version, LegacyVertretungsplanResponse plan) {
+        LegacyVertretungsplanSnapshot rendered = LegacyVertretungsplanSnapshot.render(version, plan);
+        while (true) {
+            LegacyVertretungsplanSnapshot current = snapshot.get();
+            if (current != null && current.getVersion() >= version) {
+                return false;
+            }
+            if (snapshot.compareAndSet(current, rendered)) {
+                return true;
+            }
+        }
+    }
+
+    public LegacyVertretungsplanSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
     @Override
     public void handle(@NotNull Context context) throws Exception {
 
-        context.header("Content-Type", "application/json");
+        context.contentType(ContentType.APPLICATION_JSON);
 
         String anz = context.queryParam("ANZ");
         String sec = context.queryParam("SEC"); // (Secure?) Hash
         String pw = context.queryParam("PW"); // Hashed password
 
-        String secExpectedHash = HashGenerator.generateSecureHash();
-        String pwExpectedHash = HashGenerator.generatePasswordHash("legacy"); //TODO: Change Password
-
         if (anz == null) {
-            sendErrorResponse(context, "NO_ANS (inofficial error code)");
+            context.result(ERROR_NO_ANZ);
             return;
         }
 
-        if (!sec.equals(secExpectedHash)) {
-            sendErrorResponse(context, "WRONG_SECUREHASH");
+        if (!hashValidator.isValidSecureHash(sec)) {
+            context.result(ERROR_WRONG_SECUREHASH);
             return;
         }
 
-        if (!pw.equals(pwExpectedHash)) {
-            sendErrorResponse(context, "WRONG_PASSWORD");
+        if (!hashValidator.isValidPasswordHash(pw)) {
+            context.result(ERROR_WRONG_PASSWORD);
             return;
         }
 
-        // If all checks pass, create and return the VertretungsplanResponse
+        // If all checks pass, return the pre-rendered plan
+        context.result(snapshot.get().forDays(anz));
+    }
+
+    /**
+     * @param updated Update time shown by the app
+     */
+    private static LegacyVertretungsplanResponse createPlaceholderPlan(Date updated) {
         LegacyVertretungsplanResponse vp = new LegacyVertretungsplanResponse();
 
         LegacyVertretungsplanResponse.VertretungsplanDay day = new LegacyVertretungsplanResponse.VertretungsplanDay(
@@ -44,7 +101,7 @@ public class LegacyVertretungsplanEndpoint implements Handler {
                 "Reverse engineered with ♥ by morihofi",
                 "unbekannt",
                 "01.01.",
-                new Date()
+                updated
         );
 
         day.addLesson(new LegacyVertretungsplanResponse.VertretungsplanLesson(
@@ -55,15 +112,13 @@ public class LegacyVertretungsplanEndpoint implements Handler {
         ));
 
         vp.addDay(day);
-
-        context.contentType("application/json");
-        context.result(vp.generateVertretungsplan().toString());
+        return vp;
     }
 
-    private void sendErrorResponse(Context context, String errorMessage) {
+    private static byte[] errorResponse(String errorMessage) {
         JsonObject retObj = new JsonObject();
         retObj.addProperty("ERROR", errorMessage);
-        context.json(retObj);
+        return retObj.toString().getBytes(StandardCharsets.UTF_8);
     }
 
 }
@@ -18,10 +18,24 @@ public class LegacyVertretungsplanResponse {
         days.add(day);
     }
 
+    public List<VertretungsplanDay> getDays() {
+        return days;
+    }
+
     public JsonObject generateVertretungsplan() {
+        return generateVertretungsplan(days.size());
+    }
+
+    /**
+     * Generates the response of the legacy app
+     *
+     * @param maxDays Number of days to include, starting with the first one
+     * @return Plan in the format of the legacy app
+     */
+    public JsonObject generateVertretungsplan(int maxDays) {
         JsonObject vertretungsplan = new JsonObject();
 
-        for (VertretungsplanDay day : days) {
+        for (VertretungsplanDay day : days.subList(0, Math.min(maxDays, days.size()))) {
             JsonObject objDayContent = new JsonObject();
             objDayContent.addProperty("Header", day.getHeader());
             objDayContent.addProperty("Footer", day.getFooter());
@@ -0,0 +1,65 @@
+package de.industrieschule.vp.legacy;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable, pre-rendered legacy app response of one plan version. The JSON is rendered once per number of requested
+ * days ({@code ANZ}), so a request only has to write the matching buffer.
+ *
+ * @author Moritz Hofmann
+ */
+public final class LegacyVertretungsplanSnapshot {
+
+    private final long version;
+
+    /**
+     * UTF-8 encoded JSON, index 0 contains the first day, the last index all days. Never modified after rendering.
+     */
+    private final byte[][] variants;
+
+    private LegacyVertretungsplanSnapshot(long version, byte[][] variants) {
+        this.version = version;
+        this.variants = variants;
+    }
+
+    /**
+     * Renders all variants of a plan
+     *
+     * @param version Version of the plan
+     * @param plan    Plan, must not be modified while rendering
+     * @return Snapshot of the plan
+     */
+    public static LegacyVertretungsplanSnapshot render(long version, LegacyVertretungsplanResponse plan) {
+        int days = plan.getDays().size();
+        // An empty plan is still sent as "{}"
+        byte[][] variants = new byte[Math.max(days, 1)][];
+        for (int i = 0; i < variants.length; i++) {
+            variants[i] = plan.generateVertretungsplan(i + 1).toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return new LegacyVertretungsplanSnapshot(version, variants);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the response for the requested number of days. The old apps don't validate the parameter, so values that
+     * aren't a positive number or exceed the days of the plan return the whole plan, as before.
+     *
+     * @param anz Value of the {@code ANZ} query parameter
+     * @return UTF-8 encoded JSON, must not be modified
+     */
+    public byte[] forDays(String anz) {
+        int days;
+        try {
+            days = Integer.parseInt(anz.trim());
+        } catch (NumberFormatException e) {
+            days = variants.length;
+        }
+        if (days < 1 || days > variants.length) {
+            days = variants.length;
+        }
+        return variants[days - 1];
+    }
+}